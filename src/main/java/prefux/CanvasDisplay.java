@@ -0,0 +1,633 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.event.Event;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.Paint;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import prefux.controls.Control;
+import prefux.data.expression.AndPredicate;
+import prefux.data.expression.BooleanLiteral;
+import prefux.data.expression.Predicate;
+import prefux.data.util.Point2D;
+import prefux.data.util.Rectangle2D;
+import prefux.data.Tuple;
+import prefux.render.Renderer;
+import prefux.util.display.RenderingQueue;
+import prefux.util.display.SpatialIndex;
+import prefux.visual.EdgeItem;
+import prefux.visual.VisualItem;
+import prefux.visual.VisualTable;
+import prefux.visual.expression.VisiblePredicate;
+import prefux.visual.sort.ItemSorter;
+
+/**
+ * <p>A Display that paints the visible items of a visualization directly onto
+ * a {@link Canvas}, instead of creating a scene graph node per item like the
+ * {@link FxDisplay}. Each item is drawn in immediate mode by the
+ * {@link Renderer#draw(GraphicsContext, VisualItem)} method of its renderer,
+ * using the current values of the item. This keeps the cost of the scene
+ * graph independent of the number of items, and scales to visualizations
+ * with a hundred thousand items and more.</p>
+ *
+ * <p>Painting happens on the JavaFX application thread, at most once per
+ * pulse, after the display has been damaged, e.g. by a call to
+ * {@link #repaint()} from a {@link prefux.action.RepaintAction}. Items outside
+ * of the visible region are culled using the
+ * {@link VisualTable#getSpatialIndex() spatial index} of their table, and
+ * the remaining items are drawn in the
+ * order given by the {@link ItemSorter} of the {@link RenderingQueue}, so
+ * higher scoring items are drawn on top.</p>
+ *
+ * <p>Mouse events are mapped to the top most interactive item under the
+ * cursor, using {@link Renderer#locatePoint(Point2D, VisualItem)}, and passed
+ * on to the registered controls. Entering and leaving an item updates its
+ * hover state and is reported to the controls as
+ * {@link MouseEvent#MOUSE_ENTERED} and {@link MouseEvent#MOUSE_EXITED}
+ * events.</p>
+ */
+public class CanvasDisplay extends Pane implements Display {
+
+    private static final Logger log = LogManager.getLogger(CanvasDisplay.class);
+
+    /** Default margin around the visible region for culling items */
+    public static final double DEFAULT_CULL_MARGIN = 50;
+
+    protected AndPredicate m_predicate = new AndPredicate();
+    protected RenderingQueue m_queue = new RenderingQueue();
+    protected int m_visibleCount = 0;
+
+    private Visualization m_vis;
+    private List<Control> m_controls = new ArrayList<>();
+
+    private final Canvas m_canvas = new Canvas();
+    private final AnimationTimer m_timer;
+    private volatile boolean m_damaged = true;
+    private boolean m_scheduled = false;
+    private Paint m_background = Color.WHITE;
+    private double m_cullMargin = DEFAULT_CULL_MARGIN;
+    private long m_paintTime;
+
+    // display transform, screen = absolute * scale + translate
+    private double m_scale = 1.0;
+    private double m_tx = 0.0;
+    private double m_ty = 0.0;
+
+    private VisualItem m_hoverItem;
+    private VisualItem m_pressedItem;
+
+    /**
+     * Create a new CanvasDisplay. The display has no preferred size of its
+     * own, it paints whatever area its parent assigns to it.
+     *
+     * @param vis
+     *            the Visualization to display
+     */
+    public CanvasDisplay(Visualization vis) {
+        m_canvas.setManaged(false);
+        getChildren().add(m_canvas);
+        getStyleClass().add("display");
+        addEventHandler(MouseEvent.ANY, this::handle);
+        m_timer = new AnimationTimer() {
+            public void handle(long now) {
+                pulse();
+            }
+        };
+        setPredicate(null);
+        setVisualization(vis);
+    }
+
+    /**
+     * Create a new CanvasDisplay with the given preferred size.
+     *
+     * @param vis
+     *            the Visualization to display
+     * @param width
+     *            the preferred width
+     * @param height
+     *            the preferred height
+     */
+    public CanvasDisplay(Visualization vis, double width, double height) {
+        this(vis);
+        setPrefSize(width, height);
+    }
+
+    /**
+     * @see prefux.Display#getPredicate()
+     */
+    @Override
+    public Predicate getPredicate() {
+        if (m_predicate.size() == 1) {
+            return BooleanLiteral.TRUE;
+        } else {
+            return m_predicate.get(0);
+        }
+    }
+
+    /**
+     * Sets the filtering Predicate used to control what items are drawn by this
+     * Display.
+     *
+     * @param p
+     *            the filtering {@link prefux.data.expression.Predicate} to use
+     */
+    public synchronized void setPredicate(Predicate p) {
+        if (p == null) {
+            m_predicate.set(VisiblePredicate.TRUE);
+        } else {
+            m_predicate.set(new Predicate[] { p, VisiblePredicate.TRUE });
+        }
+        damageReport();
+    }
+
+    /**
+     * Set the ItemSorter that determines the rendering order of items.
+     *
+     * @param cmp
+     *            the ItemSorter to use
+     */
+    public void setItemSorter(ItemSorter cmp) {
+        m_queue.sort = cmp;
+        damageReport();
+    }
+
+    /**
+     * Get the ItemSorter that determines the rendering order of items.
+     *
+     * @return the ItemSorter
+     */
+    public ItemSorter getItemSorter() {
+        return m_queue.sort;
+    }
+
+    /**
+     * Set the paint used to clear the canvas before painting the items.
+     *
+     * @param background
+     *            the background paint, or null for a transparent background
+     */
+    public void setBackgroundPaint(Paint background) {
+        m_background = background;
+        damageReport();
+    }
+
+    /**
+     * Get the paint used to clear the canvas before painting the items.
+     *
+     * @return the background paint, or null for a transparent background
+     */
+    public Paint getBackgroundPaint() {
+        return m_background;
+    }
+
+    /**
+     * Set the margin around the visible region, in absolute coordinates,
+     * within which items are still painted. Items are culled by their
+     * location, so the margin should be at least as large as the largest
+     * extent of an item around its location.
+     *
+     * @param margin
+     *            the cull margin
+     */
+    public void setCullMargin(double margin) {
+        m_cullMargin = margin;
+        damageReport();
+    }
+
+    /**
+     * Get the margin around the visible region, in absolute coordinates,
+     * within which items are still painted.
+     *
+     * @return the cull margin
+     */
+    public double getCullMargin() {
+        return m_cullMargin;
+    }
+
+    /**
+     * Get the time it took to paint the last frame.
+     *
+     * @return the paint time in nanoseconds
+     */
+    public long getPaintTime() {
+        return m_paintTime;
+    }
+
+    /**
+     * Get the canvas the items are painted on.
+     *
+     * @return the canvas
+     */
+    public Canvas getCanvas() {
+        return m_canvas;
+    }
+
+    @Override
+    public void damageReport(Rectangle2D region) {
+        damage();
+    }
+
+    @Override
+    public void damageReport() {
+        damage();
+    }
+
+    @Override
+    public void repaint() {
+        damage();
+    }
+
+    @Override
+    public double getDisplayX() {
+        return -m_tx;
+    }
+
+    @Override
+    public double getDisplayY() {
+        return -m_ty;
+    }
+
+    @Override
+    public double getScale() {
+        return m_scale;
+    }
+
+    @Override
+    public int getVisibleItemCount() {
+        return m_visibleCount;
+    }
+
+    @Override
+    public Visualization getVisualization() {
+        return m_vis;
+    }
+
+    /**
+     * Set the visualization shown by this display.
+     *
+     * @param vis
+     *            the Visualization to display
+     */
+    public void setVisualization(Visualization vis) {
+        log.debug("setVisualization");
+        if (m_vis == vis)
+            return;
+        if (m_vis != null)
+            m_vis.removeDisplay(this);
+        m_vis = vis;
+        m_queue.clean();
+        m_hoverItem = m_pressedItem = null;
+        if (vis != null)
+            vis.addDisplay(this);
+        damageReport();
+    }
+
+    @Override
+    public Point2D getAbsoluteCoordinate(Point2D p) {
+        return new Point2D((p.getX() - m_tx) / m_scale, (p.getY() - m_ty)
+                / m_scale);
+    }
+
+    /**
+     * Zooms the view by the given scale, anchored at a point in absolute
+     * coordinates.
+     *
+     * @see prefux.Display#zoomAbs(prefux.data.util.Point2D, double)
+     */
+    @Override
+    public void zoomAbs(Point2D p, double zoom) {
+        zoom(new Point2D(p.getX() * m_scale + m_tx, p.getY() * m_scale + m_ty),
+                zoom);
+    }
+
+    /**
+     * Zooms the view by the given scale, anchored at a point in screen
+     * coordinates.
+     *
+     * @see prefux.Display#zoom(prefux.data.util.Point2D, double)
+     */
+    @Override
+    public void zoom(Point2D p, double zoom) {
+        m_tx = p.getX() - (p.getX() - m_tx) * zoom;
+        m_ty = p.getY() - (p.getY() - m_ty) * zoom;
+        m_scale *= zoom;
+        damageReport();
+    }
+
+    /**
+     * Pans the view by the given amount, in screen coordinates.
+     *
+     * @param dx
+     *            the horizontal distance
+     * @param dy
+     *            the vertical distance
+     */
+    public void pan(double dx, double dy) {
+        m_tx += dx;
+        m_ty += dy;
+        damageReport();
+    }
+
+    /**
+     * Pans the view so that the given point, in absolute coordinates, is
+     * in the center of the display.
+     *
+     * @see prefux.Display#panToAbs(prefux.data.util.Point2D)
+     */
+    @Override
+    public void panToAbs(Point2D center) {
+        m_tx = getWidth() / 2 - center.getX() * m_scale;
+        m_ty = getHeight() / 2 - center.getY() * m_scale;
+        damageReport();
+    }
+
+    @Override
+    public void addControlListener(Control cl) {
+        if (!m_controls.contains(cl))
+            m_controls.add(cl);
+    }
+
+    @Override
+    public void removeControlListener(Control cl) {
+        m_controls.remove(cl);
+    }
+
+    // ------------------------------------------------------------------------
+    // Painting
+
+    @Override
+    protected void layoutChildren() {
+        if (m_canvas.getWidth() != getWidth()
+                || m_canvas.getHeight() != getHeight()) {
+            m_canvas.setWidth(getWidth());
+            m_canvas.setHeight(getHeight());
+            damageReport();
+        }
+    }
+
+    /**
+     * Mark the display as damaged and start the timer, unless it is running
+     * already. May be called from any thread.
+     */
+    private void damage() {
+        m_damaged = true;
+        boolean start;
+        synchronized (this) {
+            start = !m_scheduled;
+            m_scheduled = true;
+        }
+        if (start) {
+            try {
+                Platform.runLater(m_timer::start);
+            } catch (IllegalStateException e) {
+                // toolkit not running, paint once it is damaged again
+                synchronized (this) {
+                    m_scheduled = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Paint the display if it is damaged, or stop the timer if it is not, so
+     * that an idle display does not keep the pulse running.
+     */
+    private void pulse() {
+        synchronized (this) {
+            if (!m_damaged) {
+                m_scheduled = false;
+                m_timer.stop();
+                return;
+            }
+        }
+        paint();
+    }
+
+    /**
+     * Paint all visible items onto the canvas. Called on the JavaFX
+     * application thread on the next pulse after the display was damaged.
+     */
+    protected void paint() {
+        m_damaged = false;
+        long start = System.nanoTime();
+        GraphicsContext g = m_canvas.getGraphicsContext2D();
+        double w = m_canvas.getWidth(), h = m_canvas.getHeight();
+        g.setTransform(1, 0, 0, 1, 0, 0);
+        g.clearRect(0, 0, w, h);
+        if (m_background != null) {
+            g.setFill(m_background);
+            g.fillRect(0, 0, w, h);
+        }
+        if (m_vis == null)
+            return;
+
+        // the visible region in absolute coordinates
+        double x0 = -m_tx / m_scale - m_cullMargin;
+        double y0 = -m_ty / m_scale - m_cullMargin;
+        double x1 = (w - m_tx) / m_scale + m_cullMargin;
+        double y1 = (h - m_ty) / m_scale + m_cullMargin;
+
+        m_queue.clear();
+        try {
+            for (VisualTable table : m_vis.getVisualTables()) {
+                SpatialIndex index = table.getSpatialIndex();
+                if (index == null) {
+                    // edges, check the end points of every visible edge
+                    Iterator<? extends Tuple> items = table.tuples(m_predicate);
+                    while (items.hasNext()) {
+                        VisualItem item = (VisualItem) items.next();
+                        if (isInRegion(item, x0, y0, x1, y1))
+                            m_queue.addToRenderQueue(item);
+                    }
+                } else {
+                    for (int row : index.query(x0, y0, x1, y1)) {
+                        if (!table.isValidRow(row))
+                            continue;
+                        VisualItem item = (VisualItem) table.getTuple(row);
+                        if (m_predicate.getBoolean(item))
+                            m_queue.addToRenderQueue(item);
+                    }
+                }
+            }
+            m_visibleCount = m_queue.rsize;
+        } catch (ConcurrentModificationException e) {
+            // items were added or removed meanwhile, try again next pulse
+            m_queue.clear();
+            m_damaged = true;
+            return;
+        }
+        m_queue.sortRenderQueue();
+
+        g.setTransform(m_scale, 0, 0, m_scale, m_tx, m_ty);
+        for (int i = 0; i < m_queue.rsize; ++i) {
+            VisualItem item = m_queue.ritems[i];
+            Renderer r = item.getRenderer();
+            if (r != null)
+                r.draw(g, item);
+        }
+        m_paintTime = System.nanoTime() - start;
+    }
+
+    /**
+     * Checks if an item should respond to user input. Items without an
+     * interactive flag are always interactive.
+     */
+    private static boolean isInteractive(VisualItem item) {
+        return !item.canGetBoolean(VisualItem.INTERACTIVE)
+                || item.getBoolean(VisualItem.INTERACTIVE);
+    }
+
+    /**
+     * Checks if an item lies within a region. Edges are checked by the
+     * bounding box of their end points, other items by their location.
+     */
+    private static boolean isInRegion(VisualItem item, double x0, double y0,
+            double x1, double y1) {
+        if (item instanceof EdgeItem) {
+            EdgeItem edge = (EdgeItem) item;
+            VisualItem s = edge.getSourceItem(), t = edge.getTargetItem();
+            double sx = s.getX(), sy = s.getY(), tx = t.getX(), ty = t.getY();
+            return Math.max(sx, tx) >= x0 && Math.min(sx, tx) <= x1
+                    && Math.max(sy, ty) >= y0 && Math.min(sy, ty) <= y1;
+        } else {
+            double x = item.getX(), y = item.getY();
+            return x >= x0 && x <= x1 && y >= y0 && y <= y1;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Picking and Events
+
+    /**
+     * Returns the top most interactive item at the given point. Candidates
+     * are looked up in the spatial indices of the visual tables, within the
+     * cull margin around the point, and then checked with the renderer of
+     * each item. Edges are not picked.
+     *
+     * @param p
+     *            the point, in absolute coordinates
+     * @return the item at the point, or null if there is none
+     */
+    public VisualItem findItem(Point2D p) {
+        if (m_vis == null)
+            return null;
+        // collect the candidates near the point, in drawing order
+        double m = m_cullMargin;
+        double x = p.getX(), y = p.getY();
+        m_queue.clearPickingQueue();
+        for (VisualTable table : m_vis.getVisualTables()) {
+            SpatialIndex index = table.getSpatialIndex();
+            if (index == null)
+                continue;
+            for (int row : index.query(x - m, y - m, x + m, y + m)) {
+                if (!table.isValidRow(row))
+                    continue;
+                VisualItem item = (VisualItem) table.getTuple(row);
+                if (isInteractive(item) && m_predicate.getBoolean(item))
+                    m_queue.addToPickingQueue(item);
+            }
+        }
+        m_queue.sortPickingQueue();
+        // walk queue from front to back looking for hits
+        for (int i = m_queue.psize; --i >= 0;) {
+            VisualItem vi = m_queue.pitems[i];
+            if (!vi.isValid())
+                continue; // in case tuple went invalid
+            Renderer r = vi.getRenderer();
+            if (r != null && r.locatePoint(p, vi))
+                return vi;
+        }
+        return null;
+    }
+
+    private void handle(MouseEvent event) {
+        VisualItem item;
+        if (m_pressedItem != null) {
+            // keep delivering to the pressed item until it is released
+            item = m_pressedItem;
+        } else {
+            item = findItem(getAbsoluteCoordinate(new Point2D(event.getX(),
+                    event.getY())));
+        }
+
+        if (item != m_hoverItem
+                && event.getEventType() != MouseEvent.MOUSE_EXITED) {
+            if (m_hoverItem != null && m_hoverItem.isValid()) {
+                m_hoverItem.setHover(false);
+                fireItemEvent(m_hoverItem,
+                        event.copyFor(this, this, MouseEvent.MOUSE_EXITED));
+            }
+            m_hoverItem = item;
+            if (item != null) {
+                item.setHover(true);
+                fireItemEvent(item,
+                        event.copyFor(this, this, MouseEvent.MOUSE_ENTERED));
+            }
+            damageReport();
+        }
+
+        if (event.getEventType() == MouseEvent.MOUSE_PRESSED) {
+            m_pressedItem = item;
+        } else if (event.getEventType() == MouseEvent.MOUSE_RELEASED) {
+            m_pressedItem = null;
+        }
+        if (item != null) {
+            fireItemEvent(item, event);
+            damageReport();
+        }
+    }
+
+    private void fireItemEvent(VisualItem item, Event event) {
+        for (Control cl : m_controls) {
+            if (cl.isItemEventEnabled()
+                    && cl.getEventType().getClass()
+                            .isAssignableFrom(event.getEventType().getClass())) {
+                cl.itemEvent(item, event);
+            }
+        }
+    }
+
+} // end of class CanvasDisplay
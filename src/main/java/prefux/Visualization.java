@@ -35,6 +35,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -935,6 +936,20 @@ public class Visualization {
         return m_visual.get(group);
     }
     
+    /**
+     * Get all visual tables of this visualization, including the node and
+     * edge tables of visual graphs.
+     * @return a list of the visual tables
+     */
+    synchronized List<VisualTable> getVisualTables() {
+        ArrayList<VisualTable> tables = new ArrayList<>(m_visual.size());
+        for ( VisualTupleSet ts : m_visual.values() ) {
+            if ( ts instanceof VisualTable )
+                tables.add((VisualTable)ts);
+        }
+        return tables;
+    }
+    
     /**
      * Retrieve the focus data group of the given group name. Only secondary,
      * or focus, groups will be considered.
@@ -328,9 +328,7 @@ public class DataColorAction extends ColorAction {
         if ( m_type == Constants.NUMERICAL ) {
             m_omap = null;
             if ( m_scale == Constants.QUANTILE_SCALE && m_bins > 0 ) {
-                double[] values =
-                        DataLib.toDoubleArray(ts.tuples(), m_dataField);
-                return MathLib.quantiles(m_bins, values);
+                return DataLib.quantiles(ts, m_dataField, m_bins);
             } else {
                 double[] dist = new double[2];
                 dist[0] = DataLib.min(ts, m_dataField).getDouble(m_dataField);
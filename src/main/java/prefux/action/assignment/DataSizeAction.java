@@ -334,9 +334,7 @@ public class DataSizeAction extends SizeAction {
         
         if ( m_inferBounds ) {
             if ( m_scale == Constants.QUANTILE_SCALE && m_bins > 0 ) {
-                double[] values =
-                    DataLib.toDoubleArray(ts.tuples(), m_dataField);
-                m_dist = MathLib.quantiles(m_bins, values);
+                m_dist = DataLib.quantiles(ts, m_dataField, m_bins);
             } else {
                 // check for non-binned quantile scale error
                 if ( m_scale == Constants.QUANTILE_SCALE ) {
@@ -30,14 +30,21 @@
  */
 package prefux.action.filter;
 
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Iterator;
 
 import prefux.Visualization;
 import prefux.action.GroupAction;
 import prefux.data.expression.OrPredicate;
 import prefux.data.expression.Predicate;
+import prefux.data.tuple.CompositeTupleSet;
+import prefux.data.tuple.TupleSet;
+import prefux.data.util.ColumnarFilter;
 import prefux.util.PrefuseLib;
+import prefux.util.collections.IntIterator;
 import prefux.visual.VisualItem;
+import prefux.visual.VisualTable;
 import prefux.visual.expression.VisiblePredicate;
 
 /**
@@ -51,6 +58,10 @@ public class VisibilityFilter extends GroupAction {
     private Predicate m_filter;
     private Predicate m_predicate;
     
+    // columnar evaluators of the predicate, reused across runs
+    private ArrayList<ColumnarFilter> m_selectors =
+        new ArrayList<ColumnarFilter>();
+    
     /**
      * Create a new VisibilityFilter.
      * @param p the test predicate used to determine visibility
@@ -87,17 +98,81 @@ public class VisibilityFilter extends GroupAction {
     protected void setPredicate(Predicate p) {
         m_predicate = p;
         m_filter = new OrPredicate(p, VisiblePredicate.TRUE);
+        m_selectors.clear();
     }
     
     /**
      * @see prefux.action.Action#run(double)
      */
     public void run(double frac) {
+        ArrayList<VisualTable> tables = getVisualTables();
+        if ( tables != null ) {
+            // evaluate the predicate a block of rows at a time
+            for ( int i=0; i<tables.size(); ++i )
+                filter(tables.get(i), i);
+            return;
+        }
+        
         Iterator<VisualItem> items = m_vis.items(m_group, m_filter);
         while ( items.hasNext() ) {
             VisualItem item = (VisualItem)items.next();
             PrefuseLib.updateVisible(item, m_predicate.getBoolean(item));
         }
     }
+    
+    /**
+     * Get the visual tables making up the processed group, in iteration
+     * order, or null if the group contains other kinds of tuple sets.
+     */
+    private ArrayList<VisualTable> getVisualTables() {
+        if ( Visualization.ALL_ITEMS.equals(m_group) )
+            return null;
+        TupleSet ts = m_vis.getGroup(m_group);
+        ArrayList<VisualTable> tables = new ArrayList<VisualTable>(2);
+        if ( ts instanceof VisualTable ) {
+            tables.add((VisualTable)ts);
+        } else if ( ts instanceof CompositeTupleSet ) {
+            Iterator<TupleSet> sets = ((CompositeTupleSet)ts).sets();
+            while ( sets.hasNext() ) {
+                TupleSet set = sets.next();
+                if ( !(set instanceof VisualTable) )
+                    return null;
+                tables.add((VisualTable)set);
+            }
+        } else {
+            return null;
+        }
+        return tables;
+    }
+    
+    /**
+     * Update the visibility of all rows of a visual table, equivalent to
+     * calling {@link PrefuseLib#updateVisible(VisualItem, boolean)} for
+     * each item that passes the predicate or is currently visible.
+     */
+    private void filter(VisualTable table, int idx) {
+        ColumnarFilter cf = idx < m_selectors.size() ? m_selectors.get(idx) : null;
+        if ( cf == null || cf.getTable() != table ) {
+            cf = new ColumnarFilter(table, m_predicate);
+            if ( idx < m_selectors.size() ) {
+                m_selectors.set(idx, cf);
+            } else {
+                m_selectors.add(cf);
+            }
+        }
+        BitSet pass = cf.select();
+        
+        IntIterator rows = table.rows();
+        while ( rows.hasNext() ) {
+            int row = rows.nextInt();
+            boolean val = pass.get(row);
+            boolean visible = table.isVisible(row);
+            if ( val || visible ) {
+                table.setStartVisible(row, visible);
+                table.setVisible(row, val);
+                table.setEndVisible(row, val);
+            }
+        }
+    }
 
 } // end of class VisibilityAction
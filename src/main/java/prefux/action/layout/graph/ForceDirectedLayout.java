@@ -30,23 +30,41 @@
  */
 package prefux.action.layout.graph;
 
+import java.util.BitSet;
+import java.util.HashSet;
 import java.util.Iterator;
 
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.beans.property.ReadOnlyDoubleWrapper;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
 import javafx.geometry.Rectangle2D;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import prefux.action.layout.Layout;
+import prefux.activity.Activity;
+import prefux.activity.ActivityManager;
 import prefux.data.Graph;
 import prefux.data.Schema;
+import prefux.data.Table;
+import prefux.data.Tuple;
+import prefux.data.event.EventConstants;
+import prefux.data.event.TableListener;
+import prefux.data.event.TupleSetListener;
 import prefux.data.tuple.TupleSet;
 import prefux.data.util.Point2D;
 import prefux.util.PrefuseLib;
+import prefux.util.collections.IntObjectHashMap;
 import prefux.util.force.DragForce;
 import prefux.util.force.ForceItem;
 import prefux.util.force.ForceSimulator;
 import prefux.util.force.NBodyForce;
+import prefux.util.force.Spring;
 import prefux.util.force.SpringForce;
 import prefux.visual.EdgeItem;
 import prefux.visual.NodeItem;
@@ -77,6 +95,31 @@ import prefux.visual.VisualItem;
  * simulation. See the {@link prefux.util.force} package for more.
  * </p>
  * 
+ * <p>
+ * By default, an animated layout rebuilds the simulation from the currently
+ * visible items on every run. For large graphs this rebuild can cost more
+ * than the physics itself, so a persistent simulation can be enabled using
+ * {@link #setPersistentSimulation(boolean)}. In that mode the simulator keeps
+ * its items and springs between runs and only applies the changes reported by
+ * the node and edge tables: items that are added, removed, shown or hidden,
+ * and nodes that are moved by something other than this layout.
+ * </p>
+ * 
+ * <p>
+ * An animated layout keeps running after it has settled, unless auto-sleep
+ * is enabled using {@link #setAutoSleep(boolean)}. The layout then puts the
+ * activity driving it to sleep once the kinetic energy and the largest node
+ * displacement of the simulation have stayed below their thresholds for a
+ * number of steps, and wakes it up again when nodes are added, removed,
+ * shown, hidden, moved or fixed by something other than this layout, or when
+ * {@link #wakeUp()} is called. The kinetic energy, maximum displacement, step
+ * time and item count of the last simulation step are available as read-only
+ * properties. The layout records them on the thread it runs on and publishes
+ * them on the JavaFX application thread, so listeners may update the scene
+ * graph directly. When the layout steps faster than the application thread
+ * handles updates, intermediate values are skipped.
+ * </p>
+ * 
  * @author <a href="http://jheer.org">jeffrey heer</a>
  */
 public class ForceDirectedLayout extends Layout {
@@ -92,6 +135,41 @@ public class ForceDirectedLayout extends Layout {
 
 	protected String	           m_nodeGroup;
 	protected String	           m_edgeGroup;
+
+	private boolean	               m_persistent;
+	private boolean	               m_rebuild	= true;
+	private SimulationListener	   m_listener;
+	private IntObjectHashMap	   m_nodeItems	= new IntObjectHashMap();
+	private IntObjectHashMap	   m_edgeSprings	= new IntObjectHashMap();
+
+	/** Default mean kinetic energy per item below which the layout is calm */
+	public static final double	   DEFAULT_SLEEP_ENERGY	      = 1E-4;
+	/** Default node displacement per step below which the layout is calm */
+	public static final double	   DEFAULT_SLEEP_DISPLACEMENT	= 0.1;
+	/** Default number of calm steps after which the layout goes to sleep */
+	public static final int	       DEFAULT_SLEEP_STEPS	      = 20;
+
+	private boolean	               m_autoSleep;
+	private double	               m_sleepEnergy	= DEFAULT_SLEEP_ENERGY;
+	private double	               m_sleepDisplacement	= DEFAULT_SLEEP_DISPLACEMENT;
+	private int	                   m_sleepSteps	= DEFAULT_SLEEP_STEPS;
+	private int	                   m_calmSteps;
+	private Activity	           m_sleeper;
+	private WakeListener	       m_wakeListener;
+
+	private ReadOnlyDoubleWrapper	m_kineticEnergy	= new ReadOnlyDoubleWrapper(this, "kineticEnergy");
+	private ReadOnlyDoubleWrapper	m_maxDisplacement	= new ReadOnlyDoubleWrapper(this, "maxDisplacement");
+	private ReadOnlyDoubleWrapper	m_stepTime	= new ReadOnlyDoubleWrapper(this, "stepTime");
+	private ReadOnlyIntegerWrapper	m_itemCount	= new ReadOnlyIntegerWrapper(this, "itemCount");
+	private ReadOnlyBooleanWrapper	m_sleeping	= new ReadOnlyBooleanWrapper(this, "sleeping");
+
+	// metrics of the last step, published to the properties on the JavaFX
+	// application thread
+	private double	               m_lastEnergy;
+	private double	               m_lastDisplacement;
+	private double	               m_lastStepTime;
+	private int	                   m_lastItemCount;
+	private boolean	               m_publishing;
 	
 	private static final Logger log = LogManager.getLogger(ForceDirectedLayout.class);
 
@@ -240,6 +318,7 @@ public class ForceDirectedLayout extends Layout {
 	 */
 	public void setForceSimulator(ForceSimulator fsim) {
 		m_fsim = fsim;
+		m_rebuild = true;
 	}
 
 	/**
@@ -278,6 +357,204 @@ public class ForceDirectedLayout extends Layout {
 	public void setDataGroups(String nodeGroup, String edgeGroup) {
 		m_nodeGroup = nodeGroup;
 		m_edgeGroup = edgeGroup;
+		m_rebuild = true;
+	}
+
+	/**
+	 * Indicates if this layout keeps a persistent simulation between runs in
+	 * animated mode, rather than rebuilding it on every run.
+	 * 
+	 * @return true if the simulation is persistent, false otherwise
+	 */
+	public boolean isPersistentSimulation() {
+		return m_persistent;
+	}
+
+	/**
+	 * Set whether this layout keeps a persistent simulation between runs in
+	 * animated mode. If true, the force simulator keeps its items and springs
+	 * and is only updated with the changes reported by the node and edge
+	 * tables. Mass values, spring lengths and spring coefficients are then
+	 * computed when an item enters the simulation; call
+	 * {@link #invalidateSimulation()} to force them to be recomputed. The
+	 * persistent mode requires the node and edge groups to be backed by
+	 * tables; otherwise the simulation is rebuilt on every run.
+	 * 
+	 * @param persistent
+	 *            true to keep a persistent simulation, false to rebuild the
+	 *            simulation on every run
+	 */
+	public void setPersistentSimulation(boolean persistent) {
+		if (m_persistent == persistent)
+			return;
+		m_persistent = persistent;
+		m_rebuild = true;
+		if (!persistent)
+			detachListener();
+	}
+
+	/**
+	 * Request a full rebuild of a persistent simulation on the next run of
+	 * this layout.
+	 */
+	public void invalidateSimulation() {
+		m_rebuild = true;
+	}
+
+	/**
+	 * Indicates if this layout puts its driving activity to sleep once the
+	 * simulation has settled.
+	 * 
+	 * @return true if auto-sleep is enabled, false otherwise
+	 */
+	public boolean isAutoSleep() {
+		return m_autoSleep;
+	}
+
+	/**
+	 * Set whether this layout puts its driving activity to sleep once the
+	 * simulation has settled. Only animated layouts run by an activity of
+	 * infinite duration are put to sleep. The node and edge groups need to be
+	 * backed by tables, so that changes can wake the layout up again.
+	 * 
+	 * @param autoSleep
+	 *            true to enable auto-sleep, false to disable it
+	 */
+	public void setAutoSleep(boolean autoSleep) {
+		m_autoSleep = autoSleep;
+		if (!autoSleep)
+			wakeUp();
+	}
+
+	/**
+	 * Get the mean kinetic energy per item below which the simulation is
+	 * considered calm.
+	 * 
+	 * @return the kinetic energy threshold
+	 */
+	public double getSleepEnergy() {
+		return m_sleepEnergy;
+	}
+
+	/**
+	 * Get the node displacement per step below which the simulation is
+	 * considered calm.
+	 * 
+	 * @return the displacement threshold
+	 */
+	public double getSleepDisplacement() {
+		return m_sleepDisplacement;
+	}
+
+	/**
+	 * Set the thresholds below which the simulation is considered calm.
+	 * 
+	 * @param energy
+	 *            the mean kinetic energy per item
+	 * @param displacement
+	 *            the largest distance a node moves in one step
+	 */
+	public void setSleepThresholds(double energy, double displacement) {
+		m_sleepEnergy = energy;
+		m_sleepDisplacement = displacement;
+	}
+
+	/**
+	 * Get the number of consecutive calm steps after which the layout goes
+	 * to sleep.
+	 * 
+	 * @return the number of calm steps
+	 */
+	public int getSleepSteps() {
+		return m_sleepSteps;
+	}
+
+	/**
+	 * Set the number of consecutive calm steps after which the layout goes
+	 * to sleep.
+	 * 
+	 * @param steps
+	 *            the number of calm steps
+	 */
+	public void setSleepSteps(int steps) {
+		m_sleepSteps = steps;
+	}
+
+	/**
+	 * Indicates if this layout has put its driving activity to sleep.
+	 * 
+	 * @return true if sleeping, false otherwise
+	 */
+	public synchronized boolean isSleeping() {
+		return m_sleeper != null;
+	}
+
+	/**
+	 * Wakes up the activity driving this layout, if it has been put to sleep.
+	 */
+	public void wakeUp() {
+		Activity a;
+		synchronized (this) {
+			if (m_wakeListener != null) {
+				m_wakeListener.dispose();
+				m_wakeListener = null;
+			}
+			a = m_sleeper;
+			m_sleeper = null;
+			m_calmSteps = 0;
+			m_lasttime = -1L;
+		}
+		if (a != null) {
+			a.wakeUp();
+			publishMetrics();
+		}
+	}
+
+	/**
+	 * The total kinetic energy of the simulation after the last step. Like
+	 * the other metrics properties, it is updated on the JavaFX application
+	 * thread.
+	 * 
+	 * @return the kinetic energy property
+	 */
+	public ReadOnlyDoubleProperty kineticEnergyProperty() {
+		return m_kineticEnergy.getReadOnlyProperty();
+	}
+
+	/**
+	 * The largest distance a node moved during the last simulation step.
+	 * 
+	 * @return the maximum displacement property
+	 */
+	public ReadOnlyDoubleProperty maxDisplacementProperty() {
+		return m_maxDisplacement.getReadOnlyProperty();
+	}
+
+	/**
+	 * The time it took to compute the last simulation step, in milliseconds.
+	 * 
+	 * @return the step time property
+	 */
+	public ReadOnlyDoubleProperty stepTimeProperty() {
+		return m_stepTime.getReadOnlyProperty();
+	}
+
+	/**
+	 * The number of items in the simulation.
+	 * 
+	 * @return the item count property
+	 */
+	public ReadOnlyIntegerProperty itemCountProperty() {
+		return m_itemCount.getReadOnlyProperty();
+	}
+
+	/**
+	 * Indicates if this layout has put its driving activity to sleep.
+	 * 
+	 * @return the sleeping property
+	 */
+	public ReadOnlyBooleanProperty sleepingProperty() {
+		return m_sleeping.getReadOnlyProperty();
 	}
 
 	// ------------------------------------------------------------------------
@@ -299,19 +576,29 @@ public class ForceDirectedLayout extends Layout {
 			m_fsim.clear();
 			long timestep = 1000L;
 			initSimulator(m_fsim);
-			for (int i = 0; i < m_iterations; i++) {
-				// use an annealing schedule to set time step
-				timestep *= (1.0 - i / (double) m_iterations);
-				long step = timestep + 50;
-				// run simulator
-				m_fsim.runSimulator(step);
-				// debugging output
-				// if (i % 10 == 0 ) {
-				// System.out.println("iter: "+i);
-				// }
+			m_fsim.beginRun();
+			try {
+				for (int i = 0; i < m_iterations; i++) {
+					// use an annealing schedule to set time step
+					timestep *= (1.0 - i / (double) m_iterations);
+					long step = timestep + 50;
+					// run simulator
+					m_fsim.runSimulator(step);
+					// debugging output
+					// if (i % 10 == 0 ) {
+					// System.out.println("iter: "+i);
+					// }
+				}
+			} finally {
+				m_fsim.endRun();
 			}
+			updateMetrics();
 			updateNodePositions();
 		} else {
+			// a sleeping layout that runs anyway has been rescheduled
+			if (m_sleeper != null)
+				wakeUp();
+
 			// get timestep
 			if (m_lasttime == -1)
 				m_lasttime = System.currentTimeMillis() - 20;
@@ -320,20 +607,115 @@ public class ForceDirectedLayout extends Layout {
 			m_lasttime = time;
 
 			// run force simulator
-			m_fsim.clear();
-			initSimulator(m_fsim);
+			if (!m_persistent || !updateSimulator(m_fsim)) {
+				m_fsim.clear();
+				initSimulator(m_fsim);
+			}
 			long newstep=m_fsim.runSimulator(timestep);
 			if (newstep!=timestep) {
 				m_maxstep=newstep;
 			}
+			updateMetrics();
 			updateNodePositions();
+			checkSleep();
 		}
 		if (frac == 1.0) {
 			reset();
 		}
 	}
 
+	private void updateMetrics() {
+		synchronized (this) {
+			m_lastEnergy = m_fsim.getKineticEnergy();
+			m_lastDisplacement = m_fsim.getMaxDisplacement();
+			m_lastStepTime = m_fsim.getStepTime() / 1e6;
+			m_lastItemCount = m_fsim.getItemCount();
+		}
+		publishMetrics();
+	}
+
+	/**
+	 * Schedules an update of the metrics properties on the JavaFX application
+	 * thread, unless one is pending already.
+	 */
+	private void publishMetrics() {
+		synchronized (this) {
+			if (m_publishing)
+				return;
+			m_publishing = true;
+		}
+		try {
+			Platform.runLater(this::setMetrics);
+		} catch (IllegalStateException e) {
+			// toolkit not running, publish with the next update
+			synchronized (this) {
+				m_publishing = false;
+			}
+		}
+	}
+
+	private void setMetrics() {
+		double energy, displacement, stepTime;
+		int itemCount;
+		boolean sleeping;
+		synchronized (this) {
+			m_publishing = false;
+			energy = m_lastEnergy;
+			displacement = m_lastDisplacement;
+			stepTime = m_lastStepTime;
+			itemCount = m_lastItemCount;
+			sleeping = m_sleeper != null;
+		}
+		m_kineticEnergy.set(energy);
+		m_maxDisplacement.set(displacement);
+		m_stepTime.set(stepTime);
+		m_itemCount.set(itemCount);
+		m_sleeping.set(sleeping);
+	}
+
+	/**
+	 * Puts the activity driving this layout to sleep, if auto-sleep is
+	 * enabled and the simulation has been calm for long enough.
+	 */
+	private void checkSleep() {
+		int n = m_fsim.getItemCount();
+		boolean calm = n == 0
+		        || (m_fsim.getKineticEnergy() / n < m_sleepEnergy && m_fsim
+		                .getMaxDisplacement() < m_sleepDisplacement);
+		m_calmSteps = calm ? m_calmSteps + 1 : 0;
+		if (!m_autoSleep || m_calmSteps < m_sleepSteps)
+			return;
+
+		Activity a = ActivityManager.getCurrentActivity();
+		TupleSet nodes = m_vis.getGroup(m_nodeGroup);
+		TupleSet edges = (m_edgeGroup == null ? null : m_vis
+		        .getGroup(m_edgeGroup));
+		if (a == null || a.getDuration() != Activity.INFINITY
+		        || !(nodes instanceof Table)
+		        || (edges != null && !(edges instanceof Table)))
+			return;
+		// sleep before listening, so that a wake up triggered by a table
+		// event always finds the activity asleep
+		synchronized (this) {
+			a.sleep();
+			m_wakeListener = new WakeListener((Table) nodes, (Table) edges);
+			m_sleeper = a;
+		}
+		publishMetrics();
+	}
+
 	private synchronized void updateNodePositions() {
+		if (m_listener != null)
+			m_listener.m_writer = Thread.currentThread();
+		try {
+			setNodePositions();
+		} finally {
+			if (m_listener != null)
+				m_listener.m_writer = null;
+		}
+	}
+
+	private void setNodePositions() {
 		Rectangle2D bounds = getLayoutBounds();
 		double x1 = 0, x2 = 0, y1 = 0, y2 = 0;
 		if (bounds != null) {
@@ -454,6 +836,165 @@ public class ForceDirectedLayout extends Layout {
 		}
 	}
 
+	/**
+	 * Brings a persistent simulation up to date. The simulation is fully
+	 * loaded on the first call or after it has been invalidated; afterwards
+	 * only the node and edge rows reported as changed are processed.
+	 * 
+	 * @param fsim
+	 *            the force simulator driving this layout
+	 * @return true if the simulation is up to date, false if the node or edge
+	 *         groups can not be tracked incrementally and the simulation
+	 *         needs to be rebuilt
+	 */
+	protected synchronized boolean updateSimulator(ForceSimulator fsim) {
+		TupleSet nodes = m_vis.getGroup(m_nodeGroup);
+		TupleSet edges = (m_edgeGroup == null ? null : m_vis
+		        .getGroup(m_edgeGroup));
+		if (!(nodes instanceof Table)
+		        || (edges != null && !(edges instanceof Table))) {
+			detachListener();
+			return false;
+		}
+		try {
+			nodes.addColumns(FORCEITEM_SCHEMA);
+		} catch (IllegalArgumentException iae) { /* ignored */
+		}
+
+		if (m_rebuild || m_listener == null || m_listener.m_nodes != nodes
+		        || m_listener.m_edges != edges) {
+			detachListener();
+			m_listener = new SimulationListener((Table) nodes, (Table) edges);
+			m_rebuild = false;
+
+			fsim.clear();
+			m_nodeItems.clear();
+			m_edgeSprings.clear();
+			Iterator<VisualItem> iter = m_vis.visibleItems(m_nodeGroup);
+			while (iter.hasNext()) {
+				VisualItem item = iter.next();
+				addNode(fsim, item.getRow(), item);
+			}
+			if (edges != null) {
+				iter = m_vis.visibleItems(m_edgeGroup);
+				while (iter.hasNext()) {
+					EdgeItem e = (EdgeItem) iter.next();
+					addEdge(fsim, e.getRow(), e);
+				}
+			}
+			return true;
+		}
+
+		// fetch and reset the pending changes
+		BitSet dirtyNodes, movedNodes, dirtyEdges;
+		synchronized (m_listener) {
+			dirtyNodes = m_listener.m_dirtyNodes;
+			movedNodes = m_listener.m_movedNodes;
+			dirtyEdges = m_listener.m_dirtyEdges;
+			m_listener.m_dirtyNodes = new BitSet();
+			m_listener.m_movedNodes = new BitSet();
+			m_listener.m_dirtyEdges = new BitSet();
+		}
+
+		// update springs first, as removed nodes take their edges with them.
+		// A row may have been removed and reused by a new item since the
+		// last step, so compare the spring with the current endpoints.
+		Table et = m_listener.m_edges;
+		HashSet<Spring> oldSprings = new HashSet<>();
+		for (int r = dirtyEdges.nextSetBit(0); r >= 0; r = dirtyEdges
+		        .nextSetBit(r + 1)) {
+			Spring s = (Spring) m_edgeSprings.get(r);
+			EdgeItem e = (EdgeItem) getVisibleItem(et, r);
+			if (s != null && (e == null
+			        || s.item1 != e.getSourceItem().get(FORCEITEM)
+			        || s.item2 != e.getTargetItem().get(FORCEITEM))) {
+				m_edgeSprings.removeKey(r);
+				oldSprings.add(s);
+				s = null;
+			}
+			if (s == null && e != null) {
+				addEdge(fsim, r, e);
+			}
+		}
+		fsim.removeSprings(oldSprings);
+
+		Table nt = m_listener.m_nodes;
+		HashSet<ForceItem> oldItems = new HashSet<>();
+		for (int r = dirtyNodes.nextSetBit(0); r >= 0; r = dirtyNodes
+		        .nextSetBit(r + 1)) {
+			ForceItem fitem = (ForceItem) m_nodeItems.get(r);
+			VisualItem item = getVisibleItem(nt, r);
+			if (fitem != null
+			        && (item == null || fitem != item.get(FORCEITEM))) {
+				m_nodeItems.removeKey(r);
+				oldItems.add(fitem);
+				fitem = null;
+			}
+			if (fitem == null && item != null) {
+				addNode(fsim, r, item);
+			}
+		}
+		fsim.removeItems(oldItems);
+
+		// pick up positions set by other actions or interaction
+		for (int r = movedNodes.nextSetBit(0); r >= 0; r = movedNodes
+		        .nextSetBit(r + 1)) {
+			ForceItem fitem = (ForceItem) m_nodeItems.get(r);
+			if (fitem != null && nt.isValidRow(r)) {
+				VisualItem item = (VisualItem) nt.getTuple(r);
+				double x = item.getEndX();
+				double y = item.getEndY();
+				if (!Double.isNaN(x))
+					fitem.location[0] = x;
+				if (!Double.isNaN(y))
+					fitem.location[1] = y;
+			}
+		}
+		return true;
+	}
+
+	private static VisualItem getVisibleItem(Table t, int row) {
+		if (!t.isValidRow(row))
+			return null;
+		VisualItem item = (VisualItem) t.getTuple(row);
+		return (item.isVisible() ? item : null);
+	}
+
+	private void addNode(ForceSimulator fsim, int row, VisualItem item) {
+		double startX = (referrer == null ? 0f : referrer.getX());
+		double startY = (referrer == null ? 0f : referrer.getY());
+		startX = Double.isNaN(startX) ? 0f : startX;
+		startY = Double.isNaN(startY) ? 0f : startY;
+
+		ForceItem fitem = (ForceItem) item.get(FORCEITEM);
+		fitem.mass = getMassValue(item);
+		double x = item.getEndX();
+		double y = item.getEndY();
+		fitem.location[0] = (Double.isNaN(x) ? startX : x);
+		fitem.location[1] = (Double.isNaN(y) ? startY : y);
+		fsim.addItem(fitem);
+		m_nodeItems.put(row, fitem);
+	}
+
+	private void addEdge(ForceSimulator fsim, int row, EdgeItem e) {
+		ForceItem f1 = (ForceItem) e.getSourceItem().get(FORCEITEM);
+		ForceItem f2 = (ForceItem) e.getTargetItem().get(FORCEITEM);
+		double coeff = getSpringCoefficient(e);
+		double slen = getSpringLength(e);
+		Spring s = fsim.addSpring(f1, f2, (coeff >= 0 ? coeff : -1.),
+		        (slen >= 0 ? slen : -1.));
+		m_edgeSprings.put(row, s);
+	}
+
+	private synchronized void detachListener() {
+		if (m_listener != null) {
+			m_listener.dispose();
+			m_listener = null;
+		}
+		m_nodeItems.clear();
+		m_edgeSprings.clear();
+	}
+
 	/**
 	 * Get the mass value associated with the given node. Subclasses should
 	 * override this method to perform custom mass assignment.
@@ -519,6 +1060,127 @@ public class ForceDirectedLayout extends Layout {
 		this.referrer = referrer;
 	}
 
+	// ------------------------------------------------------------------------
+	// Persistent Simulation Listener
+
+	/**
+	 * Records the node and edge rows that need to be revisited by a
+	 * persistent simulation. Rows are only marked here; the simulation itself
+	 * is updated by the layout on its next run.
+	 */
+	private class SimulationListener implements TupleSetListener, TableListener {
+
+		private Table	        m_nodes;
+		private Table	        m_edges;
+		private int	            m_nvis, m_evis, m_endx, m_endy;
+		private BitSet	        m_dirtyNodes	= new BitSet();
+		private BitSet	        m_movedNodes	= new BitSet();
+		private BitSet	        m_dirtyEdges	= new BitSet();
+		/** the thread currently writing layout positions, ignored as mover */
+		private volatile Thread	m_writer;
+
+		SimulationListener(Table nodes, Table edges) {
+			m_nodes = nodes;
+			m_edges = edges;
+			m_nvis = nodes.getColumnNumber(VisualItem.VISIBLE);
+			m_endx = nodes.getColumnNumber(VisualItem.ENDX);
+			m_endy = nodes.getColumnNumber(VisualItem.ENDY);
+			nodes.addTupleSetListener(this);
+			nodes.addTableListener(this);
+			if (edges != null) {
+				m_evis = edges.getColumnNumber(VisualItem.VISIBLE);
+				edges.addTupleSetListener(this);
+				edges.addTableListener(this);
+			}
+		}
+
+		void dispose() {
+			m_nodes.removeTupleSetListener(this);
+			m_nodes.removeTableListener(this);
+			if (m_edges != null) {
+				m_edges.removeTupleSetListener(this);
+				m_edges.removeTableListener(this);
+			}
+		}
+
+		public synchronized void tupleSetChanged(TupleSet tset,
+		        Tuple[] added, Tuple[] removed) {
+			BitSet rows = (tset == m_nodes ? m_dirtyNodes : m_dirtyEdges);
+			for (int i = 0; i < added.length; ++i)
+				rows.set(added[i].getRow());
+			for (int i = 0; i < removed.length; ++i)
+				rows.set(removed[i].getRow());
+		}
+
+		public synchronized void tableChanged(Table t, int start, int end,
+		        int col, int type) {
+			if (type != EventConstants.UPDATE || col < 0 || start < 0)
+				return; // inserts and deletes arrive as tuple set events
+			if (t == m_nodes) {
+				if (col == m_nvis) {
+					m_dirtyNodes.set(start, end + 1);
+				} else if ((col == m_endx || col == m_endy)
+				        && m_writer != Thread.currentThread()) {
+					m_movedNodes.set(start, end + 1);
+				}
+			} else if (t == m_edges && col == m_evis) {
+				m_dirtyEdges.set(start, end + 1);
+			}
+		}
+
+	} // end of inner class SimulationListener
+
+	/**
+	 * Wakes up a sleeping layout when nodes or edges are added or removed,
+	 * or when nodes are shown, hidden, moved or fixed.
+	 */
+	private class WakeListener implements TupleSetListener, TableListener {
+
+		private Table	m_nodes;
+		private Table	m_edges;
+		private int	    m_nvis, m_nfix, m_endx, m_endy, m_evis;
+
+		WakeListener(Table nodes, Table edges) {
+			m_nodes = nodes;
+			m_edges = edges;
+			m_nvis = nodes.getColumnNumber(VisualItem.VISIBLE);
+			m_nfix = nodes.getColumnNumber(VisualItem.FIXED);
+			m_endx = nodes.getColumnNumber(VisualItem.ENDX);
+			m_endy = nodes.getColumnNumber(VisualItem.ENDY);
+			nodes.addTupleSetListener(this);
+			nodes.addTableListener(this);
+			if (edges != null) {
+				m_evis = edges.getColumnNumber(VisualItem.VISIBLE);
+				edges.addTupleSetListener(this);
+				edges.addTableListener(this);
+			}
+		}
+
+		void dispose() {
+			m_nodes.removeTupleSetListener(this);
+			m_nodes.removeTableListener(this);
+			if (m_edges != null) {
+				m_edges.removeTupleSetListener(this);
+				m_edges.removeTableListener(this);
+			}
+		}
+
+		public void tupleSetChanged(TupleSet tset, Tuple[] added,
+		        Tuple[] removed) {
+			wakeUp();
+		}
+
+		public void tableChanged(Table t, int start, int end, int col,
+		        int type) {
+			if (type != EventConstants.UPDATE)
+				return; // inserts and deletes arrive as tuple set events
+			if (t == m_nodes ? (col == m_nvis || col == m_nfix
+			        || col == m_endx || col == m_endy) : col == m_evis)
+				wakeUp();
+		}
+
+	} // end of inner class WakeListener
+
 	// ------------------------------------------------------------------------
 	// ForceItem Schema Addition
 
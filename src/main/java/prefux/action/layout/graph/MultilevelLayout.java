@@ -0,0 +1,592 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.action.layout.graph;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+
+import prefux.action.layout.Layout;
+import prefux.data.Graph;
+import prefux.data.Table;
+import prefux.data.util.Point2D;
+import prefux.util.ArrayLib;
+import prefux.util.PrefuseLib;
+import prefux.util.force.DragForce;
+import prefux.util.force.ForceItem;
+import prefux.util.force.ForceSimulator;
+import prefux.util.force.NBodyForce;
+import prefux.util.force.PackedForceSimulator;
+import prefux.util.force.SpringForce;
+import prefux.visual.EdgeItem;
+import prefux.visual.VisualItem;
+
+/**
+ * <p>
+ * Run-once layout for very large graphs, based on the multilevel approach of
+ * Walshaw and of Hachul and J&uuml;nger (FM&sup3;). Instead of starting the
+ * force simulation for all nodes from scratch, the graph is first coarsened
+ * into a hierarchy of successively smaller graphs by repeatedly collapsing
+ * matched pairs of adjacent nodes. The coarsest graph is laid out using a
+ * {@link prefux.util.force.ForceSimulator}. Its positions are then prolonged
+ * to the next finer graph, where each node starts out at the position of the
+ * node it was collapsed into, and refined by a short simulation. This is
+ * repeated until the original graph has been laid out.
+ * </p>
+ *
+ * <p>
+ * Since the global structure of the layout is settled on the small coarse
+ * graphs, the expensive simulations of the finer graphs only need a few
+ * iterations; see {@link #setIterations(int)} and
+ * {@link #setRefineIterations(int)}. Coarse nodes are given the combined mass
+ * of the nodes they represent, and springs between them are lengthened
+ * accordingly, so that the coarse layouts keep the proportions of the final
+ * layout.
+ * </p>
+ *
+ * <p>
+ * Fixed nodes keep their position in the final refinement step, but are
+ * otherwise treated as regular nodes.
+ * </p>
+ */
+public class MultilevelLayout extends Layout {
+
+	private ForceSimulator	       m_fsim;
+	private int	                   m_iterations	      = 200;
+	private int	                   m_refineIterations	= 20;
+	private int	                   m_minSize	      = 50;
+	private double	               m_springLength	  = SpringForce.DEFAULT_SPRING_LENGTH;
+
+	protected transient VisualItem	referrer;
+
+	protected String	           m_nodeGroup;
+	protected String	           m_edgeGroup;
+
+	/** A coarsened graph is only kept if it removes at least this share of
+	 *  the nodes of the finer graph. */
+	private static final double	   MIN_REDUCTION	  = 0.1;
+
+	/**
+	 * Create a new MultilevelLayout.
+	 *
+	 * @param graph
+	 *            the data group to layout. Must resolve to a Graph instance.
+	 */
+	public MultilevelLayout(String graph) {
+		this(graph, new PackedForceSimulator());
+		m_fsim.addForce(new NBodyForce());
+		m_fsim.addForce(new SpringForce());
+		m_fsim.addForce(new DragForce());
+	}
+
+	/**
+	 * Create a new MultilevelLayout.
+	 *
+	 * @param graph
+	 *            the data group to layout. Must resolve to a Graph instance.
+	 * @param fsim
+	 *            the force simulator used to lay out each level
+	 */
+	public MultilevelLayout(String graph, ForceSimulator fsim) {
+		super(graph);
+		m_nodeGroup = PrefuseLib.getGroupName(graph, Graph.NODES);
+		m_edgeGroup = PrefuseLib.getGroupName(graph, Graph.EDGES);
+		m_fsim = fsim;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Get the force simulator used to lay out each level.
+	 *
+	 * @return the force simulator
+	 */
+	public ForceSimulator getForceSimulator() {
+		return m_fsim;
+	}
+
+	/**
+	 * Set the force simulator used to lay out each level.
+	 *
+	 * @param fsim
+	 *            the force simulator
+	 */
+	public void setForceSimulator(ForceSimulator fsim) {
+		m_fsim = fsim;
+	}
+
+	/**
+	 * Get the number of simulation iterations run on the coarsest graph.
+	 *
+	 * @return the number of iterations for the coarsest graph
+	 */
+	public int getIterations() {
+		return m_iterations;
+	}
+
+	/**
+	 * Set the number of simulation iterations run on the coarsest graph. Finer
+	 * graphs run fewer iterations, in inverse proportion to their node count,
+	 * but at least the number of refine iterations.
+	 *
+	 * @param iter
+	 *            the number of iterations for the coarsest graph
+	 */
+	public void setIterations(int iter) {
+		if (iter < 1)
+			throw new IllegalArgumentException("Iterations must be positive");
+		m_iterations = iter;
+	}
+
+	/**
+	 * Get the number of simulation iterations run on the original graph.
+	 *
+	 * @return the number of iterations for the original graph
+	 */
+	public int getRefineIterations() {
+		return m_refineIterations;
+	}
+
+	/**
+	 * Set the number of simulation iterations run on the original graph.
+	 *
+	 * @param iter
+	 *            the number of iterations for the original graph
+	 */
+	public void setRefineIterations(int iter) {
+		if (iter < 0)
+			throw new IllegalArgumentException(
+			        "Iterations must not be negative");
+		m_refineIterations = iter;
+	}
+
+	/**
+	 * Get the node count below which the graph is not coarsened any further.
+	 *
+	 * @return the minimum size of the coarsest graph
+	 */
+	public int getMinimumSize() {
+		return m_minSize;
+	}
+
+	/**
+	 * Set the node count below which the graph is not coarsened any further.
+	 *
+	 * @param size
+	 *            the minimum size of the coarsest graph
+	 */
+	public void setMinimumSize(int size) {
+		m_minSize = size;
+	}
+
+	/**
+	 * Get the resting length of springs between two original nodes.
+	 *
+	 * @return the default spring length
+	 */
+	public double getSpringLength() {
+		return m_springLength;
+	}
+
+	/**
+	 * Set the resting length of springs between two original nodes. Springs
+	 * between coarse nodes are scaled up from this length.
+	 *
+	 * @param length
+	 *            the default spring length
+	 */
+	public void setSpringLength(double length) {
+		m_springLength = length;
+	}
+
+	/**
+	 * Get the referrer item to use to set x or y coordinates that are
+	 * initialized to NaN.
+	 *
+	 * @return the referrer item.
+	 * @see prefux.util.PrefuseLib#setX(VisualItem, VisualItem, double)
+	 */
+	public VisualItem getReferrer() {
+		return referrer;
+	}
+
+	/**
+	 * Set the referrer item to use to set x or y coordinates that are
+	 * initialized to NaN.
+	 *
+	 * @param referrer
+	 *            the referrer item to use.
+	 * @see prefux.util.PrefuseLib#setX(VisualItem, VisualItem, double)
+	 */
+	public void setReferrer(VisualItem referrer) {
+		this.referrer = referrer;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @see prefux.action.Action#run(double)
+	 */
+	public void run(double frac) {
+		Random rand = new Random(42); // get a deterministic layout result
+
+		// build the hierarchy of coarsened graphs
+		Level[] levels = new Level[] { buildLevel() };
+		VisualItem[] items = levels[0].items;
+		int top = 0;
+		while (levels[top].n > m_minSize) {
+			Level coarse = coarsen(levels[top], rand);
+			if (coarse == null)
+				break;
+			if (++top == levels.length)
+				levels = Arrays.copyOf(levels, 2 * top);
+			levels[top] = coarse;
+		}
+
+		// lay out the coarsest graph around the layout anchor
+		Point2D anchor = getLayoutAnchor();
+		Level c = levels[top];
+		double side = m_springLength * Math.sqrt(c.n);
+		for (int i = 0; i < c.n; i++) {
+			if (isPlaced(c, i))
+				continue;
+			c.x[i] = anchor.getX() + (rand.nextDouble() - 0.5) * side;
+			c.y[i] = anchor.getY() + (rand.nextDouble() - 0.5) * side;
+		}
+		simulate(c, m_iterations, 1000L);
+
+		// prolong and refine level by level
+		for (int l = top - 1; l >= 0; l--) {
+			prolong(levels[l], levels[l + 1], rand);
+			int iter = (int) ((long) m_iterations * c.n / levels[l].n);
+			simulate(levels[l], Math.max(m_refineIterations, iter), 200L);
+		}
+
+		// the approximated n-body forces let the layout drift, so move it
+		// back to the anchor unless fixed nodes determine its position
+		Level f = levels[0];
+		boolean hasFixed = false;
+		double cx = 0, cy = 0;
+		for (int i = 0; i < f.n; i++) {
+			hasFixed |= f.fixed[i];
+			cx += f.x[i] / f.n;
+			cy += f.y[i] / f.n;
+		}
+		if (!hasFixed) {
+			for (int i = 0; i < f.n; i++) {
+				f.x[i] += anchor.getX() - cx;
+				f.y[i] += anchor.getY() - cy;
+			}
+		}
+
+		for (int i = 0; i < f.n; i++) {
+			if (f.fixed[i])
+				continue;
+			setX(items[i], referrer, f.x[i]);
+			setY(items[i], referrer, f.y[i]);
+		}
+	}
+
+	/**
+	 * Builds the finest level from the visible nodes and edges.
+	 */
+	private Level buildLevel() {
+		Table nodes = (Table) m_vis.getGroup(m_nodeGroup);
+		int[] index = new int[nodes.getMaximumRow() + 1];
+		Arrays.fill(index, -1);
+
+		Level lv = new Level();
+		VisualItem[] items = new VisualItem[nodes.getRowCount()];
+		int n = 0;
+		Iterator<VisualItem> iter = m_vis.visibleItems(m_nodeGroup);
+		while (iter.hasNext()) {
+			VisualItem item = iter.next();
+			if (n == items.length)
+				items = Arrays.copyOf(items, 2 * n + 1);
+			index[item.getRow()] = n;
+			items[n++] = item;
+		}
+		lv.init(n);
+		lv.items = items;
+		lv.fixed = new boolean[n];
+		for (int i = 0; i < n; i++) {
+			VisualItem item = items[i];
+			lv.weight[i] = 1;
+			lv.fixed[i] = item.isFixed();
+			lv.x[i] = item.getX();
+			lv.y[i] = item.getY();
+		}
+
+		// collect the edges between visible nodes
+		int m = 0;
+		int[] src = new int[16], dst = new int[16];
+		iter = m_vis.visibleItems(m_edgeGroup);
+		while (iter.hasNext()) {
+			EdgeItem e = (EdgeItem) iter.next();
+			int s = index[e.getSourceItem().getRow()];
+			int t = index[e.getTargetItem().getRow()];
+			if (s < 0 || t < 0 || s == t)
+				continue;
+			if (m == src.length) {
+				src = ArrayLib.resize(src, 2 * m);
+				dst = ArrayLib.resize(dst, 2 * m);
+			}
+			src[m] = s;
+			dst[m++] = t;
+		}
+
+		// store the undirected adjacency in compressed rows
+		int[] start = lv.start;
+		for (int i = 0; i < m; i++) {
+			start[src[i] + 1]++;
+			start[dst[i] + 1]++;
+		}
+		for (int i = 0; i < n; i++)
+			start[i + 1] += start[i];
+		int[] pos = Arrays.copyOf(start, n);
+		lv.adj = new int[2 * m];
+		lv.adjWeight = new double[2 * m];
+		for (int i = 0; i < m; i++) {
+			int s = src[i], t = dst[i];
+			lv.adj[pos[s]] = t;
+			lv.adjWeight[pos[s]++] = 1;
+			lv.adj[pos[t]] = s;
+			lv.adjWeight[pos[t]++] = 1;
+		}
+		return lv;
+	}
+
+	/**
+	 * Coarsens a level by collapsing a matching of its nodes. Nodes are
+	 * visited in random order and matched with the unmatched neighbor of the
+	 * heaviest connection relative to the node weights, which favors
+	 * collapsing small, tightly connected nodes.
+	 *
+	 * @return the coarsened level, or null if coarsening did not remove
+	 *         enough nodes to be worthwhile
+	 */
+	private Level coarsen(Level f, Random rand) {
+		int n = f.n;
+		int[] order = new int[n];
+		for (int i = 0; i < n; i++) {
+			int j = rand.nextInt(i + 1);
+			order[i] = order[j];
+			order[j] = i;
+		}
+
+		int[] match = new int[n];
+		Arrays.fill(match, -1);
+		for (int k = 0; k < n; k++) {
+			int u = order[k];
+			if (match[u] >= 0)
+				continue;
+			int best = -1;
+			double score = 0;
+			for (int j = f.start[u]; j < f.start[u + 1]; j++) {
+				int v = f.adj[j];
+				if (match[v] >= 0)
+					continue;
+				double s = f.adjWeight[j] / (f.weight[u] * f.weight[v]);
+				if (s > score) {
+					score = s;
+					best = v;
+				}
+			}
+			if (best >= 0) {
+				match[u] = best;
+				match[best] = u;
+			} else {
+				match[u] = u;
+			}
+		}
+
+		// number the coarse nodes
+		int[] parent = new int[n];
+		int[] first = new int[n];
+		int cn = 0;
+		for (int u = 0; u < n; u++) {
+			if (u <= match[u]) {
+				parent[u] = parent[match[u]] = cn;
+				first[cn++] = u;
+			}
+		}
+		if (cn > (1 - MIN_REDUCTION) * n)
+			return null;
+
+		// merge the adjacency of matched nodes
+		Level c = new Level();
+		c.init(cn);
+		c.adj = new int[f.adj.length];
+		c.adjWeight = new double[f.adj.length];
+		int[] mark = new int[cn];
+		Arrays.fill(mark, -1);
+		int len = 0;
+		for (int p = 0; p < cn; p++) {
+			int s = len;
+			int u = first[p];
+			for (int u2 = u;; u2 = match[u]) {
+				c.weight[p] += f.weight[u2];
+				for (int j = f.start[u2]; j < f.start[u2 + 1]; j++) {
+					int q = parent[f.adj[j]];
+					if (q == p)
+						continue;
+					if (mark[q] >= s) {
+						c.adjWeight[mark[q]] += f.adjWeight[j];
+					} else {
+						mark[q] = len;
+						c.adj[len] = q;
+						c.adjWeight[len++] = f.adjWeight[j];
+					}
+				}
+				if (u2 == match[u])
+					break;
+			}
+			c.start[p + 1] = len;
+		}
+		c.adj = ArrayLib.resize(c.adj, len);
+		c.adjWeight = ArrayLib.resize(c.adjWeight, len);
+		f.parent = parent;
+		return c;
+	}
+
+	/**
+	 * Places the nodes of a level at the position of their coarse node,
+	 * jittered so that collapsed pairs can separate again.
+	 */
+	private void prolong(Level f, Level c, Random rand) {
+		for (int u = 0; u < f.n; u++) {
+			if (isPlaced(f, u))
+				continue;
+			int p = f.parent[u];
+			double r = 0.5 * m_springLength * Math.sqrt(f.weight[u]);
+			f.x[u] = c.x[p] + (rand.nextDouble() - 0.5) * r;
+			f.y[u] = c.y[p] + (rand.nextDouble() - 0.5) * r;
+		}
+	}
+
+	/**
+	 * Indicates if a node is fixed at a valid position, which is kept.
+	 */
+	private static boolean isPlaced(Level lv, int i) {
+		return lv.fixed != null && lv.fixed[i]
+		        && !Double.isNaN(lv.x[i]) && !Double.isNaN(lv.y[i]);
+	}
+
+	/**
+	 * Runs the force simulation on a level, using the same annealing
+	 * schedule as the run-once mode of {@link ForceDirectedLayout}.
+	 */
+	private void simulate(Level lv, int iterations, long timestep) {
+		ForceSimulator fsim = m_fsim;
+		fsim.clear();
+		ForceItem[] fitems = new ForceItem[lv.n];
+		for (int i = 0; i < lv.n; i++) {
+			ForceItem fitem = new ForceItem();
+			fitem.mass = lv.weight[i];
+			fitem.location[0] = lv.x[i];
+			fitem.location[1] = lv.y[i];
+			fitems[i] = fitem;
+			fsim.addItem(fitem);
+		}
+		for (int u = 0; u < lv.n; u++) {
+			for (int j = lv.start[u]; j < lv.start[u + 1]; j++) {
+				int v = lv.adj[j];
+				if (u < v) {
+					double length = m_springLength / 2
+					        * (Math.sqrt(lv.weight[u]) + Math.sqrt(lv.weight[v]));
+					fsim.addSpring(fitems[u], fitems[v], -1.f, length);
+				}
+			}
+		}
+
+		fsim.beginRun();
+		try {
+			for (int i = 0; i < iterations; i++) {
+				timestep *= (1.0 - i / (double) iterations);
+				fsim.runSimulator(timestep + 50);
+				if (lv.fixed != null) {
+					// fixed nodes are reset on the items, which only hold
+					// the current state outside of a run
+					fsim.endRun();
+					resetFixed(lv, fitems);
+					fsim.beginRun();
+				}
+			}
+		} finally {
+			fsim.endRun();
+		}
+
+		for (int i = 0; i < lv.n; i++) {
+			lv.x[i] = fitems[i].location[0];
+			lv.y[i] = fitems[i].location[1];
+		}
+		fsim.clear();
+	}
+
+	private void resetFixed(Level lv, ForceItem[] fitems) {
+		for (int i = 0; i < lv.n; i++) {
+			if (!lv.fixed[i])
+				continue;
+			ForceItem fitem = fitems[i];
+			fitem.location[0] = lv.x[i];
+			fitem.location[1] = lv.y[i];
+			fitem.velocity[0] = 0.0;
+			fitem.velocity[1] = 0.0;
+		}
+	}
+
+	/**
+	 * One graph of the coarsening hierarchy. Nodes are numbered from zero,
+	 * and the undirected adjacency is stored in compressed rows: the
+	 * neighbors of node <code>u</code> are found at indices
+	 * <code>start[u]</code> to <code>start[u+1]-1</code>.
+	 */
+	private static final class Level {
+		int	           n;
+		int[]	       start;
+		int[]	       adj;
+		double[]	   adjWeight;
+		double[]	   weight;
+		double[]	   x, y;
+		int[]	       parent;	// coarse node number, null on coarsest level
+		boolean[]	   fixed;	// fixed nodes, only set on finest level
+		VisualItem[]	items;	// visual items, only set on finest level
+
+		void init(int n) {
+			this.n = n;
+			start = new int[n + 1];
+			weight = new double[n];
+			x = new double[n];
+			y = new double[n];
+		}
+	} // end of inner class Level
+
+} // end of class MultilevelLayout
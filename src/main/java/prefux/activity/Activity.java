@@ -55,6 +55,7 @@ public abstract class Activity {
     private long m_nextTime  = -1L;
     private boolean m_isRunning = false;
     private boolean m_isScheduled = false;
+    private boolean m_isSleeping = false;
     
     private CopyOnWriteArrayList m_listeners;
     
@@ -195,7 +196,10 @@ public abstract class Activity {
                 run(elapsedTime);
                 fireActivityStepped();
             }
-            m_nextTime = currentTime + m_stepTime;
+            synchronized ( this ) {
+                m_nextTime = m_isSleeping ? Long.MAX_VALUE 
+                                          : currentTime + m_stepTime;
+            }
         }
         
         return (m_nextTime-currentTime);
@@ -244,6 +248,11 @@ public abstract class Activity {
         synchronized ( this ) {
             fire = (s && !m_isScheduled);
             m_isScheduled = s;
+            if ( !s && m_isSleeping ) {
+                // a descheduled activity starts out awake when run again
+                m_isSleeping = false;
+                m_nextTime = m_startTime;
+            }
         }
         if ( fire )
             fireActivityScheduled();
@@ -259,6 +268,39 @@ public abstract class Activity {
         return b;
     }
     
+    /**
+     * Puts this activity to sleep. A sleeping activity stays scheduled, but
+     * is not run again until {@link #wakeUp()} is called, so that it does not
+     * cost any processing time while there is nothing to do. Activities
+     * typically call this method from within their own run method.
+     */
+    public synchronized void sleep() {
+        m_isSleeping = true;
+        m_nextTime = Long.MAX_VALUE;
+    }
+    
+    /**
+     * Wakes up a sleeping activity, scheduling its next step immediately.
+     * Has no effect if this activity is not sleeping.
+     */
+    public void wakeUp() {
+        synchronized ( this ) {
+            if ( !m_isSleeping ) return;
+            m_isSleeping = false;
+            m_nextTime = System.currentTimeMillis();
+        }
+        ActivityManager.wakeUp();
+    }
+    
+    /**
+     * Indicates if this activity is currently sleeping.
+     * @return true if sleeping, false otherwise
+     * @see #sleep()
+     */
+    public synchronized boolean isSleeping() {
+        return m_isSleeping;
+    }
+    
     /**
      * Indicates if this activity is currently running.
      * @return true if running, false otherwise
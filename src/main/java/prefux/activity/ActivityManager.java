@@ -73,6 +73,8 @@ public class ActivityManager extends Thread {
     private ArrayList<Activity> m_tmp;
     private long      m_nextTime;
     private boolean   m_run;
+    private boolean   m_woken;
+    private volatile Activity m_current;
     
     /**
      * Returns the active ActivityManager instance.
@@ -190,6 +192,35 @@ public class ActivityManager extends Thread {
     	getInstance()._cancelActivity(a);
     }
     
+    /**
+     * Wakes up the manager thread to reconsider the schedule, called by an
+     * Activity that has been woken up from sleep.
+     */
+    static void wakeUp() {
+        ActivityManager am = getInstance();
+        synchronized ( am ) {
+            am.m_woken = true;
+            am.notify();
+        }
+    }
+    
+    /**
+     * Returns the scheduled Activity that is currently being run by the
+     * activity manager thread. Actions run as part of a composite action
+     * can use this to access the activity that drives them.
+     * @return the Activity currently being run, or null if called outside
+     *  the activity manager thread
+     */
+    public static Activity getCurrentActivity() {
+        ActivityManager am;
+        synchronized ( ActivityManager.class ) {
+            am = s_instance;
+        }
+        if ( am == null || Thread.currentThread() != am )
+            return null;
+        return am.m_current;
+    }
+    
     /**
      * Returns the number of scheduled activities
      * @return the number of scheduled activities
@@ -392,7 +423,13 @@ public class ActivityManager extends Thread {
                     // run the activity - the activity will check for
                     // itself if it should perform any action or not
                     Activity a = (Activity)m_tmp.get(i);
-                    long s = a.runActivity(currentTime);
+                    m_current = a;
+                    long s;
+                    try {
+                        s = a.runActivity(currentTime);
+                    } finally {
+                        m_current = null;
+                    }
                     // compute minimum time for next activity cycle
                     t = (s<0 ? t : t<0 ? s : Math.min(t,s));
                 }
@@ -404,13 +441,20 @@ public class ActivityManager extends Thread {
                 
                 // determine the next time we should run
                 try {
-                    synchronized (this) { wait(t); }
+                    synchronized (this) { 
+                        // don't miss activities woken up during this cycle
+                        if ( !m_woken ) wait(t);
+                        m_woken = false;
+                    }
                 } catch (InterruptedException e) { }
                 
             } else {
                 // nothing to do, chill out until notified
                 try {
-                    synchronized (this) { wait(); }
+                    synchronized (this) {
+                        if ( !m_woken ) wait();
+                        m_woken = false;
+                    }
                 } catch (InterruptedException e) { }
             }
         }
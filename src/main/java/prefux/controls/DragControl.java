@@ -39,6 +39,7 @@ import javafx.scene.input.MouseEvent;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import prefux.Display;
 import prefux.data.Table;
 import prefux.data.event.EventConstants;
 import prefux.data.event.TableListener;
@@ -113,9 +114,11 @@ public class DragControl extends ControlAdapter implements TableListener {
 		MouseEvent ev = (MouseEvent) e;
 		activeItem = item;
 		if (e.getEventType() == MouseEvent.MOUSE_PRESSED) {
-			delta.x = item.getX() - ev.getSceneX();
-			delta.y = item.getY() - ev.getSceneY();
-			item.getNode().setCursor(Cursor.MOVE);
+			Point2D p = getLocation(ev);
+			delta.x = item.getX() - p.getX();
+			delta.y = item.getY() - p.getY();
+			if (item.getNode() != null)
+				item.getNode().setCursor(Cursor.MOVE);
 		} else if (e.getEventType() == MouseEvent.DRAG_DETECTED) {
 			log.info("Drag Event detected");
 			wasFixed = item.isFixed();
@@ -123,12 +126,14 @@ public class DragControl extends ControlAdapter implements TableListener {
 			activeItem = item;
 			item.setFixed(true);
 			item.getTable().addTableListener(this);
-			PrefuseLib.setX(activeItem, null, ev.getSceneX() + delta.x);
-			PrefuseLib.setY(activeItem, null, ev.getSceneY() + delta.y);
+			Point2D p = getLocation(ev);
+			PrefuseLib.setX(activeItem, null, p.getX() + delta.x);
+			PrefuseLib.setY(activeItem, null, p.getY() + delta.y);
 		} else if (e.getEventType() == MouseEvent.MOUSE_DRAGGED) {
 			if (activeItem != null) {
-				PrefuseLib.setX(activeItem, null, ev.getSceneX() + delta.x);
-				PrefuseLib.setY(activeItem, null, ev.getSceneY() + delta.y);
+				Point2D p = getLocation(ev);
+				PrefuseLib.setX(activeItem, null, p.getX() + delta.x);
+				PrefuseLib.setY(activeItem, null, p.getY() + delta.y);
 			}
 		} else if (e.getEventType() == MouseDragEvent.MOUSE_DRAG_RELEASED ||
 				e.getEventType() == MouseEvent.MOUSE_RELEASED) {
@@ -139,6 +144,21 @@ public class DragControl extends ControlAdapter implements TableListener {
 		}
 	}
 
+	/**
+	 * Get the location of a mouse event in absolute coordinates. Events
+	 * delivered by a display that supports transforms are converted through
+	 * its inverse transform, others use scene coordinates.
+	 */
+	private static Point2D getLocation(MouseEvent ev) {
+		if (ev.getSource() instanceof Display) {
+			Point2D p = ((Display) ev.getSource())
+			        .getAbsoluteCoordinate(new Point2D(ev.getX(), ev.getY()));
+			if (p != null)
+				return p;
+		}
+		return new Point2D(ev.getSceneX(), ev.getSceneY());
+	}
+
 	@Override
 	public EventType<? extends Event> getEventType() {
 		return MouseEvent.ANY;
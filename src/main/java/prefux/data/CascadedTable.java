@@ -31,6 +31,7 @@
 package prefux.data;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Iterator;
 
 import javax.swing.event.TableModelEvent;
@@ -48,6 +49,7 @@ import prefux.data.tuple.TableTuple;
 import prefux.data.util.AcceptAllColumnProjection;
 import prefux.data.util.CascadedRowManager;
 import prefux.data.util.ColumnProjection;
+import prefux.data.util.ColumnarFilter;
 import prefux.util.collections.CompositeIterator;
 import prefux.util.collections.IntIterator;
 
@@ -86,6 +88,10 @@ public class CascadedTable extends Table {
      * are included in this table. */
     protected Predicate    m_rowFilter;
     
+    /** Evaluates the row filter over blocks of parent rows, created on
+     * first use. */
+    private ColumnarFilter m_selector;
+    
     /** An internal listener class */
     protected Listener m_listener;
     
@@ -247,25 +253,31 @@ public class CascadedTable extends Table {
         if ( m_parent == null ) return;
         
         CascadedRowManager rowman = (CascadedRowManager)m_rows;
+        BitSet pass = getSelector().select();
         IntIterator crows = m_rows.rows();
         while ( crows.hasNext() ) {
             int crow = crows.nextInt();
-            if ( !m_rowFilter.getBoolean(
-                    m_parent.getTuple(rowman.getParentRow(crow))) )
-            {
+            if ( !pass.get(rowman.getParentRow(crow)) )
                 removeCascadedRow(crow);
-            }
         }
         
-        Iterator<? extends Tuple> ptuples = m_parent.tuples(m_rowFilter);
-        while ( ptuples.hasNext() ) {
-            Tuple pt = ptuples.next();
-            int prow = pt.getRow();
+        for ( int prow = pass.nextSetBit(0); prow >= 0;
+              prow = pass.nextSetBit(prow+1) )
+        {
             if ( rowman.getChildRow(prow) == -1 )
                 addCascadedRow(prow);
         }
     }
     
+    /**
+     * Get the columnar evaluator of the current row filter.
+     */
+    private ColumnarFilter getSelector() {
+        if ( m_selector == null || m_selector.getPredicate() != m_rowFilter )
+            m_selector = new ColumnarFilter(m_parent, m_rowFilter);
+        return m_selector;
+    }
+    
     /**
      * Get the ColumnProjection determining which columns of the
      * parent table are included in this one.
@@ -416,13 +428,18 @@ public class CascadedTable extends Table {
      * @return the row number ofr the newly added row in this table
      */
     protected int addCascadedRow(int prow) {
-        int r = m_rows.addRow();
-        ((CascadedRowManager)m_rows).put(r, prow);
-        updateRowCount();
-        
-        fireTableEvent(r, r, TableModelEvent.ALL_COLUMNS,
-                       TableModelEvent.INSERT);        
-        return r;
+        lockWrite();
+        try {
+            int r = m_rows.addRow();
+            ((CascadedRowManager)m_rows).put(r, prow);
+            updateRowCount();
+            
+            fireTableEvent(r, r, TableModelEvent.ALL_COLUMNS,
+                           TableModelEvent.INSERT);        
+            return r;
+        } finally {
+            unlockWrite();
+        }
     }
     
     /**
@@ -538,10 +555,12 @@ public class CascadedTable extends Table {
                 }
                 
                 // process each update, check if filtered state changes
+                BitSet pass = new BitSet();
+                getSelector().select(start, end, pass);
                 for ( int r=start, cr=-1; r<=end; ++r ) {
                     if ( (cr=rowman.getChildRow(r)) != -1 ) {
                         // the parent row has a corresponding row in this table
-                        if ( m_rowFilter.getBoolean(m_parent.getTuple(r)) ) {
+                        if ( pass.get(r) ) {
                             // row still passes the filter, check the column
                             int idx = getColumnNumber(m_parent.getColumnName(col));
                             if ( idx >= getLocalColumnCount() )
@@ -552,7 +571,7 @@ public class CascadedTable extends Table {
                         }
                     } else {
                         // does it now pass the filter due to the update?
-                        if ( m_rowFilter.getBoolean(m_parent.getTuple(r)) ) {
+                        if ( pass.get(r) ) {
                             if ( (cr=rowman.getChildRow(r)) < 0 )
                                 addCascadedRow(r);
                         }
@@ -577,8 +596,10 @@ public class CascadedTable extends Table {
             case EventConstants.INSERT:
                 if ( col == EventConstants.ALL_COLUMNS ) {
                     // entire rows added
+                    BitSet pass = new BitSet();
+                    getSelector().select(start, end, pass);
                     for ( int r=start; r<=end; ++r ) {
-                        if ( m_rowFilter.getBoolean(m_parent.getTuple(r)) ) {
+                        if ( pass.get(r) ) {
                             if ( rowman.getChildRow(r) < 0 )
                                 addCascadedRow(r);
                         }
@@ -597,8 +618,11 @@ public class CascadedTable extends Table {
         }
     
         public void expressionChanged(Expression expr) {
-            if ( expr == m_rowFilter )
+            if ( expr == m_rowFilter ) {
+                // the structure of the predicate may have changed
+                m_selector = null;
                 filterRows();
+            }
         }
     }
     
@@ -306,6 +306,7 @@ public class Graph extends CompositeTupleSet {
         if ( nodeKey != null ) {
             if ( nodes.getColumnType(nodeKey) == long.class )
                 m_longKey = true;
+            nodes.setUnique(nodeKey, true);
             nodes.index(nodeKey);
             m_nidx = nodes.getIndex(nodeKey);
         }
@@ -373,14 +374,68 @@ public class Graph extends CompositeTupleSet {
     
     /**
      * Initialize the link table, which holds adjacency lists for this graph.
+     * The adjacency lists are built in bulk: the degrees of all nodes are
+     * counted first, then each list is allocated at its final size and
+     * filled in edge row order. The result is the same as calling
+     * {@link #updateDegrees(int, int)} for each edge in turn, but subclasses
+     * that keep additional link data in {@link #updateDegrees(int, int, int, int)}
+     * need to override this method as well.
      */
     protected void initLinkTable() {
         // set up cache of node data
         m_links = createLinkTable();
-                
-        IntIterator edges = getEdgeTable().rows();
-        while ( edges.hasNext() ) {
-            updateDegrees(edges.nextInt(), 1);
+        m_spanning = null;
+        
+        // resolve the endpoints of all edges and count the degrees
+        Table edges = getEdgeTable();
+        int nnodes = m_links.getMaximumRow()+1;
+        int[] odeg = new int[nnodes];
+        int[] ideg = new int[nnodes];
+        int[] src = new int[edges.getRowCount()];
+        int[] trg = new int[src.length];
+        int[] rows = new int[src.length];
+        int nedges = 0;
+        
+        IntIterator iter = edges.rows();
+        while ( iter.hasNext() ) {
+            int e = iter.nextInt();
+            int s = getSourceNode(e);
+            int t = getTargetNode(e);
+            if ( s < 0 || t < 0 ) continue;
+            if ( s >= nnodes || t >= nnodes )
+                throw new IllegalArgumentException(
+                    "Edge "+e+" references a missing node");
+            src[nedges] = s;
+            trg[nedges] = t;
+            rows[nedges++] = e;
+            odeg[s]++;
+            ideg[t]++;
+        }
+        
+        // allocate the adjacency lists at their final size
+        int[][] outlinks = new int[nnodes][];
+        int[][] inlinks = new int[nnodes][];
+        for ( int n=0; n<nnodes; ++n ) {
+            if ( odeg[n] > 0 ) outlinks[n] = new int[odeg[n]];
+            if ( ideg[n] > 0 ) inlinks[n] = new int[ideg[n]];
+            odeg[n] = ideg[n] = 0;
+        }
+        
+        // fill the lists in edge order
+        for ( int i=0; i<nedges; ++i ) {
+            int s = src[i], t = trg[i];
+            outlinks[s][odeg[s]++] = rows[i];
+            inlinks[t][ideg[t]++] = rows[i];
+        }
+        for ( int n=0; n<nnodes; ++n ) {
+            if ( odeg[n] > 0 ) {
+                m_links.set(n, OUTLINKS, outlinks[n]);
+                m_links.setInt(n, OUTDEGREE, odeg[n]);
+            }
+            if ( ideg[n] > 0 ) {
+                m_links.set(n, INLINKS, inlinks[n]);
+                m_links.setInt(n, INDEGREE, ideg[n]);
+            }
         }
     }
     
@@ -1365,7 +1420,7 @@ public class Graph extends CompositeTupleSet {
                     if ( col == EventConstants.ALL_COLUMNS ) {
                         boolean added = type==EventConstants.INSERT;
                         for ( int r=start; r<=end; ++r )
-                            updateDegrees(start, added?1:-1);
+                            updateDegrees(r, added?1:-1);
                     }
                 }
                 // clear the spanning tree reference
@@ -1397,8 +1452,13 @@ public class Graph extends CompositeTupleSet {
         }
         
         public void columnChanged(Column src, int type, int start, int end) {
-            // should never be called
-            throw new IllegalStateException();
+            if ( src==m_scol || src==m_tcol ) {
+                // previous endpoints are unknown (e.g., after a batch of
+                // edits to the edge table), so rebuild the linkage table
+                initLinkTable();
+            } else {
+                throw new IllegalStateException();
+            }
         }
         public void columnChanged(Column src, int idx, float prev) {
             // should never be called
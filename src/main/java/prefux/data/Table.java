@@ -31,12 +31,17 @@
 package prefux.data;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
 
 import javax.swing.event.TableModelEvent;
 
+import prefux.data.column.AbstractColumn;
 import prefux.data.column.Column;
 import prefux.data.column.ColumnFactory;
 import prefux.data.column.ColumnMetadata;
@@ -49,10 +54,13 @@ import prefux.data.expression.parser.ExpressionParser;
 import prefux.data.tuple.AbstractTupleSet;
 import prefux.data.tuple.TableTuple;
 import prefux.data.tuple.TupleManager;
+import prefux.data.util.BitmapIndex;
 import prefux.data.util.FilterIteratorFactory;
+import prefux.data.util.HashIndex;
 import prefux.data.util.Index;
 import prefux.data.util.RowManager;
 import prefux.data.util.Sort;
+import prefux.data.util.SortedArrayIndex;
 import prefux.data.util.TableIterator;
 import prefux.data.util.TreeIndex;
 import prefux.util.TypeLib;
@@ -145,6 +153,22 @@ public class Table extends AbstractTupleSet implements ColumnListener {
     /** A cached schema instance, loaded lazily */
     protected Schema m_schema;
     
+    /** Suppresses column events while they are reported in bulk */
+    private boolean m_coalesce = false;
+    
+    /** Nesting depth of open batches */
+    private int m_batch = 0;
+    /** Rows added during the current batch, not yet reported */
+    private BitSet m_batchRows;
+    
+    /** Orders writes against reads from other threads */
+    private final StampedLock m_lock = new StampedLock();
+    /** The thread holding the write lock, if any */
+    private Thread m_writer;
+    /** Write lock hold count and stamp of the writer thread */
+    private int    m_writeHolds;
+    private long   m_writeStamp;
+    
     // ------------------------------------------------------------------------
     // Constructors
     
@@ -354,23 +378,124 @@ public class Table extends AbstractTupleSet implements ColumnListener {
      * @return the row number of the newly added row
      */
     public int addRow() {
-        int r = m_rows.addRow();
-        updateRowCount();
+        lockWrite();
+        try {
+            int r = m_rows.addRow();
+            updateRowCount();
         
-        fireTableEvent(r, r, TableModelEvent.ALL_COLUMNS,
-                       TableModelEvent.INSERT);        
-        return r;
+            fireTableEvent(r, r, TableModelEvent.ALL_COLUMNS,
+                           TableModelEvent.INSERT);        
+            return r;
+        } finally {
+            unlockWrite();
+        }
     }
     
     /**
      * Add a given number of rows to this table. All data columns will be
      * notified and will take on the appropriate default values for the
+     * added rows. The columns are grown once for all added rows, and
+     * listeners receive a single INSERT event for each contiguous range of
      * added rows.
      * @param nrows the number of rows to add.
      */
     public void addRows(int nrows) {
-        for ( int i=0; i<nrows; ++i ) {
-            addRow();
+        if ( nrows <= 0 ) return;
+        lockWrite();
+        try {
+            // allocate all rows up front
+            int[] rows = new int[nrows];
+            for ( int i=0; i<nrows; ++i ) {
+                rows[i] = m_rows.addRow();
+            }
+            updateRowCount();
+        
+            Arrays.sort(rows);
+            fireTableEvents(rows, TableModelEvent.ALL_COLUMNS,
+                            TableModelEvent.INSERT);
+        } finally {
+            unlockWrite();
+        }
+    }
+    
+    /**
+     * Add the rows of another table to this table. Values are copied for
+     * all data fields the two tables have in common, other fields take on
+     * their default values. Rather than issuing events for each row and
+     * cell, listeners are notified with a single INSERT event for each
+     * contiguous range of added rows, followed by a single UPDATE event per
+     * copied column for that range.
+     * @param src the table whose rows should be added
+     * @return the number of rows added
+     */
+    public int addRows(Table src) {
+        lockWrite();
+        try {
+            int nrows = src.getRowCount();
+            if ( nrows == 0 ) return 0;
+        
+            // allocate all rows up front
+            int[] srows = new int[nrows];
+            int[] rows  = new int[nrows];
+            IntIterator iter = src.rows();
+            for ( int i=0; i<nrows; ++i ) {
+                srows[i] = iter.nextInt();
+                rows[i]  = m_rows.addRow();
+            }
+            updateRowCount();
+        
+            int[] sorted = (int[])rows.clone();
+            Arrays.sort(sorted);
+            fireTableEvents(sorted, TableModelEvent.ALL_COLUMNS,
+                            TableModelEvent.INSERT);
+        
+            // copy the shared columns, column events are coalesced below
+            for ( int c=0; c<getColumnCount(); ++c ) {
+                int sc = src.getColumnNumber(getColumnName(c));
+                if ( sc < 0 ) continue;
+                Class<?> type = getColumnType(c);
+                if ( type != src.getColumnType(sc) ) type = Object.class;
+            
+                m_coalesce = true;
+                try {
+                    if ( type == int.class ) {
+                        for ( int i=0; i<nrows; ++i )
+                            setInt(rows[i], c, src.getInt(srows[i], sc));
+                    } else if ( type == long.class ) {
+                        for ( int i=0; i<nrows; ++i )
+                            setLong(rows[i], c, src.getLong(srows[i], sc));
+                    } else if ( type == float.class ) {
+                        for ( int i=0; i<nrows; ++i )
+                            setFloat(rows[i], c, src.getFloat(srows[i], sc));
+                    } else if ( type == double.class ) {
+                        for ( int i=0; i<nrows; ++i )
+                            setDouble(rows[i], c, src.getDouble(srows[i], sc));
+                    } else if ( type == boolean.class ) {
+                        for ( int i=0; i<nrows; ++i )
+                            setBoolean(rows[i], c, src.getBoolean(srows[i], sc));
+                    } else {
+                        for ( int i=0; i<nrows; ++i )
+                            set(rows[i], c, src.get(srows[i], sc));
+                    }
+                } finally {
+                    m_coalesce = false;
+                }
+                fireTableEvents(sorted, c, TableModelEvent.UPDATE);
+            }
+            return nrows;
+        } finally {
+            unlockWrite();
+        }
+    }
+    
+    /**
+     * Fire a table event for each contiguous range of the given rows.
+     * @param rows the affected rows, in ascending order
+     */
+    private void fireTableEvents(int[] rows, int col, int type) {
+        for ( int i=0, j; i<rows.length; i=j ) {
+            for ( j=i+1; j<rows.length && rows[j]==rows[j-1]+1; ++j );
+            fireTableEvent(rows[i], rows[j-1], col, type);
         }
     }
     
@@ -395,27 +520,142 @@ public class Table extends AbstractTupleSet implements ColumnListener {
      * row was already invalid
      */
     public boolean removeRow(int row) {
-        if ( m_rows.isValidRow(row) ) {
-            // the order of operations here is extremely important
-            // otherwise listeners may end up with corrupted state.
-            // fire update *BEFORE* clearing values
-            // allow listeners (e.g., indices) to perform clean-up
-            fireTableEvent(row, row, TableModelEvent.ALL_COLUMNS, 
-                           TableModelEvent.DELETE);
-            // invalidate the tuple
-            m_tuples.invalidate(row);
-            // release row with row manager
-            // do this before clearing column values, so that any
-            // listeners can determine that the row is invalid
-            m_rows.releaseRow(row);
-            // now clear column values
-            for ( Iterator<Column> cols = getColumns(); cols.hasNext(); ) {
-                Column c = (Column)cols.next();
-                c.revertToDefault(row);
+        lockWrite();
+        try {
+            if ( m_rows.isValidRow(row) ) {
+                // the order of operations here is extremely important
+                // otherwise listeners may end up with corrupted state.
+                // fire update *BEFORE* clearing values
+                // allow listeners (e.g., indices) to perform clean-up
+                fireTableEvent(row, row, TableModelEvent.ALL_COLUMNS, 
+                               TableModelEvent.DELETE);
+                // invalidate the tuple
+                m_tuples.invalidate(row);
+                // release row with row manager
+                // do this before clearing column values, so that any
+                // listeners can determine that the row is invalid
+                m_rows.releaseRow(row);
+                // now clear column values
+                for ( Iterator<Column> cols = getColumns(); cols.hasNext(); ) {
+                    Column c = (Column)cols.next();
+                    c.revertToDefault(row);
+                }
+                return true;
             }
-            return true;
+            return false;
+        } finally {
+            unlockWrite();
+        }
+    }
+    
+    // ------------------------------------------------------------------------
+    // Batch Operations
+    
+    /**
+     * Begin a batch of changes to this table. Until the matching call to
+     * {@link #endBatch()}, added rows and changed values are recorded
+     * rather than reported to listeners one at a time. When the batch ends,
+     * listeners receive a single INSERT event for each contiguous range of
+     * added rows, followed by a single UPDATE event for each contiguous
+     * range of changed rows in each column. Indexes and column metadata are
+     * thus updated once per batch rather than once per change.
+     * 
+     * <p>Removing rows or columns during a batch first reports all changes
+     * made so far, so that listeners never see the removal of a row they
+     * have not been told about. Batches may be nested, changes are reported
+     * when the outermost batch ends.</p>
+     * 
+     * <p>The write lock of this table is held for the duration of the
+     * batch, so readers on other threads see either none or all of its
+     * changes, see {@link #tryRead(Runnable)}.</p>
+     * @see #batch(Consumer)
+     */
+    public void beginBatch() {
+        lockWrite();
+        if ( m_batch++ == 0 ) {
+            startBatch();
+        }
+    }
+    
+    /**
+     * End a batch of changes to this table, reporting all recorded changes
+     * to listeners if this ends the outermost batch.
+     * @throws IllegalStateException if no batch is in progress
+     * @see #beginBatch()
+     */
+    public void endBatch() {
+        if ( m_batch == 0 ) {
+            throw new IllegalStateException("No batch in progress.");
+        }
+        try {
+            if ( --m_batch == 0 ) {
+                flushBatch();
+            }
+        } finally {
+            unlockWrite();
+        }
+    }
+    
+    /**
+     * Indicates if a batch of changes to this table is in progress.
+     * @return true if a batch is in progress, false otherwise
+     * @see #beginBatch()
+     */
+    public boolean isBatching() {
+        return m_batch > 0;
+    }
+    
+    /**
+     * Perform the given changes to this table as a single batch. The batch
+     * ends even if the changes throw an exception.
+     * @param edits the changes to perform, given this table
+     * @see #beginBatch()
+     */
+    public void batch(Consumer<? super Table> edits) {
+        beginBatch();
+        try {
+            edits.accept(this);
+        } finally {
+            endBatch();
+        }
+    }
+    
+    /**
+     * Start recording changes on this table and its columns.
+     */
+    private void startBatch() {
+        m_batchRows = new BitSet();
+        for ( Iterator<Column> cols = getColumns(); cols.hasNext(); ) {
+            Column c = cols.next();
+            if ( c instanceof AbstractColumn )
+                ((AbstractColumn)c).beginBatch();
+        }
+    }
+    
+    /**
+     * Report all changes recorded so far to listeners. If a batch is still
+     * in progress, recording starts over.
+     */
+    private void flushBatch() {
+        BitSet rows = m_batchRows;
+        m_batchRows = null;
+        
+        // report added rows first, listeners see their current values
+        for ( int s=rows.nextSetBit(0), e; s>=0; s=rows.nextSetBit(e) ) {
+            e = rows.nextClearBit(s);
+            dispatchTableEvent(s, e-1, EventConstants.ALL_COLUMNS,
+                               EventConstants.INSERT);
+        }
+        // columns then report their changed rows, see handleColumnChanged
+        for ( Iterator<Column> cols = getColumns(); cols.hasNext(); ) {
+            Column c = cols.next();
+            if ( c instanceof AbstractColumn )
+                ((AbstractColumn)c).endBatch();
+        }
+        
+        if ( m_batch > 0 ) {
+            startBatch();
         }
-        return false;
     }
     
     /**
@@ -564,36 +804,44 @@ public class Table extends AbstractTupleSet implements ColumnListener {
     }
     
     /**
-     * Internal method for adding a column.
+     * Add a Column instance to this table. This can be used to add a column
+     * that has already been filled with data, such as a column populated by
+     * a {@link prefux.data.io.TableReader}. The column should provide values
+     * for all rows of this table.
      * @param name the name of the column
      * @param col the actual Column instance
      */
-    protected void addColumn(String name, Column col) {
-        int idx = getColumnNumber(name);
-        if ( idx >= 0 && idx < m_columns.size() ) {
-            throw new IllegalArgumentException(
-                "Table already has column with name \""+name+"\"");
-        }
+    public void addColumn(String name, Column col) {
+        lockWrite();
+        try {
+            int idx = getColumnNumber(name);
+            if ( idx >= 0 && idx < m_columns.size() ) {
+                throw new IllegalArgumentException(
+                    "Table already has column with name \""+name+"\"");
+            }
         
-        // add the column
-        m_columns.add(col);
-        m_names.add(name);
-        m_lastCol = m_columns.size()-1;
-        ColumnEntry entry = new ColumnEntry(m_lastCol, col, 
-                new ColumnMetadata(this, name));
+            // add the column
+            m_columns.add(col);
+            m_names.add(name);
+            m_lastCol = m_columns.size()-1;
+            ColumnEntry entry = new ColumnEntry(m_lastCol, col, 
+                    new ColumnMetadata(this, name));
         
-        // add entry, dispose of an overridden entry if needed
-        ColumnEntry oldEntry = (ColumnEntry)m_entries.put(name, entry);
-        if ( oldEntry != null ) oldEntry.dispose();
+            // add entry, dispose of an overridden entry if needed
+            ColumnEntry oldEntry = (ColumnEntry)m_entries.put(name, entry);
+            if ( oldEntry != null ) oldEntry.dispose();
         
-        invalidateSchema();
+            invalidateSchema();
         
-        // listen to what the column has to say
-        col.addColumnListener(this);
+            // listen to what the column has to say
+            col.addColumnListener(this);
         
-        // fire notification
-        fireTableEvent(m_rows.getMinimumRow(), m_rows.getMaximumRow(), 
-                m_lastCol, TableModelEvent.INSERT);
+            // fire notification
+            fireTableEvent(m_rows.getMinimumRow(), m_rows.getMaximumRow(), 
+                    m_lastCol, TableModelEvent.INSERT);
+        } finally {
+            unlockWrite();
+        }
     }
 
     /**
@@ -602,29 +850,36 @@ public class Table extends AbstractTupleSet implements ColumnListener {
      * @return the removed Column instance
      */
     protected Column removeColumn(int idx) {
-        // make sure index is legal
-        if ( idx < 0 || idx >= m_columns.size() ) {
-            throw new IllegalArgumentException("Column index is not legal.");
-        }
+        lockWrite();
+        try {
+            // make sure index is legal
+            if ( idx < 0 || idx >= m_columns.size() ) {
+                throw new IllegalArgumentException("Column index is not legal.");
+            }
         
-        String name = (String)m_names.get(idx);
-        ((ColumnEntry)m_entries.get(name)).dispose();
-        Column col = (Column)m_columns.remove(idx);
-        m_entries.remove(name);
-        m_names.remove(idx);
-        renumberColumns();
+            String name = (String)m_names.get(idx);
+            ((ColumnEntry)m_entries.get(name)).dispose();
+            Column col = (Column)m_columns.remove(idx);
+            m_entries.remove(name);
+            m_names.remove(idx);
+            renumberColumns();
         
-        m_lastCol = -1;
-        invalidateSchema();
+            m_lastCol = -1;
+            invalidateSchema();
         
-        // ignore what the old column has to say
-        col.removeColumnListener(this);
+            // ignore what the old column has to say
+            col.removeColumnListener(this);
+            if ( m_batchRows != null && col instanceof AbstractColumn )
+                ((AbstractColumn)col).endBatch();
         
-        // fire notification
-        fireTableEvent(m_rows.getMinimumRow(), m_rows.getMaximumRow(), 
-                       idx, TableModelEvent.DELETE);
+            // fire notification
+            fireTableEvent(m_rows.getMinimumRow(), m_rows.getMaximumRow(), 
+                           idx, TableModelEvent.DELETE);
         
-        return col;
+            return col;
+        } finally {
+            unlockWrite();
+        }
     }
     
     /**
@@ -705,6 +960,11 @@ public class Table extends AbstractTupleSet implements ColumnListener {
      * index to be created and stored. Subsequent calls will simply return
      * the stored index. To attempt to retrieve an index without triggering
      * creation of a new index, use the {@link #getIndex(String)} method.
+     * Boolean columns are indexed using a {@link BitmapIndex}, int, long and
+     * object columns declared unique (see {@link #setUnique(String, boolean)})
+     * using a {@link HashIndex}, other columns of int, long, float and double
+     * values using a {@link SortedArrayIndex}, and all remaining columns
+     * using a {@link TreeIndex}.
      * @param field the data field name of the column to index
      * @return the index over the specified data column
      */
@@ -717,13 +977,85 @@ public class Table extends AbstractTupleSet implements ColumnListener {
         }
         
         Column col = e.column;
-        try {
-            e.index = new TreeIndex(this, m_rows, col, null);
-        } catch ( IncompatibleComparatorException ice ) { /* can't happen */ }
+        if ( col.getColumnType() == boolean.class ) {
+            e.index = new BitmapIndex(this, m_rows, col);
+        } else if ( e.unique && HashIndex.isSupported(col.getColumnType()) ) {
+            e.index = new HashIndex(this, m_rows, col);
+        } else if ( SortedArrayIndex.isSupported(col.getColumnType()) ) {
+            e.index = new SortedArrayIndex(this, m_rows, col);
+        } else {
+            try {
+                e.index = new TreeIndex(this, m_rows, col, null);
+            } catch ( IncompatibleComparatorException ice ) {
+                /* can't happen */
+            }
+        }
         
         return e.index;
     }
     
+    /**
+     * Create (if necessary) and return a bitmap index over the given data
+     * field. Bitmap indexes suit columns with few distinct values, such as
+     * categories, and let filter iterators combine equality tests on
+     * several columns. Any other index over the field is replaced.
+     * @param field the data field name of the column to index
+     * @return the bitmap index over the specified data column
+     * @see BitmapIndex
+     */
+    public BitmapIndex bitmapIndex(String field) {
+        ColumnEntry e = (ColumnEntry)m_entries.get(field);
+        if ( e == null ) {
+            throw new IllegalArgumentException("Unknown column name: "+field);
+        } else if ( e.index instanceof BitmapIndex ) {
+            return (BitmapIndex)e.index; // already indexed
+        } else if ( e.index != null ) {
+            e.index.dispose();
+        }
+        
+        e.index = new BitmapIndex(this, m_rows, e.column);
+        return (BitmapIndex)e.index;
+    }
+    
+    /**
+     * Declare whether or not the values of the given data field are unique,
+     * such as the keys of a node table. Unique int, long and object columns
+     * are indexed using a {@link HashIndex}, providing constant time lookup
+     * of rows by value. Uniqueness is not enforced by the table. If the
+     * field is already indexed, the index is rebuilt.
+     * @param field the data field name of the column
+     * @param unique true if the column values are unique, false otherwise
+     */
+    public void setUnique(String field, boolean unique) {
+        ColumnEntry e = (ColumnEntry)m_entries.get(field);
+        if ( e == null ) {
+            throw new IllegalArgumentException("Unknown column name: "+field);
+        } else if ( e.unique == unique ) {
+            return;
+        }
+        e.unique = unique;
+        if ( e.index != null ) {
+            e.index.dispose();
+            e.index = null;
+            index(field);
+        }
+    }
+    
+    /**
+     * Indicates whether the values of the given data field are declared to
+     * be unique.
+     * @param field the data field name of the column
+     * @return true if the column is declared unique, false otherwise
+     * @see #setUnique(String, boolean)
+     */
+    public boolean isUnique(String field) {
+        ColumnEntry e = (ColumnEntry)m_entries.get(field);
+        if ( e == null ) {
+            throw new IllegalArgumentException("Unknown column name: "+field);
+        }
+        return e.unique;
+    }
+    
     /**
      * Retrieve, without creating, an index for the given data field.
      * @param field the data field name of the column
@@ -1845,22 +2177,30 @@ public class Table extends AbstractTupleSet implements ColumnListener {
      * @param end the ending row (inclusive) of the modified range
      */
     protected void handleColumnChanged(Column c, int start, int end) {
-        for ( ; !isValidRow(start) && start <= end; ++start );
-        if ( start > end ) return; // bail if no valid rows
+        if ( m_coalesce ) return; // reported by the caller
+        // the value is already written, locking now still invalidates any
+        // optimistic read that overlapped the change, see tryRead
+        lockWrite();
+        try {
+            for ( ; !isValidRow(start) && start <= end; ++start );
+            if ( start > end ) return; // bail if no valid rows
         
-        // determine the index of the updated column
-        int idx;
-        if ( m_lastCol != -1 && c == getColumn(m_lastCol) ) {
-            // constant time
-            idx = m_lastCol;
-        } else {
-            // linear time
-            idx = getColumnNumber(c);
-        }
+            // determine the index of the updated column
+            int idx;
+            if ( m_lastCol != -1 && c == getColumn(m_lastCol) ) {
+                // constant time
+                idx = m_lastCol;
+            } else {
+                // linear time
+                idx = getColumnNumber(c);
+            }
         
-        // if we have a valid index, fire a notification
-        if ( idx >= 0 ) {
-            fireTableEvent(start, end, idx, TableModelEvent.UPDATE);
+            // if we have a valid index, fire a notification
+            if ( idx >= 0 ) {
+                fireTableEvent(start, end, idx, TableModelEvent.UPDATE);
+            }
+        } finally {
+            unlockWrite();
         }
     }
     
@@ -1903,6 +2243,25 @@ public class Table extends AbstractTupleSet implements ColumnListener {
      * {@link prefux.data.event.EventConstants#UPDATE}.
      */
     protected void fireTableEvent(int row0, int row1, int col, int type) {
+        if ( m_batchRows != null ) {
+            if ( type == EventConstants.INSERT && 
+                 col == EventConstants.ALL_COLUMNS )
+            {
+                // report added rows when the batch ends
+                m_batchRows.set(row0, row1+1);
+                return;
+            }
+            // report earlier changes before any other modification
+            flushBatch();
+        }
+        dispatchTableEvent(row0, row1, col, type);
+    }
+    
+    /**
+     * Notify listeners of a table event, regardless of any batch.
+     * @see #fireTableEvent(int, int, int, int)
+     */
+    private void dispatchTableEvent(int row0, int row1, int col, int type) {
         // increment the modification count
         ++m_modCount;
         
@@ -1923,6 +2282,92 @@ public class Table extends AbstractTupleSet implements ColumnListener {
         }
     }
     
+    // ------------------------------------------------------------------------
+    // Concurrency
+    
+    /**
+     * Acquire the write lock of this table. Tables are written by one
+     * thread at a time, usually the thread running the actions of a
+     * visualization, but may be read concurrently by others, such as the
+     * JavaFX application thread, using {@link #tryRead(Runnable)}. The
+     * table takes the write lock itself while changing its structure and
+     * after each change of a value, so this method is only needed to make a
+     * series of changes appear at once to readers, as is done by
+     * {@link #beginBatch()}. The lock is reentrant and must be released
+     * by a matching call to {@link #unlockWrite()}.
+     */
+    public void lockWrite() {
+        Thread t = Thread.currentThread();
+        if ( m_writer != t ) {
+            long stamp = m_lock.writeLock();
+            m_writer = t;
+            m_writeStamp = stamp;
+        }
+        ++m_writeHolds;
+    }
+    
+    /**
+     * Release the write lock of this table.
+     * @throws IllegalMonitorStateException if the current thread does not
+     * hold the write lock
+     * @see #lockWrite()
+     */
+    public void unlockWrite() {
+        if ( m_writer != Thread.currentThread() ) {
+            throw new IllegalMonitorStateException();
+        }
+        if ( --m_writeHolds == 0 ) {
+            m_writer = null;
+            m_lock.unlockWrite(m_writeStamp);
+        }
+    }
+    
+    /**
+     * Read values of this table from a thread other than the writing one,
+     * without blocking the writer. The reader is run without locking, and
+     * run again while holding the read lock if a write happened meanwhile.
+     * A successful read sees the table as it was at a single point in time
+     * between writes; it can not see a batch half done, nor the arrays of a
+     * column in the middle of growing. Exceptions thrown by a reader that
+     * raced a write are ignored, as the read is repeated.
+     * 
+     * <p>If the table is write locked, for example during a batch, the read
+     * is not attempted a second time and this method returns false. The
+     * caller should then discard whatever the reader collected and try
+     * again later, e.g., on the next frame.</p>
+     * @param reader the reader, which should only read the table and
+     * collect the values it needs
+     * @return true if the reader completed on a consistent state of the
+     * table, false if the table is being written
+     */
+    public boolean tryRead(Runnable reader) {
+        if ( m_writer == Thread.currentThread() ) {
+            reader.run(); // the writer sees its own changes
+            return true;
+        }
+        long stamp = m_lock.tryOptimisticRead();
+        if ( stamp != 0 ) {
+            try {
+                reader.run();
+            } catch ( RuntimeException e ) {
+                if ( m_lock.validate(stamp) )
+                    throw e; // not caused by a concurrent write
+            }
+            if ( m_lock.validate(stamp) )
+                return true;
+        }
+        stamp = m_lock.tryReadLock();
+        if ( stamp == 0 ) {
+            return false;
+        }
+        try {
+            reader.run();
+            return true;
+        } finally {
+            m_lock.unlockRead(stamp);
+        }
+    }
+    
     // ------------------------------------------------------------------------
     // String Methods
     
@@ -1958,6 +2403,8 @@ public class Table extends AbstractTupleSet implements ColumnListener {
         public ColumnMetadata metadata;
         /** The column Index instance. */
         public Index          index;
+        /** Indicates if the column values are declared unique. */
+        public boolean        unique;
         
         /**
          * Create a new ColumnEntry.
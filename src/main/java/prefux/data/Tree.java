@@ -162,6 +162,23 @@ public class Tree extends Graph {
         return links;
     }
     
+    /**
+     * @see prefux.data.Graph#initLinkTable()
+     */
+    protected void initLinkTable() {
+        super.initLinkTable();
+        // number the children in the order of their edges
+        int[] count = new int[m_links.getMaximumRow()+1];
+        IntIterator edges = getEdgeTable().rows();
+        while ( edges.hasNext() ) {
+            int e = edges.nextInt();
+            int s = getSourceNode(e);
+            int t = getTargetNode(e);
+            if ( s < 0 || t < 0 ) continue;
+            m_links.setInt(t, CHILDINDEX, count[s]++);
+        }
+    }
+    
     /**
      * @see prefux.data.Graph#updateDegrees(int, int, int, int)
      */
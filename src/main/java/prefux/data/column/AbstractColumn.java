@@ -30,10 +30,12 @@
  */
 package prefux.data.column;
 
+import java.util.BitSet;
 import java.util.Date;
 
 import prefux.data.DataTypeException;
 import prefux.data.event.ColumnListener;
+import prefux.data.event.EventConstants;
 import prefux.data.parser.DataParseException;
 import prefux.data.parser.DataParser;
 import prefux.data.parser.ObjectParser;
@@ -56,6 +58,11 @@ public abstract class AbstractColumn implements Column {
     
     protected CopyOnWriteArrayList m_listeners;
     
+    /** Nesting depth of open batches */
+    private int    m_batch = 0;
+    /** Rows changed during the current batch */
+    private BitSet m_dirty;
+    
     /**
      * Create a new AbstractColumn of type Object.
      */
@@ -162,10 +169,49 @@ public abstract class AbstractColumn implements Column {
         m_listeners.remove(listener);
     }
     
+    /**
+     * Begin a batch of changes. Until the matching call to
+     * {@link #endBatch()}, listeners are not notified of individual value
+     * changes, the changed rows are recorded instead. Batches may be nested.
+     */
+    public void beginBatch() {
+        if ( m_batch++ == 0 )
+            m_dirty = new BitSet();
+    }
+    
+    /**
+     * End a batch of changes. When the outermost batch ends, listeners are
+     * notified with a single UPDATE event for each contiguous range of
+     * changed rows. Calls without a matching {@link #beginBatch()} are
+     * ignored.
+     */
+    public void endBatch() {
+        if ( m_batch == 0 || --m_batch > 0 )
+            return;
+        BitSet dirty = m_dirty;
+        m_dirty = null;
+        for ( int s=dirty.nextSetBit(0), e; s>=0; s=dirty.nextSetBit(e) ) {
+            e = dirty.nextClearBit(s);
+            fireColumnEvent(EventConstants.UPDATE, s, e-1);
+        }
+    }
+    
+    /**
+     * Indicates if a batch of changes is in progress.
+     * @return true if listener notifications are being held back
+     */
+    public boolean isBatching() {
+        return m_batch > 0;
+    }
+    
     /**
      * Notifies all registered listeners of a column UPDATE event
      */
     protected final void fireColumnEvent(int type, int start, int end) {
+        if ( m_dirty != null ) {
+            m_dirty.set(start, end+1);
+            return;
+        }
         Object[] lstnrs = m_listeners.getArray();
         for ( int i=0; i<lstnrs.length; ++i )
             ((ColumnListener)lstnrs[i]).columnChanged(this, type, start, end);
@@ -177,6 +223,10 @@ public abstract class AbstractColumn implements Column {
      * @param prev the previous value at the given index
      */
     protected final void fireColumnEvent(int idx, int prev) {
+        if ( m_dirty != null ) {
+            m_dirty.set(idx);
+            return;
+        }
         Object[] lstnrs = m_listeners.getArray();
         for ( int i=0; i<lstnrs.length; ++i )
             ((ColumnListener)lstnrs[i]).columnChanged(this, idx, prev);
@@ -188,6 +238,10 @@ public abstract class AbstractColumn implements Column {
      * @param prev the previous value at the given index
      */
     protected final void fireColumnEvent(int idx, long prev) {
+        if ( m_dirty != null ) {
+            m_dirty.set(idx);
+            return;
+        }
         Object[] lstnrs = m_listeners.getArray();
         for ( int i=0; i<lstnrs.length; ++i )
             ((ColumnListener)lstnrs[i]).columnChanged(this, idx, prev);
@@ -199,6 +253,10 @@ public abstract class AbstractColumn implements Column {
      * @param prev the previous value at the given index
      */
     protected final void fireColumnEvent(int idx, float prev) {
+        if ( m_dirty != null ) {
+            m_dirty.set(idx);
+            return;
+        }
         Object[] lstnrs = m_listeners.getArray();
         for ( int i=0; i<lstnrs.length; ++i )
             ((ColumnListener)lstnrs[i]).columnChanged(this, idx, prev);
@@ -210,6 +268,10 @@ public abstract class AbstractColumn implements Column {
      * @param prev the previous value at the given index
      */
     protected final void fireColumnEvent(int idx, double prev) {
+        if ( m_dirty != null ) {
+            m_dirty.set(idx);
+            return;
+        }
         Object[] lstnrs = m_listeners.getArray();
         for ( int i=0; i<lstnrs.length; ++i )
             ((ColumnListener)lstnrs[i]).columnChanged(this, idx, prev);
@@ -221,6 +283,10 @@ public abstract class AbstractColumn implements Column {
      * @param prev the previous value at the given index
      */
     protected final void fireColumnEvent(int idx, boolean prev) {
+        if ( m_dirty != null ) {
+            m_dirty.set(idx);
+            return;
+        }
         Object[] lstnrs = m_listeners.getArray();
         for ( int i=0; i<lstnrs.length; ++i )
             ((ColumnListener)lstnrs[i]).columnChanged(this, idx, prev);
@@ -232,6 +298,10 @@ public abstract class AbstractColumn implements Column {
      * @param prev the previous value at the given index
      */
     protected final void fireColumnEvent(int idx, Object prev) {
+        if ( m_dirty != null ) {
+            m_dirty.set(idx);
+            return;
+        }
         Object[] lstnrs = m_listeners.getArray();
         for ( int i=0; i<lstnrs.length; ++i )
             ((ColumnListener)lstnrs[i]).columnChanged(this, idx, prev);
@@ -668,4 +738,71 @@ public abstract class AbstractColumn implements Column {
         set(val, row);
     }
     
+    // ------------------------------------------------------------------------
+    // Block Access
+    
+    /**
+     * @see prefux.data.column.Column#get(int[], int, java.lang.Object[])
+     */
+    public void get(int[] rows, int n, Object[] values) {
+        for ( int i=0; i<n; ++i )
+            values[i] = get(rows[i]);
+    }
+    
+    /**
+     * @see prefux.data.column.Column#getInts(int[], int, int[])
+     */
+    public void getInts(int[] rows, int n, int[] values)
+        throws DataTypeException
+    {
+        for ( int i=0; i<n; ++i )
+            values[i] = getInt(rows[i]);
+    }
+    
+    /**
+     * @see prefux.data.column.Column#getLongs(int[], int, long[])
+     */
+    public void getLongs(int[] rows, int n, long[] values)
+        throws DataTypeException
+    {
+        for ( int i=0; i<n; ++i )
+            values[i] = getLong(rows[i]);
+    }
+    
+    /**
+     * @see prefux.data.column.Column#getFloats(int[], int, float[])
+     */
+    public void getFloats(int[] rows, int n, float[] values)
+        throws DataTypeException
+    {
+        for ( int i=0; i<n; ++i )
+            values[i] = getFloat(rows[i]);
+    }
+    
+    /**
+     * @see prefux.data.column.Column#getDoubles(int[], int, double[])
+     */
+    public void getDoubles(int[] rows, int n, double[] values)
+        throws DataTypeException
+    {
+        for ( int i=0; i<n; ++i )
+            values[i] = getDouble(rows[i]);
+    }
+    
+    /**
+     * @see prefux.data.column.Column#getBooleans(int[], int, long[])
+     */
+    public void getBooleans(int[] rows, int n, long[] bits)
+        throws DataTypeException
+    {
+        for ( int w=0, nw=(n+63)>>>6; w<nw; ++w ) {
+            long word = 0L;
+            for ( int i=w<<6, end=Math.min(n, i+64); i<end; ++i ) {
+                if ( getBoolean(rows[i]) )
+                    word |= 1L << i;
+            }
+            bits[w] = word;
+        }
+    }
+    
 } // end of abstract class AbstractColumn
@@ -220,4 +220,26 @@ public class BooleanColumn extends AbstractColumn {
             return super.canSet(type);
         }
     }
+    
+    /**
+     * @see prefux.data.column.Column#getBooleans(int[], int, long[])
+     */
+    public void getBooleans(int[] rows, int n, long[] bits)
+        throws DataTypeException
+    {
+        for ( int w=0, nw=(n+63)>>>6; w<nw; ++w ) {
+            long word = 0L;
+            for ( int i=w<<6, end=Math.min(n, i+64); i<end; ++i ) {
+                int row = rows[i];
+                if ( row < 0 || row > m_size ) {
+                    throw new IllegalArgumentException(
+                        "Row index out of bounds: "+row);
+                }
+                if ( m_bits.get(row) )
+                    word |= 1L << i;
+            }
+            bits[w] = word;
+        }
+    }
+
 } // end of class BooleanColumn
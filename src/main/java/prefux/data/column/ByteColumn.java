@@ -43,7 +43,8 @@ import prefux.data.DataTypeException;
 public class ByteColumn extends AbstractColumn {
 
     private byte[] m_values;
-    private int    m_size;
+    /** Set after m_values, so threads seeing a new size see its array */
+    private volatile int m_size;
     
     /**
      * Create a new empty IntColumn. 
@@ -403,4 +403,75 @@ public interface Column {
      */
     public void setDate(Date val, int row) throws DataTypeException;
     
+    // ------------------------------------------------------------------------
+    // Block Access
+    
+    // read the values of many rows with a single call, as done by
+    // prefux.data.util.ColumnarFilter
+    
+    /**
+     * Get the data values at a block of rows.
+     * @param rows the rows from which to retrieve the values
+     * @param n the number of rows to retrieve, starting at index 0
+     * @param values the array receiving the values, at index 0 to n-1
+     */
+    public void get(int[] rows, int n, Object[] values);
+    
+    /**
+     * Get the data values at a block of rows as integers.
+     * @param rows the rows from which to retrieve the values
+     * @param n the number of rows to retrieve, starting at index 0
+     * @param values the array receiving the values, at index 0 to n-1
+     * @throws DataTypeException if this column does not 
+     *  support the integer type
+     */
+    public void getInts(int[] rows, int n, int[] values)
+        throws DataTypeException;
+    
+    /**
+     * Get the data values at a block of rows as longs.
+     * @param rows the rows from which to retrieve the values
+     * @param n the number of rows to retrieve, starting at index 0
+     * @param values the array receiving the values, at index 0 to n-1
+     * @throws DataTypeException if this column does not 
+     *  support the long type
+     */
+    public void getLongs(int[] rows, int n, long[] values)
+        throws DataTypeException;
+    
+    /**
+     * Get the data values at a block of rows as floats.
+     * @param rows the rows from which to retrieve the values
+     * @param n the number of rows to retrieve, starting at index 0
+     * @param values the array receiving the values, at index 0 to n-1
+     * @throws DataTypeException if this column does not 
+     *  support the float type
+     */
+    public void getFloats(int[] rows, int n, float[] values)
+        throws DataTypeException;
+    
+    /**
+     * Get the data values at a block of rows as doubles.
+     * @param rows the rows from which to retrieve the values
+     * @param n the number of rows to retrieve, starting at index 0
+     * @param values the array receiving the values, at index 0 to n-1
+     * @throws DataTypeException if this column does not 
+     *  support the double type
+     */
+    public void getDoubles(int[] rows, int n, double[] values)
+        throws DataTypeException;
+    
+    /**
+     * Get the data values at a block of rows as booleans, stored as a
+     * bitmap. The value at rows[i] is stored in bit i%64 of word i/64. 
+     * Bits past the n-th bit of the last word are cleared.
+     * @param rows the rows from which to retrieve the values
+     * @param n the number of rows to retrieve, starting at index 0
+     * @param bits the bitmap receiving the values, at least (n+63)/64 words
+     * @throws DataTypeException if this column does not 
+     *  support the boolean type
+     */
+    public void getBooleans(int[] rows, int n, long[] bits)
+        throws DataTypeException;
+    
 } // end of interface Column
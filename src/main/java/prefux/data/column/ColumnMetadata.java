@@ -36,21 +36,20 @@ import java.util.Map;
 
 import prefux.data.Table;
 import prefux.data.event.ColumnListener;
-import prefux.data.util.Index;
 import prefux.util.DataLib;
-import prefux.util.TypeLib;
+import prefux.util.MathLib;
 import prefux.util.collections.DefaultLiteralComparator;
 
 /**
  * ColumnMetadata stores computed metadata and statistics for a singe column
  * instance. They are created automatically by Table instances and are
  * retrieved using the {@link prefux.data.Table#getMetadata(String)} method.
+ * Dynamic metadata is backed by {@link ColumnStatistics}, which are updated
+ * incrementally as the table changes instead of being recomputed.
  * @author <a href="http://jheer.org">jeffrey heer</a>
  */
 public class ColumnMetadata implements ColumnListener {
 
-	// TODO consider refactor. is non-dynamic mode needed? pass Column reference in?
-	
     private Table   m_table;
     private String  m_field;
     private boolean m_dynamic;
@@ -59,15 +58,19 @@ public class ColumnMetadata implements ColumnListener {
     private Comparator m_cmp;
     
     private Object m_default;
+    private ColumnStatistics m_stats;
+    private Map m_ordinalM;
+    private Object[] m_ordinalMA;
+    
+    // snapshot of the statistics of non-dynamic metadata
     private int m_min;
     private int m_max;
     private int m_median;
     private int m_unique;
-    private Double m_mean;
-    private Double m_stdev;
-    private Double m_sum;
+    private double m_mean;
+    private double m_stdev;
+    private double m_sum;
     private Object[] m_ordinalA;
-    private Map m_ordinalM;
     
     // ------------------------------------------------------------------------
     
@@ -88,7 +91,7 @@ public class ColumnMetadata implements ColumnListener {
      * values in the column
      * @param dynamic indicates if this ColumnMetadata should react to
      * changes in the underlying table values. If true, computed values
-     * stored in this metadata object will be invalidated when updates to
+     * stored in this metadata object will be updated when updates to
      * the column data occur.
      */
     public ColumnMetadata(Table table, String column, 
@@ -105,55 +108,57 @@ public class ColumnMetadata implements ColumnListener {
      * listeners.
      */
     public void dispose() {
-        m_table.getColumn(m_field).removeColumnListener(this);
+        if ( m_stats != null ) {
+            m_stats.dispose();
+            m_stats = null;
+        }
+        m_ordinalM = null;
+        m_ordinalMA = null;
+        m_init = false;
     }
 
     // ------------------------------------------------------------------------
     
-    private void clearCachedValues() {
-        m_min    = -1;
-        m_max    = -1;
-        m_median = -1;
-        m_unique = -1;
-        m_mean   = null;
-        m_stdev  = null;
-        m_sum    = null;
-        m_ordinalA = null;
-        m_ordinalM = null;
-    }
-    
     /**
      * Re-calculates all the metadata and statistics maintained by this object.
      */
     public void calculateValues() {
-        clearCachedValues();
-        boolean dyn = m_dynamic;
-        m_dynamic = true;
-        getMinimumRow();
-        getMaximumRow();
-        getMedianRow();
-        getUniqueCount();
-        if ( TypeLib.isNumericType(m_table.getColumnType(m_field)) ) {
-            getMean();
-            getDeviation();
-            getSum();
+        if ( m_dynamic ) {
+            if ( m_stats == null ) {
+                m_stats = new ColumnStatistics(m_table, m_field, m_cmp);
+            } else {
+                m_stats.rebuild();
+            }
+        } else {
+            ColumnStatistics s = new ColumnStatistics(m_table, m_field, m_cmp);
+            s.dispose();
+            m_min    = s.getMinimumRow();
+            m_max    = s.getMaximumRow();
+            m_median = s.getMedianRow();
+            m_unique = s.getUniqueCount();
+            m_mean   = s.getMean();
+            m_stdev  = s.getDeviation();
+            m_sum    = s.getSum();
+            m_ordinalA = s.getOrdinalArray();
+            m_stats = s; // kept for quantiles of the snapshot
         }
-        getOrdinalArray();
-        getOrdinalMap();
         m_init = true;
-        m_dynamic = dyn;
     }
     
     private void accessCheck() {
-        if ( m_init ) return;
-        
-        if ( m_dynamic ) {
-          clearCachedValues();
-          m_table.getColumn(m_field).addColumnListener(this);
-        } else {
-          calculateValues();
-        }
-        m_init = true;
+        if ( !m_init )
+            calculateValues();
+    }
+    
+    /**
+     * Get the incrementally maintained statistics backing this metadata.
+     * For non-dynamic metadata, the statistics are a snapshot that no
+     * longer tracks changes to the table.
+     * @return the column statistics
+     */
+    public ColumnStatistics getStatistics() {
+        accessCheck();
+        return m_stats;
     }
     
     // ------------------------------------------------------------------------
@@ -172,7 +177,7 @@ public class ColumnMetadata implements ColumnListener {
      */
     public void setComparator(Comparator c) {
         m_cmp = c;
-        clearCachedValues();
+        dispose();
     }
     
     /**
@@ -190,15 +195,7 @@ public class ColumnMetadata implements ColumnListener {
      */
     public int getMinimumRow() {
         accessCheck();
-        if ( m_min == -1 && m_dynamic ) {
-            Index idx = m_table.getIndex(m_field);
-            if ( idx != null ) {
-                m_min = idx.minimum();
-            } else {
-                m_min = DataLib.min(m_table.tuples(), m_field, m_cmp).getRow();
-            }
-        }
-        return m_min;
+        return m_dynamic ? m_stats.getMinimumRow() : m_min;
     }
 
     /**
@@ -208,15 +205,7 @@ public class ColumnMetadata implements ColumnListener {
      */
     public int getMaximumRow() {
         accessCheck();
-        if ( m_max == -1 && m_dynamic ) {
-            Index idx = m_table.getIndex(m_field);
-            if ( idx != null ) {
-                m_max = idx.maximum();
-            } else {
-                m_max = DataLib.max(m_table.tuples(), m_field, m_cmp).getRow();
-            }
-        }
-        return m_max;
+        return m_dynamic ? m_stats.getMaximumRow() : m_max;
     }
     
     /**
@@ -225,16 +214,7 @@ public class ColumnMetadata implements ColumnListener {
      */
     public int getMedianRow() {
         accessCheck();
-        if ( m_median == -1 && m_dynamic ) {
-            Index idx = m_table.getIndex(m_field);
-            if ( idx != null ) {
-                m_max = idx.median();
-            } else {
-                m_median = DataLib.median(
-                                m_table.tuples(), m_field, m_cmp).getRow();
-            }
-        }
-        return m_median;
+        return m_dynamic ? m_stats.getMedianRow() : m_median;
     }
     
     /**
@@ -243,58 +223,53 @@ public class ColumnMetadata implements ColumnListener {
      */
     public int getUniqueCount() {
         accessCheck();
-        if ( m_unique == -1 && m_dynamic ) {
-            Index idx = m_table.getIndex(m_field);
-            if ( idx != null ) {
-                m_unique = idx.uniqueCount();
-            } else {
-                m_unique = DataLib.uniqueCount(m_table.tuples(), m_field);
-            }
-        }
-        return m_unique;
+        return m_dynamic ? m_stats.getUniqueCount() : m_unique;
     }
     
     /**
      * Get the mean value of numeric values in the column. If this column
-     * does not contain numeric values, this method will result in an
-     * exception being thrown.
+     * does not contain numeric values, this method returns NaN.
      * @return the mean of numeric values in the column
      */
     public double getMean() {
         accessCheck();
-        if ( m_mean == null && m_dynamic ) {
-            m_mean = new Double(DataLib.mean(m_table.tuples(), m_field));
-        }
-        return m_mean.doubleValue();
+        return m_dynamic ? m_stats.getMean() : m_mean;
     }
     
     /**
-     * Get the standard deviation of numeric values in the column. If this column
-     * does not contain numeric values, this method will result in an
-     * exception being thrown.
+     * Get the standard deviation of numeric values in the column. If this
+     * column does not contain numeric values, this method returns NaN.
      * @return the standard deviation of numeric values in the column
      */
     public double getDeviation() {
         accessCheck();
-        if ( m_stdev == null && m_dynamic ) {
-            m_stdev = new Double(
-                    DataLib.deviation(m_table.tuples(), m_field, getMean()));
-        }
-        return m_stdev.doubleValue();
+        return m_dynamic ? m_stats.getDeviation() : m_stdev;
     }
     
     /**
      * Get the sum of numeric values in the column. If this column
-     * does not contain numeric values, this method will result in an
-     * exception being thrown.
+     * does not contain numeric values, this method returns NaN.
      * @return the sum of numeric values in the column
      */
     public double getSum() {
         accessCheck();
-        if ( m_sum == null && m_dynamic ) {
-            m_sum = new Double(DataLib.sum(m_table.tuples(), m_field));
+        return m_dynamic ? m_stats.getSum() : m_sum;
+    }
+    
+    /**
+     * Get the quantile boundaries of the numeric values in the column.
+     * @param n the number of quantiles
+     * @return an array of n+1 quantile boundaries
+     * @see prefux.util.MathLib#quantiles(int, double[])
+     */
+    public double[] getQuantiles(int n) {
+        accessCheck();
+        if ( m_cmp != DefaultLiteralComparator.getInstance() ) {
+            // the sorted values do not follow the numeric order
+            return MathLib.quantiles(n,
+                DataLib.toDoubleArray(m_table.tuples(), m_field));
         }
-        return m_sum.doubleValue();
+        return m_stats.getQuantiles(n);
     }
     
     /**
@@ -303,10 +278,7 @@ public class ColumnMetadata implements ColumnListener {
      */
     public Object[] getOrdinalArray() {
         accessCheck();
-        if ( m_ordinalA == null && m_dynamic ) {
-            m_ordinalA = DataLib.ordinalArray(m_table.tuples(),m_field,m_cmp);
-        }
-        return m_ordinalA;
+        return m_dynamic ? m_stats.getOrdinalArray() : m_ordinalA;
     }
     
     /**
@@ -317,13 +289,13 @@ public class ColumnMetadata implements ColumnListener {
      * in the values' sort order
      */
     public Map getOrdinalMap() {
-        accessCheck();
-        if ( m_ordinalM == null && m_dynamic ) {
-            Object[] a = getOrdinalArray();
+        Object[] a = getOrdinalArray();
+        if ( m_ordinalM == null || m_ordinalMA != a ) {
+            // the ordinal array is replaced when the values change
             m_ordinalM = new HashMap();
             for ( int i=0; i<a.length; ++i )
                 m_ordinalM.put(a[i], new Integer(i));
-            //m_ordinalM = DataLib.ordinalMap(m_table.tuples(), m_field, m_cmp);
+            m_ordinalMA = a;
         }
         return m_ordinalM;
     }
@@ -331,10 +303,12 @@ public class ColumnMetadata implements ColumnListener {
     // ------------------------------------------------------------------------
     
     /**
+     * Recalculates the metadata. Not needed for dynamic metadata, which is
+     * updated from table events.
      * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, int, int)
      */
     public void columnChanged(Column src, int type, int start, int end) {
-        clearCachedValues();
+        dispose();
     }
     
     /**
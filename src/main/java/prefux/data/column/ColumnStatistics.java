@@ -0,0 +1,513 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.data.column;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+
+import prefux.data.Table;
+import prefux.data.event.EventConstants;
+import prefux.data.event.TableListener;
+import prefux.util.ArrayLib;
+import prefux.util.TypeLib;
+import prefux.util.collections.IntIterator;
+
+/**
+ * <p>Statistics over the values of a table column that are kept up to date
+ * as the table changes, rather than recomputed by scanning the table. The
+ * statistics are updated from the events of the table, so that they cover
+ * exactly the rows of the table, even if the column is shared with a parent
+ * table. Statistics over numeric columns include the count, sum, mean and
+ * variance, maintained using Welford's method. For all columns, the values
+ * are kept sorted by the column's comparator, providing the minimum,
+ * maximum and median rows, the number of distinct values, the sorted
+ * distinct values and quantile boundaries.</p>
+ *
+ * <p>The sorted values are stored in a pair of parallel arrays of values and
+ * rows. Added values are collected in an unsorted buffer, and removed values
+ * are marked as deleted. Both are merged into the sorted arrays on the next
+ * order-based query, in time linear in the number of values plus the time
+ * to sort the added ones. Queries on unchanged data return cached results.
+ * Instances are not synchronized.</p>
+ *
+ * @see ColumnMetadata
+ */
+public class ColumnStatistics implements TableListener {
+
+    private static final int DELETED = -1;
+
+    private final Table      m_table;
+    private final String     m_field;
+    private final Comparator m_cmp;
+    private final boolean    m_numeric;
+    private Column m_column;
+    private int    m_col;
+
+    // the value counted for each table row, and its index in the buffer
+    // of additions or -1 if it has been merged into the sorted values
+    private Object[] m_values = new Object[0];
+    private int[]    m_where = new int[0];
+    private BitSet   m_counted = new BitSet();
+
+    // sorted values and rows, deleted entries have a row of DELETED
+    private Object[] m_keys = new Object[0];
+    private int[]    m_rows = new int[0];
+    private int      m_size = 0;
+    private int      m_deleted = 0;
+
+    // unsorted additions, removed entries have a row of DELETED
+    private Object[] m_addKeys = new Object[0];
+    private int[]    m_addRows = new int[0];
+    private int      m_adds = 0;
+    private int      m_addDeleted = 0;
+
+    // computed from the sorted values
+    private int      m_unique = 0;
+    private Object[] m_ordinal = null;
+
+    // moments of the finite numeric values
+    private int    m_count = 0;
+    private double m_mean = 0;
+    private double m_m2 = 0;
+    private double m_sum = 0;
+    private int    m_nan = 0;
+    private int    m_posInf = 0;
+    private int    m_negInf = 0;
+
+    /**
+     * Create a new ColumnStatistics instance, computing the statistics of
+     * the current values and listening for subsequent table changes.
+     * @param table the table to compute statistics for
+     * @param field the data field name of the column
+     * @param cmp a Comparator that determines the sort order of the values
+     */
+    public ColumnStatistics(Table table, String field, Comparator cmp) {
+        m_table = table;
+        m_field = field;
+        m_cmp = cmp;
+        m_numeric = TypeLib.isNumericType(table.getColumnType(field));
+        rebuild();
+        m_table.addTableListener(this);
+    }
+
+    /**
+     * Stop listening to table changes. The statistics remain accessible,
+     * but no longer reflect subsequent changes to the table.
+     */
+    public void dispose() {
+        m_table.removeTableListener(this);
+    }
+
+    /**
+     * Get the table whose values are summarized.
+     * @return the backing table
+     */
+    public Table getTable() {
+        return m_table;
+    }
+
+    /**
+     * Get the data field name of the summarized column.
+     * @return the data field name
+     */
+    public String getField() {
+        return m_field;
+    }
+
+    /**
+     * Get the comparator determining the sort order of the values.
+     * @return the Comparator
+     */
+    public Comparator getComparator() {
+        return m_cmp;
+    }
+
+    /**
+     * Recompute all statistics from the current table values.
+     */
+    public void rebuild() {
+        m_column = m_table.getColumn(m_field);
+        m_col = m_table.getColumnNumber(m_field);
+
+        m_values = new Object[m_table.getMaximumRow()+1];
+        m_where = new int[m_values.length];
+        m_counted.clear();
+        m_keys = new Object[0];
+        m_rows = new int[0];
+        m_size = m_deleted = 0;
+        m_addKeys = new Object[0];
+        m_addRows = new int[0];
+        m_adds = m_addDeleted = 0;
+        m_unique = 0;
+        m_ordinal = null;
+        m_count = m_nan = m_posInf = m_negInf = 0;
+        m_mean = m_m2 = m_sum = 0;
+
+        if ( m_col < 0 ) return;
+        IntIterator rows = m_table.rows();
+        while ( rows.hasNext() )
+            add(rows.nextInt());
+    }
+
+    // ------------------------------------------------------------------------
+    // Statistics
+
+    /**
+     * Get the number of values, i.e. the number of rows of the table.
+     * @return the number of values
+     */
+    public int size() {
+        return m_size - m_deleted + m_adds - m_addDeleted;
+    }
+
+    /**
+     * Get the row of the minimum value. If there are multiple minima, only
+     * one is returned.
+     * @return the row of the minimum value, or -1 if there are no values
+     */
+    public int getMinimumRow() {
+        merge();
+        return m_size > 0 ? m_rows[0] : -1;
+    }
+
+    /**
+     * Get the row of the maximum value. If there are multiple maxima, only
+     * one is returned.
+     * @return the row of the maximum value, or -1 if there are no values
+     */
+    public int getMaximumRow() {
+        merge();
+        return m_size > 0 ? m_rows[m_size-1] : -1;
+    }
+
+    /**
+     * Get the row of the median value, the value at index size/2 of the
+     * sorted values.
+     * @return the row of the median value, or -1 if there are no values
+     */
+    public int getMedianRow() {
+        merge();
+        return m_size > 0 ? m_rows[m_size/2] : -1;
+    }
+
+    /**
+     * Get the number of distinct values, according to the comparator.
+     * @return the number of distinct values
+     */
+    public int getUniqueCount() {
+        merge();
+        return m_unique;
+    }
+
+    /**
+     * Get an array of the distinct values, in sorted order. The array is
+     * shared and must not be modified. The same array is returned until
+     * the values change.
+     * @return the sorted distinct values
+     */
+    public Object[] getOrdinalArray() {
+        merge();
+        if ( m_ordinal == null ) {
+            Object[] a = new Object[m_unique];
+            for ( int i=0, k=0; i<m_size; ++i ) {
+                if ( i == 0 || m_cmp.compare(m_keys[i-1], m_keys[i]) != 0 )
+                    a[k++] = m_keys[i];
+            }
+            m_ordinal = a;
+        }
+        return m_ordinal;
+    }
+
+    /**
+     * Get the quantile boundaries of the numeric values, as computed by
+     * {@link prefux.util.MathLib#quantiles(int, double[])} over the
+     * values of all rows. This method requires the default sort order of
+     * numbers.
+     * @param n the number of quantiles
+     * @return an array of n+1 quantile boundaries
+     */
+    public double[] getQuantiles(int n) {
+        merge();
+        double[] qtls = new double[n+1];
+        for ( int i=0; i<=n; ++i )
+            qtls[i] = ((Number)m_keys[((m_size-1)*i)/n]).doubleValue();
+        return qtls;
+    }
+
+    /**
+     * Get the mean of the numeric values. Returns NaN if the column is not
+     * numeric or there are no values.
+     * @return the mean value
+     */
+    public double getMean() {
+        if ( !m_numeric || m_nan > 0 || (m_posInf > 0 && m_negInf > 0) )
+            return Double.NaN;
+        if ( m_posInf > 0 ) return Double.POSITIVE_INFINITY;
+        if ( m_negInf > 0 ) return Double.NEGATIVE_INFINITY;
+        return m_count == 0 ? Double.NaN : m_mean;
+    }
+
+    /**
+     * Get the population variance of the numeric values. Returns NaN if the
+     * column is not numeric or there are no values.
+     * @return the variance
+     */
+    public double getVariance() {
+        if ( !m_numeric || m_count == 0 || m_nan+m_posInf+m_negInf > 0 )
+            return Double.NaN;
+        return Math.max(0, m_m2) / m_count;
+    }
+
+    /**
+     * Get the population standard deviation of the numeric values. Returns
+     * NaN if the column is not numeric or there are no values.
+     * @return the standard deviation
+     */
+    public double getDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    /**
+     * Get the sum of the numeric values. Returns NaN if the column is not
+     * numeric.
+     * @return the sum
+     */
+    public double getSum() {
+        if ( !m_numeric || m_nan > 0 || (m_posInf > 0 && m_negInf > 0) )
+            return Double.NaN;
+        if ( m_posInf > 0 ) return Double.POSITIVE_INFINITY;
+        if ( m_negInf > 0 ) return Double.NEGATIVE_INFINITY;
+        return m_sum;
+    }
+
+    // ------------------------------------------------------------------------
+    // Updates
+
+    /**
+     * Count the current value of a table row.
+     */
+    private void add(int row) {
+        Object v = m_table.get(row, m_col);
+        if ( row >= m_values.length ) {
+            int cap = Math.max(row+1, 2*m_values.length);
+            m_values = ArrayLib.resize(m_values, cap);
+            m_where = ArrayLib.resize(m_where, cap);
+        }
+        m_values[row] = v;
+        m_where[row] = m_adds;
+        m_counted.set(row);
+
+        if ( m_adds == m_addRows.length ) {
+            int cap = Math.max(16, 2*m_adds);
+            m_addKeys = ArrayLib.resize(m_addKeys, cap);
+            m_addRows = ArrayLib.resize(m_addRows, cap);
+        }
+        m_addKeys[m_adds] = v;
+        m_addRows[m_adds++] = row;
+
+        if ( m_numeric ) {
+            double x = ((Number)v).doubleValue();
+            if ( Double.isNaN(x) ) {
+                ++m_nan;
+            } else if ( x == Double.POSITIVE_INFINITY ) {
+                ++m_posInf;
+            } else if ( x == Double.NEGATIVE_INFINITY ) {
+                ++m_negInf;
+            } else {
+                ++m_count;
+                double d = x - m_mean;
+                m_mean += d / m_count;
+                m_m2 += d * (x - m_mean);
+                m_sum += x;
+            }
+        }
+    }
+
+    /**
+     * Remove the counted value of a table row.
+     */
+    private void remove(int row) {
+        if ( !m_counted.get(row) ) return;
+        Object v = m_values[row];
+        m_values[row] = null;
+        m_counted.clear(row);
+
+        removeSorted(v, row);
+
+        if ( m_numeric ) {
+            double x = ((Number)v).doubleValue();
+            if ( Double.isNaN(x) ) {
+                --m_nan;
+            } else if ( x == Double.POSITIVE_INFINITY ) {
+                --m_posInf;
+            } else if ( x == Double.NEGATIVE_INFINITY ) {
+                --m_negInf;
+            } else if ( --m_count == 0 ) {
+                m_mean = m_m2 = m_sum = 0;
+            } else {
+                double mean = m_mean - (x - m_mean) / m_count;
+                m_m2 -= (x - m_mean) * (x - mean);
+                m_mean = mean;
+                m_sum -= x;
+            }
+        }
+    }
+
+    private void removeSorted(Object v, int row) {
+        int i = m_where[row];
+        if ( i >= 0 ) {
+            // not merged yet, mark the buffer entry as deleted
+            m_addKeys[i] = null;
+            m_addRows[i] = DELETED;
+            ++m_addDeleted;
+            return;
+        }
+        // binary search for the first entry not less than the value
+        int lo = 0, hi = m_size;
+        while ( lo < hi ) {
+            int mid = (lo+hi) >>> 1;
+            if ( m_cmp.compare(m_keys[mid], v) < 0 ) {
+                lo = mid+1;
+            } else {
+                hi = mid;
+            }
+        }
+        // rows of equal values are sorted, except for deleted entries
+        for ( i=lo; i<m_size && m_cmp.compare(m_keys[i], v) == 0; ++i ) {
+            if ( m_rows[i] == row ) {
+                // keep the key, the binary search relies on the sort order
+                m_rows[i] = DELETED;
+                ++m_deleted;
+                m_ordinal = null;
+                return;
+            }
+            if ( m_rows[i] > row ) break;
+        }
+    }
+
+    /**
+     * Sort the buffered additions and merge them into the sorted values,
+     * purging deleted entries, and update the distinct count.
+     */
+    private void merge() {
+        if ( m_adds == 0 && m_deleted == 0 )
+            return;
+
+        // drop deleted additions, then sort by value and row
+        Object[] ak = m_addKeys;
+        int[] ar = m_addRows;
+        int na = 0;
+        for ( int i=0; i<m_adds; ++i ) {
+            if ( ar[i] == DELETED ) continue;
+            ak[na] = ak[i];
+            ar[na++] = ar[i];
+            m_where[ar[i]] = -1;
+        }
+        ArrayLib.sort(ak, ar, 0, na, m_cmp);
+        for ( int i=0, j; i<na; i=j ) {
+            for ( j=i+1; j<na && m_cmp.compare(ak[j], ak[i]) == 0; ++j );
+            if ( j-i > 1 ) Arrays.sort(ar, i, j);
+        }
+
+        int n = m_size - m_deleted + na;
+        Object[] keys = new Object[n];
+        int[] rows = new int[n];
+        int i = 0, a = 0, k = 0, unique = 0;
+        while ( i < m_size || a < na ) {
+            if ( i < m_size && m_rows[i] == DELETED ) {
+                ++i; continue;
+            }
+            boolean takeMain;
+            if ( a == na ) {
+                takeMain = true;
+            } else if ( i == m_size ) {
+                takeMain = false;
+            } else {
+                int c = m_cmp.compare(m_keys[i], ak[a]);
+                takeMain = c < 0 || (c == 0 && m_rows[i] <= ar[a]);
+            }
+            if ( takeMain ) {
+                keys[k] = m_keys[i]; rows[k] = m_rows[i++];
+            } else {
+                keys[k] = ak[a]; rows[k] = ar[a++];
+            }
+            if ( k == 0 || m_cmp.compare(keys[k-1], keys[k]) != 0 )
+                ++unique;
+            ++k;
+        }
+        m_keys = keys;
+        m_rows = rows;
+        m_size = n;
+        m_deleted = 0;
+        m_unique = unique;
+        m_ordinal = null;
+
+        Arrays.fill(m_addKeys, 0, m_adds, null);
+        m_adds = m_addDeleted = 0;
+    }
+
+    // ------------------------------------------------------------------------
+    // Listener Methods
+
+    /**
+     * @see prefux.data.event.TableListener#tableChanged(prefux.data.Table, int, int, int, int)
+     */
+    public void tableChanged(Table t, int start, int end, int col, int type) {
+        if ( t != m_table ) return;
+
+        if ( col == EventConstants.ALL_COLUMNS ) {
+            // updates on all columns are not measurable, ignore them
+            if ( type == EventConstants.INSERT ) {
+                for ( int r=start; r<=end; ++r ) {
+                    if ( m_table.isValidRow(r) && !m_counted.get(r) )
+                        add(r);
+                }
+            } else if ( type == EventConstants.DELETE ) {
+                for ( int r=start; r<=end; ++r )
+                    remove(r);
+            }
+        } else if ( type == EventConstants.UPDATE ) {
+            if ( col != m_col ) return;
+            for ( int r=start; r<=end; ++r ) {
+                remove(r);
+                if ( m_table.isValidRow(r) )
+                    add(r);
+            }
+        } else {
+            // a column was added or removed, column numbers may have changed
+            m_col = m_table.getColumnNumber(m_field);
+            if ( m_col < 0 || m_table.getColumn(m_col) != m_column )
+                rebuild();
+        }
+    }
+
+} // end of class ColumnStatistics
@@ -45,7 +45,8 @@ import prefux.util.TimeLib;
 public class DateColumn extends AbstractColumn {
 
     private long[] m_values;
-    private int    m_size;
+    /** Set after m_values, so threads seeing a new size see its array */
+    private volatile int m_size;
     
     /**
      * Create a new empty DateColumn. 
@@ -43,7 +43,8 @@ import prefux.data.DataTypeException;
 public class DoubleColumn extends AbstractColumn {
 
     private double[] m_values;
-    private int      m_size;
+    /** Set after m_values, so threads seeing a new size see its array */
+    private volatile int m_size;
     
     /**
      * Create a new empty DoubleColumn. 
@@ -224,4 +225,22 @@ public class DoubleColumn extends AbstractColumn {
         setDouble(val, row);
     }
     
+    /**
+     * @see prefux.data.column.Column#getDoubles(int[], int, double[])
+     */
+    public void getDoubles(int[] rows, int n, double[] values)
+        throws DataTypeException
+    {
+        int size = m_size; // read before m_values, see setMaximumRow
+        double[] v = m_values;
+        for ( int i=0; i<n; ++i ) {
+            int row = rows[i];
+            if ( row < 0 || row > size ) {
+                throw new IllegalArgumentException(
+                    "Row index out of bounds: "+row);
+            }
+            values[i] = v[row];
+        }
+    }
+
 } // end of class DoubleColumn
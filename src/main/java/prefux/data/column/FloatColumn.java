@@ -43,7 +43,8 @@ import prefux.data.DataTypeException;
 public class FloatColumn extends AbstractColumn {
 
     private float[] m_values;
-    private int     m_size;
+    /** Set after m_values, so threads seeing a new size see its array */
+    private volatile int m_size;
     
     /**
      * Create a new empty FloatColumn. 
@@ -202,5 +203,23 @@ public class FloatColumn extends AbstractColumn {
     public double getDouble(int row) throws DataTypeException {
         return getFloat(row);
     }
+    
+    /**
+     * @see prefux.data.column.Column#getFloats(int[], int, float[])
+     */
+    public void getFloats(int[] rows, int n, float[] values)
+        throws DataTypeException
+    {
+        int size = m_size; // read before m_values, see setMaximumRow
+        float[] v = m_values;
+        for ( int i=0; i<n; ++i ) {
+            int row = rows[i];
+            if ( row < 0 || row > size ) {
+                throw new IllegalArgumentException(
+                    "Row index out of bounds: "+row);
+            }
+            values[i] = v[row];
+        }
+    }
 
 } // end of class FloatColumn
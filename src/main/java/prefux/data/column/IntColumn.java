@@ -43,7 +43,8 @@ import prefux.data.DataTypeException;
 public class IntColumn extends AbstractColumn {
 
     private int[] m_values;
-    private int   m_size;
+    /** Set after m_values, so threads seeing a new size see its array */
+    private volatile int m_size;
     
     /**
      * Create a new empty IntColumn. 
@@ -201,6 +202,24 @@ public class IntColumn extends AbstractColumn {
      */
     public double getDouble(int row) throws DataTypeException {
         return getInt(row);
-    }    
+    }
+    
+    /**
+     * @see prefux.data.column.Column#getInts(int[], int, int[])
+     */
+    public void getInts(int[] rows, int n, int[] values)
+        throws DataTypeException
+    {
+        int size = m_size; // read before m_values, see setMaximumRow
+        int[] v = m_values;
+        for ( int i=0; i<n; ++i ) {
+            int row = rows[i];
+            if ( row < 0 || row > size ) {
+                throw new IllegalArgumentException(
+                    "Row index out of bounds: "+row);
+            }
+            values[i] = v[row];
+        }
+    }
 
 } // end of class IntColumn
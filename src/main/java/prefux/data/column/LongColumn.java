@@ -43,7 +43,8 @@ import prefux.data.DataTypeException;
 public class LongColumn extends AbstractColumn {
 
     private long[] m_values;
-    private int    m_size;
+    /** Set after m_values, so threads seeing a new size see its array */
+    private volatile int m_size;
     
     /**
      * Create a new empty LongColumn. 
@@ -203,4 +204,22 @@ public class LongColumn extends AbstractColumn {
         return getLong(row);
     }
     
+    /**
+     * @see prefux.data.column.Column#getLongs(int[], int, long[])
+     */
+    public void getLongs(int[] rows, int n, long[] values)
+        throws DataTypeException
+    {
+        int size = m_size; // read before m_values, see setMaximumRow
+        long[] v = m_values;
+        for ( int i=0; i<n; ++i ) {
+            int row = rows[i];
+            if ( row < 0 || row > size ) {
+                throw new IllegalArgumentException(
+                    "Row index out of bounds: "+row);
+            }
+            values[i] = v[row];
+        }
+    }
+
 } // end of class LongColumn
@@ -45,7 +45,8 @@ import prefux.data.DataTypeException;
 public class ObjectColumn extends AbstractColumn {
 
     private Object[] m_values;
-    private int      m_size;
+    /** Set after m_values, so threads seeing a new size see its array */
+    private volatile int m_size;
     
     /**
      * Create a new empty ObjectColumn. The type is assumed to be Object.
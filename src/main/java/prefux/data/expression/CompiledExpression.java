@@ -0,0 +1,278 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.data.expression;
+
+import prefux.data.Schema;
+import prefux.data.Table;
+import prefux.data.Tuple;
+
+/**
+ * <p>Base class for expressions generated by the {@link ExpressionCompiler}.
+ * A compiled expression evaluates the same result as its source expression,
+ * but reads the data values of table tuples directly by column number and
+ * avoids walking the expression tree and boxing intermediate values.</p>
+ *
+ * <p>The generated code assumes the column layout of the schema it was
+ * compiled against. Before a tuple is evaluated, the referenced columns of
+ * its table are checked against that schema, which is cheap as long as the
+ * table's schema does not change. Tuples not backed by a table row, tuples of
+ * tables with a different column layout, and expressions whose source has
+ * been modified after compilation are evaluated by the source expression
+ * instead.</p>
+ *
+ * @see ExpressionCompiler
+ */
+public abstract class CompiledExpression extends AbstractExpression
+    implements Predicate
+{
+    private final Expression m_source;
+
+    // referenced fields, with their column index and type when compiled
+    private final String[] m_fields;
+    private final int[]    m_cols;
+    private final Class[]  m_types;
+
+    /** Objects referenced by the generated code, such as literal values. */
+    protected final Object[] m_consts;
+
+    private volatile Schema  m_bound = null;
+    private volatile boolean m_stale = false;
+
+    /**
+     * Create a new CompiledExpression.
+     * @param source the source expression
+     * @param schema the schema the expression was compiled against
+     * @param consts objects referenced by the generated code
+     * @param fields the data fields referenced by the source expression
+     */
+    protected CompiledExpression(Expression source, Schema schema,
+                                 Object[] consts, String[] fields)
+    {
+        m_source = source;
+        m_consts = consts;
+        m_fields = fields;
+        m_cols = new int[fields.length];
+        m_types = new Class[fields.length];
+        for ( int i=0; i<fields.length; ++i ) {
+            m_cols[i] = schema.getColumnIndex(fields[i]);
+            m_types[i] = schema.getColumnType(fields[i]);
+        }
+        m_source.addExpressionListener(this);
+    }
+
+    /**
+     * Get the expression this expression was compiled from.
+     * @return the source expression
+     */
+    public Expression getSourceExpression() {
+        return m_source;
+    }
+
+    /**
+     * Indicates if the source expression has changed since compilation.
+     * A stale expression delegates all evaluation to the source expression,
+     * and should be recompiled.
+     * @return true if the source expression has changed
+     */
+    public boolean isStale() {
+        return m_stale;
+    }
+
+    /**
+     * Checks if the generated code can evaluate the given tuple.
+     * @param t the tuple to evaluate
+     * @return the tuple's table, or null if the source expression
+     * should evaluate the tuple
+     */
+    private Table bind(Tuple t) {
+        if ( m_stale || t.getRow() < 0 )
+            return null;
+        Table table = t.getTable();
+        if ( table == null )
+            return null;
+        Schema s = table.getSchema();
+        if ( s != m_bound ) {
+            for ( int i=0; i<m_fields.length; ++i ) {
+                if ( s.getColumnIndex(m_fields[i]) != m_cols[i] ||
+                     s.getColumnType(m_fields[i]) != m_types[i] )
+                    return null;
+            }
+            m_bound = s;
+        }
+        return table;
+    }
+
+    // ------------------------------------------------------------------------
+    // Expression Interface
+
+    /**
+     * @see prefux.data.expression.Expression#getType(prefux.data.Schema)
+     */
+    public Class getType(Schema s) {
+        return m_source.getType(s);
+    }
+
+    /**
+     * @see prefux.data.expression.Expression#get(prefux.data.Tuple)
+     */
+    public Object get(Tuple t) {
+        Table table = bind(t);
+        return ( table == null ? m_source.get(t)
+                               : evalObject(t, table, t.getRow()) );
+    }
+
+    /**
+     * @see prefux.data.expression.Expression#getInt(prefux.data.Tuple)
+     */
+    public int getInt(Tuple t) {
+        Table table = bind(t);
+        return ( table == null ? m_source.getInt(t)
+                               : evalInt(t, table, t.getRow()) );
+    }
+
+    /**
+     * @see prefux.data.expression.Expression#getLong(prefux.data.Tuple)
+     */
+    public long getLong(Tuple t) {
+        Table table = bind(t);
+        return ( table == null ? m_source.getLong(t)
+                               : evalLong(t, table, t.getRow()) );
+    }
+
+    /**
+     * @see prefux.data.expression.Expression#getFloat(prefux.data.Tuple)
+     */
+    public float getFloat(Tuple t) {
+        Table table = bind(t);
+        return ( table == null ? m_source.getFloat(t)
+                               : evalFloat(t, table, t.getRow()) );
+    }
+
+    /**
+     * @see prefux.data.expression.Expression#getDouble(prefux.data.Tuple)
+     */
+    public double getDouble(Tuple t) {
+        Table table = bind(t);
+        return ( table == null ? m_source.getDouble(t)
+                               : evalDouble(t, table, t.getRow()) );
+    }
+
+    /**
+     * @see prefux.data.expression.Expression#getBoolean(prefux.data.Tuple)
+     */
+    public boolean getBoolean(Tuple t) {
+        Table table = bind(t);
+        return ( table == null ? m_source.getBoolean(t)
+                               : evalBoolean(t, table, t.getRow()) );
+    }
+
+    /**
+     * Visits the source expression.
+     * @see prefux.data.expression.Expression#visit(prefux.data.expression.ExpressionVisitor)
+     */
+    public void visit(ExpressionVisitor v) {
+        m_source.visit(v);
+    }
+
+    /**
+     * Marks this expression as stale and notifies listeners.
+     * @see prefux.data.event.ExpressionListener#expressionChanged(prefux.data.expression.Expression)
+     */
+    public void expressionChanged(Expression expr) {
+        m_stale = true;
+        fireExpressionChange();
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return m_source.toString();
+    }
+
+    // ------------------------------------------------------------------------
+    // Generated Code
+
+    /**
+     * Evaluate the expression as an Object.
+     * @param t the tuple to evaluate
+     * @param table the tuple's table
+     * @param row the tuple's row
+     * @return the result
+     */
+    protected abstract Object evalObject(Tuple t, Table table, int row);
+
+    /**
+     * Evaluate the expression as an int.
+     * @param t the tuple to evaluate
+     * @param table the tuple's table
+     * @param row the tuple's row
+     * @return the result
+     */
+    protected abstract int evalInt(Tuple t, Table table, int row);
+
+    /**
+     * Evaluate the expression as a long.
+     * @param t the tuple to evaluate
+     * @param table the tuple's table
+     * @param row the tuple's row
+     * @return the result
+     */
+    protected abstract long evalLong(Tuple t, Table table, int row);
+
+    /**
+     * Evaluate the expression as a float.
+     * @param t the tuple to evaluate
+     * @param table the tuple's table
+     * @param row the tuple's row
+     * @return the result
+     */
+    protected abstract float evalFloat(Tuple t, Table table, int row);
+
+    /**
+     * Evaluate the expression as a double.
+     * @param t the tuple to evaluate
+     * @param table the tuple's table
+     * @param row the tuple's row
+     * @return the result
+     */
+    protected abstract double evalDouble(Tuple t, Table table, int row);
+
+    /**
+     * Evaluate the expression as a boolean.
+     * @param t the tuple to evaluate
+     * @param table the tuple's table
+     * @param row the tuple's row
+     * @return the result
+     */
+    protected abstract boolean evalBoolean(Tuple t, Table table, int row);
+
+} // end of abstract class CompiledExpression
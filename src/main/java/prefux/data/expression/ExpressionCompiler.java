@@ -0,0 +1,1154 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.data.expression;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Set;
+
+import prefux.data.Schema;
+import prefux.data.Table;
+import prefux.data.Tuple;
+import prefux.util.TypeLib;
+import prefux.util.collections.DefaultLiteralComparator;
+
+/**
+ * <p>Compiles expressions into Java bytecode. The compiler translates an
+ * expression tree into a generated subclass of {@link CompiledExpression},
+ * whose methods evaluate the whole tree in straight-line code. Data fields
+ * are read from the tuple's table by column number, using the column layout
+ * of the schema given at compile time, and numeric values are computed on
+ * primitive types without boxing. Sub-expressions that do not depend on a
+ * data field are evaluated once at compile time.</p>
+ *
+ * <p>Column references, literals, arithmetic expressions, comparison and
+ * range predicates using the default comparator, the boolean predicates and
+ * if-expressions are translated. Any other node, such as a function call, is
+ * evaluated by calling the interpreted expression from the generated code.
+ * The compiled expression produces the same results as the source
+ * expression, and can be used wherever the source expression is used, for
+ * example as the filter predicate of a table query:</p>
+ *
+ * <pre>
+ * Predicate p = (Predicate)ExpressionParser.parse("[age] &gt;= 18 AND [score]*2 &lt; 100");
+ * Predicate c = ExpressionCompiler.compile(p, table.getSchema());
+ * IntIterator rows = table.rows(c);
+ * </pre>
+ *
+ * <p>Compiled expressions only see the source expression's structure at the
+ * time of compilation. If the source expression is modified afterwards, the
+ * compiled expression falls back to evaluating the source expression until
+ * it is recompiled.</p>
+ *
+ * @see CompiledExpression
+ */
+public class ExpressionCompiler {
+
+    // evaluation kinds
+    private static final int BOOLEAN = 0;
+    private static final int INT     = 1;
+    private static final int LONG    = 2;
+    private static final int FLOAT   = 3;
+    private static final int DOUBLE  = 4;
+    private static final int OBJECT  = 5;
+
+    private static final String[] ACCESSOR = {
+        "getBoolean", "getInt", "getLong", "getFloat", "getDouble", "get" };
+    private static final String[] EVAL = {
+        "evalBoolean", "evalInt", "evalLong", "evalFloat", "evalDouble",
+        "evalObject" };
+    private static final String[] DESC = {
+        "Z", "I", "J", "F", "D", "Ljava/lang/Object;" };
+    private static final int[] SIZE = { 1, 1, 2, 1, 2, 1 };
+
+    private static final String EXPRESSION = "prefux/data/expression/Expression";
+    private static final String COMPILED = "prefux/data/expression/CompiledExpression";
+    private static final String GENERATED = "prefux/data/expression/GeneratedExpression";
+    private static final String TABLE = "prefux/data/Table";
+    private static final String TUPLE = "prefux/data/Tuple";
+    private static final String SCHEMA = "prefux/data/Schema";
+    private static final String COMPARATOR = "java/util/Comparator";
+
+    // local variables of the generated evaluation methods
+    private static final int THIS  = 0;
+    private static final int TUPLE_VAR = 1;
+    private static final int TABLE_VAR = 2;
+    private static final int ROW_VAR = 3;
+
+    // branches use 16 bit offsets, larger methods evaluate the source
+    private static final int MAX_CODE = 32767;
+
+    private static final Object NONE = new Object();
+
+    private static int s_count = 0;
+
+    private final Schema m_schema;
+    private final ConstantPool m_pool = new ConstantPool();
+    private final ArrayList<Object> m_consts = new ArrayList<Object>();
+    private Tuple m_scratch = null;
+    private Code m_code = null;
+
+    /**
+     * Compile an expression against the given schema.
+     * @param expr the expression to compile. If the expression is itself a
+     * compiled expression, its source expression is compiled again.
+     * @param schema the schema of the tuples the expression will evaluate
+     * @return the compiled expression
+     */
+    public static CompiledExpression compile(Expression expr, Schema schema) {
+        if ( expr == null || schema == null )
+            throw new IllegalArgumentException(
+                "Expression and schema must be non-null.");
+        if ( expr instanceof CompiledExpression )
+            expr = ((CompiledExpression)expr).getSourceExpression();
+        return new ExpressionCompiler(schema).generate(expr);
+    }
+
+    private ExpressionCompiler(Schema schema) {
+        m_schema = schema;
+    }
+
+    private static synchronized int nextId() {
+        return ++s_count;
+    }
+
+    // ------------------------------------------------------------------------
+    // Class Generation
+
+    private CompiledExpression generate(Expression expr) {
+        String name = GENERATED + nextId();
+        String ctorDesc = "(L"+EXPRESSION+";L"+SCHEMA
+            + ";[Ljava/lang/Object;[Ljava/lang/String;)V";
+
+        // constructor, passing all arguments to the super class
+        Code init = new Code(5);
+        init.op(0x2a, 1); // aload_0
+        init.op(0x2b, 1); // aload_1
+        init.op(0x2c, 1); // aload_2
+        init.op(0x2d, 1); // aload_3
+        init.load(OBJECT, 4);
+        init.invoke(0xb7, m_pool.method(COMPILED, "<init>", ctorDesc), -5);
+        init.op(0xb1, 0); // return
+
+        // evaluation methods
+        Code[] eval = new Code[EVAL.length];
+        for ( int kind=0; kind<EVAL.length; ++kind ) {
+            m_code = new Code(4);
+            emit(expr, kind);
+            if ( m_code.length() > MAX_CODE ) {
+                m_code = new Code(4);
+                emitInterpreted(expr, kind);
+            }
+            m_code.op(returnOp(kind), -SIZE[kind]);
+            eval[kind] = m_code;
+        }
+
+        // class file
+        int thisClass = m_pool.cls(name);
+        int superClass = m_pool.cls(COMPILED);
+        int codeAttr = m_pool.utf8("Code");
+        int[] names = new int[EVAL.length+1];
+        int[] descs = new int[EVAL.length+1];
+        names[0] = m_pool.utf8("<init>");
+        descs[0] = m_pool.utf8(ctorDesc);
+        for ( int kind=0; kind<EVAL.length; ++kind ) {
+            names[kind+1] = m_pool.utf8(EVAL[kind]);
+            descs[kind+1] = m_pool.utf8(
+                "(L"+TUPLE+";L"+TABLE+";I)"+DESC[kind]);
+        }
+
+        Bytes cf = new Bytes();
+        cf.u4(0xCAFEBABE);
+        cf.u2(0);
+        cf.u2(49); // no stack map frames needed
+        cf.u2(m_pool.count());
+        cf.put(m_pool.m_bytes);
+        cf.u2(0x0031); // public final super
+        cf.u2(thisClass);
+        cf.u2(superClass);
+        cf.u2(0); // interfaces
+        cf.u2(0); // fields
+        cf.u2(names.length);
+        for ( int i=0; i<names.length; ++i ) {
+            Code c = ( i==0 ? init : eval[i-1] );
+            cf.u2(i==0 ? 0x0001 : 0x0014); // public, protected final
+            cf.u2(names[i]);
+            cf.u2(descs[i]);
+            cf.u2(1);
+            cf.u2(codeAttr);
+            cf.u4(12 + c.length());
+            cf.u2(c.m_maxStack);
+            cf.u2(c.m_maxLocals);
+            cf.u4(c.length());
+            cf.put(c);
+            cf.u2(0); // exception table
+            cf.u2(0); // attributes
+        }
+        cf.u2(0); // attributes
+
+        // define and instantiate the class
+        Set fieldSet = ExpressionAnalyzer.getReferencedColumns(expr);
+        String[] fields = (String[])fieldSet.toArray(new String[fieldSet.size()]);
+        try {
+            Class cls = new Loader().define(name.replace('/', '.'),
+                                            cf.toByteArray());
+            Constructor ctor = cls.getConstructor(new Class[] {
+                Expression.class, Schema.class, Object[].class, String[].class
+            });
+            return (CompiledExpression)ctor.newInstance(new Object[] {
+                expr, m_schema, m_consts.toArray(), fields
+            });
+        } catch ( Exception e ) {
+            throw new IllegalStateException(
+                "Could not compile expression: "+expr, e);
+        }
+    }
+
+    private static int returnOp(int kind) {
+        switch ( kind ) {
+        case LONG:   return 0xad; // lreturn
+        case FLOAT:  return 0xae; // freturn
+        case DOUBLE: return 0xaf; // dreturn
+        case OBJECT: return 0xb0; // areturn
+        default:     return 0xac; // ireturn
+        }
+    }
+
+    /**
+     * Defines a single generated class. Each class gets its own loader, so
+     * that it can be unloaded once the compiled expression is unreachable.
+     */
+    private static final class Loader extends ClassLoader {
+        Loader() {
+            super(CompiledExpression.class.getClassLoader());
+        }
+        Class define(String name, byte[] b) {
+            return defineClass(name, b, 0, b.length);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Expression Translation
+
+    /**
+     * Emit code leaving the value of the expression, evaluated as the given
+     * kind, on the operand stack.
+     */
+    private void emit(Expression e, int kind) {
+        if ( isConstant(e) ) {
+            Object v = fold(e, kind);
+            if ( v != NONE ) {
+                pushConstant(v, kind);
+                return;
+            }
+        }
+        boolean done = false;
+        if ( e instanceof ColumnExpression ) {
+            done = isPlain(e, ColumnExpression.class)
+                && emitColumn((ColumnExpression)e, kind);
+        } else if ( e instanceof ArithmeticExpression ) {
+            done = isPlain(e, ArithmeticExpression.class)
+                && emitArithmetic((ArithmeticExpression)e, kind);
+        } else if ( e instanceof ComparisonPredicate ) {
+            done = isPlain(e, ComparisonPredicate.class)
+                && emitComparison((ComparisonPredicate)e, kind);
+        } else if ( e instanceof RangePredicate ) {
+            done = isPlain(e, RangePredicate.class)
+                && emitRange((RangePredicate)e, kind);
+        } else if ( e instanceof AndPredicate ) {
+            done = isPlain(e, AndPredicate.class)
+                && emitJunction((CompositePredicate)e, true, kind);
+        } else if ( e instanceof OrPredicate ) {
+            done = isPlain(e, OrPredicate.class)
+                && emitJunction((CompositePredicate)e, false, kind);
+        } else if ( e instanceof XorPredicate ) {
+            done = isPlain(e, XorPredicate.class)
+                && emitXor((XorPredicate)e, kind);
+        } else if ( e instanceof NotPredicate ) {
+            done = isPlain(e, NotPredicate.class)
+                && emitNot((NotPredicate)e, kind);
+        } else if ( e instanceof IfExpression ) {
+            done = isPlain(e, IfExpression.class)
+                && emitIf((IfExpression)e, kind);
+        }
+        if ( !done )
+            emitInterpreted(e, kind);
+    }
+
+    /**
+     * Emit a call to the interpreted expression.
+     */
+    private void emitInterpreted(Expression e, int kind) {
+        pushObject(e);
+        m_code.op2(0xc0, m_pool.cls(EXPRESSION), 0); // checkcast
+        m_code.load(OBJECT, TUPLE_VAR);
+        m_code.invokeInterface(m_pool.imethod(EXPRESSION, ACCESSOR[kind],
+            "(L"+TUPLE+";)"+DESC[kind]), 2, SIZE[kind]-2);
+    }
+
+    private boolean emitColumn(ColumnExpression e, int kind) {
+        int col = m_schema.getColumnIndex(e.getColumnName());
+        if ( col < 0 )
+            return false;
+        m_code.load(OBJECT, TABLE_VAR);
+        m_code.load(INT, ROW_VAR);
+        pushInt(col);
+        m_code.invoke(0xb6, m_pool.method(TABLE, ACCESSOR[kind],
+            "(II)"+DESC[kind]), SIZE[kind]-3);
+        return true;
+    }
+
+    private boolean emitArithmetic(ArithmeticExpression e, int kind) {
+        if ( kind == BOOLEAN ) {
+            return false;
+        } else if ( kind == OBJECT ) {
+            Class type = typeOf(e);
+            if ( type == int.class || type == byte.class ) {
+                emitArithmetic(e, INT);
+                box(INT);
+            } else if ( type == long.class ) {
+                // the interpreter computes long results as int values
+                emitArithmetic(e, INT);
+                m_code.op(0x85, 1); // i2l
+                box(LONG);
+            } else if ( type == float.class ) {
+                emitArithmetic(e, FLOAT);
+                box(FLOAT);
+            } else if ( type == double.class ) {
+                emitArithmetic(e, DOUBLE);
+                box(DOUBLE);
+            } else {
+                return false;
+            }
+            return true;
+        }
+
+        int op = e.getOperation();
+        boolean viaDouble = ( op == ArithmeticExpression.POW ||
+            (op == ArithmeticExpression.MOD && kind >= FLOAT) );
+        emit(e.getLeftExpression(), kind);
+        if ( viaDouble ) toDouble(kind);
+        emit(e.getRightExpression(), kind);
+        if ( viaDouble ) toDouble(kind);
+
+        if ( viaDouble ) {
+            String m = ( op == ArithmeticExpression.POW
+                         ? "pow" : "IEEEremainder" );
+            m_code.invoke(0xb8, m_pool.method("java/lang/Math", m,
+                "(DD)D"), -2);
+            switch ( kind ) {
+            case INT:   m_code.op(0x8e, -1); break; // d2i
+            case LONG:  m_code.op(0x8f, 0);  break; // d2l
+            case FLOAT: m_code.op(0x90, -1); break; // d2f
+            }
+            return true;
+        }
+
+        int base;
+        switch ( op ) {
+        case ArithmeticExpression.ADD: base = 0x60; break; // iadd
+        case ArithmeticExpression.SUB: base = 0x64; break; // isub
+        case ArithmeticExpression.MUL: base = 0x68; break; // imul
+        case ArithmeticExpression.DIV: base = 0x6c; break; // idiv
+        case ArithmeticExpression.MOD: base = 0x70; break; // irem
+        default: throw new IllegalStateException("Unknown operation type.");
+        }
+        // the typed variants follow the int instruction: i, l, f, d
+        m_code.op(base + kind - INT, -SIZE[kind]);
+        return true;
+    }
+
+    private boolean emitComparison(ComparisonPredicate e, int kind) {
+        if ( kind != BOOLEAN && kind != OBJECT )
+            return false;
+        if ( e.getComparator() != DefaultLiteralComparator.getInstance() )
+            return false;
+        Expression l = e.getLeftExpression();
+        Expression r = e.getRightExpression();
+        Class lType = typeOf(l), rType = typeOf(r);
+        if ( lType == Void.class || rType == Void.class )
+            return false;
+
+        if ( lType == null || rType == null ) {
+            pushInt(0);
+        } else {
+            emitCompare(e.getComparator(), lType, rType, l, r);
+            // match the results the interpreter tests for
+            switch ( e.getOperation() ) {
+            case ComparisonPredicate.LT:
+                pushInt(-1);
+                pushBoolean(0xa0); // if_icmpne
+                break;
+            case ComparisonPredicate.GT:
+                pushInt(1);
+                pushBoolean(0xa0); // if_icmpne
+                break;
+            case ComparisonPredicate.EQ:
+                pushBoolean(0x9a); // ifne
+                break;
+            case ComparisonPredicate.NEQ:
+                pushBoolean(0x99); // ifeq
+                break;
+            case ComparisonPredicate.LTEQ:
+                pushBoolean(0x9d); // ifgt
+                break;
+            case ComparisonPredicate.GTEQ:
+                pushBoolean(0x9b); // iflt
+                break;
+            }
+        }
+        if ( kind == OBJECT ) box(BOOLEAN);
+        return true;
+    }
+
+    private boolean emitRange(RangePredicate e, int kind) {
+        if ( kind != BOOLEAN && kind != OBJECT )
+            return false;
+        if ( e.getComparator() != DefaultLiteralComparator.getInstance() )
+            return false;
+        Expression l = e.getLeftExpression();
+        Expression r = e.getRightExpression();
+        Expression m = e.getMiddleExpression();
+        Class lType = typeOf(l), rType = typeOf(r), mType = typeOf(m);
+        if ( lType == null || rType == null || mType == null ||
+             lType == Void.class || rType == Void.class || mType == Void.class )
+            return false;
+
+        Class sType = null;
+        if ( lType.isAssignableFrom(rType) ) {
+            sType = lType;
+        } else if ( rType.isAssignableFrom(lType) ) {
+            sType = rType;
+        }
+        int k = OBJECT;
+        if ( sType != null && TypeLib.isNumericType(sType) &&
+             TypeLib.isNumericType(mType) )
+        {
+            k = kindOf(TypeLib.getNumericType(sType, mType));
+        }
+
+        // evaluate the end points and the value, then compare
+        int lo = m_code.newLocal(SIZE[k]);
+        int hi = m_code.newLocal(SIZE[k]);
+        int x = m_code.newLocal(SIZE[k]);
+        int c1 = m_code.newLocal(1);
+        int c2 = m_code.newLocal(1);
+        emit(l, k); m_code.store(k, lo);
+        emit(r, k); m_code.store(k, hi);
+        emit(m, k); m_code.store(k, x);
+        emitCompare(e.getComparator(), k, x, lo);
+        m_code.store(INT, c1);
+        emitCompare(e.getComparator(), k, x, hi);
+        m_code.store(INT, c2);
+
+        int j1, j2;
+        switch ( e.getOperation() ) {
+        case RangePredicate.IN_IN: j1 = 0x9b; j2 = 0x9d; break; // iflt, ifgt
+        case RangePredicate.IN_EX: j1 = 0x9b; j2 = 0x9c; break; // iflt, ifge
+        case RangePredicate.EX_IN: j1 = 0x9e; j2 = 0x9d; break; // ifle, ifgt
+        default:                   j1 = 0x9e; j2 = 0x9c; break; // ifle, ifge
+        }
+        Label no = new Label(), end = new Label();
+        m_code.load(INT, c1);
+        m_code.jump(j1, no);
+        m_code.load(INT, c2);
+        m_code.jump(j2, no);
+        pushInt(1);
+        m_code.jump(0xa7, end);
+        m_code.mark(no);
+        pushInt(0);
+        m_code.mark(end);
+
+        if ( kind == OBJECT ) box(BOOLEAN);
+        return true;
+    }
+
+    private boolean emitJunction(CompositePredicate e, boolean and, int kind) {
+        if ( kind != BOOLEAN && kind != OBJECT )
+            return false;
+        if ( e.size() == 0 ) {
+            pushInt(0);
+            if ( kind == OBJECT ) box(BOOLEAN);
+            return true;
+        }
+
+        // drop constant clauses that do not decide the result
+        ArrayList<Predicate> clauses = new ArrayList<Predicate>();
+        for ( int i=0; i<e.size(); ++i ) {
+            Predicate p = e.get(i);
+            Object v = isConstant(p) ? fold(p, BOOLEAN) : NONE;
+            if ( v == NONE ) {
+                clauses.add(p);
+            } else if ( ((Boolean)v).booleanValue() != and ) {
+                clauses = null;
+                break;
+            }
+        }
+
+        if ( clauses == null || clauses.isEmpty() ) {
+            // a constant clause decided the result, or all were neutral
+            boolean value = ( clauses == null ? !and : and );
+            pushInt(value ? 1 : 0);
+        } else {
+            Label decided = new Label(), end = new Label();
+            for ( int i=0; i<clauses.size(); ++i ) {
+                emit(clauses.get(i), BOOLEAN);
+                m_code.jump(and ? 0x99 : 0x9a, decided); // ifeq : ifne
+            }
+            pushInt(and ? 1 : 0);
+            m_code.jump(0xa7, end);
+            m_code.mark(decided);
+            pushInt(and ? 0 : 1);
+            m_code.mark(end);
+        }
+        if ( kind == OBJECT ) box(BOOLEAN);
+        return true;
+    }
+
+    private boolean emitXor(XorPredicate e, int kind) {
+        if ( kind != BOOLEAN && kind != OBJECT )
+            return false;
+        boolean parity = false, first = true;
+        for ( int i=0; i<e.size(); ++i ) {
+            Predicate p = e.get(i);
+            Object v = isConstant(p) ? fold(p, BOOLEAN) : NONE;
+            if ( v != NONE ) {
+                parity ^= ((Boolean)v).booleanValue();
+            } else {
+                emit(p, BOOLEAN);
+                if ( !first ) m_code.op(0x82, -1); // ixor
+                first = false;
+            }
+        }
+        if ( first ) {
+            pushInt(parity ? 1 : 0);
+        } else if ( parity ) {
+            pushInt(1);
+            m_code.op(0x82, -1); // ixor
+        }
+        if ( kind == OBJECT ) box(BOOLEAN);
+        return true;
+    }
+
+    private boolean emitNot(NotPredicate e, int kind) {
+        if ( kind != BOOLEAN && kind != OBJECT )
+            return false;
+        emit(e.getPredicate(), BOOLEAN);
+        pushInt(1);
+        m_code.op(0x82, -1); // ixor
+        if ( kind == OBJECT ) box(BOOLEAN);
+        return true;
+    }
+
+    private boolean emitIf(IfExpression e, int kind) {
+        Predicate test = e.getTestPredicate();
+        Object v = isConstant(test) ? fold(test, BOOLEAN) : NONE;
+        if ( v != NONE ) {
+            emit(((Boolean)v).booleanValue() ? e.getThenExpression()
+                                             : e.getElseExpression(), kind);
+            return true;
+        }
+        Label no = new Label(), end = new Label();
+        emit(test, BOOLEAN);
+        m_code.jump(0x99, no); // ifeq
+        emit(e.getThenExpression(), kind);
+        m_code.jump(0xa7, end);
+        m_code.mark(no);
+        emit(e.getElseExpression(), kind);
+        m_code.mark(end);
+        return true;
+    }
+
+    /**
+     * Emit code comparing two expressions as the interpreter does, leaving
+     * the comparison result on the operand stack.
+     */
+    private void emitCompare(Object cmp, Class lType, Class rType,
+                             Expression l, Expression r)
+    {
+        int k = OBJECT;
+        if ( TypeLib.isNumericType(lType) && TypeLib.isNumericType(rType) )
+            k = kindOf(TypeLib.getNumericType(lType, rType));
+        if ( k == OBJECT ) {
+            pushObject(cmp);
+            m_code.op2(0xc0, m_pool.cls(COMPARATOR), 0); // checkcast
+        }
+        emit(l, k);
+        emit(r, k);
+        compare(k);
+    }
+
+    /**
+     * Emit code comparing two local variables of the given kind, leaving
+     * the comparison result on the operand stack.
+     */
+    private void emitCompare(Object cmp, int kind, int x, int y) {
+        if ( kind == OBJECT ) {
+            pushObject(cmp);
+            m_code.op2(0xc0, m_pool.cls(COMPARATOR), 0); // checkcast
+        }
+        m_code.load(kind, x);
+        m_code.load(kind, y);
+        compare(kind);
+    }
+
+    /**
+     * Compare the two topmost values. The numeric comparisons return -1, 0
+     * or 1, exactly like the {@link DefaultLiteralComparator}.
+     */
+    private void compare(int kind) {
+        switch ( kind ) {
+        case INT:
+            m_code.invoke(0xb8, m_pool.method("java/lang/Integer",
+                "compare", "(II)I"), -1);
+            break;
+        case LONG:
+            m_code.invoke(0xb8, m_pool.method("java/lang/Long",
+                "compare", "(JJ)I"), -3);
+            break;
+        case FLOAT:
+            m_code.invoke(0xb8, m_pool.method("java/lang/Float",
+                "compare", "(FF)I"), -1);
+            break;
+        case DOUBLE:
+            m_code.invoke(0xb8, m_pool.method("java/lang/Double",
+                "compare", "(DD)I"), -3);
+            break;
+        default:
+            m_code.invokeInterface(m_pool.imethod(COMPARATOR, "compare",
+                "(Ljava/lang/Object;Ljava/lang/Object;)I"), 3, -2);
+        }
+    }
+
+    /**
+     * Replace the topmost int with a boolean, which is false if the given
+     * branch instruction jumps and true otherwise.
+     */
+    private void pushBoolean(int jumpIfFalse) {
+        Label no = new Label(), end = new Label();
+        m_code.jump(jumpIfFalse, no);
+        pushInt(1);
+        m_code.jump(0xa7, end);
+        m_code.mark(no);
+        pushInt(0);
+        m_code.mark(end);
+    }
+
+    private void toDouble(int kind) {
+        switch ( kind ) {
+        case INT:   m_code.op(0x87, 1); break; // i2d
+        case LONG:  m_code.op(0x8a, 0); break; // l2d
+        case FLOAT: m_code.op(0x8d, 1); break; // f2d
+        }
+    }
+
+    private void box(int kind) {
+        String cls, desc;
+        switch ( kind ) {
+        case BOOLEAN: cls = "java/lang/Boolean"; desc = "Z"; break;
+        case INT:     cls = "java/lang/Integer"; desc = "I"; break;
+        case LONG:    cls = "java/lang/Long";    desc = "J"; break;
+        case FLOAT:   cls = "java/lang/Float";   desc = "F"; break;
+        default:      cls = "java/lang/Double";  desc = "D"; break;
+        }
+        m_code.invoke(0xb8, m_pool.method(cls, "valueOf",
+            "("+desc+")L"+cls+";"), 1-SIZE[kind]);
+    }
+
+    // ------------------------------------------------------------------------
+    // Constants
+
+    /**
+     * Indicates if an expression has a constant value. Only expressions
+     * composed of literals and side-effect free operations qualify.
+     */
+    private boolean isConstant(Expression e) {
+        if ( e instanceof NumericLiteral || e instanceof BooleanLiteral ||
+             e instanceof ObjectLiteral )
+        {
+            return true;
+        } else if ( e instanceof ArithmeticExpression ) {
+            ArithmeticExpression a = (ArithmeticExpression)e;
+            return isPlain(e, ArithmeticExpression.class)
+                && isConstant(a.getLeftExpression())
+                && isConstant(a.getRightExpression());
+        } else if ( e instanceof ComparisonPredicate ) {
+            ComparisonPredicate c = (ComparisonPredicate)e;
+            return isPlain(e, ComparisonPredicate.class)
+                && c.getComparator() == DefaultLiteralComparator.getInstance()
+                && isConstant(c.getLeftExpression())
+                && isConstant(c.getRightExpression());
+        } else if ( e instanceof RangePredicate ) {
+            RangePredicate r = (RangePredicate)e;
+            return isPlain(e, RangePredicate.class)
+                && r.getComparator() == DefaultLiteralComparator.getInstance()
+                && isConstant(r.getLeftExpression())
+                && isConstant(r.getMiddleExpression())
+                && isConstant(r.getRightExpression());
+        } else if ( e instanceof AndPredicate || e instanceof OrPredicate ||
+                    e instanceof XorPredicate )
+        {
+            if ( !isPlain(e, e instanceof AndPredicate ? AndPredicate.class :
+                    e instanceof OrPredicate ? OrPredicate.class :
+                    XorPredicate.class) )
+                return false;
+            CompositePredicate c = (CompositePredicate)e;
+            for ( int i=0; i<c.size(); ++i )
+                if ( !isConstant(c.get(i)) ) return false;
+            return true;
+        } else if ( e instanceof NotPredicate ) {
+            return isPlain(e, NotPredicate.class)
+                && isConstant(((NotPredicate)e).getPredicate());
+        } else if ( e instanceof IfExpression ) {
+            IfExpression f = (IfExpression)e;
+            return isPlain(e, IfExpression.class)
+                && isConstant(f.getTestPredicate())
+                && isConstant(f.getThenExpression())
+                && isConstant(f.getElseExpression());
+        }
+        return false;
+    }
+
+    /**
+     * Evaluate a constant expression as the given kind.
+     * @return the value, or NONE if the evaluation fails, in which case
+     * the generated code evaluates the expression at runtime
+     */
+    private Object fold(Expression e, int kind) {
+        try {
+            if ( m_scratch == null ) {
+                // interpreted predicates need a tuple to look up the schema
+                m_scratch = m_schema.instantiate(1).getTuple(0);
+            }
+            switch ( kind ) {
+            case BOOLEAN: return Boolean.valueOf(e.getBoolean(m_scratch));
+            case INT:     return new Integer(e.getInt(m_scratch));
+            case LONG:    return new Long(e.getLong(m_scratch));
+            case FLOAT:   return new Float(e.getFloat(m_scratch));
+            case DOUBLE:  return new Double(e.getDouble(m_scratch));
+            default:      return e.get(m_scratch);
+            }
+        } catch ( RuntimeException ex ) {
+            return NONE;
+        }
+    }
+
+    private void pushConstant(Object v, int kind) {
+        switch ( kind ) {
+        case BOOLEAN:
+            pushInt(((Boolean)v).booleanValue() ? 1 : 0);
+            break;
+        case INT:
+            pushInt(((Integer)v).intValue());
+            break;
+        case LONG:
+            long lv = ((Long)v).longValue();
+            if ( lv == 0L || lv == 1L ) {
+                m_code.op(0x09 + (int)lv, 2); // lconst
+            } else {
+                m_code.op2(0x14, m_pool.longConst(lv), 2); // ldc2_w
+            }
+            break;
+        case FLOAT:
+            float fv = ((Float)v).floatValue();
+            int fbits = Float.floatToIntBits(fv);
+            if ( fbits == 0 || fv == 1f || fv == 2f ) {
+                m_code.op(0x0b + (int)fv, 1); // fconst
+            } else {
+                ldc(m_pool.floatConst(fv));
+            }
+            break;
+        case DOUBLE:
+            double dv = ((Double)v).doubleValue();
+            if ( Double.doubleToLongBits(dv) == 0L || dv == 1d ) {
+                m_code.op(0x0e + (int)dv, 2); // dconst
+            } else {
+                m_code.op2(0x14, m_pool.doubleConst(dv), 2); // ldc2_w
+            }
+            break;
+        default:
+            if ( v == null ) {
+                m_code.op(0x01, 1); // aconst_null
+            } else {
+                pushObject(v);
+            }
+        }
+    }
+
+    private void pushInt(int v) {
+        if ( v >= -1 && v <= 5 ) {
+            m_code.op(0x03 + v, 1); // iconst
+        } else if ( v >= Byte.MIN_VALUE && v <= Byte.MAX_VALUE ) {
+            m_code.op1(0x10, v, 1); // bipush
+        } else if ( v >= Short.MIN_VALUE && v <= Short.MAX_VALUE ) {
+            m_code.op2(0x11, v, 1); // sipush
+        } else {
+            ldc(m_pool.intConst(v));
+        }
+    }
+
+    private void ldc(int index) {
+        if ( index < 256 ) {
+            m_code.op1(0x12, index, 1); // ldc
+        } else {
+            m_code.op2(0x13, index, 1); // ldc_w
+        }
+    }
+
+    /**
+     * Push an object stored in the constants array of the generated class.
+     */
+    private void pushObject(Object o) {
+        int idx = -1;
+        for ( int i=0; i<m_consts.size(); ++i ) {
+            if ( m_consts.get(i) == o ) {
+                idx = i; break;
+            }
+        }
+        if ( idx < 0 ) {
+            idx = m_consts.size();
+            m_consts.add(o);
+        }
+        m_code.load(OBJECT, THIS);
+        m_code.op2(0xb4, m_pool.field(COMPILED, "m_consts",
+            "[Ljava/lang/Object;"), 0); // getfield
+        pushInt(idx);
+        m_code.op(0x32, -1); // aaload
+    }
+
+    // ------------------------------------------------------------------------
+    // Types
+
+    /**
+     * Get the type of an expression for the compile schema.
+     * @return the type, or Void.class if the type can not be determined
+     */
+    private Class typeOf(Expression e) {
+        try {
+            return e.getType(m_schema);
+        } catch ( RuntimeException ex ) {
+            return Void.class;
+        }
+    }
+
+    private static int kindOf(Class type) {
+        if ( type == long.class ) {
+            return LONG;
+        } else if ( type == float.class ) {
+            return FLOAT;
+        } else if ( type == double.class ) {
+            return DOUBLE;
+        } else {
+            return INT;
+        }
+    }
+
+    /**
+     * Indicates if an expression evaluates like the given node class, i.e.
+     * its class does not override any evaluation method of the node class.
+     */
+    private static boolean isPlain(Expression e, Class base) {
+        for ( Class c = e.getClass(); c != base; c = c.getSuperclass() ) {
+            for ( int i=0; i<ACCESSOR.length; ++i ) {
+                try {
+                    c.getDeclaredMethod(ACCESSOR[i], new Class[] {Tuple.class});
+                    return false;
+                } catch ( NoSuchMethodException ex ) {
+                    // not overridden at this level
+                }
+            }
+        }
+        return true;
+    }
+
+    // ------------------------------------------------------------------------
+    // Class File Structures
+
+    /**
+     * A growable byte array with big-endian writes.
+     */
+    private static class Bytes {
+        byte[] m_buf = new byte[128];
+        int    m_len = 0;
+
+        int length() {
+            return m_len;
+        }
+        void u1(int v) {
+            if ( m_len == m_buf.length ) {
+                byte[] b = new byte[2*m_len];
+                System.arraycopy(m_buf, 0, b, 0, m_len);
+                m_buf = b;
+            }
+            m_buf[m_len++] = (byte)v;
+        }
+        void u2(int v) {
+            u1(v >>> 8); u1(v);
+        }
+        void u4(int v) {
+            u2(v >>> 16); u2(v);
+        }
+        void put(Bytes b) {
+            for ( int i=0; i<b.m_len; ++i )
+                u1(b.m_buf[i]);
+        }
+        byte[] toByteArray() {
+            byte[] b = new byte[m_len];
+            System.arraycopy(m_buf, 0, b, 0, m_len);
+            return b;
+        }
+    }
+
+    /**
+     * The constant pool of the generated class. Entries are shared by key.
+     */
+    private static final class ConstantPool {
+        final Bytes m_bytes = new Bytes();
+        private final HashMap<String,Integer> m_index =
+            new HashMap<String,Integer>();
+        private int m_count = 1;
+
+        int count() {
+            return m_count;
+        }
+        private Integer lookup(String key) {
+            return m_index.get(key);
+        }
+        private int add(String key, int slots) {
+            int idx = m_count;
+            m_index.put(key, new Integer(idx));
+            m_count += slots;
+            return idx;
+        }
+        int utf8(String s) {
+            String key = "U"+s;
+            Integer idx = lookup(key);
+            if ( idx != null ) return idx.intValue();
+            Bytes b = new Bytes();
+            for ( int i=0; i<s.length(); ++i ) {
+                char c = s.charAt(i);
+                if ( c >= 0x0001 && c <= 0x007F ) {
+                    b.u1(c);
+                } else if ( c <= 0x07FF ) {
+                    b.u1(0xC0 | (c >> 6));
+                    b.u1(0x80 | (c & 0x3F));
+                } else {
+                    b.u1(0xE0 | (c >> 12));
+                    b.u1(0x80 | ((c >> 6) & 0x3F));
+                    b.u1(0x80 | (c & 0x3F));
+                }
+            }
+            m_bytes.u1(1);
+            m_bytes.u2(b.length());
+            m_bytes.put(b);
+            return add(key, 1);
+        }
+        int cls(String name) {
+            String key = "C"+name;
+            Integer idx = lookup(key);
+            if ( idx != null ) return idx.intValue();
+            int n = utf8(name);
+            m_bytes.u1(7);
+            m_bytes.u2(n);
+            return add(key, 1);
+        }
+        int intConst(int v) {
+            String key = "I"+v;
+            Integer idx = lookup(key);
+            if ( idx != null ) return idx.intValue();
+            m_bytes.u1(3);
+            m_bytes.u4(v);
+            return add(key, 1);
+        }
+        int floatConst(float v) {
+            int bits = Float.floatToIntBits(v);
+            String key = "F"+bits;
+            Integer idx = lookup(key);
+            if ( idx != null ) return idx.intValue();
+            m_bytes.u1(4);
+            m_bytes.u4(bits);
+            return add(key, 1);
+        }
+        int longConst(long v) {
+            String key = "J"+v;
+            Integer idx = lookup(key);
+            if ( idx != null ) return idx.intValue();
+            m_bytes.u1(5);
+            m_bytes.u4((int)(v >>> 32));
+            m_bytes.u4((int)v);
+            return add(key, 2);
+        }
+        int doubleConst(double v) {
+            long bits = Double.doubleToLongBits(v);
+            String key = "D"+bits;
+            Integer idx = lookup(key);
+            if ( idx != null ) return idx.intValue();
+            m_bytes.u1(6);
+            m_bytes.u4((int)(bits >>> 32));
+            m_bytes.u4((int)bits);
+            return add(key, 2);
+        }
+        private int member(int tag, String owner, String name, String desc) {
+            String key = tag+owner+"."+name+desc;
+            Integer idx = lookup(key);
+            if ( idx != null ) return idx.intValue();
+            int c = cls(owner);
+            String ntKey = "N"+name+desc;
+            Integer nt = lookup(ntKey);
+            if ( nt == null ) {
+                int n = utf8(name), d = utf8(desc);
+                m_bytes.u1(12);
+                m_bytes.u2(n);
+                m_bytes.u2(d);
+                nt = new Integer(add(ntKey, 1));
+            }
+            m_bytes.u1(tag);
+            m_bytes.u2(c);
+            m_bytes.u2(nt.intValue());
+            return add(key, 1);
+        }
+        int field(String owner, String name, String desc) {
+            return member(9, owner, name, desc);
+        }
+        int method(String owner, String name, String desc) {
+            return member(10, owner, name, desc);
+        }
+        int imethod(String owner, String name, String desc) {
+            return member(11, owner, name, desc);
+        }
+    }
+
+    /**
+     * A forward branch target.
+     */
+    private static final class Label {
+        int[] m_fixups = new int[2];
+        int   m_count = 0;
+        int   m_stack = -1;
+    }
+
+    /**
+     * The bytecode of a method, tracking the operand stack depth and the
+     * number of local variables.
+     */
+    private static final class Code extends Bytes {
+        int m_stack = 0, m_maxStack = 0;
+        int m_locals, m_maxLocals;
+
+        Code(int locals) {
+            m_locals = m_maxLocals = locals;
+        }
+        void adjust(int delta) {
+            m_stack += delta;
+            if ( m_stack > m_maxStack ) m_maxStack = m_stack;
+        }
+        void op(int opcode, int delta) {
+            u1(opcode);
+            adjust(delta);
+        }
+        void op1(int opcode, int arg, int delta) {
+            u1(opcode);
+            u1(arg);
+            adjust(delta);
+        }
+        void op2(int opcode, int arg, int delta) {
+            u1(opcode);
+            u2(arg);
+            adjust(delta);
+        }
+        void invoke(int opcode, int method, int delta) {
+            op2(opcode, method, delta);
+        }
+        void invokeInterface(int method, int nargs, int delta) {
+            u1(0xb9);
+            u2(method);
+            u1(nargs);
+            u1(0);
+            adjust(delta);
+        }
+        int newLocal(int size) {
+            int local = m_locals;
+            m_locals += size;
+            if ( m_locals > m_maxLocals ) m_maxLocals = m_locals;
+            return local;
+        }
+        void load(int kind, int local) {
+            // iload, lload, fload, dload, aload
+            int[] ops = { 0x15, 0x15, 0x16, 0x17, 0x18, 0x19 };
+            local(ops[kind], local, SIZE[kind]);
+        }
+        void store(int kind, int local) {
+            // istore, lstore, fstore, dstore, astore
+            int[] ops = { 0x36, 0x36, 0x37, 0x38, 0x39, 0x3a };
+            local(ops[kind], local, -SIZE[kind]);
+        }
+        private void local(int opcode, int local, int delta) {
+            if ( local < 256 ) {
+                op1(opcode, local, delta);
+            } else {
+                u1(0xc4); // wide
+                op2(opcode, local, delta);
+            }
+        }
+        void jump(int opcode, Label target) {
+            int delta;
+            if ( opcode == 0xa7 ) {
+                delta = 0;  // goto
+            } else if ( opcode >= 0x9f ) {
+                delta = -2; // if_icmp<cond>
+            } else {
+                delta = -1; // if<cond>
+            }
+            adjust(delta);
+            if ( target.m_count == target.m_fixups.length ) {
+                int[] f = new int[2*target.m_count];
+                System.arraycopy(target.m_fixups, 0, f, 0, target.m_count);
+                target.m_fixups = f;
+            }
+            target.m_fixups[target.m_count++] = m_len;
+            target.m_stack = m_stack;
+            u1(opcode);
+            u2(0);
+        }
+        void mark(Label target) {
+            for ( int i=0; i<target.m_count; ++i ) {
+                int pos = target.m_fixups[i];
+                int offset = m_len - pos;
+                m_buf[pos+1] = (byte)(offset >>> 8);
+                m_buf[pos+2] = (byte)offset;
+            }
+            if ( target.m_stack >= 0 )
+                m_stack = target.m_stack;
+        }
+    }
+
+} // end of class ExpressionCompiler
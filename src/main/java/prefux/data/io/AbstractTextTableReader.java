@@ -33,14 +33,20 @@ package prefux.data.io;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 
 import prefux.data.Table;
+import prefux.data.column.Column;
+import prefux.data.column.ColumnFactory;
 import prefux.data.parser.DataParseException;
 import prefux.data.parser.DataParser;
+import prefux.data.parser.DoubleParser;
+import prefux.data.parser.FloatParser;
+import prefux.data.parser.IntParser;
+import prefux.data.parser.LongParser;
 import prefux.data.parser.ParserFactory;
 import prefux.data.parser.TypeInferencer;
-import prefux.util.collections.ByteArrayList;
-import prefux.util.io.IOLib;
 
 /**
  * Abstract base class for TableReader instances that read in a table
@@ -50,8 +56,12 @@ import prefux.util.io.IOLib;
  */
 public abstract class AbstractTextTableReader extends AbstractTableReader {
 
+    /** The default number of rows used to infer column types. */
+    public static final int DEFAULT_SAMPLE_SIZE = 1000;
+    
     private ParserFactory m_pfactory;
     private boolean m_hasHeader;
+    private int m_sampleSize = DEFAULT_SAMPLE_SIZE;
     
     /**
      * Create a new AbstractTextTableReader using a default ParserFactory.
@@ -79,129 +89,47 @@ public abstract class AbstractTextTableReader extends AbstractTableReader {
         m_hasHeader = hasHeaderRow;
     }
     
+    /**
+     * Set the number of data rows at the head of the file that are used to
+     * infer the column data types. Rows following the sample are parsed
+     * directly into the table columns, as they are read. If a later value
+     * can not be parsed with the inferred type, the column is converted to a
+     * more general type that fits all its values. The values read so far are
+     * then converted by formatting them with the original parser, so text
+     * details such as leading zeros of numbers are not preserved. The
+     * sample should be large enough to make such conversions rare.
+     * @param rows the number of rows to sample, at least one
+     */
+    public void setSampleSize(int rows) {
+        if ( rows < 1 )
+            throw new IllegalArgumentException("Sample size must be positive");
+        m_sampleSize = rows;
+    }
+    
+    /**
+     * Get the number of data rows at the head of the file that are used to
+     * infer the column data types.
+     * @return the number of rows to sample
+     */
+    public int getSampleSize() {
+        return m_sampleSize;
+    }
+    
     /**
      * @see prefux.data.io.AbstractTableReader#readTable(java.io.InputStream)
      */
     public Table readTable(InputStream is) throws DataIOException {
-        
-        // determine input stream capabilities
-        // if we can't reset the stream, we read in all the bytes
-        // and make our own local stream
-        ByteArrayList buf = null;
-        if ( is.markSupported() ) {
-            // mark the stream to our reset point
-            is.mark(Integer.MAX_VALUE);
-        } else {
-            // load in the entirety of the input stream
-            try {
-                buf = IOLib.readAsBytes(is);
-            } catch ( IOException ioe ) {
-                throw new DataIOException(ioe);
-            }
-            // create our own input stream
-            is = buf.getAsInputStream();
-        }
-        
-        final TypeInferencer di = new TypeInferencer(m_pfactory);
-        final ArrayList headers = getColumnNames();
-        final int[] dim = new int[] { 0, 0 };
-        
-        TableReadListener scanner = new TableReadListener() {
-            int prevLine = -1;
-            public void readValue(int line, int col, String value)
-                throws DataParseException
-            {
-                // sample value to determine data type
-                if ( line > 1 || !m_hasHeader ) {
-                    di.sample(col-1, value);
-                    
-                    // update num rows
-                    if ( line != prevLine ) {
-                        prevLine = line;
-                        dim[0]++;
-                    }
-                } else if ( line == 1 && m_hasHeader ) {
-                    headers.add(value);
-                }
-                
-                // update num cols
-                if ( col > dim[1] )
-                    dim[1] = col;
-            }
-        };
-        
-        // do a scan of the stream, collecting length and type data
-        try {
-            read(is, scanner);
-        } catch ( IOException ioe ) {
-            throw new DataIOException(ioe);
-        } catch ( DataParseException de ) {
-            // can't happen
-        }
-        
-        // create the table
-        int nrows = dim[0];
-        int ncols = dim[1];
-        final Table table = new Table(nrows, ncols);
-        
-        // create the table columns
-        for ( int i=0; i < ncols; ++i ) {
-            String header;
-            if ( m_hasHeader || i < headers.size() ) {
-                header = (String)headers.get(i);
-            } else {
-                header = getDefaultHeader(i);
-            }
-            table.addColumn(header, di.getType(i));
-            table.getColumn(i).setParser(di.getParser(i));
-        }
-        
-        // reset dim array, will hold row/col indices
-        dim[0] = dim[1] = -1;
-        
-        TableReadListener parser = new TableReadListener() {
-            int prevLine = -1;
-            public void readValue(int line, int col, String value)
-                throws DataParseException
-            {
-                // early exit on header value
-                if ( line == 1 && m_hasHeader )
-                    return;
-                if ( line != prevLine ) {
-                    prevLine = line;
-                    ++dim[0];
-                }
-                dim[1] = col-1;
-                
-                // XXX NOTE-2005.08.29-jheer
-                // For now we use generic routines for filling column values.
-                // This results in the autoboxing of primitive types, slowing
-                // performance a bit and possibly triggering avoidable garbage
-                // collections. If this proves to be a problem down the road,
-                // we can add more nuance later.
-                DataParser dp = di.getParser(dim[1]);
-                table.set(dim[0], dim[1], dp.parse(value));
-            }
-        };
-        
-        // read the data into the table
+        TableBuilder builder = new TableBuilder();
         try {
-            // prepare the input stream
-            if ( is.markSupported() ) {
-                is.reset();
-            } else {
-                is = buf.getAsInputStream();
-            }
-            // read the data
-            read(is, parser);
+            read(is, builder);
         } catch ( IOException ioe ) {
             throw new DataIOException(ioe);
         } catch ( DataParseException de ) {
             throw new DataIOException("Parse exception for column "
-                    + '\"' + dim[1] + '\"' + " at row: " + dim[0], de);
+                    + '\"' + builder.m_col + '\"' + " at row: " 
+                    + builder.m_row, de);
         }
-        
-        return table;
+        return builder.getTable();
     }
     
     /**
@@ -250,4 +178,258 @@ public abstract class AbstractTextTableReader extends AbstractTableReader {
     protected abstract void read(InputStream is, TableReadListener trl)
         throws IOException, DataParseException;
 
+    // ------------------------------------------------------------------------
+    
+    /**
+     * Receives the values of the text file in a single pass and collects
+     * them in growable table columns. The values of the first rows are
+     * buffered until the sample is complete, then the columns are created
+     * with the inferred types and all further values are parsed directly
+     * into them, without boxing for numeric columns.
+     */
+    private class TableBuilder implements TableReadListener {
+        
+        private static final int OBJECT = 0;
+        private static final int INT    = 1;
+        private static final int LONG   = 2;
+        private static final int FLOAT  = 3;
+        private static final int DOUBLE = 4;
+        
+        private TypeInferencer m_types = new TypeInferencer(m_pfactory);
+        private ArrayList m_headers = getColumnNames();
+        private int m_line = -1;
+        int m_row = -1;
+        int m_col = -1;
+        
+        // the buffered sample, until the columns are created
+        private ArrayList<String[]> m_sample = new ArrayList<>();
+        private String[] m_values = new String[0];
+        private int m_nsampled = 0;
+        
+        // the table columns and their parsers
+        private int m_ncols = 0;
+        private Column[] m_columns;
+        private DataParser[] m_parsers;
+        private int[] m_kinds;
+        
+        // rows holding empty values, for columns that accept them
+        private BitSet[] m_blanks;
+        
+        public void readValue(int line, int col, String value)
+            throws DataParseException
+        {
+            if ( line == 1 && m_hasHeader ) {
+                m_headers.add(value);
+                m_ncols = Math.max(m_ncols, col);
+                return;
+            }
+            if ( line != m_line ) {
+                m_line = line;
+                if ( m_columns == null && m_row >= 0 )
+                    bufferRow();
+                if ( ++m_row == m_sampleSize && m_columns == null )
+                    createColumns();
+            }
+            m_col = col-1;
+            m_ncols = Math.max(m_ncols, col);
+            if ( m_columns == null ) {
+                m_types.sample(m_col, value);
+                m_nsampled = Math.max(m_nsampled, col);
+                if ( m_col >= m_values.length )
+                    m_values = Arrays.copyOf(m_values, col);
+                m_values[m_col] = value;
+            } else {
+                set(m_row, m_col, value);
+            }
+        }
+        
+        Table getTable() throws DataIOException {
+            int nrows = m_row+1;
+            try {
+                if ( m_columns == null ) {
+                    if ( m_row >= 0 )
+                        bufferRow();
+                    createColumns();
+                }
+            } catch ( DataParseException de ) {
+                throw new DataIOException("Parse exception for column "
+                    + '\"' + m_col + '\"' + " at row: " + m_row, de);
+            }
+            
+            Table table = new Table(nrows, m_ncols);
+            for ( int i=0; i < m_ncols; ++i ) {
+                String header;
+                if ( i < m_headers.size() ) {
+                    header = (String)m_headers.get(i);
+                } else {
+                    header = getDefaultHeader(i);
+                }
+                Column c = m_columns[i];
+                c.setMaximumRow(nrows);
+                c.setParser(m_parsers[i]);
+                table.addColumn(header, c);
+            }
+            return table;
+        }
+        
+        // --------------------------------------------------------------------
+        
+        private void bufferRow() {
+            m_sample.add(m_values);
+            m_values = new String[0];
+        }
+        
+        /**
+         * Create the columns using the sampled types, and fill in the
+         * buffered sample rows.
+         */
+        private void createColumns() throws DataParseException {
+            m_columns = new Column[m_ncols];
+            m_parsers = new DataParser[m_ncols];
+            m_kinds = new int[m_ncols];
+            m_blanks = new BitSet[m_ncols];
+            for ( int i=0; i < m_ncols; ++i ) {
+                // columns without any values are read as text
+                DataParser parser = i < m_nsampled ? m_types.getParser(i)
+                                    : m_pfactory.getParser(String.class);
+                setParser(i, parser, m_sample.size());
+            }
+            int row = m_row, col = m_col;
+            for ( int r=0; r < m_sample.size(); ++r ) {
+                String[] values = m_sample.get(r);
+                for ( int c=0; c < values.length; ++c ) {
+                    if ( values[c] != null ) {
+                        m_row = r; m_col = c;
+                        set(r, c, values[c]);
+                    }
+                }
+            }
+            m_row = row; m_col = col;
+            m_sample = null;
+            m_values = null;
+        }
+        
+        private void setParser(int col, DataParser parser, int nrows)
+            throws DataParseException
+        {
+            if ( parser == null ) {
+                throw new DataParseException(
+                    "No parser found for column " + col);
+            }
+            m_parsers[col] = parser;
+            m_columns[col] = ColumnFactory.getColumn(parser.getType(), nrows);
+            
+            Class pc = parser.getClass();
+            if ( pc == IntParser.class ) {
+                m_kinds[col] = INT;
+            } else if ( pc == LongParser.class ) {
+                m_kinds[col] = LONG;
+            } else if ( pc == FloatParser.class ) {
+                m_kinds[col] = FLOAT;
+            } else if ( pc == DoubleParser.class ) {
+                m_kinds[col] = DOUBLE;
+            } else {
+                m_kinds[col] = OBJECT;
+            }
+        }
+        
+        /**
+         * Parse a value into the given column, converting the column to a
+         * more general type if the value does not fit.
+         */
+        private void set(int row, int col, String value)
+            throws DataParseException
+        {
+            if ( col >= m_columns.length ) {
+                addColumn(col, value);
+            }
+            Column c = m_columns[col];
+            if ( row >= c.getRowCount() )
+                c.setMaximumRow(row+1);
+            try {
+                switch ( m_kinds[col] ) {
+                case INT:
+                    c.setInt(IntParser.parseInt(value), row);
+                    break;
+                case LONG:
+                    c.setLong(LongParser.parseLong(value), row);
+                    break;
+                case FLOAT:
+                    c.setFloat(FloatParser.parseFloat(value), row);
+                    break;
+                case DOUBLE:
+                    c.setDouble(DoubleParser.parseDouble(value), row);
+                    break;
+                default:
+                    c.set(m_parsers[col].parse(value), row);
+                    if ( value.length() == 0 )
+                        setBlank(col, row);
+                }
+            } catch ( DataParseException de ) {
+                widen(col, value);
+                m_columns[col].set(m_parsers[col].parse(value), row);
+                if ( value.length() == 0 )
+                    setBlank(col, row);
+            }
+        }
+        
+        private void setBlank(int col, int row) {
+            if ( m_blanks[col] == null )
+                m_blanks[col] = new BitSet();
+            m_blanks[col].set(row);
+        }
+        
+        /**
+         * Add a column that did not occur in the sample.
+         */
+        private void addColumn(int col, String value)
+            throws DataParseException
+        {
+            int ncols = col+1;
+            int prev = m_columns.length;
+            m_columns = Arrays.copyOf(m_columns, ncols);
+            m_parsers = Arrays.copyOf(m_parsers, ncols);
+            m_kinds = Arrays.copyOf(m_kinds, ncols);
+            m_blanks = Arrays.copyOf(m_blanks, ncols);
+            m_types.sample(col, value);
+            for ( int i=prev; i < ncols; ++i ) {
+                setParser(i, m_types.getParser(i), 0);
+            }
+        }
+        
+        /**
+         * Convert a column to the most specific type that can represent
+         * both its current values and the given value.
+         */
+        private void widen(int col, String value) throws DataParseException {
+            Column old = m_columns[col];
+            DataParser oldParser = m_parsers[col];
+            int nrows = old.getRowCount();
+            BitSet blanks = m_blanks[col];
+            m_types.sample(col, value);
+            
+            for ( boolean done = false; !done; ) {
+                setParser(col, m_types.getParser(col), nrows);
+                DataParser parser = m_parsers[col];
+                Column c = m_columns[col];
+                done = true;
+                for ( int r=0; r < nrows; ++r ) {
+                    Object o = old.get(r);
+                    if ( o == null ) continue;
+                    // formatting an empty value may not give back the text
+                    boolean blank = blanks != null && blanks.get(r);
+                    String s = blank ? "" : oldParser.format(o);
+                    if ( !parser.canParse(s) ) {
+                        // rule out the parser and try the next one
+                        m_types.sample(col, s);
+                        done = false;
+                        break;
+                    }
+                    c.set(parser.parse(s), r);
+                }
+            }
+        }
+        
+    } // end of inner class TableBuilder
+    
 } // end of abstract class AbstractTextTableReader
@@ -88,7 +88,7 @@ public class CSVTableReader extends AbstractTextTableReader {
     public void read(InputStream is, TableReadListener trl)
             throws IOException, DataParseException {
         String line;
-        StringBuffer sbuf = new StringBuffer();
+        StringBuilder sbuf = new StringBuilder();
 
         boolean inRecord = false;
         int inQuote = 0;
@@ -116,7 +116,7 @@ public class CSVTableReader extends AbstractTextTableReader {
                     } else if (c[i] == delimiter) {
                         String s = sbuf.toString().trim();
                         trl.readValue(lineno, ++col, s);
-                        sbuf.delete(0, sbuf.length());
+                        sbuf.setLength(0);
                     } else {
                         inRecord = true;
                         sbuf.append(c[i]);
@@ -145,7 +145,7 @@ public class CSVTableReader extends AbstractTextTableReader {
                         } else {
                             String s = sbuf.toString().trim();
                             trl.readValue(lineno, ++col, s);
-                            sbuf.delete(0, sbuf.length());
+                            sbuf.setLength(0);
                             inQuote = 0;
                             inRecord = false;
                         }
@@ -155,7 +155,7 @@ public class CSVTableReader extends AbstractTextTableReader {
             if (inQuote != 1) {
                 String s = sbuf.toString().trim();
                 trl.readValue(lineno, ++col, s);
-                sbuf.delete(0, sbuf.length());
+                sbuf.setLength(0);
                 inQuote = 0;
                 inRecord = false;
             }
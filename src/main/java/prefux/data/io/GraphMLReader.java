@@ -33,6 +33,8 @@ package prefux.data.io;
 import java.io.InputStream;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
@@ -44,10 +46,16 @@ import org.xml.sax.helpers.DefaultHandler;
 import prefux.data.Graph;
 import prefux.data.Schema;
 import prefux.data.Table;
+import prefux.data.column.Column;
 import prefux.data.parser.DataParseException;
 import prefux.data.parser.DataParser;
+import prefux.data.parser.DoubleParser;
+import prefux.data.parser.FloatParser;
+import prefux.data.parser.IntParser;
+import prefux.data.parser.LongParser;
 import prefux.data.parser.ParserFactory;
-import prefux.util.collections.IntIterator;
+import prefux.data.parser.StringParser;
+import prefux.util.collections.ObjectIntHashMap;
 
 
 /**
@@ -57,6 +65,12 @@ import prefux.util.collections.IntIterator;
  * information about the format, please see the
  * <a href="http://graphml.graphdrawing.org/">GraphML home page</a>.
  * 
+ * <p>The file is read in a single streaming pass. Data values are parsed
+ * with a parser resolved once per data key and written directly into the
+ * node and edge table columns. Node ids are resolved to table rows with a
+ * primitive hash map once the whole document has been read, after which the
+ * graph and its adjacency lists are built in bulk.</p>
+ * 
  * @author <a href="http://jheer.org">jeffrey heer</a>
  */
 public class GraphMLReader extends AbstractGraphReader  implements GraphReader {
@@ -125,8 +139,6 @@ public class GraphMLReader extends AbstractGraphReader  implements GraphReader {
         
         protected static final String SRC = Graph.DEFAULT_SOURCE_KEY;
         protected static final String TRG = Graph.DEFAULT_TARGET_KEY;
-        protected static final String SRCID = SRC+'_'+ID;
-        protected static final String TRGID = TRG+'_'+ID;
         
         protected Schema m_nsch = new Schema();
         protected Schema m_esch = new Schema();
@@ -143,54 +155,59 @@ public class GraphMLReader extends AbstractGraphReader  implements GraphReader {
         protected String m_type;
         protected String m_dflt;
         
-        protected StringBuffer m_sbuf = new StringBuffer();
+        protected StringBuilder m_sbuf = new StringBuilder();
         
         // node,edge,data parsing
-        private String m_key;
+        private DataKey m_key;
         private int m_row = -1;
         private Table m_table = null;
-        protected HashMap m_nodeMap = new HashMap();
+        protected ObjectIntHashMap m_nodeMap = new ObjectIntHashMap();
         protected HashMap m_idMap = new HashMap();
+        private HashMap m_keys = new HashMap();
+        
+        // source and target node ids, by edge row
+        private String[] m_srcIds = new String[0];
+        private String[] m_trgIds = new String[0];
         
         private boolean m_directed = false;
         private boolean inSchema;
         
         public void startDocument() {
             m_nodeMap.clear();
+            m_keys.clear();
             inSchema = true;
             
             m_esch.addColumn(SRC, int.class);
             m_esch.addColumn(TRG, int.class);
-            m_esch.addColumn(SRCID, String.class);
-            m_esch.addColumn(TRGID, String.class);
         }
         
         public void endDocument() throws SAXException {
+            schemaCheck();
+            
             // time to actually set up the edges
-            IntIterator rows = m_edges.rows();
-            while (rows.hasNext()) {
-                int r = rows.nextInt();
-
-                String src = m_edges.getString(r, SRCID);
-                if (!m_nodeMap.containsKey(src)) {
+            Column scol = m_edges.getColumn(SRC);
+            Column tcol = m_edges.getColumn(TRG);
+            int nedges = m_edges.getMaximumRow()+1;
+            for ( int r=0; r<nedges; ++r ) {
+                String src = m_srcIds[r];
+                int s = m_nodeMap.get(src);
+                if ( s < 0 ) {
                     throw new SAXException(
                         "Tried to create edge with source node id=" + src
                         + " which does not exist.");
                 }
-                int s = ((Integer) m_nodeMap.get(src)).intValue();
-                m_edges.setInt(r, SRC, s);
+                scol.setInt(s, r);
 
-                String trg = m_edges.getString(r, TRGID);
-                if (!m_nodeMap.containsKey(trg)) {
+                String trg = m_trgIds[r];
+                int t = m_nodeMap.get(trg);
+                if ( t < 0 ) {
                     throw new SAXException(
                         "Tried to create edge with target node id=" + trg
                         + " which does not exist.");
                 }
-                int t = ((Integer) m_nodeMap.get(trg)).intValue();
-                m_edges.setInt(r, TRG, t);
+                tcol.setInt(t, r);
             }
-            m_edges.removeColumn(SRCID);
-            m_edges.removeColumn(TRGID);
+            m_srcIds = m_trgIds = null;
 
             // now create the graph
             m_graph = new Graph(m_nodes, m_edges, m_directed);
@@ -202,7 +219,7 @@ public class GraphMLReader extends AbstractGraphReader  implements GraphReader {
                                  String qName, Attributes atts)
         {
             // first clear the character buffer
-            m_sbuf.delete(0, m_sbuf.length());
+            m_sbuf.setLength(0);
             
             if ( qName.equals(GRAPH) )
             {
@@ -229,7 +246,7 @@ public class GraphMLReader extends AbstractGraphReader  implements GraphReader {
                 m_row = m_nodes.addRow();
                 
                 String id = atts.getValue(ID);
-                m_nodeMap.put(id, new Integer(m_row));
+                m_nodeMap.put(id, m_row);
                 m_table = m_nodes;
             }
             else if ( qName.equals(EDGE) )
@@ -239,28 +256,31 @@ public class GraphMLReader extends AbstractGraphReader  implements GraphReader {
                 m_row = m_edges.addRow();
                 
                 // do not use the id value
-//                String id = atts.getValue(ID);
-//                if ( id != null ) {
-//                    if ( !m_edges.canGetString(ID) )
-//                        m_edges.addColumn(ID, String.class);
-//                    m_edges.setString(m_row, ID, id);
-//                }
-                m_edges.setString(m_row, SRCID, atts.getValue(SRC));
-                m_edges.setString(m_row, TRGID, atts.getValue(TRG));
+                // the node ids are resolved at the end of the document,
+                // when all nodes are known
+                if ( m_row >= m_srcIds.length ) {
+                    int cap = Math.max(m_row+1, 3*m_srcIds.length/2 + 16);
+                    String[] sids = new String[cap];
+                    String[] tids = new String[cap];
+                    System.arraycopy(m_srcIds, 0, sids, 0, m_srcIds.length);
+                    System.arraycopy(m_trgIds, 0, tids, 0, m_trgIds.length);
+                    m_srcIds = sids;
+                    m_trgIds = tids;
+                }
+                m_srcIds[m_row] = atts.getValue(SRC);
+                m_trgIds[m_row] = atts.getValue(TRG);
                 
                 // currently only global directedness is used
                 // ignore directed edge value for now
-//                String dir = atts.getValue(DIRECTED);
-//                boolean d = m_directed;
-//                if ( dir != null ) {
-//                    d = dir.equalsIgnoreCase("false");
-//                }
-//                m_edges.setBoolean(m_row, DIRECTED, d);
                 m_table = m_edges;
             }
             else if ( qName.equals(DATA) )
             {
-                m_key = atts.getValue(KEY);
+                String key = atts.getValue(KEY);
+                m_key = (DataKey)m_keys.get(key);
+                if ( m_key == null && m_table != null ) {
+                    error("Unrecognized "+KEY+" id: "+key);
+                }
             }
         }
 
@@ -276,13 +296,17 @@ public class GraphMLReader extends AbstractGraphReader  implements GraphReader {
                 addToSchema();
             }
             else if ( qName.equals(DATA) ) {
+                // graph level data is not stored
+                if ( m_table == null ) return;
+                
+                Column col = m_table==m_nodes ? m_key.ncol : m_key.ecol;
+                if ( col == null ) {
+                    error("Data key \""+m_key.name+"\" is not defined for "
+                        + (m_table==m_nodes ? NODE : EDGE) + " elements.");
+                }
                 // value is in the buffer
-                String value = m_sbuf.toString();
-                String name = (String)m_idMap.get(m_key);
-                Class type = m_table.getColumnType(name);
                 try {
-                    Object val = parse(value, type);
-                    m_table.set(m_row, name, val);
+                    m_key.set(col, m_row, m_sbuf.toString());
                 } catch ( DataParseException dpe ) {
                     error(dpe);
                 }
@@ -306,6 +330,19 @@ public class GraphMLReader extends AbstractGraphReader  implements GraphReader {
                 m_nodes = m_nsch.instantiate();
                 m_edges = m_esch.instantiate();
                 inSchema = false;
+                
+                // resolve columns and parsers of the data keys
+                Iterator iter = m_idMap.entrySet().iterator();
+                while ( iter.hasNext() ) {
+                    Map.Entry entry = (Map.Entry)iter.next();
+                    String name = (String)entry.getValue();
+                    Class type = m_nodes.getColumnNumber(name) >= 0
+                        ? m_nodes.getColumnType(name)
+                        : m_edges.getColumnType(name);
+                    m_keys.put(entry.getKey(), new DataKey(name,
+                        m_pf.getParser(type),
+                        m_nodes.getColumn(name), m_edges.getColumn(name)));
+                }
             }
         }
         
@@ -378,6 +415,72 @@ public class GraphMLReader extends AbstractGraphReader  implements GraphReader {
             throw new RuntimeException(e);
         }
         
+        /**
+         * A data key, with its parser and the node and edge table columns
+         * it is stored in. Values parsed by the default primitive parsers
+         * are stored without boxing.
+         */
+        private static class DataKey {
+            private static final int OBJECT  = 0;
+            private static final int INT     = 1;
+            private static final int LONG    = 2;
+            private static final int FLOAT   = 3;
+            private static final int DOUBLE  = 4;
+            private static final int STRING  = 5;
+            
+            final String name;
+            final DataParser parser;
+            final Column ncol;
+            final Column ecol;
+            final int kind;
+            
+            DataKey(String name, DataParser parser, Column ncol, Column ecol) {
+                this.name = name;
+                this.parser = parser;
+                this.ncol = ncol;
+                this.ecol = ecol;
+                
+                Class pc = parser.getClass();
+                if ( pc == IntParser.class ) {
+                    kind = INT;
+                } else if ( pc == LongParser.class ) {
+                    kind = LONG;
+                } else if ( pc == FloatParser.class ) {
+                    kind = FLOAT;
+                } else if ( pc == DoubleParser.class ) {
+                    kind = DOUBLE;
+                } else if ( pc == StringParser.class ) {
+                    kind = STRING;
+                } else {
+                    kind = OBJECT;
+                }
+            }
+            
+            void set(Column col, int row, String text)
+                throws DataParseException
+            {
+                switch ( kind ) {
+                case INT:
+                    col.setInt(IntParser.parseInt(text), row);
+                    break;
+                case LONG:
+                    col.setLong(LongParser.parseLong(text), row);
+                    break;
+                case FLOAT:
+                    col.setFloat(FloatParser.parseFloat(text), row);
+                    break;
+                case DOUBLE:
+                    col.setDouble(DoubleParser.parseDouble(text), row);
+                    break;
+                case STRING:
+                    col.setString(text, row);
+                    break;
+                default:
+                    col.set(parser.parse(text), row);
+                }
+            }
+        } // end of class DataKey
+        
     } // end of inner class GraphMLHandler
 
 } // end of class XMLGraphReader
@@ -0,0 +1,301 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.data.io;
+
+import java.util.Date;
+import java.util.function.Supplier;
+
+import prefux.data.DataTypeException;
+import prefux.data.column.AbstractColumn;
+import prefux.data.column.Column;
+import prefux.data.column.ColumnFactory;
+import prefux.data.event.ColumnListener;
+import prefux.data.parser.DataParser;
+
+/**
+ * Column that creates its values on first access. Until then, only the
+ * column type, default value and row count are known. The first call that
+ * reads or writes values invokes the loader, and all further calls are
+ * delegated to the column it returns. Events of the loaded column are
+ * passed on to the listeners of this column.
+ * 
+ * @see SnapshotTableReader
+ */
+class LazyColumn extends AbstractColumn implements ColumnListener {
+
+    private final int m_nrows;
+    private final Column m_proto;
+    private Supplier<Column> m_loader;
+    private volatile Column m_column;
+    private boolean m_parserSet = false;
+    
+    /**
+     * Create a new LazyColumn.
+     * @param type the data type stored by this column
+     * @param defaultValue the default data value to use
+     * @param nrows the number of rows the loaded column will have
+     * @param loader creates the column with the actual values
+     */
+    LazyColumn(Class type, Object defaultValue, int nrows,
+               Supplier<Column> loader)
+    {
+        super(type, defaultValue);
+        m_nrows = nrows;
+        m_loader = loader;
+        // empty column, answering the type queries
+        m_proto = ColumnFactory.getColumn(type, 0, defaultValue);
+    }
+    
+    /**
+     * Indicates if the column values have been loaded.
+     * @return true if the column has been loaded
+     */
+    boolean isLoaded() {
+        return m_column != null;
+    }
+    
+    /**
+     * Get the loaded column, loading it if necessary.
+     * @return the column holding the values
+     */
+    Column column() {
+        Column c = m_column;
+        if ( c == null ) {
+            synchronized ( this ) {
+                c = m_column;
+                if ( c == null ) {
+                    c = m_loader.get();
+                    if ( m_parserSet ) c.setParser(m_parser);
+                    c.setReadOnly(m_readOnly);
+                    c.addColumnListener(this);
+                    m_loader = null;
+                    m_column = c;
+                }
+            }
+        }
+        return c;
+    }
+    
+    // ------------------------------------------------------------------------
+    // Column Metadata
+    
+    /**
+     * @see prefux.data.column.Column#getRowCount()
+     */
+    public int getRowCount() {
+        Column c = m_column;
+        return c == null ? m_nrows : c.getRowCount();
+    }
+
+    /**
+     * @see prefux.data.column.Column#setMaximumRow(int)
+     */
+    public void setMaximumRow(int nrows) {
+        column().setMaximumRow(nrows);
+    }
+    
+    /**
+     * @see prefux.data.column.Column#setReadOnly(boolean)
+     */
+    public void setReadOnly(boolean readOnly) {
+        synchronized ( this ) {
+            super.setReadOnly(readOnly);
+        }
+        Column c = m_column;
+        if ( c != null ) c.setReadOnly(readOnly);
+    }
+    
+    /**
+     * @see prefux.data.column.Column#setParser(prefux.data.parser.DataParser)
+     */
+    public void setParser(DataParser parser) {
+        synchronized ( this ) {
+            super.setParser(parser);
+            m_parserSet = true;
+        }
+        Column c = m_column;
+        if ( c != null ) c.setParser(parser);
+    }
+    
+    /**
+     * @see prefux.data.column.AbstractColumn#setDefaultValue(java.lang.Object)
+     */
+    public void setDefaultValue(Object dflt) {
+        super.setDefaultValue(dflt);
+        Column c = m_column;
+        if ( c instanceof AbstractColumn )
+            ((AbstractColumn)c).setDefaultValue(dflt);
+    }
+    
+    /**
+     * @see prefux.data.column.Column#revertToDefault(int)
+     */
+    public void revertToDefault(int row) {
+        column().revertToDefault(row);
+    }
+    
+    /**
+     * @see prefux.data.column.Column#canGet(java.lang.Class)
+     */
+    public boolean canGet(Class type) {
+        return m_proto.canGet(type);
+    }
+
+    /**
+     * @see prefux.data.column.Column#canSet(java.lang.Class)
+     */
+    public boolean canSet(Class type) {
+        return m_proto.canSet(type);
+    }
+    
+    // ------------------------------------------------------------------------
+    // Data Access Methods
+    
+    /**
+     * @see prefux.data.column.Column#get(int)
+     */
+    public Object get(int row) {
+        return column().get(row);
+    }
+
+    /**
+     * @see prefux.data.column.Column#set(java.lang.Object, int)
+     */
+    public void set(Object val, int row) throws DataTypeException {
+        column().set(val, row);
+    }
+    
+    // ------------------------------------------------------------------------
+    // Data Type Convenience Methods
+    
+    public boolean canGetInt() { return m_proto.canGetInt(); }
+    public boolean canSetInt() { return m_proto.canSetInt(); }
+    public boolean canGetLong() { return m_proto.canGetLong(); }
+    public boolean canSetLong() { return m_proto.canSetLong(); }
+    public boolean canGetFloat() { return m_proto.canGetFloat(); }
+    public boolean canSetFloat() { return m_proto.canSetFloat(); }
+    public boolean canGetDouble() { return m_proto.canGetDouble(); }
+    public boolean canSetDouble() { return m_proto.canSetDouble(); }
+    public boolean canGetBoolean() { return m_proto.canGetBoolean(); }
+    public boolean canSetBoolean() { return m_proto.canSetBoolean(); }
+    public boolean canGetString() { return m_proto.canGetString(); }
+    public boolean canSetString() { return m_proto.canSetString(); }
+    public boolean canGetDate() { return m_proto.canGetDate(); }
+    public boolean canSetDate() { return m_proto.canSetDate(); }
+    
+    public int getInt(int row) throws DataTypeException {
+        return column().getInt(row);
+    }
+    
+    public void setInt(int val, int row) throws DataTypeException {
+        column().setInt(val, row);
+    }
+    
+    public long getLong(int row) throws DataTypeException {
+        return column().getLong(row);
+    }
+    
+    public void setLong(long val, int row) throws DataTypeException {
+        column().setLong(val, row);
+    }
+    
+    public float getFloat(int row) throws DataTypeException {
+        return column().getFloat(row);
+    }
+    
+    public void setFloat(float val, int row) throws DataTypeException {
+        column().setFloat(val, row);
+    }
+    
+    public double getDouble(int row) throws DataTypeException {
+        return column().getDouble(row);
+    }
+    
+    public void setDouble(double val, int row) throws DataTypeException {
+        column().setDouble(val, row);
+    }
+    
+    public boolean getBoolean(int row) throws DataTypeException {
+        return column().getBoolean(row);
+    }
+    
+    public void setBoolean(boolean val, int row) throws DataTypeException {
+        column().setBoolean(val, row);
+    }
+    
+    public String getString(int row) throws DataTypeException {
+        return column().getString(row);
+    }
+    
+    public void setString(String val, int row) throws DataTypeException {
+        column().setString(val, row);
+    }
+    
+    public Date getDate(int row) throws DataTypeException {
+        return column().getDate(row);
+    }
+    
+    public void setDate(Date val, int row) throws DataTypeException {
+        column().setDate(val, row);
+    }
+    
+    // ------------------------------------------------------------------------
+    // ColumnListener, passes on the events of the loaded column
+    
+    public void columnChanged(Column src, int type, int start, int end) {
+        fireColumnEvent(type, start, end);
+    }
+
+    public void columnChanged(Column src, int idx, int prev) {
+        fireColumnEvent(idx, prev);
+    }
+
+    public void columnChanged(Column src, int idx, long prev) {
+        fireColumnEvent(idx, prev);
+    }
+
+    public void columnChanged(Column src, int idx, float prev) {
+        fireColumnEvent(idx, prev);
+    }
+
+    public void columnChanged(Column src, int idx, double prev) {
+        fireColumnEvent(idx, prev);
+    }
+
+    public void columnChanged(Column src, int idx, boolean prev) {
+        fireColumnEvent(idx, prev);
+    }
+
+    public void columnChanged(Column src, int idx, Object prev) {
+        fireColumnEvent(idx, prev);
+    }
+
+} // end of class LazyColumn
@@ -0,0 +1,1173 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.data.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import prefux.data.Table;
+import prefux.data.column.Column;
+import prefux.data.column.ColumnFactory;
+import prefux.data.parser.DataParseException;
+import prefux.data.parser.DataParser;
+import prefux.data.parser.DoubleParser;
+import prefux.data.parser.IntParser;
+import prefux.data.parser.LongParser;
+import prefux.data.parser.ParserFactory;
+import prefux.data.parser.TypeInferencer;
+
+/**
+ * <p>TableReader for large Comma Separated Value (CSV) files. The file is
+ * memory-mapped and split into chunks at record boundaries, and the chunks
+ * are parsed in parallel straight from the mapped buffers, without copying
+ * the file to the heap. Numeric cells are parsed directly from the bytes
+ * of the file into primitive column storage, without creating intermediate
+ * strings. Finally, the chunks are stitched into a single Table.</p>
+ *
+ * <p>Record boundaries are found by counting quote characters, so quotes
+ * are expected to enclose whole fields, as described in RFC 4180. Quoted
+ * fields may contain delimiters, line breaks and doubled quotes. Blank lines
+ * are skipped. The file must use an ASCII compatible character encoding;
+ * text fields are decoded as UTF-8.</p>
+ *
+ * <p>As with {@link CSVTableReader}, column types are inferred from a sample
+ * of the first records. If a later value does not fit the inferred type,
+ * int columns are widened to long and long columns to double as needed.
+ * Values that do not fit a numeric type at all update the type inference,
+ * and the affected columns are parsed again.</p>
+ *
+ * <p>Only local files can be mapped. Other sources, such as URLs or input
+ * streams, are read with a {@link CSVTableReader} using the same
+ * settings.</p>
+ */
+public class MappedCSVTableReader extends AbstractTableReader {
+
+    /** The default number of bytes per chunk. */
+    public static final int DEFAULT_CHUNK_SIZE = 8 << 20;
+
+    // column kinds, numeric kinds are ordered by width
+    private static final int OBJECT = 0;
+    private static final int INT    = 1;
+    private static final int LONG   = 2;
+    private static final int DOUBLE = 3;
+
+    private static final double[] POW10 = new double[23];
+    static {
+        POW10[0] = 1;
+        for ( int i=1; i < POW10.length; ++i )
+            POW10[i] = 10 * POW10[i-1];
+    }
+
+    private ParserFactory m_pfactory;
+    private char m_delimiter;
+    private boolean m_hasHeader = true;
+    private int m_sampleSize = AbstractTextTableReader.DEFAULT_SAMPLE_SIZE;
+    private int m_chunkSize = DEFAULT_CHUNK_SIZE;
+    private int m_parallelism = 0;
+
+    /**
+     * Create a new MappedCSVTableReader.
+     */
+    public MappedCSVTableReader() {
+        this(',', ParserFactory.getDefaultFactory());
+    }
+
+    /**
+     * Create a new MappedCSVTableReader.
+     * @param delimiter the field delimiter, must be an ASCII character
+     */
+    public MappedCSVTableReader(char delimiter) {
+        this(delimiter, ParserFactory.getDefaultFactory());
+    }
+
+    /**
+     * Create a new MappedCSVTableReader.
+     * @param parserFactory the ParserFactory to use for parsing text strings
+     * into table values.
+     */
+    public MappedCSVTableReader(ParserFactory parserFactory) {
+        this(',', parserFactory);
+    }
+
+    /**
+     * Create a new MappedCSVTableReader.
+     * @param delimiter the field delimiter, must be an ASCII character
+     * @param parserFactory the ParserFactory to use for parsing text strings
+     * into table values.
+     */
+    public MappedCSVTableReader(char delimiter, ParserFactory parserFactory) {
+        if ( delimiter >= 128 || delimiter == '"' || delimiter == '\n' )
+            throw new IllegalArgumentException(
+                "Invalid delimiter: "+delimiter);
+        m_delimiter = delimiter;
+        m_pfactory = parserFactory;
+    }
+
+    /**
+     * Set whether or not the table data file includes a header row.
+     * @param hasHeaderRow true if the the data file includes a header row,
+     * false otherwise.
+     */
+    public void setHasHeader(boolean hasHeaderRow) {
+        m_hasHeader = hasHeaderRow;
+    }
+
+    /**
+     * Set the number of records at the head of the file that are used to
+     * infer the column data types.
+     * @param rows the number of records to sample, at least one
+     * @see AbstractTextTableReader#setSampleSize(int)
+     */
+    public void setSampleSize(int rows) {
+        if ( rows < 1 )
+            throw new IllegalArgumentException("Sample size must be positive");
+        m_sampleSize = rows;
+    }
+
+    /**
+     * Get the number of records at the head of the file that are used to
+     * infer the column data types.
+     * @return the number of records to sample
+     */
+    public int getSampleSize() {
+        return m_sampleSize;
+    }
+
+    /**
+     * Set the approximate number of bytes per chunk. Each chunk is parsed
+     * by a single task. Chunks are extended to the end of the record they
+     * end in.
+     * @param bytes the chunk size in bytes
+     */
+    public void setChunkSize(int bytes) {
+        if ( bytes < 1 || bytes > (1 << 30) )
+            throw new IllegalArgumentException("Invalid chunk size: "+bytes);
+        m_chunkSize = bytes;
+    }
+
+    /**
+     * Get the approximate number of bytes per chunk.
+     * @return the chunk size in bytes
+     */
+    public int getChunkSize() {
+        return m_chunkSize;
+    }
+
+    /**
+     * Set the number of worker threads used to parse the chunks. A value of
+     * zero uses the common ForkJoinPool, a value of one parses all chunks
+     * on the calling thread, and larger values use a dedicated pool with
+     * the given number of threads.
+     * @param parallelism the parallelism level
+     */
+    public void setParallelism(int parallelism) {
+        if ( parallelism < 0 )
+            throw new IllegalArgumentException(
+                "Parallelism must not be negative: "+parallelism);
+        m_parallelism = parallelism;
+    }
+
+    /**
+     * Get the number of worker threads used to parse the chunks.
+     * @return the parallelism level, zero for the common ForkJoinPool
+     */
+    public int getParallelism() {
+        return m_parallelism;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+     * Reads the table, mapping the file if the location is a local file.
+     * @see prefux.data.io.AbstractTableReader#readTable(java.lang.String)
+     */
+    public Table readTable(String location) throws DataIOException {
+        File f = new File(location);
+        return f.isFile() ? readTable(f) : super.readTable(location);
+    }
+
+    /**
+     * Reads the table, mapping the file if the URL refers to a local file.
+     * @see prefux.data.io.AbstractTableReader#readTable(java.net.URL)
+     */
+    public Table readTable(URL url) throws DataIOException {
+        if ( "file".equals(url.getProtocol()) ) {
+            try {
+                File f = new File(url.toURI());
+                if ( f.isFile() )
+                    return readTable(f);
+            } catch ( URISyntaxException | IllegalArgumentException e ) {
+                // not a plain file URL, read it as a stream
+            }
+        }
+        return super.readTable(url);
+    }
+
+    /**
+     * Input streams can not be mapped, they are read with a
+     * {@link CSVTableReader} instead.
+     * @see prefux.data.io.TableReader#readTable(java.io.InputStream)
+     */
+    public Table readTable(InputStream is) throws DataIOException {
+        CSVTableReader reader = new CSVTableReader(m_delimiter, m_pfactory);
+        reader.setHasHeader(m_hasHeader);
+        reader.setSampleSize(m_sampleSize);
+        return reader.readTable(is);
+    }
+
+    /**
+     * @see prefux.data.io.AbstractTableReader#readTable(java.io.File)
+     */
+    public Table readTable(File f) throws DataIOException {
+        ForkJoinPool pool = null;
+        if ( m_parallelism == 0 ) {
+            pool = ForkJoinPool.commonPool();
+        } else if ( m_parallelism > 1 ) {
+            pool = new ForkJoinPool(m_parallelism);
+        }
+        try ( FileChannel ch = FileChannel.open(f.toPath(),
+                                                StandardOpenOption.READ) )
+        {
+            // map regions of whole blocks, at most 1 GB each
+            int region = Math.max(1, (1 << 30) / m_chunkSize) * m_chunkSize;
+            return read(new MappedFile(ch, region), pool);
+        } catch ( IOException e ) {
+            throw new DataIOException(e);
+        } finally {
+            if ( pool != null && m_parallelism > 1 )
+                pool.shutdown();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    private Table read(MappedFile file, ForkJoinPool pool)
+        throws DataIOException
+    {
+        long[] starts = split(file, pool);
+        int nchunks = starts.length-1;
+
+        ArrayList<String> headers = new ArrayList<>();
+        TypeInferencer types = new TypeInferencer(m_pfactory);
+        int ncols = 0, nsampled = 0, records = 0;
+        long dataStart = 0, sampled = 0;
+        try {
+            // read the header and the type sample from the first chunks
+            boolean header = m_hasHeader;
+            for ( int i=0; i < nchunks && records < m_sampleSize; ++i ) {
+                ByteBuffer data = file.slice(starts[i], starts[i+1]);
+                Scanner sc = new Scanner(data, 0, data.limit(), starts[i]);
+                int col = 0;
+                while ( records < m_sampleSize && sc.next() ) {
+                    if ( sc.isBlank() && (header ? headers.isEmpty()
+                                                 : col == 0) )
+                        continue;
+                    if ( header ) {
+                        headers.add(sc.text());
+                        if ( sc.m_last ) {
+                            header = false;
+                            dataStart = starts[i] + sc.m_pos;
+                        }
+                        continue;
+                    }
+                    types.sample(col, sc.text());
+                    nsampled = Math.max(nsampled, ++col);
+                    if ( sc.m_last ) {
+                        col = 0;
+                        ++records;
+                    }
+                }
+                sampled = starts[i] + sc.m_pos - dataStart;
+            }
+            ncols = Math.max(headers.size(), nsampled);
+
+            // estimate the number of rows per chunk
+            long rowBytes = records > 0 ? Math.max(1, sampled/records) : 64;
+
+            // parse all chunks
+            DataParser[] parsers = getParsers(types, null, null, ncols,
+                                              nsampled);
+            List<Callable<Chunk>> tasks = new ArrayList<>(nchunks);
+            for ( int i=0; i < nchunks; ++i ) {
+                long start = Math.max(dataStart, starts[i]);
+                long end = Math.max(start, starts[i+1]);
+                int capacity = (int)((end-start)/rowBytes) + 16;
+                tasks.add(new Chunk(file, start, end, parsers, capacity));
+            }
+            List<Chunk> chunks = invoke(pool, tasks);
+
+            // parse the columns with rejected values again, until no value
+            // is rejected by its column
+            for ( ;; ) {
+                boolean[] redo = new boolean[ncols];
+                boolean rejected = false;
+                for ( Chunk c : chunks ) {
+                    for ( int col=0; col < c.m_rejects.length; ++col ) {
+                        if ( c.m_rejects[col] == null )
+                            continue;
+                        types.sample(col, c.m_rejects[col]);
+                        nsampled = Math.max(nsampled, col+1);
+                        if ( col >= redo.length )
+                            redo = Arrays.copyOf(redo, col+1);
+                        redo[col] = true;
+                        rejected = true;
+                    }
+                }
+                if ( !rejected )
+                    return stitch(chunks, headers, parsers, pool);
+
+                ncols = redo.length;
+                parsers = getParsers(types, parsers, redo, ncols, nsampled);
+                for ( Chunk c : chunks )
+                    c.prepare(parsers, redo);
+                invoke(pool, new ArrayList<Callable<Chunk>>(chunks));
+            }
+        } catch ( DataParseException | IOException e ) {
+            throw new DataIOException(e);
+        }
+    }
+
+    /**
+     * Get the parsers of the columns. The parsers of columns that are not
+     * to be updated are kept.
+     * @param types the inferred column types
+     * @param parsers the current parsers, or null to create all of them
+     * @param update the columns whose parsers are updated, or null for all
+     * @param ncols the number of columns
+     * @param nsampled the number of columns with inferred types
+     */
+    private DataParser[] getParsers(TypeInferencer types, DataParser[] parsers,
+                                    boolean[] update, int ncols, int nsampled)
+        throws DataIOException
+    {
+        DataParser[] p = parsers == null ? new DataParser[ncols]
+                         : Arrays.copyOf(parsers, ncols);
+        for ( int i=0; i < ncols; ++i ) {
+            if ( update != null && !update[i] && i < parsers.length )
+                continue;
+            // columns without any values are read as text
+            p[i] = i < nsampled ? types.getParser(i)
+                   : m_pfactory.getParser(String.class);
+            if ( p[i] == null )
+                throw new DataIOException("No parser found for column " + i);
+        }
+        return p;
+    }
+
+    /**
+     * Splits the file into chunks at record boundaries. The file is first
+     * divided into blocks of the chunk size, and the quotes and line breaks
+     * of all blocks are counted in parallel. Then the first line break
+     * outside of quotes in each block is taken as the chunk boundary.
+     * @return the file offsets of the chunks, followed by the file size
+     */
+    private long[] split(MappedFile file, ForkJoinPool pool)
+        throws DataIOException
+    {
+        long size = file.m_size;
+        int nblocks = (int)Math.max(1, (size + m_chunkSize - 1) / m_chunkSize);
+        List<Callable<Block>> tasks = new ArrayList<>(nblocks);
+        for ( int i=0; i < nblocks; ++i ) {
+            long start = (long)i * m_chunkSize;
+            tasks.add(new Block(file, start, Math.min(size, start+m_chunkSize)));
+        }
+        List<Block> blocks = invoke(pool, tasks);
+
+        long[] starts = new long[nblocks+1];
+        int n = 0, parity = 0;
+        starts[n++] = 0;
+        for ( int i=0; i < nblocks; ++i ) {
+            Block b = blocks.get(i);
+            // a boundary needs an even number of quotes before it
+            long nl = b.m_newline[parity];
+            if ( i > 0 && nl >= 0 && nl+1 < size )
+                starts[n++] = nl+1;
+            parity = (parity + b.m_quotes) & 1;
+        }
+        starts[n++] = size;
+        for ( int i=1; i < n; ++i ) {
+            if ( starts[i]-starts[i-1] > Integer.MAX_VALUE - 8 )
+                throw new DataIOException("Record too long at byte "
+                    + starts[i-1]);
+        }
+        return Arrays.copyOf(starts, n);
+    }
+
+    /**
+     * Combines the parsed chunks into a table.
+     */
+    private Table stitch(List<Chunk> chunks, List<String> headers,
+                         final DataParser[] parsers, ForkJoinPool pool)
+        throws DataIOException
+    {
+        final int ncols = parsers.length;
+        final Chunk[] cs = chunks.toArray(new Chunk[chunks.size()]);
+        final int[] offsets = new int[cs.length];
+        long nrows = 0;
+        for ( int i=0; i < cs.length; ++i ) {
+            offsets[i] = (int)nrows;
+            nrows += cs[i].m_rows;
+        }
+        if ( nrows > Integer.MAX_VALUE )
+            throw new DataIOException("Too many rows: "+nrows);
+        final int rows = (int)nrows;
+
+        List<Callable<Column>> tasks = new ArrayList<>(ncols);
+        for ( int i=0; i < ncols; ++i ) {
+            final int col = i;
+            tasks.add(new Callable<Column>() {
+                public Column call() {
+                    return stitchColumn(cs, offsets, rows, col, parsers[col]);
+                }
+            });
+        }
+        List<Column> columns = invoke(pool, tasks);
+
+        Table table = new Table(rows, ncols);
+        for ( int i=0; i < ncols; ++i ) {
+            String header = i < headers.size() ? headers.get(i)
+                            : AbstractTextTableReader.getDefaultHeader(i);
+            table.addColumn(header, columns.get(i));
+        }
+        return table;
+    }
+
+    /**
+     * Copies the values of one column of all chunks into a table column.
+     */
+    private Column stitchColumn(Chunk[] cs, int[] offsets, int nrows,
+                                int col, DataParser parser)
+    {
+        int kind = OBJECT;
+        for ( Chunk c : cs )
+            kind = Math.max(kind, c.m_kinds[col]);
+        Class type;
+        switch ( kind ) {
+        case INT:    type = int.class;    break;
+        case LONG:   type = long.class;   break;
+        case DOUBLE: type = double.class; break;
+        default:     type = parser.getType();
+        }
+        if ( parser.getType() != type )
+            parser = m_pfactory.getParser(type);
+
+        Column column = ColumnFactory.getColumn(type, nrows);
+        for ( int k=0; k < cs.length; ++k ) {
+            Chunk c = cs[k];
+            int row = offsets[k], n = c.m_rows;
+            switch ( c.m_kinds[col] ) {
+            case INT:
+                int[] ints = c.m_ints[col];
+                if ( kind == INT ) {
+                    for ( int i=0; i < n; ++i )
+                        column.setInt(ints[i], row+i);
+                } else if ( kind == LONG ) {
+                    for ( int i=0; i < n; ++i )
+                        column.setLong(ints[i], row+i);
+                } else {
+                    for ( int i=0; i < n; ++i )
+                        column.setDouble(ints[i], row+i);
+                }
+                break;
+            case LONG:
+                long[] longs = c.m_longs[col];
+                if ( kind == LONG ) {
+                    for ( int i=0; i < n; ++i )
+                        column.setLong(longs[i], row+i);
+                } else {
+                    for ( int i=0; i < n; ++i )
+                        column.setDouble(longs[i], row+i);
+                }
+                break;
+            case DOUBLE:
+                double[] doubles = c.m_doubles[col];
+                for ( int i=0; i < n; ++i )
+                    column.setDouble(doubles[i], row+i);
+                break;
+            default:
+                Object[] objects = c.m_objects[col];
+                for ( int i=0; i < n; ++i ) {
+                    if ( objects[i] != null )
+                        column.set(objects[i], row+i);
+                }
+            }
+            // release the chunk storage early
+            c.m_ints[col] = null;
+            c.m_longs[col] = null;
+            c.m_doubles[col] = null;
+            c.m_objects[col] = null;
+        }
+        column.setParser(parser);
+        return column;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+     * Runs the given tasks in the pool, or on the calling thread if the pool
+     * is null, and returns their results in order.
+     */
+    private static <T> List<T> invoke(ForkJoinPool pool,
+                                      List<Callable<T>> tasks)
+        throws DataIOException
+    {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            if ( pool == null || tasks.size() < 2 ) {
+                for ( Callable<T> task : tasks )
+                    results.add(task.call());
+            } else {
+                for ( Future<T> f : pool.invokeAll(tasks) )
+                    results.add(f.get());
+            }
+        } catch ( ExecutionException e ) {
+            throw error(e.getCause());
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new DataIOException(e);
+        } catch ( Exception e ) {
+            throw error(e);
+        }
+        return results;
+    }
+
+    private static DataIOException error(Throwable t) {
+        if ( t instanceof DataIOException )
+            return (DataIOException)t;
+        if ( t instanceof RuntimeException )
+            throw (RuntimeException)t;
+        if ( t instanceof Error )
+            throw (Error)t;
+        return new DataIOException(t);
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+     * Decode a range of a buffer as UTF-8 text.
+     */
+    private static String decode(ByteBuffer buf, int start, int end) {
+        if ( buf.hasArray() )
+            return new String(buf.array(), buf.arrayOffset()+start, end-start,
+                              StandardCharsets.UTF_8);
+        byte[] b = new byte[end-start];
+        for ( int i=0; i < b.length; ++i )
+            b[i] = buf.get(start+i);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A file mapped into memory as a sequence of regions, since a single
+     * buffer can not map more than 2 GB. The regions are only accessed with
+     * absolute reads, so they can be shared by all tasks.
+     */
+    private static final class MappedFile {
+        final FileChannel m_channel;
+        final long m_size;
+        final int m_regionSize;
+        final MappedByteBuffer[] m_regions;
+
+        MappedFile(FileChannel ch, int regionSize) throws IOException {
+            m_channel = ch;
+            m_size = ch.size();
+            m_regionSize = regionSize;
+            int n = (int)((m_size + regionSize - 1) / regionSize);
+            m_regions = new MappedByteBuffer[n];
+            for ( int i=0; i < n; ++i ) {
+                long start = (long)i * regionSize;
+                m_regions[i] = ch.map(FileChannel.MapMode.READ_ONLY, start,
+                                      Math.min(regionSize, m_size-start));
+            }
+        }
+
+        /**
+         * Get a buffer of a range of the file, indexed from the start of
+         * the range. The buffer shares the mapped memory, a range crossing
+         * a region boundary is mapped on its own.
+         */
+        ByteBuffer slice(long start, long end) throws IOException {
+            if ( start >= end )
+                return ByteBuffer.allocate(0);
+            int r = (int)(start / m_regionSize);
+            long base = (long)r*m_regionSize;
+            if ( end - base <= m_regions[r].capacity() ) {
+                ByteBuffer buf = m_regions[r].duplicate();
+                buf.limit((int)(end-base));
+                buf.position((int)(start-base));
+                return buf.slice();
+            }
+            return m_channel.map(FileChannel.MapMode.READ_ONLY, start,
+                                 end-start);
+        }
+    }
+
+    /**
+     * Counts the quotes of a block of the file, and finds the first line
+     * break after an even and after an odd number of quotes.
+     */
+    private static final class Block implements Callable<Block> {
+        private final MappedFile m_file;
+        private final long m_start, m_end;
+        int m_quotes;
+        final long[] m_newline = { -1, -1 };
+
+        Block(MappedFile file, long start, long end) {
+            m_file = file;
+            m_start = start;
+            m_end = end;
+        }
+
+        public Block call() {
+            int len = (int)(m_end-m_start);
+            if ( len == 0 )
+                return this;
+            // blocks never cross region boundaries
+            int r = (int)(m_start / m_file.m_regionSize);
+            MappedByteBuffer buf = m_file.m_regions[r];
+            int off = (int)(m_start - (long)r*m_file.m_regionSize);
+            int quotes = 0, found = 0;
+            for ( int i=0; i < len; ++i ) {
+                byte b = buf.get(off+i);
+                if ( b == '"' ) {
+                    ++quotes;
+                } else if ( b == '\n' && found != 3 ) {
+                    int parity = quotes & 1;
+                    if ( m_newline[parity] < 0 ) {
+                        m_newline[parity] = m_start + i;
+                        found |= 1 << parity;
+                    }
+                }
+            }
+            m_quotes = quotes;
+            return this;
+        }
+    }
+
+    /**
+     * Splits a range of bytes into fields. Unquoted fields are read from the
+     * data where they are, quoted fields are unescaped into a scratch
+     * buffer. Like the {@link CSVTableReader}, leading and trailing white
+     * space is removed from all fields.
+     */
+    private final class Scanner {
+        final ByteBuffer m_data;
+        final int m_end;
+        final long m_base;
+        int m_pos;
+
+        // the current field, the range m_start to m_stop of m_field
+        ByteBuffer m_field;
+        int m_start, m_stop;
+        boolean m_quoted, m_last;
+        private boolean m_open = false;
+        private byte[] m_scratch = new byte[64];
+        private ByteBuffer m_scratchBuf = ByteBuffer.wrap(m_scratch);
+
+        Scanner(ByteBuffer data, int start, int end, long base) {
+            m_data = data;
+            m_pos = start;
+            m_end = end;
+            m_base = base;
+        }
+
+        /**
+         * Advance to the next field.
+         * @return false if there are no more fields
+         */
+        boolean next() throws DataParseException {
+            ByteBuffer d = m_data;
+            int p = m_pos, end = m_end;
+            if ( p >= end ) {
+                if ( !m_open )
+                    return false;
+                // empty last field after a trailing delimiter
+                m_field = d;
+                m_start = m_stop = p;
+                m_quoted = false;
+                m_last = true;
+                m_open = false;
+                return true;
+            }
+            while ( p < end && isSpace(d.get(p)) )
+                ++p;
+
+            if ( p < end && d.get(p) == '"' ) {
+                int w = 0, start = ++p;
+                byte[] s = m_scratch;
+                for ( ;; ) {
+                    if ( p >= end )
+                        throw new DataParseException(
+                            "Unterminated quote at byte " + (m_base+start));
+                    byte b = d.get(p++);
+                    if ( b == '"' ) {
+                        if ( p < end && d.get(p) == '"' ) {
+                            ++p;
+                        } else {
+                            break;
+                        }
+                    }
+                    if ( w == s.length ) {
+                        s = m_scratch = Arrays.copyOf(s, 2*w);
+                        m_scratchBuf = ByteBuffer.wrap(s);
+                    }
+                    s[w++] = b;
+                }
+                while ( p < end && isSpace(d.get(p)) )
+                    ++p;
+                if ( p < end && d.get(p) != m_delimiter && d.get(p) != '\n' )
+                    throw new DataParseException(
+                        "Invalid data format at byte " + (m_base+p));
+                m_field = m_scratchBuf;
+                m_start = 0;
+                m_stop = w;
+                m_quoted = true;
+            } else {
+                int start = p;
+                while ( p < end ) {
+                    byte b = d.get(p);
+                    if ( b == m_delimiter || b == '\n' )
+                        break;
+                    ++p;
+                }
+                m_field = d;
+                m_start = start;
+                m_stop = p;
+                m_quoted = false;
+            }
+
+            // trim the field
+            ByteBuffer f = m_field;
+            while ( m_start < m_stop && isTrim(f.get(m_start)) )
+                ++m_start;
+            while ( m_stop > m_start && isTrim(f.get(m_stop-1)) )
+                --m_stop;
+
+            m_last = p >= end || d.get(p) == '\n';
+            m_open = !m_last;
+            m_pos = p+1;
+            return true;
+        }
+
+        /**
+         * Indicates if the current field is the only field of a blank line.
+         */
+        boolean isBlank() {
+            return m_last && !m_quoted && m_start == m_stop;
+        }
+
+        String text() {
+            return decode(m_field, m_start, m_stop);
+        }
+
+        private boolean isSpace(byte b) {
+            return b >= 0 && b <= ' ' && b != '\n' && b != m_delimiter;
+        }
+
+        private boolean isTrim(byte b) {
+            return b >= 0 && b <= ' ';
+        }
+    }
+
+    /**
+     * Parses one chunk of the file into column storage.
+     */
+    private final class Chunk implements Callable<Chunk> {
+        private final MappedFile m_file;
+        private final long m_start, m_end;
+        private final DataParser m_longParser, m_doubleParser;
+        private DataParser[] m_parsers;
+        private Object[] m_defaults;
+
+        // the columns to parse, or null for all columns
+        private boolean[] m_columns;
+
+        int m_rows = 0;
+        int m_capacity;
+        int[] m_kinds;
+        int[][] m_ints;
+        long[][] m_longs;
+        double[][] m_doubles;
+        Object[][] m_objects;
+
+        // the first value of each column that did not fit the column type,
+        // or null if all values fit
+        String[] m_rejects;
+
+        // the validity of the last parsed number
+        private boolean m_valid;
+
+        Chunk(MappedFile file, long start, long end, DataParser[] parsers,
+              int capacity)
+        {
+            m_file = file;
+            m_start = start;
+            m_end = end;
+            m_parsers = parsers;
+            m_capacity = capacity;
+            m_longParser = m_pfactory.getParser(long.class);
+            m_doubleParser = m_pfactory.getParser(double.class);
+
+            int ncols = parsers.length;
+            m_kinds = new int[ncols];
+            m_defaults = new Object[ncols];
+            m_ints = new int[ncols][];
+            m_longs = new long[ncols][];
+            m_doubles = new double[ncols][];
+            m_objects = new Object[ncols][];
+            m_rejects = new String[ncols];
+            for ( int i=0; i < ncols; ++i )
+                init(i);
+        }
+
+        /**
+         * Prepare to parse the given columns again, with new parsers.
+         * Columns added since the last pass are parsed as well, the storage
+         * of all other columns is kept.
+         */
+        void prepare(DataParser[] parsers, boolean[] columns) {
+            int n = m_kinds.length, ncols = parsers.length;
+            m_parsers = parsers;
+            m_columns = Arrays.copyOf(columns, ncols);
+            if ( ncols > n ) {
+                m_kinds = Arrays.copyOf(m_kinds, ncols);
+                m_defaults = Arrays.copyOf(m_defaults, ncols);
+                m_ints = Arrays.copyOf(m_ints, ncols);
+                m_longs = Arrays.copyOf(m_longs, ncols);
+                m_doubles = Arrays.copyOf(m_doubles, ncols);
+                m_objects = Arrays.copyOf(m_objects, ncols);
+                Arrays.fill(m_columns, n, ncols, true);
+            }
+            for ( int i=0; i < ncols; ++i ) {
+                if ( m_columns[i] )
+                    init(i);
+            }
+            m_rows = 0;
+            m_rejects = new String[ncols];
+        }
+
+        /**
+         * Set up the empty storage of a column for the kind of its parser.
+         */
+        private void init(int col) {
+            DataParser p = m_parsers[col];
+            Class pc = p.getClass();
+            if ( pc == IntParser.class ) {
+                m_kinds[col] = INT;
+            } else if ( pc == LongParser.class ) {
+                m_kinds[col] = LONG;
+            } else if ( pc == DoubleParser.class ) {
+                m_kinds[col] = DOUBLE;
+            } else {
+                m_kinds[col] = OBJECT;
+            }
+            m_defaults[col] = ColumnFactory.getColumn(p.getType(), 0)
+                                           .getDefaultValue();
+            m_ints[col] = null;
+            m_longs[col] = null;
+            m_doubles[col] = null;
+            m_objects[col] = null;
+            allocate(col, m_capacity, 0);
+        }
+
+        public Chunk call() throws IOException, DataParseException {
+            ByteBuffer d = m_file.slice(m_start, m_end);
+            Scanner sc = new Scanner(d, 0, d.limit(), m_start);
+            int ncols = m_parsers.length;
+            int col = 0;
+            while ( sc.next() ) {
+                if ( col == 0 ) {
+                    if ( sc.isBlank() )
+                        continue;
+                    if ( m_rows == m_capacity )
+                        grow();
+                }
+                if ( col < ncols ) {
+                    if ( m_columns == null || m_columns[col] )
+                        set(col, sc.m_field, sc.m_start, sc.m_stop);
+                } else {
+                    reject(col, sc.text());
+                }
+                if ( sc.m_last ) {
+                    col = 0;
+                    ++m_rows;
+                } else {
+                    ++col;
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Parse a value into the current row of the given column. Values
+         * that are not valid for an int column are tried as long and then
+         * as double values.
+         */
+        @SuppressWarnings("fallthrough")
+        private void set(int col, ByteBuffer d, int s, int e) {
+            int row = m_rows;
+            switch ( m_kinds[col] ) {
+            case INT: {
+                long v = parseLong(d, s, e, false);
+                if ( m_valid && v == (int)v ) {
+                    m_ints[col][row] = (int)v;
+                    return;
+                }
+                if ( m_valid ) {
+                    if ( m_longParser != null ) {
+                        widen(col, LONG);
+                        m_longs[col][row] = v;
+                        return;
+                    }
+                    break;
+                }
+                // fall through
+            }
+            case LONG: {
+                long v = parseLong(d, s, e, true);
+                if ( m_valid && m_longParser != null ) {
+                    widen(col, LONG);
+                    m_longs[col][row] = v;
+                    return;
+                }
+                // fall through
+            }
+            case DOUBLE: {
+                double v = parseDouble(d, s, e);
+                if ( m_valid && m_doubleParser != null ) {
+                    widen(col, DOUBLE);
+                    m_doubles[col][row] = v;
+                    return;
+                }
+                break;
+            }
+            default: {
+                String text = decode(d, s, e);
+                DataParser p = m_parsers[col];
+                if ( p.canParse(text) ) {
+                    try {
+                        m_objects[col][row] = p.parse(text);
+                        return;
+                    } catch ( DataParseException ex ) {
+                        // fall through to reject the value
+                    }
+                }
+                reject(col, text);
+                return;
+            }
+            }
+            reject(col, decode(d, s, e));
+        }
+
+        private void reject(int col, String value) {
+            if ( col >= m_rejects.length )
+                m_rejects = Arrays.copyOf(m_rejects, col+1);
+            if ( m_rejects[col] == null )
+                m_rejects[col] = value;
+        }
+
+        /**
+         * Convert the storage of a numeric column to a wider kind.
+         */
+        private void widen(int col, int kind) {
+            int from = m_kinds[col];
+            if ( from >= kind )
+                return;
+            int n = m_capacity;
+            if ( kind == LONG ) {
+                long[] v = new long[n];
+                int[] a = m_ints[col];
+                for ( int i=0; i < n; ++i )
+                    v[i] = a[i];
+                m_longs[col] = v;
+            } else {
+                double[] v = new double[n];
+                if ( from == INT ) {
+                    int[] a = m_ints[col];
+                    for ( int i=0; i < n; ++i )
+                        v[i] = a[i];
+                } else {
+                    long[] a = m_longs[col];
+                    for ( int i=0; i < n; ++i )
+                        v[i] = a[i];
+                }
+                m_doubles[col] = v;
+            }
+            m_ints[col] = null;
+            if ( kind == DOUBLE )
+                m_longs[col] = null;
+            m_kinds[col] = kind;
+        }
+
+        private void grow() {
+            int capacity = Math.max(16, (3*m_capacity)/2 + 1);
+            for ( int i=0; i < m_kinds.length; ++i )
+                allocate(i, capacity, m_capacity);
+            m_capacity = capacity;
+        }
+
+        /**
+         * Allocate the storage of a column, filling new rows with the
+         * default value of the column.
+         */
+        private void allocate(int col, int capacity, int size) {
+            Object dflt = m_defaults[col];
+            switch ( m_kinds[col] ) {
+            case INT: {
+                int[] a = m_ints[col] == null ? new int[capacity]
+                          : Arrays.copyOf(m_ints[col], capacity);
+                Arrays.fill(a, size, capacity, ((Number)dflt).intValue());
+                m_ints[col] = a;
+                break;
+            }
+            case LONG: {
+                long[] a = m_longs[col] == null ? new long[capacity]
+                           : Arrays.copyOf(m_longs[col], capacity);
+                Arrays.fill(a, size, capacity, ((Number)dflt).longValue());
+                m_longs[col] = a;
+                break;
+            }
+            case DOUBLE: {
+                double[] a = m_doubles[col] == null ? new double[capacity]
+                             : Arrays.copyOf(m_doubles[col], capacity);
+                Arrays.fill(a, size, capacity, ((Number)dflt).doubleValue());
+                m_doubles[col] = a;
+                break;
+            }
+            default: {
+                Object[] a = m_objects[col] == null ? new Object[capacity]
+                             : Arrays.copyOf(m_objects[col], capacity);
+                Arrays.fill(a, size, capacity, dflt);
+                m_objects[col] = a;
+            }
+            }
+        }
+
+        /**
+         * Parse a decimal integer, as {@link Long#parseLong(String)} does.
+         * Sets m_valid to indicate success.
+         */
+        private long parseLong(ByteBuffer d, int s, int e, boolean suffix) {
+            m_valid = false;
+            if ( s >= e )
+                return 0;
+            boolean neg = false;
+            if ( d.get(s) == '-' ) {
+                neg = true;
+                ++s;
+            } else if ( d.get(s) == '+' ) {
+                ++s;
+            }
+            if ( suffix && e-1 > s
+                 && (d.get(e-1) == 'l' || d.get(e-1) == 'L') )
+                --e;
+            if ( s >= e )
+                return 0;
+            // accumulate negatively to cover Long.MIN_VALUE
+            long v = 0;
+            for ( int i=s; i < e; ++i ) {
+                int c = d.get(i) - '0';
+                if ( c < 0 || c > 9 || v < Long.MIN_VALUE/10 )
+                    return 0;
+                v *= 10;
+                if ( v < Long.MIN_VALUE + c )
+                    return 0;
+                v -= c;
+            }
+            if ( !neg ) {
+                if ( v == Long.MIN_VALUE )
+                    return 0;
+                v = -v;
+            }
+            m_valid = true;
+            return v;
+        }
+
+        /**
+         * Parse a floating point value. Plain decimals whose digits fit into
+         * the mantissa are computed exactly from the bytes, all other forms
+         * are handed to the double parser. Sets m_valid to indicate success.
+         */
+        private double parseDouble(ByteBuffer d, int s, int e) {
+            m_valid = false;
+            int i = s;
+            boolean neg = false;
+            if ( i < e && (d.get(i) == '-' || d.get(i) == '+') )
+                neg = d.get(i++) == '-';
+            long m = 0;
+            int frac = -1, digits = 0;
+            for ( ; i < e; ++i ) {
+                byte b = d.get(i);
+                if ( b >= '0' && b <= '9' ) {
+                    m = 10*m + (b-'0');
+                    ++digits;
+                    if ( frac >= 0 )
+                        ++frac;
+                    if ( m >= (1L << 53) || frac >= POW10.length )
+                        break;
+                } else if ( b == '.' && frac < 0 ) {
+                    frac = 0;
+                } else {
+                    break;
+                }
+            }
+            if ( i == e && digits > 0 ) {
+                // both operands are exact, so the quotient is rounded
+                // correctly
+                double v = frac > 0 ? m / POW10[frac] : m;
+                m_valid = true;
+                return neg ? -v : v;
+            }
+            if ( m_doubleParser == null )
+                return 0;
+            String text = decode(d, s, e);
+            if ( !m_doubleParser.canParse(text) )
+                return 0;
+            m_valid = true;
+            return Double.parseDouble(text);
+        }
+    }
+
+} // end of class MappedCSVTableReader
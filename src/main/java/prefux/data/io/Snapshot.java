@@ -0,0 +1,832 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.data.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+
+import prefux.data.Table;
+import prefux.data.column.Column;
+import prefux.data.column.ColumnFactory;
+import prefux.data.parser.DataParseException;
+import prefux.data.parser.DataParser;
+import prefux.data.parser.ParserFactory;
+import prefux.util.TimeLib;
+import prefux.util.collections.ObjectIntHashMap;
+
+/**
+ * <p>Implementation of the binary snapshot format shared by
+ * {@link SnapshotTableReader}, {@link SnapshotTableWriter},
+ * {@link SnapshotGraphReader} and {@link SnapshotGraphWriter}.</p>
+ *
+ * <p>A snapshot starts with a header holding the kind of the stored data,
+ * the graph settings if any, and the schema of each stored table. The
+ * header lists the offset and length of every column block, so that
+ * columns can be mapped and loaded independently. Blocks are aligned to
+ * eight bytes. All values are stored little-endian.</p>
+ *
+ * <ul>
+ * <li>int, long, float, double and byte columns are stored as raw
+ * primitive arrays.</li>
+ * <li>boolean columns are stored as a bit set of long words.</li>
+ * <li>date columns are stored as long millisecond values.</li>
+ * <li>String columns are stored as a dictionary of distinct UTF-8 encoded
+ * values, followed by an int code per row, -1 for null.</li>
+ * <li>columns of any other type are formatted with the parser for their
+ * type and stored like String columns.</li>
+ * </ul>
+ *
+ * <p>Table rows are stored by row number, including deleted rows, so that
+ * row numbers, and thus graph edges, stay the same. If a table has deleted
+ * rows, a bit set of the valid rows is stored as well.</p>
+ */
+final class Snapshot {
+
+    static final int MAGIC   = 0x53584650; // "PFXS"
+    static final int VERSION = 1;
+
+    // kinds of stored data
+    static final byte TABLE = 0;
+    static final byte GRAPH = 1;
+    static final byte TREE  = 2;
+
+    // column encodings
+    private static final byte INT     = 1;
+    private static final byte LONG    = 2;
+    private static final byte FLOAT   = 3;
+    private static final byte DOUBLE  = 4;
+    private static final byte BYTE    = 5;
+    private static final byte BOOLEAN = 6;
+    private static final byte DATE    = 7;
+    private static final byte STRING  = 8;
+    private static final byte OBJECT  = 9;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private Snapshot() {
+        // prevent instantiation
+    }
+
+    // ------------------------------------------------------------------------
+    // Writing
+
+    /**
+     * The contents of a snapshot: the kind of data, the graph settings and
+     * the tables.
+     */
+    static final class Contents {
+        byte kind = TABLE;
+        boolean directed;
+        String nodeKey, sourceKey, targetKey;
+        Table[] tables;
+    }
+
+    /**
+     * Write a snapshot to the given stream. The stream is closed
+     * afterwards.
+     */
+    static void write(Contents contents, OutputStream os, ParserFactory pf)
+        throws DataIOException
+    {
+        try ( WritableByteChannel ch = Channels.newChannel(os) ) {
+            Table[] tables = contents.tables;
+            ColumnPlan[][] plans = new ColumnPlan[tables.length][];
+            long[] valid = new long[tables.length];
+            for ( int t=0; t<tables.length; ++t ) {
+                plans[t] = plan(tables[t], pf);
+                valid[t] = hasDeletedRows(tables[t])
+                    ? 8L*words(tables[t].getMaximumRow()+1) : 0;
+            }
+
+            // measure the header, then assign the block offsets
+            Output header = new Output(null);
+            writeHeader(header, contents, plans, valid);
+            long offset = align(header.count(), 8);
+            for ( int t=0; t<tables.length; ++t ) {
+                if ( valid[t] > 0 ) {
+                    plans[t][0].validOffset = offset;
+                    offset = align(offset + valid[t], 8);
+                }
+                for ( ColumnPlan p : plans[t] ) {
+                    p.offset = offset;
+                    offset = align(offset + p.length, 8);
+                }
+            }
+
+            Output out = new Output(ch);
+            writeHeader(out, contents, plans, valid);
+            for ( int t=0; t<tables.length; ++t ) {
+                Table table = tables[t];
+                if ( valid[t] > 0 ) {
+                    out.align(8);
+                    writeValidRows(out, table);
+                }
+                for ( ColumnPlan p : plans[t] ) {
+                    out.align(8);
+                    writeColumn(out, table, p);
+                }
+            }
+            out.flush();
+        } catch ( IOException e ) {
+            throw new DataIOException(e);
+        }
+    }
+
+    /**
+     * The encoding of a table column and the position of its block.
+     */
+    private static final class ColumnPlan {
+        int col;
+        String name;
+        Class type;
+        byte encoding;
+        Object dflt;
+        DataParser parser;
+        // dictionary encodings
+        ArrayList<byte[]> dict;
+        int dictBytes;
+        int[] codes;
+        // block position
+        long offset, length;
+        // the valid row bit set, only used by the first column of a table
+        long validOffset = -1;
+    }
+
+    private static ColumnPlan[] plan(Table table, ParserFactory pf)
+        throws DataIOException
+    {
+        int nrows = table.getMaximumRow()+1;
+        ColumnPlan[] plans = new ColumnPlan[table.getColumnCount()];
+        for ( int c=0; c<plans.length; ++c ) {
+            ColumnPlan p = plans[c] = new ColumnPlan();
+            Column column = table.getColumn(c);
+            p.col = c;
+            p.name = table.getColumnName(c);
+            p.type = table.getColumnType(c);
+            p.dflt = column.getDefaultValue();
+            p.encoding = encoding(p.type);
+            switch ( p.encoding ) {
+            case INT:
+            case FLOAT:
+                p.length = 4L*nrows;
+                break;
+            case LONG:
+            case DOUBLE:
+            case DATE:
+                p.length = 8L*nrows;
+                break;
+            case BYTE:
+                p.length = nrows;
+                break;
+            case BOOLEAN:
+                p.length = 8L*words(nrows);
+                break;
+            case OBJECT:
+                p.parser = pf.getParser(p.type);
+                if ( p.parser == null ) {
+                    throw new DataIOException("No parser for column \""
+                        + p.name + "\" of type " + p.type.getName());
+                }
+                buildDictionary(table, p);
+                break;
+            default:
+                buildDictionary(table, p);
+            }
+        }
+        return plans;
+    }
+
+    private static byte encoding(Class type) {
+        if ( type == int.class ) {
+            return INT;
+        } else if ( type == long.class ) {
+            return LONG;
+        } else if ( type == float.class ) {
+            return FLOAT;
+        } else if ( type == double.class ) {
+            return DOUBLE;
+        } else if ( type == byte.class ) {
+            return BYTE;
+        } else if ( type == boolean.class ) {
+            return BOOLEAN;
+        } else if ( Date.class.isAssignableFrom(type) ) {
+            return DATE;
+        } else if ( type == String.class ) {
+            return STRING;
+        } else {
+            return OBJECT;
+        }
+    }
+
+    private static void buildDictionary(Table table, ColumnPlan p) {
+        int nrows = table.getMaximumRow()+1;
+        Column column = table.getColumn(p.col);
+        ObjectIntHashMap map = new ObjectIntHashMap();
+        map.setMissingValue(-1);
+        p.dict = new ArrayList<byte[]>();
+        p.codes = new int[nrows];
+        for ( int r=0; r<nrows; ++r ) {
+            Object val = table.isValidRow(r)
+                ? column.get(table.getColumnRow(r, p.col)) : p.dflt;
+            if ( val == null ) {
+                p.codes[r] = -1;
+                continue;
+            }
+            String s = p.parser == null ? (String)val : p.parser.format(val);
+            int code = map.get(s);
+            if ( code < 0 ) {
+                code = p.dict.size();
+                byte[] b = s.getBytes(StandardCharsets.UTF_8);
+                p.dict.add(b);
+                p.dictBytes += b.length;
+                map.put(s, code);
+            }
+            p.codes[r] = code;
+        }
+        p.length = align(4L*(p.dict.size()+2) + p.dictBytes, 4) + 4L*nrows;
+    }
+
+    private static boolean hasDeletedRows(Table table) {
+        return table.getRowCount() != table.getMaximumRow()+1;
+    }
+
+    private static void writeHeader(Output out, Contents contents,
+                                    ColumnPlan[][] plans, long[] valid)
+        throws IOException
+    {
+        out.putInt(MAGIC);
+        out.putInt(VERSION);
+        out.putByte(contents.kind);
+        if ( contents.kind != TABLE ) {
+            out.putByte(contents.directed ? 1 : 0);
+            out.putString(contents.nodeKey);
+            out.putString(contents.sourceKey);
+            out.putString(contents.targetKey);
+        }
+        out.putInt(plans.length);
+        for ( int t=0; t<plans.length; ++t ) {
+            Table table = contents.tables[t];
+            out.putInt(table.getMaximumRow()+1);
+            out.putInt(plans[t].length);
+            out.putLong(valid[t] > 0 ? plans[t][0].validOffset : -1);
+            for ( ColumnPlan p : plans[t] ) {
+                out.putString(p.name);
+                out.putString(p.type.getName());
+                out.putByte(p.encoding);
+                writeValue(out, p.encoding, p.dflt, p.parser);
+                out.putLong(p.offset);
+                out.putLong(p.length);
+            }
+        }
+    }
+
+    private static void writeValue(Output out, byte enc, Object val,
+                                   DataParser parser) throws IOException
+    {
+        switch ( enc ) {
+        case INT:
+            out.putInt(val == null ? 0 : ((Number)val).intValue());
+            break;
+        case LONG:
+            out.putLong(val == null ? 0 : ((Number)val).longValue());
+            break;
+        case FLOAT:
+            out.putFloat(val == null ? 0 : ((Number)val).floatValue());
+            break;
+        case DOUBLE:
+            out.putDouble(val == null ? 0 : ((Number)val).doubleValue());
+            break;
+        case BYTE:
+            out.putByte(val == null ? 0 : ((Number)val).byteValue());
+            break;
+        case BOOLEAN:
+            out.putByte(val != null && ((Boolean)val).booleanValue() ? 1 : 0);
+            break;
+        case DATE:
+            out.putByte(val == null ? 0 : 1);
+            out.putLong(val == null ? 0 : ((Date)val).getTime());
+            break;
+        case STRING:
+            out.putString((String)val);
+            break;
+        default:
+            out.putString(val == null ? null : parser.format(val));
+        }
+    }
+
+    private static void writeValidRows(Output out, Table table)
+        throws IOException
+    {
+        int nrows = table.getMaximumRow()+1;
+        for ( int w=0, n=words(nrows); w<n; ++w ) {
+            long word = 0;
+            for ( int r=w<<6, end=Math.min(nrows, r+64); r<end; ++r ) {
+                if ( table.isValidRow(r) ) word |= 1L << r;
+            }
+            out.putLong(word);
+        }
+    }
+
+    private static void writeColumn(Output out, Table table, ColumnPlan p)
+        throws IOException
+    {
+        int nrows = table.getMaximumRow()+1;
+        Column column = table.getColumn(p.col);
+        Object dflt = p.dflt;
+        switch ( p.encoding ) {
+        case INT: {
+            int d = dflt == null ? 0 : ((Number)dflt).intValue();
+            for ( int r=0; r<nrows; ++r ) {
+                out.putInt(table.isValidRow(r)
+                    ? column.getInt(table.getColumnRow(r, p.col)) : d);
+            }
+            break;
+        }
+        case LONG:
+        case DATE: {
+            long d = dflt == null ? 0 : (p.encoding == DATE
+                ? ((Date)dflt).getTime() : ((Number)dflt).longValue());
+            for ( int r=0; r<nrows; ++r ) {
+                out.putLong(table.isValidRow(r)
+                    ? column.getLong(table.getColumnRow(r, p.col)) : d);
+            }
+            break;
+        }
+        case FLOAT: {
+            float d = dflt == null ? 0 : ((Number)dflt).floatValue();
+            for ( int r=0; r<nrows; ++r ) {
+                out.putFloat(table.isValidRow(r)
+                    ? column.getFloat(table.getColumnRow(r, p.col)) : d);
+            }
+            break;
+        }
+        case DOUBLE: {
+            double d = dflt == null ? 0 : ((Number)dflt).doubleValue();
+            for ( int r=0; r<nrows; ++r ) {
+                out.putDouble(table.isValidRow(r)
+                    ? column.getDouble(table.getColumnRow(r, p.col)) : d);
+            }
+            break;
+        }
+        case BYTE: {
+            byte d = dflt == null ? 0 : ((Number)dflt).byteValue();
+            for ( int r=0; r<nrows; ++r ) {
+                Object val = table.isValidRow(r)
+                    ? column.get(table.getColumnRow(r, p.col)) : null;
+                out.putByte(val == null ? d : ((Number)val).byteValue());
+            }
+            break;
+        }
+        case BOOLEAN: {
+            boolean d = dflt != null && ((Boolean)dflt).booleanValue();
+            for ( int w=0, n=words(nrows); w<n; ++w ) {
+                long word = 0;
+                for ( int r=w<<6, end=Math.min(nrows, r+64); r<end; ++r ) {
+                    boolean b = table.isValidRow(r)
+                        ? column.getBoolean(table.getColumnRow(r, p.col)) : d;
+                    if ( b ) word |= 1L << r;
+                }
+                out.putLong(word);
+            }
+            break;
+        }
+        default: {
+            int n = p.dict.size();
+            out.putInt(n);
+            int off = 0;
+            out.putInt(off);
+            for ( byte[] b : p.dict ) {
+                out.putInt(off += b.length);
+            }
+            for ( byte[] b : p.dict ) {
+                out.putBytes(b);
+            }
+            out.align(4);
+            for ( int r=0; r<nrows; ++r ) {
+                out.putInt(p.codes[r]);
+            }
+            p.dict = null;
+            p.codes = null;
+        }
+        }
+    }
+
+    /**
+     * Buffered little-endian output, counting the written bytes. If no
+     * channel is given, the bytes are only counted.
+     */
+    private static final class Output {
+        private final WritableByteChannel m_channel;
+        private final ByteBuffer m_buf;
+        private long m_count;
+
+        Output(WritableByteChannel channel) {
+            m_channel = channel;
+            m_buf = ByteBuffer.allocate(BUFFER_SIZE)
+                              .order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        long count() {
+            return m_count + m_buf.position();
+        }
+
+        void ensure(int n) throws IOException {
+            if ( m_buf.remaining() < n ) flush();
+        }
+
+        void flush() throws IOException {
+            m_buf.flip();
+            m_count += m_buf.remaining();
+            if ( m_channel != null ) {
+                while ( m_buf.hasRemaining() )
+                    m_channel.write(m_buf);
+            }
+            m_buf.clear();
+        }
+
+        void putByte(int v) throws IOException {
+            ensure(1); m_buf.put((byte)v);
+        }
+
+        void putInt(int v) throws IOException {
+            ensure(4); m_buf.putInt(v);
+        }
+
+        void putLong(long v) throws IOException {
+            ensure(8); m_buf.putLong(v);
+        }
+
+        void putFloat(float v) throws IOException {
+            ensure(4); m_buf.putFloat(v);
+        }
+
+        void putDouble(double v) throws IOException {
+            ensure(8); m_buf.putDouble(v);
+        }
+
+        void putBytes(byte[] b) throws IOException {
+            for ( int i=0; i<b.length; ) {
+                ensure(1);
+                int n = Math.min(b.length-i, m_buf.remaining());
+                m_buf.put(b, i, n);
+                i += n;
+            }
+        }
+
+        void putString(String s) throws IOException {
+            if ( s == null ) {
+                putInt(-1);
+            } else {
+                byte[] b = s.getBytes(StandardCharsets.UTF_8);
+                putInt(b.length);
+                putBytes(b);
+            }
+        }
+
+        void align(int n) throws IOException {
+            while ( count() % n != 0 )
+                putByte(0);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Reading
+
+    /**
+     * Read a snapshot from a file. The file is memory-mapped, and the
+     * column blocks are decoded lazily if requested.
+     */
+    static Contents read(File f, ParserFactory pf, boolean lazy)
+        throws DataIOException
+    {
+        try ( FileChannel ch = FileChannel.open(f.toPath(),
+                                                StandardOpenOption.READ) )
+        {
+            long size = ch.size();
+            ByteBuffer whole = size <= Integer.MAX_VALUE
+                ? ch.map(FileChannel.MapMode.READ_ONLY, 0, size) : null;
+            return read(new Source(ch, whole, size), pf, lazy);
+        } catch ( IOException e ) {
+            throw new DataIOException(e);
+        }
+    }
+
+    /**
+     * Read a snapshot from a stream. The stream is read completely, and
+     * the column blocks are decoded lazily if requested.
+     */
+    static Contents read(InputStream is, ParserFactory pf, boolean lazy)
+        throws DataIOException
+    {
+        try {
+            ReadableByteChannel ch = Channels.newChannel(is);
+            ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+            while ( ch.read(buf) >= 0 ) {
+                if ( !buf.hasRemaining() ) {
+                    if ( buf.capacity() == Integer.MAX_VALUE )
+                        throw new DataIOException("Snapshot too large");
+                    ByteBuffer b = ByteBuffer.allocate((int)Math.min(
+                        Integer.MAX_VALUE, 2L*buf.capacity()));
+                    buf.flip();
+                    b.put(buf);
+                    buf = b;
+                }
+            }
+            buf.flip();
+            return read(new Source(null, buf, buf.limit()), pf, lazy);
+        } catch ( IOException e ) {
+            throw new DataIOException(e);
+        }
+    }
+
+    /**
+     * The bytes of a snapshot, either completely in one buffer, or in a
+     * file channel that is mapped block by block.
+     */
+    private static final class Source {
+        private final FileChannel m_channel;
+        private final ByteBuffer m_whole;
+        private final long m_size;
+
+        Source(FileChannel channel, ByteBuffer whole, long size) {
+            m_channel = channel;
+            m_whole = whole;
+            m_size = size;
+        }
+
+        ByteBuffer get(long offset, long length) throws IOException, DataIOException {
+            if ( offset < 0 || length < 0 || offset+length > m_size )
+                throw new DataIOException("Corrupt snapshot: block "
+                    + offset + "+" + length + " exceeds size " + m_size);
+            if ( length > Integer.MAX_VALUE )
+                throw new DataIOException("Block too large: " + length);
+            ByteBuffer b;
+            if ( m_whole != null ) {
+                b = m_whole.duplicate();
+                b.limit((int)(offset+length)).position((int)offset);
+                b = b.slice();
+            } else {
+                b = m_channel.map(FileChannel.MapMode.READ_ONLY,
+                                  offset, length);
+            }
+            return b.order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    private static Contents read(Source src, ParserFactory pf, boolean lazy)
+        throws IOException, DataIOException
+    {
+        ByteBuffer in = src.get(0, Math.min(src.m_size, Integer.MAX_VALUE));
+        if ( in.remaining() < 8 || in.getInt() != MAGIC )
+            throw new DataIOException("Not a snapshot file");
+        int version = in.getInt();
+        if ( version != VERSION )
+            throw new DataIOException("Unsupported snapshot version: "
+                                      + version);
+
+        Contents contents = new Contents();
+        contents.kind = in.get();
+        if ( contents.kind != TABLE ) {
+            contents.directed = in.get() != 0;
+            contents.nodeKey = getString(in);
+            contents.sourceKey = getString(in);
+            contents.targetKey = getString(in);
+        }
+        contents.tables = new Table[in.getInt()];
+        for ( int t=0; t<contents.tables.length; ++t ) {
+            int nrows = in.getInt();
+            int ncols = in.getInt();
+            long validOffset = in.getLong();
+
+            Table table = contents.tables[t] = new Table(nrows, ncols);
+            if ( validOffset >= 0 ) {
+                ByteBuffer valid = src.get(validOffset, 8L*words(nrows));
+                for ( int r=0; r<nrows; ++r ) {
+                    if ( (valid.getLong(8*(r>>6)) & (1L << r)) == 0 )
+                        table.removeRow(r);
+                }
+            }
+            for ( int c=0; c<ncols; ++c ) {
+                String name = getString(in);
+                Class type = getType(getString(in));
+                byte enc = in.get();
+                DataParser parser = enc == OBJECT ? pf.getParser(type) : null;
+                if ( enc == OBJECT && parser == null ) {
+                    throw new DataIOException("No parser for column \""
+                        + name + "\" of type " + type.getName());
+                }
+                Object dflt = getValue(in, enc, type, parser);
+                ByteBuffer block = src.get(in.getLong(), in.getLong());
+                Column column;
+                if ( lazy ) {
+                    column = new LazyColumn(type, dflt, nrows, () ->
+                        decode(block, enc, type, dflt, nrows, parser));
+                } else {
+                    column = decode(block, enc, type, dflt, nrows, parser);
+                }
+                table.addColumn(name, column);
+            }
+        }
+        return contents;
+    }
+
+    private static Object getValue(ByteBuffer in, byte enc, Class type,
+                                   DataParser parser) throws IOException, DataIOException
+    {
+        switch ( enc ) {
+        case INT:
+            return new Integer(in.getInt());
+        case LONG:
+            return new Long(in.getLong());
+        case FLOAT:
+            return new Float(in.getFloat());
+        case DOUBLE:
+            return new Double(in.getDouble());
+        case BYTE:
+            return new Byte(in.get());
+        case BOOLEAN:
+            return in.get() != 0 ? Boolean.TRUE : Boolean.FALSE;
+        case DATE:
+            boolean set = in.get() != 0;
+            long time = in.getLong();
+            return set ? TimeLib.getDate(type, time) : null;
+        case STRING:
+            return getString(in);
+        case OBJECT:
+            String s = getString(in);
+            try {
+                return s == null ? null : parser.parse(s);
+            } catch ( DataParseException e ) {
+                throw new DataIOException(e);
+            }
+        default:
+            throw new DataIOException("Unknown column encoding: " + enc);
+        }
+    }
+
+    /**
+     * Create a column from its block.
+     */
+    private static Column decode(ByteBuffer block, byte enc, Class type,
+                                 Object dflt, int nrows, DataParser parser)
+    {
+        Column column = ColumnFactory.getColumn(type, nrows, dflt);
+        ByteBuffer in = block.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        switch ( enc ) {
+        case INT:
+            for ( int r=0; r<nrows; ++r )
+                column.setInt(in.getInt(), r);
+            break;
+        case LONG:
+        case DATE:
+            for ( int r=0; r<nrows; ++r )
+                column.setLong(in.getLong(), r);
+            break;
+        case FLOAT:
+            for ( int r=0; r<nrows; ++r )
+                column.setFloat(in.getFloat(), r);
+            break;
+        case DOUBLE:
+            for ( int r=0; r<nrows; ++r )
+                column.setDouble(in.getDouble(), r);
+            break;
+        case BYTE:
+            for ( int r=0; r<nrows; ++r )
+                column.set(new Byte(in.get()), r);
+            break;
+        case BOOLEAN:
+            for ( int r=0; r<nrows; ++r )
+                column.setBoolean((in.getLong(8*(r>>6)) & (1L<<r)) != 0, r);
+            break;
+        default:
+            int n = in.getInt();
+            int[] offsets = new int[n+1];
+            for ( int i=0; i<=n; ++i )
+                offsets[i] = in.getInt();
+            byte[] bytes = new byte[offsets[n]];
+            in.get(bytes);
+            in.position((int)align(in.position(), 4));
+            String[] dict = new String[n];
+            for ( int i=0; i<n; ++i ) {
+                dict[i] = new String(bytes, offsets[i],
+                    offsets[i+1]-offsets[i], StandardCharsets.UTF_8);
+            }
+            bytes = null;
+            try {
+                for ( int r=0; r<nrows; ++r ) {
+                    int code = in.getInt();
+                    String s = code < 0 ? null : dict[code];
+                    // strings are shared, other values are parsed per
+                    // row, as they may be mutable
+                    column.set(parser == null || s == null
+                               ? s : parser.parse(s), r);
+                }
+            } catch ( DataParseException e ) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return column;
+    }
+
+    private static String getString(ByteBuffer in) {
+        int len = in.getInt();
+        if ( len < 0 ) return null;
+        byte[] b = new byte[len];
+        in.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static Class getType(String name) throws DataIOException {
+        switch ( name ) {
+        case "int":     return int.class;
+        case "long":    return long.class;
+        case "float":   return float.class;
+        case "double":  return double.class;
+        case "byte":    return byte.class;
+        case "boolean": return boolean.class;
+        default:
+            try {
+                return Class.forName(name);
+            } catch ( ClassNotFoundException e ) {
+                throw new DataIOException(e);
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+     * Get the local file for a location string, or null if the location
+     * does not denote an existing file.
+     */
+    static File localFile(String location) {
+        File f = new File(location);
+        return f.isFile() ? f : null;
+    }
+
+    /**
+     * Get the local file for a URL, or null if the URL does not denote an
+     * existing file.
+     */
+    static File localFile(URL url) {
+        if ( !"file".equals(url.getProtocol()) )
+            return null;
+        try {
+            File f = new File(url.toURI());
+            return f.isFile() ? f : null;
+        } catch ( URISyntaxException | IllegalArgumentException e ) {
+            return null;
+        }
+    }
+
+    private static int words(int nbits) {
+        return (nbits + 63) >>> 6;
+    }
+
+    private static long align(long offset, int n) {
+        return (offset + n - 1) / n * n;
+    }
+
+} // end of class Snapshot
@@ -0,0 +1,138 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.data.io;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.URL;
+
+import prefux.data.Graph;
+import prefux.data.Tree;
+import prefux.data.parser.ParserFactory;
+
+/**
+ * GraphReader for binary snapshots written by {@link SnapshotGraphWriter}.
+ * Snapshots of trees are read as {@link Tree} instances. Local files are
+ * memory-mapped and, by default, node and edge columns are loaded lazily,
+ * as described for {@link SnapshotTableReader}. The key columns are needed
+ * to build the adjacency lists, so they are always loaded right away.
+ */
+public class SnapshotGraphReader extends AbstractGraphReader {
+
+    private ParserFactory m_pfactory;
+    private boolean m_lazy = true;
+    
+    /**
+     * Create a new SnapshotGraphReader that uses the default parser factory
+     * for object columns.
+     */
+    public SnapshotGraphReader() {
+        this(ParserFactory.getDefaultFactory());
+    }
+    
+    /**
+     * Create a new SnapshotGraphReader.
+     * @param parserFactory the ParserFactory used to parse the values of
+     * object columns
+     */
+    public SnapshotGraphReader(ParserFactory parserFactory) {
+        m_pfactory = parserFactory;
+    }
+    
+    /**
+     * Set if columns should be loaded when first accessed, rather than
+     * when the snapshot is read. The default is true.
+     * @param lazy true to load columns lazily
+     */
+    public void setLazy(boolean lazy) {
+        m_lazy = lazy;
+    }
+    
+    /**
+     * Indicates if columns are loaded when first accessed.
+     * @return true if columns are loaded lazily
+     */
+    public boolean isLazy() {
+        return m_lazy;
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    /**
+     * Read a graph, memory-mapping the location if it is a local file.
+     * @see prefux.data.io.GraphReader#readGraph(java.lang.String)
+     */
+    public Graph readGraph(String location) throws DataIOException {
+        File f = Snapshot.localFile(location);
+        return f != null ? readGraph(f) : super.readGraph(location);
+    }
+    
+    /**
+     * Read a graph, memory-mapping the URL if it denotes a local file.
+     * @see prefux.data.io.GraphReader#readGraph(java.net.URL)
+     */
+    public Graph readGraph(URL url) throws DataIOException {
+        File f = Snapshot.localFile(url);
+        return f != null ? readGraph(f) : super.readGraph(url);
+    }
+    
+    /**
+     * Read a graph from a memory-mapped file.
+     * @see prefux.data.io.GraphReader#readGraph(java.io.File)
+     */
+    public Graph readGraph(File f) throws DataIOException {
+        return graph(Snapshot.read(f, m_pfactory, m_lazy));
+    }
+    
+    /**
+     * Read a graph from a stream. The stream is read completely into
+     * memory.
+     * @see prefux.data.io.GraphReader#readGraph(java.io.InputStream)
+     */
+    public Graph readGraph(InputStream is) throws DataIOException {
+        return graph(Snapshot.read(is, m_pfactory, m_lazy));
+    }
+    
+    private static Graph graph(Snapshot.Contents c) throws DataIOException {
+        switch ( c.kind ) {
+        case Snapshot.GRAPH:
+            return new Graph(c.tables[0], c.tables[1], c.directed,
+                             c.nodeKey, c.sourceKey, c.targetKey);
+        case Snapshot.TREE:
+            return new Tree(c.tables[0], c.tables[1],
+                            c.nodeKey, c.sourceKey, c.targetKey);
+        default:
+            throw new DataIOException("Snapshot does not hold a graph. "
+                + "Use a SnapshotTableReader to read it.");
+        }
+    }
+
+} // end of class SnapshotGraphReader
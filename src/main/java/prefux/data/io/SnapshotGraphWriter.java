@@ -0,0 +1,86 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.data.io;
+
+import java.io.OutputStream;
+
+import prefux.data.Graph;
+import prefux.data.Table;
+import prefux.data.Tree;
+import prefux.data.parser.ParserFactory;
+
+/**
+ * GraphWriter that writes a graph or tree as a binary snapshot, holding the
+ * node and edge tables in the format of {@link SnapshotTableWriter}, the
+ * directedness of the graph and its key fields. Node and edge row numbers
+ * are preserved.
+ * 
+ * @see SnapshotGraphReader
+ */
+public class SnapshotGraphWriter extends AbstractGraphWriter {
+
+    private ParserFactory m_pfactory;
+    
+    /**
+     * Create a new SnapshotGraphWriter that uses the default parser factory
+     * for object columns.
+     */
+    public SnapshotGraphWriter() {
+        this(ParserFactory.getDefaultFactory());
+    }
+    
+    /**
+     * Create a new SnapshotGraphWriter.
+     * @param parserFactory the ParserFactory used to format the values of
+     * object columns
+     */
+    public SnapshotGraphWriter(ParserFactory parserFactory) {
+        m_pfactory = parserFactory;
+    }
+    
+    /**
+     * @see prefux.data.io.GraphWriter#writeGraph(prefux.data.Graph, java.io.OutputStream)
+     */
+    public void writeGraph(Graph graph, OutputStream os)
+        throws DataIOException
+    {
+        Snapshot.Contents contents = new Snapshot.Contents();
+        contents.kind = graph instanceof Tree ? Snapshot.TREE : Snapshot.GRAPH;
+        contents.directed = graph.isDirected();
+        contents.nodeKey = graph.getNodeKeyField();
+        contents.sourceKey = graph.getEdgeSourceField();
+        contents.targetKey = graph.getEdgeTargetField();
+        contents.tables = new Table[] {
+            graph.getNodeTable(), graph.getEdgeTable() };
+        Snapshot.write(contents, os, m_pfactory);
+    }
+
+} // end of class SnapshotGraphWriter
@@ -0,0 +1,132 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.data.io;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.URL;
+
+import prefux.data.Table;
+import prefux.data.parser.ParserFactory;
+
+/**
+ * TableReader for binary snapshots written by {@link SnapshotTableWriter}.
+ * Local files are memory-mapped. By default, the columns are loaded
+ * lazily: a column is only decoded when its values are first accessed, so
+ * opening a snapshot takes about the same time regardless of its size, and
+ * columns that are never used are never loaded.
+ */
+public class SnapshotTableReader extends AbstractTableReader {
+
+    private ParserFactory m_pfactory;
+    private boolean m_lazy = true;
+    
+    /**
+     * Create a new SnapshotTableReader that uses the default parser factory
+     * for object columns.
+     */
+    public SnapshotTableReader() {
+        this(ParserFactory.getDefaultFactory());
+    }
+    
+    /**
+     * Create a new SnapshotTableReader.
+     * @param parserFactory the ParserFactory used to parse the values of
+     * object columns
+     */
+    public SnapshotTableReader(ParserFactory parserFactory) {
+        m_pfactory = parserFactory;
+    }
+    
+    /**
+     * Set if columns should be loaded when first accessed, rather than
+     * when the snapshot is read. The default is true.
+     * @param lazy true to load columns lazily
+     */
+    public void setLazy(boolean lazy) {
+        m_lazy = lazy;
+    }
+    
+    /**
+     * Indicates if columns are loaded when first accessed.
+     * @return true if columns are loaded lazily
+     */
+    public boolean isLazy() {
+        return m_lazy;
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    /**
+     * Read a table, memory-mapping the location if it is a local file.
+     * @see prefux.data.io.TableReader#readTable(java.lang.String)
+     */
+    public Table readTable(String location) throws DataIOException {
+        File f = Snapshot.localFile(location);
+        return f != null ? readTable(f) : super.readTable(location);
+    }
+    
+    /**
+     * Read a table, memory-mapping the URL if it denotes a local file.
+     * @see prefux.data.io.TableReader#readTable(java.net.URL)
+     */
+    public Table readTable(URL url) throws DataIOException {
+        File f = Snapshot.localFile(url);
+        return f != null ? readTable(f) : super.readTable(url);
+    }
+    
+    /**
+     * Read a table from a memory-mapped file.
+     * @see prefux.data.io.TableReader#readTable(java.io.File)
+     */
+    public Table readTable(File f) throws DataIOException {
+        return table(Snapshot.read(f, m_pfactory, m_lazy));
+    }
+    
+    /**
+     * Read a table from a stream. The stream is read completely into
+     * memory.
+     * @see prefux.data.io.TableReader#readTable(java.io.InputStream)
+     */
+    public Table readTable(InputStream is) throws DataIOException {
+        return table(Snapshot.read(is, m_pfactory, m_lazy));
+    }
+    
+    private static Table table(Snapshot.Contents contents)
+        throws DataIOException
+    {
+        if ( contents.kind != Snapshot.TABLE )
+            throw new DataIOException("Snapshot does not hold a table. "
+                + "Use a SnapshotGraphReader to read it.");
+        return contents.tables[0];
+    }
+
+} // end of class SnapshotTableReader
@@ -0,0 +1,81 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.data.io;
+
+import java.io.OutputStream;
+
+import prefux.data.Table;
+import prefux.data.parser.ParserFactory;
+
+/**
+ * TableWriter that writes a table as a binary snapshot, which can be read
+ * back much faster than a text format. Each column is stored as a block of
+ * primitive values, String columns as a dictionary of distinct values.
+ * Values of other object types are formatted using the parser for their
+ * type, so an exception is thrown if the {@link ParserFactory} has no
+ * parser for one of the column types.
+ * 
+ * @see SnapshotTableReader
+ */
+public class SnapshotTableWriter extends AbstractTableWriter {
+
+    private ParserFactory m_pfactory;
+    
+    /**
+     * Create a new SnapshotTableWriter that uses the default parser factory
+     * for object columns.
+     */
+    public SnapshotTableWriter() {
+        this(ParserFactory.getDefaultFactory());
+    }
+    
+    /**
+     * Create a new SnapshotTableWriter.
+     * @param parserFactory the ParserFactory used to format the values of
+     * object columns
+     */
+    public SnapshotTableWriter(ParserFactory parserFactory) {
+        m_pfactory = parserFactory;
+    }
+    
+    /**
+     * @see prefux.data.io.TableWriter#writeTable(prefux.data.Table, java.io.OutputStream)
+     */
+    public void writeTable(Table table, OutputStream os)
+        throws DataIOException
+    {
+        Snapshot.Contents contents = new Snapshot.Contents();
+        contents.kind = Snapshot.TABLE;
+        contents.tables = new Table[] { table };
+        Snapshot.write(contents, os, m_pfactory);
+    }
+
+} // end of class SnapshotTableWriter
@@ -30,99 +30,99 @@
  */
 package prefux.data.io.sql;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import prefux.data.Table;
 import prefux.data.io.DataIOException;
 import prefux.util.PrefuseConfig;
 import prefux.util.StringLib;
-import prefux.util.collections.CopyOnWriteArrayList;
 
 /**
- * Worker thread that asynchronously handles a queue of jobs, with each job
- * responsible for issuing a query and processing the results. Currently
- * involves just a single thread, in the future this may be expanded to
- * thread pool for greater concurrency.
+ * Worker that asynchronously handles a queue of jobs, with each job
+ * responsible for issuing a query and processing the results. Jobs are run
+ * by a bounded pool of daemon threads, so that several queries can be
+ * processed concurrently. The number of threads is determined by the
+ * <code>data.io.worker.threads</code> configuration property. Jobs issued
+ * against the same {@link DatabaseDataSource} are still processed one at
+ * a time, as they share a database connection.
  *  
  * @author <a href="http://jheer.org">jeffrey heer</a>
  * @see DatabaseDataSource
  */
-public class DataSourceWorker extends Thread {
+public class DataSourceWorker {
 
     private static Logger s_logger
         = Logger.getLogger(DataSourceWorker.class.getName());
     
-    // TODO: in future, may want to expand this to a thread pool
-    private static DataSourceWorker s_instance;
-    
-    private static CopyOnWriteArrayList s_queue;
+    private static ExecutorService s_executor;
     
     /**
-     * Submit a job to the worker thread.
+     * Submit a job to the worker threads.
      * @param e an {@link DataSourceWorker.Entry} instance that contains
      * the parameters of the job.
+     * @return a Future that completes once the job has been processed
      */
-    public synchronized static void submit(Entry e)
+    public synchronized static Future<?> submit(Entry e)
     {
         // perform lazily initialization as needed
-        if ( s_queue == null )
-            s_queue = new CopyOnWriteArrayList();
-        if ( s_instance == null )
-            s_instance = new DataSourceWorker();
+        if ( s_executor == null )
+            s_executor = createExecutor();
         
         // queue it up
-        s_queue.add(e);
-        
-        // wake up a sleepy thread
-        synchronized ( s_instance ) {
-            s_instance.notify();
-        }
+        return s_executor.submit(() -> run(e));
     }
     
     // ------------------------------------------------------------------------
     
+    private DataSourceWorker() {
+        // prevent instantiation
+    }
+    
     /**
-     * Create a new DataSourceWorker.
+     * Create the executor running the submitted jobs.
      */
-    private DataSourceWorker() {
-        super("prefuse_DatabaseWorker");
-        
+    private static ExecutorService createExecutor() {
+        int nthreads = Math.max(1, 
+                PrefuseConfig.getInt("data.io.worker.threads"));
         int priority = PrefuseConfig.getInt("data.io.worker.threadPriority");
-        if ( priority >= Thread.MIN_PRIORITY && 
-             priority <= Thread.MAX_PRIORITY )
-        {
-            this.setPriority(priority);
-        }
-        this.setDaemon(true);
-        this.start();
+        AtomicInteger count = new AtomicInteger();
+        
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            nthreads, nthreads, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), r -> {
+                Thread t = new Thread(r, 
+                    "prefuse_DatabaseWorker-"+count.incrementAndGet());
+                if ( priority >= Thread.MIN_PRIORITY && 
+                     priority <= Thread.MAX_PRIORITY )
+                {
+                    t.setPriority(priority);
+                }
+                t.setDaemon(true);
+                return t;
+            });
+        // let idle threads terminate
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
     
     /**
-     * @see java.lang.Runnable#run()
+     * Process a single job.
      */
-    public void run() {
-        while ( true ) {
-            Entry e = null;
-            synchronized ( s_queue ) {
-                if ( s_queue.size() > 0 )
-                    e = (Entry)s_queue.remove(0);    
-            }
-            
-            if ( e != null ) {
-                try {
-                    if ( e.listener != null ) e.listener.preQuery(e);
-                    e.ds.getData(e.table, e.query, e.keyField, e.lock);
-                    if ( e.listener != null ) e.listener.postQuery(e);
-                } catch ( DataIOException dre ) {
-                    s_logger.warning(dre.getMessage() + "\n" 
-                        + StringLib.getStackTrace(dre));
-                }
-            } else {
-                // nothing to do, chill out until notified
-                try {
-                    synchronized (this) { wait(); }
-                } catch (InterruptedException ex) { }
-            }
+    private static void run(Entry e) {
+        try {
+            if ( e.listener != null ) e.listener.preQuery(e);
+            e.ds.getData(e.table, e.query, e.keyField, e.lock, 
+                e.listener == null ? null : n -> e.listener.progress(e, n));
+            if ( e.listener != null ) e.listener.postQuery(e);
+        } catch ( DataIOException dre ) {
+            s_logger.warning(dre.getMessage() + "\n" 
+                + StringLib.getStackTrace(dre));
         }
     }
     
@@ -182,6 +182,13 @@ public class DataSourceWorker extends Thread {
          * @param job the current job being processed
          */
         public void preQuery(DataSourceWorker.Entry job);
+        /**
+         * Notification that a batch of rows has been added to the Table.
+         * @param job the current job being processed
+         * @param rows the total number of rows processed so far
+         */
+        public default void progress(DataSourceWorker.Entry job, int rows) {
+        }
         /**
          * Notification that the query processing has just completed.
          * @param job the current job being processed
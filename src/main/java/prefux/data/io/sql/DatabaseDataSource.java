@@ -34,6 +34,8 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
 import java.util.logging.Logger;
 
 import prefux.data.Table;
@@ -56,6 +58,7 @@ public class DatabaseDataSource {
     protected Connection       m_conn;
     protected Statement        m_stmt;
     DatabaseResultSetProcessor m_resultSetProcessor;
+    private int                m_fetchSize = 0;
     
     // ------------------------------------------------------------------------
     
@@ -147,6 +150,31 @@ public class DatabaseDataSource {
     public synchronized Table getData(Table t, String query, 
                                       String keyField, Object lock) 
         throws DataIOException
+    {
+        return getData(t, query, keyField, lock, null);
+    }
+    
+    /**
+     * Executes a query and returns the results in a Table instance. The
+     * rows are fetched from the database in chunks of
+     * {@link #getFetchSize()} rows and appended to the table in batches of
+     * {@link #getBatchSize()} rows.
+     * @param t the Table to store the results in. If this value is null, a
+     * new table will automatically be created.
+     * @param query the text SQL query to execute
+     * @param keyField used to determine if the row already exists in the table
+     * @param lock an optional Object to use as a lock when performing data
+     *  processing. This lock will be synchronized on whenever the Table is
+     *  modified.
+     * @param progress an optional callback, invoked after each batch with
+     *  the total number of rows processed so far
+     * @return a Table of the query results
+     * @throws DataIOException if an error occurs while executing the query 
+     * or adding the query results in a prefux Table.
+     */
+    public synchronized Table getData(Table t, String query, 
+            String keyField, Object lock, IntConsumer progress) 
+        throws DataIOException
     {
         ResultSet rs;
         try {
@@ -154,7 +182,59 @@ public class DatabaseDataSource {
         } catch ( SQLException e ) {
             throw new DataIOException(e);
         }
-        return m_resultSetProcessor.process(t, rs, keyField, lock, false);
+        try {
+            return m_resultSetProcessor.process(
+                    t, rs, keyField, lock, false, progress);
+        } finally {
+            try {
+                rs.close();
+            } catch ( SQLException e ) {
+                s_logger.warning("Error closing result set: "+e.getMessage());
+            }
+        }
+    }
+    
+    // ------------------------------------------------------------------------
+    // Configuration
+    
+    /**
+     * Set the number of rows the database driver should fetch at once
+     * while iterating over query results. Larger values need fewer round
+     * trips to the database, smaller values use less memory. Note that
+     * some drivers ignore this hint unless auto-commit is disabled on the
+     * connection.
+     * @param size the fetch size, or 0 to use the driver default
+     */
+    public synchronized void setFetchSize(int size) {
+        if ( size < 0 )
+            throw new IllegalArgumentException("Negative fetch size");
+        m_fetchSize = size;
+    }
+    
+    /**
+     * Get the number of rows the database driver should fetch at once
+     * while iterating over query results.
+     * @return the fetch size, or 0 if the driver default is used
+     */
+    public synchronized int getFetchSize() {
+        return m_fetchSize;
+    }
+    
+    /**
+     * Set the number of rows that are appended to a Table at once. Table
+     * listeners receive one insertion event per batch.
+     * @param size the batch size, must be positive
+     */
+    public synchronized void setBatchSize(int size) {
+        m_resultSetProcessor.setBatchSize(size);
+    }
+    
+    /**
+     * Get the number of rows that are appended to a Table at once.
+     * @return the batch size
+     */
+    public synchronized int getBatchSize() {
+        return m_resultSetProcessor.getBatchSize();
     }
     
     // ------------------------------------------------------------------------
@@ -227,14 +307,16 @@ public class DatabaseDataSource {
      *  processing. This lock will be synchronized on whenever the Table is
      *  modified. A null value will result in no locking.
      * @param listener an optional listener that will provide notifications
-     *  before the query has been issued and after the query has been 
-     *  processed. This is most useful for post-processing operations.
+     *  before the query has been issued, as batches of rows are added, and
+     *  after the query has been processed. This is most useful for
+     *  post-processing operations.
+     * @return a Future that completes once the query has been processed
      */
-    public void loadData(Table t, String query, String keyField, 
+    public Future<?> loadData(Table t, String query, String keyField, 
                          Object lock, DataSourceWorker.Listener listener) {
         DataSourceWorker.Entry e = new DataSourceWorker.Entry(
                 this, t, query, keyField, lock, listener);
-        DataSourceWorker.submit(e);
+        return DataSourceWorker.submit(e);
     }
     
     // ------------------------------------------------------------------------
@@ -248,6 +330,7 @@ public class DatabaseDataSource {
     private ResultSet executeQuery(String query) throws SQLException {
         if ( m_stmt == null )
             m_stmt = m_conn.createStatement();
+        m_stmt.setFetchSize(m_fetchSize);
         
         // clock in
         long timein = System.currentTimeMillis();
@@ -37,16 +37,16 @@ package prefux.data.io.sql;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.BitSet;
+import java.util.function.IntConsumer;
 import java.util.logging.Logger;
 
 import prefux.data.Schema;
 import prefux.data.Table;
-import prefux.data.Tuple;
+import prefux.data.column.Column;
 import prefux.data.io.DataIOException;
 import prefux.data.util.Index;
-import prefux.data.util.TableIterator;
+import prefux.util.collections.IntIterator;
 
 /**
  * Is responible fpr processing a ResultSet and transfering
@@ -58,8 +58,12 @@ import prefux.data.util.TableIterator;
  */
 public class DatabaseResultSetProcessor {
 
+    /** The default number of rows appended to a Table at once. */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
     private static final Logger s_logger = Logger.getLogger(DatabaseResultSetProcessor.class.getName());
     protected SQLDataHandler m_handler;
+    protected int m_batchSize = DEFAULT_BATCH_SIZE;
 
     /**
      * Creates a new DatabaseResultSetProcessor for reading data from a SQL relational
@@ -83,29 +87,44 @@ public class DatabaseResultSetProcessor {
      */
     public Table process(Table t, ResultSet rset, String key, Object lock, boolean remove)
             throws DataIOException {
+        return process(t, rset, key, lock, remove, null);
+    }
+
+    /**
+     * Process the results of a SQL query, putting retrieved data into a Table
+     * instance. If a null table is provided, a new table with the appropriate
+     * schema will be created.
+     * 
+     * New rows are collected in a staging table and appended to the Table
+     * in batches of {@link #getBatchSize()} rows, so that listeners of the
+     * Table receive one insertion event per batch rather than one event per
+     * row and cell. The lock is only held while a batch is appended, or
+     * while a row already present in the Table is updated.
+     *
+     * @param t the Table to store results in
+     * @param rset the SQL query result set
+     * @param remove decides of rows which have no counterpart in the ResultSet 
+     *               should get removed
+     * @param lock object used for syncronization
+     * @param progress an optional callback, invoked after each batch with
+     *  the total number of rows processed so far
+     * @return a Table containing the query results
+     */
+    public Table process(Table t, ResultSet rset, String key, Object lock,
+            boolean remove, IntConsumer progress) throws DataIOException {
         // clock in
-        int count = 0;
+        int count = 0, reported = -1;
         long timein = System.currentTimeMillis();
 
-        boolean tableIsNew = false;
-        HashSet<Tuple> rowsToRemove = new HashSet<>();
-
-        if (t != null) {
-            TableIterator iterator = t.iterator();
-            while (iterator.hasNext()) {
-                Integer row = iterator.nextInt();
-                rowsToRemove.add(t.getTuple(row));
-            }
-        }
-
         try {
             ResultSetMetaData metadata = rset.getMetaData();
             int ncols = metadata.getColumnCount();
+            Schema schema = getSchema(metadata, m_handler);
 
             // create a new table if necessary
+            BitSet rowsToRemove = null;
             if (t == null) {
-                t = getSchema(metadata, m_handler).instantiate();
-                tableIsNew = true;
+                t = schema.instantiate();
                 if (key != null) {
                     try {
                         t.index(key);
@@ -114,37 +133,75 @@ public class DatabaseResultSetProcessor {
                         s_logger.warning("Error indexing field: " + key);
                     }
                 }
+            } else {
+                schema = getSchema(t, schema);
+                if (remove) {
+                    rowsToRemove = new BitSet();
+                    for (IntIterator rows = t.rows(); rows.hasNext();) {
+                        rowsToRemove.set(rows.nextInt());
+                    }
+                }
             }
 
             // set the lock, lock on the table itself if nothing else provided
             lock = (lock == null ? t : lock);
 
             // process the returned rows
+            Table batch = schema.instantiate();
             while (rset.next()) {
-                synchronized (lock) {
-                    // determine the table row index to use
-                    int row = getExistingRow(t, rset, key);
+                // determine the table row index to use
+                int row = -1;
+                if (key != null) {
+                    synchronized (lock) {
+                        row = getExistingRow(t, rset, key);
+                        if (row >= 0) {
+                            // update the existing row in place
+                            if (rowsToRemove != null) {
+                                rowsToRemove.clear(row);
+                            }
+                            for (int i = 1; i <= ncols; ++i) {
+                                m_handler.process(t, row, rset, i);
+                            }
+                        }
+                    }
+                }
+                if (row < 0) {
+                    // stage the new row, merging duplicate keys
+                    row = getExistingRow(batch, rset, key);
                     if (row < 0) {
-                        row = t.addRow();
+                        row = batch.addRow();
                     }
-                    rowsToRemove.remove(row);
-                    //process each value in the current row
                     for (int i = 1; i <= ncols; ++i) {
-                        m_handler.process(t, row, rset, i);
+                        m_handler.process(batch, row, rset, i);
                     }
                 }
 
                 // increment row count
                 ++count;
+
+                if (batch.getRowCount() >= m_batchSize) {
+                    flush(t, batch, lock);
+                    batch = schema.instantiate();
+                    if (progress != null) {
+                        progress.accept(reported = count);
+                    }
+                }
+            }
+            if (batch.getRowCount() > 0) {
+                flush(t, batch, lock);
+            }
+            if (progress != null && reported != count) {
+                progress.accept(count);
             }
 
-            if (!tableIsNew && remove) {
-                // remove all no longer relevant columns
-                Iterator<Tuple> iterator = rowsToRemove.iterator();
-                while (iterator.hasNext()) {
-                    Tuple tuple = iterator.next();
-                    boolean removeRow = t.removeTuple(tuple);
-                    assert removeRow : "maybe some syncronization problems";
+            if (rowsToRemove != null) {
+                // remove all no longer relevant rows
+                synchronized (lock) {
+                    for (int row = rowsToRemove.nextSetBit(0); row >= 0;
+                            row = rowsToRemove.nextSetBit(row + 1)) {
+                        boolean removeRow = t.removeRow(row);
+                        assert removeRow : "maybe some syncronization problems";
+                    }
                 }
             }
         } catch (SQLException e) {
@@ -159,6 +216,55 @@ public class DatabaseResultSetProcessor {
         return t;
     }
 
+    /**
+     * Set the number of rows that are staged before they are appended to
+     * the Table in a single operation.
+     * @param size the batch size, must be positive
+     */
+    public void setBatchSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        m_batchSize = size;
+    }
+
+    /**
+     * Get the number of rows that are staged before they are appended to
+     * the Table in a single operation.
+     * @return the batch size
+     */
+    public int getBatchSize() {
+        return m_batchSize;
+    }
+
+    /**
+     * Append a batch of staged rows to the Table.
+     */
+    private void flush(Table t, Table batch, Object lock) {
+        synchronized (lock) {
+            t.addRows(batch);
+        }
+    }
+
+    /**
+     * Get the schema of the staging table for an existing Table: the
+     * columns of the result set, with the column types and defaults of the
+     * Table where it has a matching column.
+     */
+    private Schema getSchema(Table t, Schema rs) {
+        Schema schema = new Schema(rs.getColumnCount());
+        for (int i = 0; i < rs.getColumnCount(); ++i) {
+            String name = rs.getColumnName(i);
+            Column c = t.getColumn(name);
+            if (c != null) {
+                schema.addColumn(name, c.getColumnType(), c.getDefaultValue());
+            } else {
+                schema.addColumn(name, rs.getColumnType(i), rs.getDefault(i));
+            }
+        }
+        return schema;
+    }
+
     /**
      * See if a retrieved database row is already represented in the given
      * Table.
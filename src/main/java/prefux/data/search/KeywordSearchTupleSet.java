@@ -32,15 +32,24 @@
 package prefux.data.search;
 
 import java.io.IOException;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Set;
 import java.util.logging.Logger;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field.Store;
 import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TopDocs;
 
+import prefux.data.Table;
 import prefux.data.Tuple;
 import prefux.util.StringLib;
 import prefux.util.collections.IntObjectHashMap;
@@ -54,7 +63,18 @@ import prefux.util.collections.IntObjectHashMap;
  * the Lucene web page for more information. Note that for this class to be
  * used by prefux applications, the Lucene classes must be included on the
  * application classpath.
- * </p> 
+ * </p>
+ * 
+ * <p>
+ * Indexed documents are identified by the row of their Tuple and the
+ * indexed field, so all indexed Tuples should belong to the same table.
+ * Re-indexing a field replaces its previous document, and fields can be
+ * unindexed again, allowing the index to be kept up to date as the data
+ * changes. As rows identify the documents, a persistent search index (see
+ * {@link LuceneSearcher#LuceneSearcher(java.io.File)}) can be reused in a
+ * later session without re-indexing, by providing the source table through
+ * {@link #setSource(Table)}.
+ * </p>
  *
  * @version 1.0
  * @author <a href="http://jheer.org">jeffrey heer</a>
@@ -65,13 +85,26 @@ public class KeywordSearchTupleSet extends SearchTupleSet {
     private static final Logger s_logger 
         = Logger.getLogger(KeywordSearchTupleSet.class.getName());
     
+    /** Document field combining the tuple row and the indexed field. */
+    private static final String KEY = "prefux-key";
+    private static final Set<String> ID_FIELD = Collections.singleton(
+            LuceneSearcher.ID);
+    
     protected IntObjectHashMap m_map = new IntObjectHashMap();
     protected String m_query = "";
+    protected int m_offset = 0;
+    protected int m_count = Integer.MAX_VALUE;
     
     protected LuceneSearcher m_lucene = null;
+    protected Table m_source = null;
     protected boolean m_storeTermVectors = false;
     
-    protected int m_id = 1;
+    /** Indicates if the index has changed since the last search */
+    private boolean m_changed = false;
+    /** The indexed rows per field, only tracked for an initially empty
+     * index, as new documents can then be added without a lookup */
+    private HashMap<String,BitSet> m_indexed = null;
+    private boolean m_checked = false;
     
     /**
      * Creates a new KeywordSearchFocusSet using an in-memory search index.
@@ -103,27 +136,43 @@ public class KeywordSearchTupleSet extends SearchTupleSet {
      * @param query the query string to search for
      */
     public void search(String query) {
+        search(query, 0, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Searches the indexed Tuple fields for matching keywords, using
+     * the Lucene search engine. A page of the matching Tuples, ordered by
+     * relevance, is available as the members of this TupleSet.
+     * @param query the query string to search for
+     * @param offset the rank of the first match to include
+     * @param count the maximum number of matches to include
+     */
+    public void search(String query, int offset, int count) {
         if ( query == null )
             query = "";
         
-        if ( query.equals(m_query) )
+        if ( !m_changed && query.equals(m_query) 
+             && offset == m_offset && count == m_count )
             return; // no change
         
         Tuple[] rem = clearInternal();
         m_query = query;
+        m_offset = offset;
+        m_count = count;
+        m_changed = false;
         
-        query.trim();
-        if ( query.length() == 0 ) {
+        if ( query.trim().length() == 0 ) {
             this.fireTupleEvent(null, DELETE);
             return;
         }
         
-        m_lucene.setReadMode(true);
         try {
-            TopDocs hits = m_lucene.search(query);
+            TopDocs hits = m_lucene.search(query, offset, count);
+            IndexSearcher searcher = m_lucene.getIndexSearcher();
             for ( ScoreDoc doc : hits.scoreDocs) {
-                Tuple t = getMatchingTuple(m_lucene.getIndexSearcher().doc(doc.doc));
-                addInternal(t);
+                Tuple t = getMatchingTuple(searcher.doc(doc.doc, ID_FIELD));
+                if ( t != null )
+                    addInternal(t);
             }
             Tuple[] add = getTupleCount() > 0 ? toArray() : null;
             fireTupleEvent(add, rem);
@@ -137,59 +186,155 @@ public class KeywordSearchTupleSet extends SearchTupleSet {
         
     }
     
+    /**
+     * Return the number of matches for the given query, which may exceed
+     * the number of tuples included by a paged search.
+     * @param query the query string to search for
+     * @return the number of matching documents
+     */
+    public int getHitCount(String query) {
+        try {
+            return m_lucene.numHits(query);
+        } catch (ParseException e) {
+            s_logger.warning("Lucene query parse exception.\n"+
+                    StringLib.getStackTrace(e));
+        } catch (IOException e) {
+            s_logger.warning("Lucene IO exception.\n"+
+                    StringLib.getStackTrace(e));
+        }
+        return 0;
+    }
+    
     /**
      * Return the Tuple matching the given Lucene Document, if any.
      * @param d the Document to lookup.
      * @return the matching Tuple, or null if none.
      */
     protected Tuple getMatchingTuple(Document d) {
-        int id = Integer.parseInt(d.get(LuceneSearcher.ID));
-        return (Tuple)m_map.get(id);
+        int row = Integer.parseInt(d.get(LuceneSearcher.ID));
+        Tuple t = (Tuple)m_map.get(row);
+        if ( t != null && !t.isValid() )
+            t = null;
+        if ( t == null && m_source != null && m_source.isValidRow(row) )
+            t = m_source.getTuple(row);
+        return t;
     }
     
     /**
      * @see prefux.data.search.SearchTupleSet#index(prefux.data.Tuple, java.lang.String)
      */
     public void index(Tuple t, String field) {
-        m_lucene.setReadMode(false);
+        int row = t.getRow();
+        Term key = getKey(row, field);
+        BitSet rows = getIndexedRows(field);
         String s;
-        if ( (s=t.getString(field)) == null ) return;
+        if ( (s=t.getString(field)) == null ) {
+            // drop any value indexed before
+            unindex(row, key, rows);
+            return;
+        }
         
-        int id = m_id++;
-        m_lucene.addDocument(getDocument(id, s));        
-        m_map.put(id, t);
+        Tuple prev = (Tuple)m_map.get(row);
+        if ( prev != t ) {
+            if ( prev != null ) {
+                // the row has been reused, drop the documents of the old tuple
+                m_lucene.deleteDocuments(
+                        new Term(LuceneSearcher.ID, String.valueOf(row)));
+                if ( m_indexed != null ) {
+                    for ( BitSet b : m_indexed.values() )
+                        b.clear(row);
+                }
+            }
+            m_map.put(row, t);
+        }
+        Document d = getDocument(row, s);
+        d.add(new StringField(KEY, key.text(), Store.NO));
+        if ( rows != null && !rows.get(row) ) {
+            // the document is known to be new
+            m_lucene.addDocument(d);
+            rows.set(row);
+        } else {
+            m_lucene.updateDocument(key, d);
+        }
+        m_changed = true;
+    }
+    
+    /**
+     * Indexes the data values for the given field name for each Tuple in
+     * the provided Iterator. Searches see the new documents once all
+     * Tuples have been indexed.
+     * @see prefux.data.search.SearchTupleSet#index(java.util.Iterator, java.lang.String)
+     */
+    public void index(Iterator tuples, String field) {
+        synchronized ( m_lucene ) {
+            super.index(tuples, field);
+        }
     }
 
     /**
-     * Returns false, as unindexing values is not currently supported.
+     * Returns true, as unindexing is supported by this class.
      * @see prefux.data.search.SearchTupleSet#isUnindexSupported()
      */
     public boolean isUnindexSupported() {
-        return false;
+        return true;
     }
     
     /**
-     * This method throws an exception, as unidexing is not supported.
      * @see prefux.data.search.SearchTupleSet#unindex(prefux.data.Tuple, java.lang.String)
-     * @throws UnsupportedOperationException
      */
-    public void unindex(Tuple t, String attrName) {
-        throw new UnsupportedOperationException();
+    public void unindex(Tuple t, String field) {
+        unindex(t.getRow(), getKey(t.getRow(), field), getIndexedRows(field));
+    }
+    
+    private void unindex(int row, Term key, BitSet rows) {
+        if ( rows != null ) {
+            if ( !rows.get(row) ) return; // nothing to delete
+            rows.clear(row);
+        }
+        m_lucene.deleteDocuments(key);
+        m_changed = true;
+    }
+    
+    /**
+     * Get the indexed rows for the given field, or null if they are not
+     * tracked because the index was not empty initially.
+     */
+    private BitSet getIndexedRows(String field) {
+        if ( !m_checked ) {
+            m_checked = true;
+            try {
+                if ( m_lucene.numDocs() == 0 )
+                    m_indexed = new HashMap<>();
+            } catch ( IOException e ) {
+                s_logger.warning("Lucene IO exception.\n"+
+                        StringLib.getStackTrace(e));
+            }
+        }
+        if ( m_indexed == null )
+            return null;
+        BitSet rows = m_indexed.get(field);
+        if ( rows == null )
+            m_indexed.put(field, rows = new BitSet());
+        return rows;
     }
     
     /**
      * Create a Lucene Document instance with the given document ID and text.
-     * @param id the document ID
+     * @param id the document ID, the row of the indexed Tuple
      * @param text the text the Document should contain
      * @return a new Lucene Document instance
      */
     protected Document getDocument(int id, String text) {
         Document d = new Document();
-        d.add(new StringField(LuceneSearcher.FIELD, text, Store.YES));
+        d.add(new TextField(LuceneSearcher.FIELD, text, Store.NO));
         d.add(new StringField(LuceneSearcher.ID, String.valueOf(id),Store.YES));
         return d;
     }
     
+    private static Term getKey(int row, String field) {
+        return new Term(KEY, row + ":" + field);
+    }
+    
     /**
      * Get the {@link LuceneSearcher} instance used by this class.
      * @return returns the backing lucene searcher.
@@ -199,8 +344,28 @@ public class KeywordSearchTupleSet extends SearchTupleSet {
     }
     
     /**
-     * Returns a copy of the mapping from Lucene document IDs to prefux Tuple instances.
-     * @return a copy of the map from lucene doc IDs to prefux Tuples.
+     * Set the table containing the indexed Tuples. Search matches for
+     * rows that have not been indexed in this session are looked up in
+     * this table, which allows searching a persistent index created in
+     * an earlier session.
+     * @param table the table containing the indexed Tuples, or null
+     */
+    public void setSource(Table table) {
+        m_source = table;
+    }
+    
+    /**
+     * Get the table containing the indexed Tuples, if set.
+     * @return the source table, or null if not set
+     */
+    public Table getSource() {
+        return m_source;
+    }
+    
+    /**
+     * Returns a copy of the mapping from Tuple rows to prefux Tuple
+     * instances, for all Tuples indexed in this session.
+     * @return a copy of the map from Tuple rows to prefux Tuples.
      */
     public IntObjectHashMap getTupleMap() {
         return (IntObjectHashMap)m_map.clone();
@@ -211,7 +376,13 @@ public class KeywordSearchTupleSet extends SearchTupleSet {
      * @see prefux.data.tuple.TupleSet#clear()
      */
     public void clear() {
-        m_lucene = new LuceneSearcher();
+        if ( !m_lucene.isReadOnly() ) {
+            m_lucene.deleteAll();
+            m_indexed = new HashMap<>();
+            m_checked = true;
+        }
+        m_map.clear();
+        m_changed = true;
         super.clear();
     }
     
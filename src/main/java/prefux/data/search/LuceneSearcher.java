@@ -31,23 +31,28 @@
 
 package prefux.data.search;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TotalHitCountCollector;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.RAMDirectory;
 import org.apache.lucene.util.Version;
 
@@ -57,6 +62,14 @@ import org.apache.lucene.util.Version;
  * text, for use within a single application session. The class can, however,
  * be parameterized for any number of other configurations, including accessing
  * persistent search indices.
+ * 
+ * <p>A writable LuceneSearcher keeps a single IndexWriter open for its whole
+ * lifetime. Searches are served by a near-real-time searcher on top of that
+ * writer, which is only reopened when the index has changed since the last
+ * search. Documents can thus be added, updated and deleted between searches
+ * at little cost. Changes are made durable by {@link #commit()}, which is
+ * only needed for indices that should survive the application session, such
+ * as those created with {@link #LuceneSearcher(File)}.</p>
  *  
  * @version 1.0
  * @author <a href="http://jheer.org">jeffrey heer</a>
@@ -72,9 +85,10 @@ public class LuceneSearcher {
     private Analyzer analyzer;
     private String[] fields;
     
-    private IndexSearcher searcher;
-    private IndexReader reader;
     private IndexWriter writer;
+    private SearcherManager manager;
+    private IndexSearcher searcher;
+    private boolean m_changed = true;
     private boolean m_readMode = true;
     private boolean m_readOnly = false;
     
@@ -87,6 +101,17 @@ public class LuceneSearcher {
         this(new RAMDirectory(), FIELD);
     }
     
+    /**
+     * Create a new LuceneSearcher using a search index stored in the given
+     * file system directory. An existing index is opened, otherwise a new
+     * one is created.
+     * @param path the directory containing the search index
+     * @throws IOException if the directory can not be opened
+     */
+    public LuceneSearcher(File path) throws IOException {
+        this(FSDirectory.open(path), FIELD);
+    }
+    
     /**
      * Create a new LuceneSearcher using the specified search index location.
      * @param dir the Lucene Directory indicating the search index to use.
@@ -96,33 +121,48 @@ public class LuceneSearcher {
     }
     
     /**
-     * Create a new LuceneSearcher using a specified search index location,
-     * a particular Document field to index, and given read/write status.
+     * Create a new LuceneSearcher using a specified search index location
+     * and a particular Document field to index.
      * @param dir the Lucene Directory indicating the search index to use.
      * @param field the Lucene Document field that should be indexed.
-     * @param readOnly if this index is read-only or is writable.
      */
     public LuceneSearcher(Directory dir, String field) {
         this(dir, new String[]{field});
     }
     
+    /**
+     * Create a new LuceneSearcher using a specified search index location
+     * and particular Document fields to index.
+     * @param dir the Lucene Directory indicating the search index to use.
+     * @param fields the Lucene Document fields that should be indexed.
+     */
+    public LuceneSearcher(Directory dir, String[] fields) {
+        this(dir, fields, false);
+    }
+    
     /**
      * Create a new LuceneSearcher using a specified search index location,
      * a particular Document fields to index, and given read/write status.
      * @param dir the Lucene Directory indicating the search index to use.
      * @param fields the Lucene Document fields that should be indexed.
-     * @param readOnly if this index is read-only or is writable.
+     * @param readOnly if this index is read-only or is writable. A read-only
+     * searcher requires an existing index.
      */
-    public LuceneSearcher(Directory dir, String[] fields) {
+    public LuceneSearcher(Directory dir, String[] fields, boolean readOnly) {
         m_hitCountCache = new HashMap<>();
         directory = dir;
         analyzer = new StandardAnalyzer();
         this.fields = (String[])fields.clone();
+        m_readOnly = readOnly;
         try {
-        	IndexWriterConfig cfg = new IndexWriterConfig(Version.LUCENE_4_10_1, analyzer);
-            writer = new IndexWriter(directory, cfg);
-            writer.close();
-            writer = null;
+            if ( readOnly ) {
+                manager = new SearcherManager(directory, null);
+            } else {
+                IndexWriterConfig cfg = new IndexWriterConfig(
+                        Version.LUCENE_4_10_1, analyzer);
+                writer = new IndexWriter(directory, cfg);
+                manager = new SearcherManager(writer, true, null);
+            }
         } catch (IOException e1) {
             e1.printStackTrace();
         }
@@ -131,50 +171,21 @@ public class LuceneSearcher {
     // ------------------------------------------------------------------------
     
     /**
-     * Sets if this LuceneSearcher is in read mode or write mode. In read more
-     * searches can be issued, in write mode new Documents can be indexed.
-     * Read-only LuceneSearcher instances can not be put into write mode.
+     * Sets if this LuceneSearcher is in read mode or write mode. Reads and
+     * writes may be freely interleaved, so calling this method is no longer
+     * required. Switching to read mode makes all changes visible to
+     * searches right away. Read-only LuceneSearcher instances can not be put
+     * into write mode.
      * @param mode true for read mode, false for write mode.
      * @return true if the mode was successfully set, false otherwise.
      */
-    public boolean setReadMode(boolean mode) {
+    public synchronized boolean setReadMode(boolean mode) {
         // return false if this is read-only
         if ( m_readOnly && mode == false ) return false;
-        // do nothing if already in the mode
-        if ( m_readMode == mode ) return true;
-        // otherwise switch modes
-        if ( !mode ) {
-            // close any open searcher and reader
+        if ( mode ) {
             try {
-                // if ( searcher != null ) searcher.close();
-                if ( reader   != null ) reader.close();
-            } catch ( Exception e ) {
-                e.printStackTrace();
-                return false;
-            }
-            // open the writer
-            try {
-            	IndexWriterConfig cfg = new IndexWriterConfig(Version.LUCENE_4_10_1, analyzer);
-                writer = new IndexWriter(directory, cfg);
-            } catch (IOException e1) {
-                e1.printStackTrace();
-                return false;
-            }
-        } else {
-            // optimize index and close writer
-            try {
-                if ( writer != null ) {
-                    writer.close();
-                }
-            } catch (IOException e1) {
-                e1.printStackTrace();
-                return false;
-            }
-            // open the reader and searcher
-            try {
-                reader = DirectoryReader.open(directory);
-                searcher = new IndexSearcher(reader);
-            } catch ( Exception e ) {
+                refresh();
+            } catch ( IOException e ) {
                 e.printStackTrace();
                 return false;
             }
@@ -185,29 +196,52 @@ public class LuceneSearcher {
     
     /**
      * Searches the Lucene index using the given query String, returns an object
-     * which provides access to the search results.
+     * which provides access to the search results. All matches are returned.
      * @param query the search query
      * @return the search Hits
      * @throws ParseException if the query is not parsed successfully
      * @throws IOException if an input/ouput error occurs
-     * @throws IllegalStateException if the searcher is in write mode
      */
-    public TopDocs search(String query) throws IOException, ParseException {
-        if ( m_readMode ) {
-            Query q;
-            if ( fields.length == 1 ) {
-            	QueryParser parser = new QueryParser(fields[0], analyzer);
-                q = parser.parse(query);
-            } else {
-            	MultiFieldQueryParser parser = new MultiFieldQueryParser(fields, analyzer);
-                q = parser.parse(query);
-            }
-            return searcher.search(q,100);
-        } else {
-            throw new IllegalStateException(
-                    "Searches can only be performed when " +
-                    "the LuceneSearcher is in read mode");
-        }
+    public synchronized TopDocs search(String query) 
+        throws IOException, ParseException
+    {
+        return search(query, 0, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Searches the Lucene index using the given query String, returning a
+     * page of the search results. The total hit count of the returned
+     * TopDocs still covers all matches.
+     * @param query the search query
+     * @param offset the rank of the first match to return
+     * @param count the maximum number of matches to return
+     * @return the search Hits
+     * @throws ParseException if the query is not parsed successfully
+     * @throws IOException if an input/ouput error occurs
+     */
+    public synchronized TopDocs search(String query, int offset, int count)
+        throws IOException, ParseException
+    {
+        if ( offset < 0 || count < 0 )
+            throw new IllegalArgumentException("Negative offset or count");
+        refresh();
+        Query q = parse(query);
+        
+        // count the matches first, so that the collector never holds more
+        // entries than there are results to return
+        int total = numHits(query);
+        int n = (int)Math.min((long)offset + count, total);
+        if ( n <= offset )
+            return new TopDocs(total, new ScoreDoc[0], Float.NaN);
+        
+        TopDocs hits = searcher.search(q, n);
+        if ( offset == 0 )
+            return hits;
+        
+        int len = Math.max(0, hits.scoreDocs.length - offset);
+        ScoreDoc[] page = new ScoreDoc[len];
+        System.arraycopy(hits.scoreDocs, offset, page, 0, len);
+        return new TopDocs(hits.totalHits, page, hits.getMaxScore());
     }
     
     /**
@@ -218,35 +252,137 @@ public class LuceneSearcher {
      * @return the number of matches to the query
      * @throws ParseException if the query is not parsed successfully
      * @throws IOException if an input/ouput error occurs
-     * @throws IllegalStateException if the searcher is in write mode
      */
-    public int numHits(String query) throws ParseException, IOException {
+    public synchronized int numHits(String query)
+        throws ParseException, IOException
+    {
         Integer count;
         if ( (count=m_hitCountCache.get(query)) == null ) {
-            TopDocs hits = search(query);
-            count = new Integer(hits.totalHits);
+            refresh();
+            TotalHitCountCollector c = new TotalHitCountCollector();
+            searcher.search(parse(query), c);
+            count = c.getTotalHits();
             m_hitCountCache.put(query, count);
         }
         return count.intValue();
     }
     
+    /**
+     * Return the number of documents in the search index, including
+     * changes not yet visible to searches.
+     * @return the number of documents
+     * @throws IOException if an input/ouput error occurs
+     */
+    public synchronized int numDocs() throws IOException {
+        if ( writer != null )
+            return writer.numDocs();
+        refresh();
+        return searcher.getIndexReader().numDocs();
+    }
+    
     /**
      * Add a document to the Lucene search index.
      * @param d the Document to add
-     * @throws IllegalStateException if the searcher is not in write mode
+     * @throws IllegalStateException if the searcher is read-only
      */
-    public void addDocument(Document d) {
-        if ( !m_readMode ) {
-            try {
-                writer.addDocument(d);
-                m_hitCountCache.clear();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        } else {
-            throw new IllegalStateException(
-                    "Documents can not be added to the index unless" +
-                    "the LuceneSearcher is not in read mode");
+    public synchronized void addDocument(Document d) {
+        checkWritable();
+        try {
+            writer.addDocument(d);
+            changed();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Add a number of documents to the Lucene search index at once.
+     * @param docs the Documents to add
+     * @throws IllegalStateException if the searcher is read-only
+     */
+    public synchronized void addDocuments(Iterable<Document> docs) {
+        checkWritable();
+        try {
+            writer.addDocuments(docs);
+            changed();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Replace all documents containing the given term with a new document.
+     * If no document contains the term, the document is simply added.
+     * @param key the term identifying the documents to replace
+     * @param d the new Document
+     * @throws IllegalStateException if the searcher is read-only
+     */
+    public synchronized void updateDocument(Term key, Document d) {
+        checkWritable();
+        try {
+            writer.updateDocument(key, d);
+            changed();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Delete all documents containing any of the given terms.
+     * @param keys the terms identifying the documents to delete
+     * @throws IllegalStateException if the searcher is read-only
+     */
+    public synchronized void deleteDocuments(Term... keys) {
+        checkWritable();
+        try {
+            writer.deleteDocuments(keys);
+            changed();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Delete all documents from the search index.
+     * @throws IllegalStateException if the searcher is read-only
+     */
+    public synchronized void deleteAll() {
+        checkWritable();
+        try {
+            writer.deleteAll();
+            changed();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Commit all changes to the search index, so that they persist once
+     * this searcher is closed. Read-only searchers instead pick up changes
+     * committed by other writers.
+     * @throws IOException if an input/ouput error occurs
+     */
+    public synchronized void commit() throws IOException {
+        if ( writer != null )
+            writer.commit();
+        changed();
+    }
+    
+    /**
+     * Commit all pending changes and release the resources held by this
+     * searcher. The searcher can not be used afterwards.
+     * @throws IOException if an input/ouput error occurs
+     */
+    public synchronized void close() throws IOException {
+        try {
+            if ( searcher != null )
+                manager.release(searcher);
+            searcher = null;
+            manager.close();
+        } finally {
+            if ( writer != null )
+                writer.close();
+            writer = null;
         }
     }
     
@@ -261,7 +397,9 @@ public class LuceneSearcher {
     
     /**
      * Sets the Analyzer used to process text. See Lucene documentation
-     * for more details.
+     * for more details. The analyzer is used to parse queries, documents
+     * are always indexed with the analyzer given when this searcher was
+     * created.
      * @param analyzer the analyzer to set
      */
     public void setAnalyzer(Analyzer analyzer) {
@@ -293,16 +431,17 @@ public class LuceneSearcher {
      * for more details.
      * @return teturns the IndexReader.
      */
-    public IndexReader getIndexReader() {
-        return reader;
+    public synchronized IndexReader getIndexReader() {
+        return searcher == null ? null : searcher.getIndexReader();
     }
     
     /**
-     * Returns the Lucene IndexSearcher. See Lucene documentation
-     * for more details.
+     * Returns the Lucene IndexSearcher used for the most recent search.
+     * The searcher remains valid until the next search after a change to
+     * the index. See Lucene documentation for more details.
      * @return returns the IndexSearcher.
      */
-    public IndexSearcher getIndexSearcher() {
+    public synchronized IndexSearcher getIndexSearcher() {
         return searcher;
     }
     
@@ -314,4 +453,51 @@ public class LuceneSearcher {
         return m_readOnly;
     }
     
+    /**
+     * Indicates if this LuceneSearcher is in read mode.
+     * @return true if in read mode, false if in write mode
+     * @see #setReadMode(boolean)
+     */
+    public boolean isReadMode() {
+        return m_readMode;
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    private Query parse(String query) throws ParseException {
+        if ( fields.length == 1 ) {
+            QueryParser parser = new QueryParser(fields[0], analyzer);
+            return parser.parse(query);
+        } else {
+            MultiFieldQueryParser parser = 
+                new MultiFieldQueryParser(fields, analyzer);
+            return parser.parse(query);
+        }
+    }
+    
+    /**
+     * Reopen the searcher if the index has changed since the last search.
+     */
+    private void refresh() throws IOException {
+        if ( !m_changed && searcher != null )
+            return;
+        manager.maybeRefreshBlocking();
+        IndexSearcher s = manager.acquire();
+        if ( searcher != null )
+            manager.release(searcher);
+        searcher = s;
+        m_changed = false;
+    }
+    
+    private void changed() {
+        m_changed = true;
+        m_hitCountCache.clear();
+    }
+    
+    private void checkWritable() {
+        if ( m_readOnly || writer == null )
+            throw new IllegalStateException(
+                    "Documents can not be changed in a read-only index");
+    }
+    
 } // end of class LuceneSearcher
@@ -0,0 +1,331 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.data.search;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+
+import prefux.util.ArrayLib;
+import prefux.util.collections.IntIterator;
+
+/**
+ * <p>An index of words supporting fast lookup of all words starting with a
+ * given prefix. Each indexed word is associated with an integer id, such as
+ * a table row. The index keeps the words and ids in a pair of parallel
+ * arrays sorted by word, so that the words sharing a prefix form a
+ * contiguous range that is found by binary search. Compared to a
+ * {@link Trie}, no objects are created per indexed word besides the word
+ * itself, and iterating over the matches of a query just walks an array.</p>
+ *
+ * <p>Added words are collected in an unsorted buffer, which is sorted and
+ * merged into the index before the next lookup. Indexing many words before
+ * searching thus amounts to a single sort. Removed words are marked as
+ * deleted and purged when the buffer is merged. The index is not
+ * synchronized.</p>
+ *
+ * @see PrefixSearchTupleSet
+ */
+public class PrefixIndex {
+
+    private static final int DELETED = -1;
+
+    private final boolean m_caseSensitive;
+
+    // sorted words and ids, deleted entries have an id of DELETED
+    private String[] m_words = new String[0];
+    private int[]    m_ids   = new int[0];
+    private int      m_size  = 0;
+    private int      m_deleted = 0;
+
+    // unsorted additions
+    private String[] m_addWords = new String[0];
+    private int[]    m_addIds   = new int[0];
+    private int      m_adds     = 0;
+
+    private static final Comparator<Object> s_cmp = new Comparator<Object>() {
+        public int compare(Object a, Object b) {
+            return ((String)a).compareTo((String)b);
+        }
+    };
+
+    /**
+     * Create a new, empty PrefixIndex.
+     * @param caseSensitive true if the index should be case sensitive for
+     * indexed words, false otherwise.
+     */
+    public PrefixIndex(boolean caseSensitive) {
+        m_caseSensitive = caseSensitive;
+    }
+
+    /**
+     * Indicates if this index takes the case of letters into account.
+     * @return true if the index is case-sensitive, false otherwise
+     */
+    public boolean isCaseSensitive() {
+        return m_caseSensitive;
+    }
+
+    /**
+     * Get the number of indexed word/id pairs.
+     * @return the size of the index
+     */
+    public int size() {
+        return m_size - m_deleted + m_adds;
+    }
+
+    /**
+     * Remove all words from the index.
+     */
+    public void clear() {
+        m_words = new String[0];
+        m_ids = new int[0];
+        m_size = m_deleted = 0;
+        m_addWords = new String[0];
+        m_addIds = new int[0];
+        m_adds = 0;
+    }
+
+    /**
+     * Add a word to the index, associated with the given id.
+     * @param word the word to add
+     * @param id the id associated with the word, must not be negative
+     */
+    public void add(String word, int id) {
+        if ( id < 0 )
+            throw new IllegalArgumentException("Negative id: "+id);
+        if ( m_adds == m_addIds.length ) {
+            int cap = Math.max(16, 2*m_adds);
+            m_addWords = Arrays.copyOf(m_addWords, cap);
+            m_addIds = ArrayLib.resize(m_addIds, cap);
+        }
+        m_addWords[m_adds] = normalize(word);
+        m_addIds[m_adds++] = id;
+    }
+
+    /**
+     * Remove a word/id pair from the index.
+     * @param word the word to remove
+     * @param id the associated id to remove
+     * @return true if the pair was found and removed, false otherwise
+     */
+    public boolean remove(String word, int id) {
+        word = normalize(word);
+        if ( m_adds > 0 ) {
+            // look in the buffer first, most removals follow additions
+            for ( int i=m_adds; --i >= 0; ) {
+                if ( m_addIds[i] == id && m_addWords[i].equals(word) ) {
+                    --m_adds;
+                    m_addWords[i] = m_addWords[m_adds];
+                    m_addIds[i] = m_addIds[m_adds];
+                    m_addWords[m_adds] = null;
+                    return true;
+                }
+            }
+        }
+        int i = indexOf(word, id);
+        if ( i < 0 ) return false;
+        m_ids[i] = DELETED;
+        ++m_deleted;
+        return true;
+    }
+
+    /**
+     * Get the ids of all words starting with the given prefix. An id is
+     * returned once for every matching word it is associated with. The
+     * iterator is invalidated by subsequent changes to the index.
+     * @param prefix the prefix to look up
+     * @return an iterator over the matching ids
+     */
+    public IntIterator find(String prefix) {
+        prefix = normalize(prefix);
+        merge();
+        int lo = bound(prefix, 0);
+        int hi = bound(prefix, 1);
+        return new RangeIterator(lo, hi);
+    }
+
+    /**
+     * Count the words starting with the given prefix.
+     * @param prefix the prefix to look up
+     * @return the number of matching word/id pairs
+     */
+    public int count(String prefix) {
+        prefix = normalize(prefix);
+        merge();
+        int lo = bound(prefix, 0), hi = bound(prefix, 1);
+        if ( m_deleted == 0 )
+            return hi-lo;
+        int n = 0;
+        for ( int i=lo; i<hi; ++i )
+            if ( m_ids[i] != DELETED ) ++n;
+        return n;
+    }
+
+    // ------------------------------------------------------------------------
+
+    private String normalize(String word) {
+        return m_caseSensitive ? word : word.toLowerCase();
+    }
+
+    /**
+     * Compare a word to a prefix, considering only the first characters of
+     * the word. Returns zero if the word starts with the prefix.
+     */
+    private static int comparePrefix(String word, String prefix) {
+        int len = Math.min(word.length(), prefix.length());
+        for ( int i=0; i<len; ++i ) {
+            int d = word.charAt(i) - prefix.charAt(i);
+            if ( d != 0 ) return d;
+        }
+        return word.length() < prefix.length() ? -1 : 0;
+    }
+
+    /**
+     * Binary search for the first word that compares greater than or equal
+     * to the prefix (bias 0), or greater than the prefix (bias 1).
+     */
+    private int bound(String prefix, int bias) {
+        int lo = 0, hi = m_size;
+        while ( lo < hi ) {
+            int mid = (lo+hi) >>> 1;
+            if ( comparePrefix(m_words[mid], prefix) < bias ) {
+                lo = mid+1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Find the sorted entry for the given word/id pair.
+     */
+    private int indexOf(String word, int id) {
+        int lo = 0, hi = m_size;
+        while ( lo < hi ) {
+            int mid = (lo+hi) >>> 1;
+            int c = m_words[mid].compareTo(word);
+            if ( c < 0 ) {
+                lo = mid+1;
+            } else {
+                hi = mid;
+            }
+        }
+        // ids of the same word are sorted, except for deleted entries
+        for ( int i=lo; i<m_size && m_words[i].equals(word); ++i ) {
+            if ( m_ids[i] == id ) return i;
+            if ( m_ids[i] > id ) break;
+        }
+        return -1;
+    }
+
+    /**
+     * Sort the buffered additions and merge them into the index, purging
+     * deleted entries.
+     */
+    private void merge() {
+        if ( m_adds == 0 && 4*m_deleted <= m_size )
+            return;
+
+        // sort the additions by word, then by id
+        String[] aw = m_addWords;
+        int[] ai = m_addIds;
+        int na = m_adds;
+        ArrayLib.sort(aw, ai, 0, na, s_cmp);
+        for ( int i=0, j; i<na; i=j ) {
+            for ( j=i+1; j<na && aw[j].equals(aw[i]); ++j );
+            if ( j-i > 1 ) Arrays.sort(ai, i, j);
+        }
+
+        int n = m_size - m_deleted + na;
+        String[] words = new String[n];
+        int[] ids = new int[n];
+        int i = 0, a = 0, k = 0;
+        while ( i < m_size || a < na ) {
+            if ( i < m_size && m_ids[i] == DELETED ) {
+                ++i; continue;
+            }
+            boolean takeMain;
+            if ( a == na ) {
+                takeMain = true;
+            } else if ( i == m_size ) {
+                takeMain = false;
+            } else {
+                int c = m_words[i].compareTo(aw[a]);
+                takeMain = c < 0 || (c == 0 && m_ids[i] <= ai[a]);
+            }
+            if ( takeMain ) {
+                words[k] = m_words[i]; ids[k++] = m_ids[i++];
+            } else {
+                words[k] = aw[a]; ids[k++] = ai[a++];
+            }
+        }
+        m_words = words;
+        m_ids = ids;
+        m_size = n;
+        m_deleted = 0;
+
+        Arrays.fill(m_addWords, 0, na, null);
+        m_adds = 0;
+    }
+
+    /**
+     * Iterates over the ids in a range of the sorted entries.
+     */
+    private class RangeIterator extends IntIterator {
+        private int m_cur;
+        private final int m_end;
+
+        RangeIterator(int start, int end) {
+            m_end = end;
+            m_cur = skip(start);
+        }
+        private int skip(int i) {
+            while ( i < m_end && m_ids[i] == DELETED ) ++i;
+            return i;
+        }
+        public boolean hasNext() {
+            return m_cur < m_end;
+        }
+        public int nextInt() {
+            if ( m_cur >= m_end )
+                throw new NoSuchElementException();
+            int id = m_ids[m_cur];
+            m_cur = skip(m_cur+1);
+            return id;
+        }
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+} // end of class PrefixIndex
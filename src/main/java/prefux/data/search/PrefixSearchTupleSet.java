@@ -30,16 +30,19 @@
  */
 package prefux.data.search;
 
-import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.StringTokenizer;
 
+import prefux.data.Table;
 import prefux.data.Tuple;
+import prefux.util.collections.IntIterator;
 
 
 /**
  * <p>
  * SearchTupleSet implementation supporting word prefix searches over indexed
- * Tuple data fields. This class uses a {@link Trie Trie} data structure
+ * Tuple data fields. This class uses a {@link PrefixIndex} data structure
  * to find search results quickly; however, only prefix matches will be
  * identified as valid search matches. Multi-term search queries will result
  * in the union of the results for the individual query terms. That is, Tuples
@@ -47,6 +50,11 @@ import prefux.data.Tuple;
  * </p>
  * 
  * <p>
+ * The index refers to Tuples by their row, so a separate index is kept for
+ * each table the indexed Tuples belong to.
+ * </p>
+ * 
+ * <p>
  * For more advanced search capabilities, see 
  * {@link KeywordSearchTupleSet} or {@link RegexSearchTupleSet}.
  * </p>
@@ -57,8 +65,8 @@ import prefux.data.Tuple;
  */
 public class PrefixSearchTupleSet extends SearchTupleSet {
     
-    private Trie m_trie;
-    private Trie.TrieNode m_curNode;
+    private Map<Table,PrefixIndex> m_indices = new LinkedHashMap<>();
+    private boolean m_caseSensitive;
     private String m_delim = " \t\n\r";
     private String m_query = "";
     
@@ -75,7 +83,7 @@ public class PrefixSearchTupleSet extends SearchTupleSet {
      * sensitive, false otherwise.
      */
     public PrefixSearchTupleSet(boolean caseSensitive) {
-        m_trie = new Trie(caseSensitive);
+        m_caseSensitive = caseSensitive;
     }
     
     /**
@@ -141,11 +149,14 @@ public class PrefixSearchTupleSet extends SearchTupleSet {
      * Issues a prefix search and collects the results
      */
     private void prefixSearch(String query) {
-        m_curNode = m_trie.find(query);
-        if ( m_curNode != null ) {
-            Iterator iter = trieIterator();
-            while ( iter.hasNext() )
-                addInternal((Tuple)iter.next());
+        for ( Map.Entry<Table,PrefixIndex> e : m_indices.entrySet() ) {
+            Table table = e.getKey();
+            IntIterator rows = e.getValue().find(query);
+            while ( rows.hasNext() ) {
+                int row = rows.nextInt();
+                if ( table.isValidRow(row) )
+                    addInternal(table.getTuple(row));
+            }
         }
     }
     
@@ -156,17 +167,18 @@ public class PrefixSearchTupleSet extends SearchTupleSet {
     public void index(Tuple t, String field) {
         String s;
         if ( (s=t.getString(field)) == null ) return;
+        PrefixIndex index = m_indices.get(t.getTable());
+        if ( index == null ) {
+            index = new PrefixIndex(m_caseSensitive);
+            m_indices.put(t.getTable(), index);
+        }
+        int row = t.getRow();
         StringTokenizer st = new StringTokenizer(s,m_delim);
         while ( st.hasMoreTokens() ) {
-            String tok = st.nextToken();
-            addString(tok, t);
+            index.add(st.nextToken(), row);
         }
     }
     
-    private void addString(String s, Tuple t) {
-        m_trie.addString(s,t);
-    }
-    
     /**
      * Returns true, as unidexing is supported by this class.
      * @see prefux.data.search.SearchTupleSet#isUnindexSupported()
@@ -180,11 +192,13 @@ public class PrefixSearchTupleSet extends SearchTupleSet {
      */
     public void unindex(Tuple t, String field) {
         String s;
-        if ( (s=t.getString(field)) == null ) return;
+        PrefixIndex index = m_indices.get(t.getTable());
+        if ( (s=t.getString(field)) == null || index == null )
+            return;
+        int row = t.getRow();
         StringTokenizer st = new StringTokenizer(s,m_delim);
         while ( st.hasMoreTokens() ) {
-            String tok = st.nextToken();
-            removeString(tok, t);
+            index.remove(st.nextToken(), row);
         }
     }
     
@@ -193,16 +207,8 @@ public class PrefixSearchTupleSet extends SearchTupleSet {
      * @see prefux.data.tuple.TupleSet#clear()
      */
     public void clear() {
-        m_trie = new Trie(m_trie.isCaseSensitive());
+        m_indices.clear();
         super.clear();
     }
     
-    private void removeString(String s, Tuple t) {
-        m_trie.removeString(s,t);
-    }
-    
-    private Iterator trieIterator() {
-        return m_trie.new TrieIterator(m_curNode);
-    }
-    
 }  // end of class PrefixSearchTupleSet
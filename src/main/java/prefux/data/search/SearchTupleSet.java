@@ -34,6 +34,7 @@ import java.util.Iterator;
 
 import prefux.data.Tuple;
 import prefux.data.tuple.DefaultTupleSet;
+import prefux.data.tuple.TupleSet;
 
 /**
  * <p>Abstract base class for TupleSet implementations that support text
@@ -91,6 +92,17 @@ public abstract class SearchTupleSet extends DefaultTupleSet {
         }
     }
     
+    /**
+     * Indexes the data values for the given field name for each Tuple
+     * in the provided TupleSet.
+     * @param tuples the TupleSet whose Tuples should be indexed
+     * @param field the name of the attribute to index
+     * @see #index(Iterator, String)
+     */
+    public void index(TupleSet tuples, String field) {
+        index(tuples.tuples(), field);
+    }
+    
     /**
      * Index an individual Tuple field, so that it can be searched for.
      * @param t the Tuple
@@ -47,7 +47,10 @@ import prefux.data.Tuple;
  * @version 1.0
  * @author <a href="http://jheer.org">jeffrey heer</a>
  * @see PrefixSearchTupleSet
+ * @deprecated superseded by {@link PrefixIndex}, which needs far less
+ * memory for large numbers of words.
  */
+@Deprecated
 public class Trie {
 
     /**
@@ -0,0 +1,515 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.data.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import prefux.data.Table;
+import prefux.data.column.Column;
+import prefux.data.event.ColumnListener;
+import prefux.data.event.EventConstants;
+import prefux.data.event.TableListener;
+import prefux.util.collections.CompositeIntIterator;
+import prefux.util.collections.CompressedBitmap;
+import prefux.util.collections.DefaultLiteralComparator;
+import prefux.util.collections.IntIterator;
+
+/**
+ * <p>Index instance that keeps a {@link CompressedBitmap} of rows for each
+ * distinct value of a column. The index is intended for boolean columns
+ * and for int or object (e.g., String) columns with few distinct values,
+ * where it takes far less space than a tree and answers equality lookups
+ * without a search. The bitmaps can be combined using word-level
+ * intersections and unions, see {@link #bitmap(Object)}.</p>
+ *
+ * <p>Range lookups and rank statistics sort the distinct values, and are
+ * thus only efficient for columns of low cardinality. Values are ordered
+ * by the {@link DefaultLiteralComparator}.</p>
+ */
+public class BitmapIndex implements Index, ColumnListener, TableListener {
+
+    private static final CompressedBitmap EMPTY = new CompressedBitmap();
+
+    protected Table      m_table;
+    protected RowManager m_rows;
+    protected Column     m_col;
+    protected int        m_colidx;
+    protected boolean    m_reindex;
+
+    private Map<Object,CompressedBitmap> m_bitmaps =
+        new HashMap<Object,CompressedBitmap>();
+    private Object[] m_sorted = null;
+    private int m_size = 0;
+
+    /**
+     * Create a new BitmapIndex.
+     * @param t the Table containing the data column to index
+     * @param rows the RowManager of the Table
+     * @param col the Column instance to index
+     * @throws IllegalArgumentException if the column type is not
+     * supported, see {@link #isSupported(Class)}
+     */
+    public BitmapIndex(Table t, RowManager rows, Column col) {
+        if ( !isSupported(col.getColumnType()) ) {
+            throw new IllegalArgumentException(
+                "Unsupported column type: "+col.getColumnType().getName());
+        }
+        m_table = t;
+        m_rows = rows;
+        m_col = col;
+
+        index();
+
+        m_col.addColumnListener(this);
+        m_table.addTableListener(this);
+    }
+
+    /**
+     * Indicates if a BitmapIndex can be created over columns of the given
+     * data type.
+     * @param type the column data type
+     * @return true for boolean, int and object columns
+     */
+    public static boolean isSupported(Class type) {
+        return type == boolean.class || type == int.class
+            || !type.isPrimitive();
+    }
+
+    /**
+     * @see prefux.data.util.Index#dispose()
+     */
+    public void dispose() {
+        m_col.removeColumnListener(this);
+        m_table.removeTableListener(this);
+    }
+
+    /**
+     * @see prefux.data.util.Index#getComparator()
+     */
+    public Comparator getComparator() {
+        return DefaultLiteralComparator.getInstance();
+    }
+
+    /**
+     * @see prefux.data.util.Index#size()
+     */
+    public int size() {
+        check();
+        return m_size;
+    }
+
+    private int getColumnIndex() {
+        if ( !(m_table.getColumn(m_colidx) == m_col) ) {
+            m_colidx = m_table.getColumnNumber(m_col);
+        }
+        return m_colidx;
+    }
+
+    // ------------------------------------------------------------------------
+    // Index Update Methods
+
+    /**
+     * @see prefux.data.util.Index#index()
+     */
+    public void index() {
+        m_bitmaps.clear();
+        m_sorted = null;
+        m_size = 0;
+
+        int idx = getColumnIndex();
+        m_colidx = idx;
+        IntIterator rows = m_rows.rows();
+        while ( rows.hasNext() ) {
+            int r = rows.nextInt();
+            add(m_col.get(m_table.getColumnRow(r, idx)), r);
+        }
+        m_reindex = false;
+    }
+
+    private void check() {
+        if ( m_reindex ) index();
+    }
+
+    private void add(Object val, int row) {
+        CompressedBitmap b = m_bitmaps.get(val);
+        if ( b == null ) {
+            b = new CompressedBitmap();
+            m_bitmaps.put(val, b);
+            m_sorted = null;
+        }
+        if ( b.add(row) ) ++m_size;
+    }
+
+    private void remove(Object val, int row) {
+        CompressedBitmap b = m_bitmaps.get(val);
+        if ( b != null && b.remove(row) ) {
+            --m_size;
+            if ( b.isEmpty() ) {
+                m_bitmaps.remove(val);
+                m_sorted = null;
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Listener Methods
+
+    /**
+     * @see prefux.data.event.TableListener#tableChanged(prefux.data.Table, int, int, int, int)
+     */
+    public void tableChanged(Table t, int start, int end, int col, int type) {
+        if ( type == EventConstants.UPDATE || t != m_table
+              || col != EventConstants.ALL_COLUMNS || m_reindex )
+            return;
+
+        boolean insert = (type==EventConstants.INSERT);
+        int idx = getColumnIndex();
+        for ( int r=start; r<=end; ++r ) {
+            Object val = m_col.get(m_rows.getColumnRow(r, idx));
+            if ( insert )
+                add(val, r);
+            else
+                remove(val, r);
+        }
+    }
+
+    private void valueChanged(Object prev, int idx) {
+        if ( m_reindex ) return;
+        int row = m_rows.getTableRow(idx, getColumnIndex());
+        if ( row < 0 ) return; // invalid row value
+        remove(prev, row);
+        add(m_col.get(idx), row);
+    }
+
+    /**
+     * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, int, int)
+     */
+    public void columnChanged(Column src, int type, int start, int end) {
+        m_reindex = true;
+    }
+
+    /**
+     * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, boolean)
+     */
+    public void columnChanged(Column src, int idx, boolean prev) {
+        valueChanged(Boolean.valueOf(prev), idx);
+    }
+
+    /**
+     * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, int)
+     */
+    public void columnChanged(Column src, int idx, int prev) {
+        valueChanged(Integer.valueOf(prev), idx);
+    }
+
+    /**
+     * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, long)
+     */
+    public void columnChanged(Column src, int idx, long prev) {
+        valueChanged(Long.valueOf(prev), idx);
+    }
+
+    /**
+     * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, float)
+     */
+    public void columnChanged(Column src, int idx, float prev) {
+        valueChanged(Float.valueOf(prev), idx);
+    }
+
+    /**
+     * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, double)
+     */
+    public void columnChanged(Column src, int idx, double prev) {
+        valueChanged(Double.valueOf(prev), idx);
+    }
+
+    /**
+     * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, java.lang.Object)
+     */
+    public void columnChanged(Column src, int idx, Object prev) {
+        valueChanged(prev, idx);
+    }
+
+    // ------------------------------------------------------------------------
+    // Bitmap Retrieval
+
+    /**
+     * Get the bitmap of all rows with the given data value. The returned
+     * bitmap is backed by the index and must not be modified; use
+     * {@link CompressedBitmap#and(CompressedBitmap, CompressedBitmap)} and
+     * {@link CompressedBitmap#or(CompressedBitmap, CompressedBitmap)} to
+     * combine bitmaps.
+     * @param val the data value
+     * @return the bitmap of matching rows, empty if there are none
+     */
+    public CompressedBitmap bitmap(Object val) {
+        check();
+        CompressedBitmap b = m_bitmaps.get(val);
+        return b == null ? EMPTY : b;
+    }
+
+    /**
+     * Get the bitmap of all rows with the given data value.
+     * @param val the data value
+     * @return the bitmap of matching rows, empty if there are none
+     * @see #bitmap(Object)
+     */
+    public CompressedBitmap bitmap(int val) {
+        return bitmap(Integer.valueOf(val));
+    }
+
+    /**
+     * Get the bitmap of all rows with the given data value.
+     * @param val the data value
+     * @return the bitmap of matching rows, empty if there are none
+     * @see #bitmap(Object)
+     */
+    public CompressedBitmap bitmap(boolean val) {
+        return bitmap(Boolean.valueOf(val));
+    }
+
+    private Object[] sortedValues() {
+        check();
+        if ( m_sorted == null ) {
+            m_sorted = m_bitmaps.keySet().toArray();
+            Arrays.sort(m_sorted, getComparator());
+        }
+        return m_sorted;
+    }
+
+    // ------------------------------------------------------------------------
+    // Retrieval Methods
+
+    /**
+     * @see prefux.data.util.Index#minimum()
+     */
+    public int minimum() {
+        Object[] v = sortedValues();
+        return v.length == 0 ? Integer.MIN_VALUE : m_bitmaps.get(v[0]).first();
+    }
+
+    /**
+     * @see prefux.data.util.Index#maximum()
+     */
+    public int maximum() {
+        Object[] v = sortedValues();
+        return v.length == 0 ? Integer.MIN_VALUE
+                             : m_bitmaps.get(v[v.length-1]).last();
+    }
+
+    /**
+     * @see prefux.data.util.Index#median()
+     */
+    public int median() {
+        Object[] v = sortedValues();
+        int k = m_size / 2;
+        for ( int i=0; i<v.length; ++i ) {
+            CompressedBitmap b = m_bitmaps.get(v[i]);
+            if ( k < b.size() )
+                return b.select(k);
+            k -= b.size();
+        }
+        return Integer.MIN_VALUE;
+    }
+
+    /**
+     * @see prefux.data.util.Index#uniqueCount()
+     */
+    public int uniqueCount() {
+        check();
+        return m_bitmaps.size();
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+     * @see prefux.data.util.Index#allRows(int)
+     */
+    public IntIterator allRows(int type) {
+        return rows(null, null, type | Index.TYPE_LEFT_INCLUSIVE
+                                     | Index.TYPE_RIGHT_INCLUSIVE);
+    }
+
+    /**
+     * A null bound leaves the range open at that end.
+     * @see prefux.data.util.Index#rows(java.lang.Object, java.lang.Object, int)
+     */
+    public IntIterator rows(Object lo, Object hi, int type) {
+        boolean reverse = (type & Index.TYPE_DESCENDING) > 0;
+        boolean linc = (type & Index.TYPE_LEFT_INCLUSIVE) > 0;
+        boolean hinc = (type & Index.TYPE_RIGHT_INCLUSIVE) > 0;
+        Comparator cmp = getComparator();
+
+        if ( lo != null && hi != null && linc && hinc
+             && cmp.compare(lo, hi) == 0 )
+        {
+            // equality lookup, no need to sort the values
+            return bitmap(lo).iterator(!reverse);
+        }
+
+        Object[] v = sortedValues();
+        int n = 0;
+        IntIterator[] iters = new IntIterator[v.length];
+        for ( int i=0; i<v.length; ++i ) {
+            Object x = v[reverse ? v.length-1-i : i];
+            if ( lo != null ) {
+                int c = cmp.compare(x, lo);
+                if ( c < 0 || (c == 0 && !linc) ) continue;
+            }
+            if ( hi != null ) {
+                int c = cmp.compare(x, hi);
+                if ( c > 0 || (c == 0 && !hinc) ) continue;
+            }
+            iters[n++] = m_bitmaps.get(x).iterator(!reverse);
+        }
+        if ( n == 0 ) {
+            return EMPTY.iterator(true);
+        } else if ( n == 1 ) {
+            return iters[0];
+        } else {
+            return new CompositeIntIterator(Arrays.copyOf(iters, n));
+        }
+    }
+
+    /**
+     * @see prefux.data.util.Index#rows(int, int, int)
+     */
+    public IntIterator rows(int lo, int hi, int type) {
+        return rows(Integer.valueOf(lo), Integer.valueOf(hi), type);
+    }
+
+    /**
+     * @see prefux.data.util.Index#rows(long, long, int)
+     */
+    public IntIterator rows(long lo, long hi, int type) {
+        return rows(Long.valueOf(lo), Long.valueOf(hi), type);
+    }
+
+    /**
+     * @see prefux.data.util.Index#rows(float, float, int)
+     */
+    public IntIterator rows(float lo, float hi, int type) {
+        return rows(Float.valueOf(lo), Float.valueOf(hi), type);
+    }
+
+    /**
+     * @see prefux.data.util.Index#rows(double, double, int)
+     */
+    public IntIterator rows(double lo, double hi, int type) {
+        return rows(Double.valueOf(lo), Double.valueOf(hi), type);
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+     * @see prefux.data.util.Index#rows(int)
+     */
+    public IntIterator rows(int val) {
+        return bitmap(val).iterator(true);
+    }
+
+    /**
+     * @see prefux.data.util.Index#rows(long)
+     */
+    public IntIterator rows(long val) {
+        return bitmap(Long.valueOf(val)).iterator(true);
+    }
+
+    /**
+     * @see prefux.data.util.Index#rows(float)
+     */
+    public IntIterator rows(float val) {
+        return bitmap(Float.valueOf(val)).iterator(true);
+    }
+
+    /**
+     * @see prefux.data.util.Index#rows(double)
+     */
+    public IntIterator rows(double val) {
+        return bitmap(Double.valueOf(val)).iterator(true);
+    }
+
+    /**
+     * @see prefux.data.util.Index#rows(boolean)
+     */
+    public IntIterator rows(boolean val) {
+        return bitmap(val).iterator(true);
+    }
+
+    /**
+     * @see prefux.data.util.Index#rows(java.lang.Object)
+     */
+    public IntIterator rows(Object val) {
+        return bitmap(val).iterator(true);
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+     * @see prefux.data.util.Index#get(double)
+     */
+    public int get(double x) {
+        return get(Double.valueOf(x));
+    }
+
+    /**
+     * @see prefux.data.util.Index#get(float)
+     */
+    public int get(float x) {
+        return get(Float.valueOf(x));
+    }
+
+    /**
+     * @see prefux.data.util.Index#get(int)
+     */
+    public int get(int x) {
+        return get(Integer.valueOf(x));
+    }
+
+    /**
+     * @see prefux.data.util.Index#get(long)
+     */
+    public int get(long x) {
+        return get(Long.valueOf(x));
+    }
+
+    /**
+     * @see prefux.data.util.Index#get(java.lang.Object)
+     */
+    public int get(Object x) {
+        CompressedBitmap b = bitmap(x);
+        return b.isEmpty() ? Integer.MIN_VALUE : b.first();
+    }
+
+} // end of class BitmapIndex
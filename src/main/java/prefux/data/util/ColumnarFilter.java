@@ -0,0 +1,945 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.data.util;
+
+import java.util.BitSet;
+import java.util.Comparator;
+
+import prefux.data.Schema;
+import prefux.data.Table;
+import prefux.data.Tuple;
+import prefux.data.column.Column;
+import prefux.data.expression.AndPredicate;
+import prefux.data.expression.ArithmeticExpression;
+import prefux.data.expression.BooleanLiteral;
+import prefux.data.expression.ColumnExpression;
+import prefux.data.expression.ComparisonPredicate;
+import prefux.data.expression.CompiledExpression;
+import prefux.data.expression.CompositePredicate;
+import prefux.data.expression.Expression;
+import prefux.data.expression.IfExpression;
+import prefux.data.expression.NotPredicate;
+import prefux.data.expression.NumericLiteral;
+import prefux.data.expression.ObjectLiteral;
+import prefux.data.expression.OrPredicate;
+import prefux.data.expression.Predicate;
+import prefux.data.expression.RangePredicate;
+import prefux.data.expression.XorPredicate;
+import prefux.util.TypeLib;
+import prefux.util.collections.DefaultLiteralComparator;
+import prefux.util.collections.IntIterator;
+
+/**
+ * <p>Evaluates a predicate over the rows of a table a block at a time,
+ * producing a bitmap of the rows that satisfy the predicate. Instead of
+ * calling {@link Predicate#getBoolean(Tuple)} for each row, the predicate
+ * is translated into a plan of column-oriented operators. Column references
+ * read the values of a whole block of rows from the column, arithmetic and
+ * comparisons loop over primitive arrays, and AND, OR, XOR and NOT combine
+ * the resulting bitmaps. No tuple instances are created, so filtering large
+ * tables avoids the cost of the table's tuple manager.</p>
+ *
+ * <p>The translation follows the semantics of the interpreted expression
+ * classes. Nodes without a columnar operator, such as function calls, are
+ * evaluated through the interpreter for each row of the block. If the
+ * evaluation of a block fails, for example due to an integer division by
+ * zero in a row that the interpreter would not have evaluated, the block is
+ * evaluated by the interpreter instead, so any exception is thrown exactly
+ * as without this class.</p>
+ *
+ * <p>The plan is built on first use and rebuilt when the table's schema
+ * changes. A new ColumnarFilter must be created when the predicate is
+ * modified. Instances are not synchronized.</p>
+ *
+ * @see FilterIteratorFactory
+ */
+public class ColumnarFilter {
+
+    /** The number of rows evaluated at a time. */
+    public static final int BLOCK_SIZE = 1024;
+    private static final int WORDS = BLOCK_SIZE >>> 6;
+
+    // value kinds
+    private static final int INT    = 0;
+    private static final int LONG   = 1;
+    private static final int FLOAT  = 2;
+    private static final int DOUBLE = 3;
+    private static final int OBJECT = 4;
+
+    private final Table     m_table;
+    private final Predicate m_predicate;
+
+    private Schema m_schema = null;
+    private Cond   m_plan = null;
+
+    // the current block
+    private final int[]  m_rows = new int[BLOCK_SIZE];
+    private final long[] m_bits = new long[WORDS];
+    private int m_count = 0;
+
+    /**
+     * Create a new ColumnarFilter.
+     * @param table the table to filter
+     * @param p the filter predicate
+     */
+    public ColumnarFilter(Table table, Predicate p) {
+        m_table = table;
+        m_predicate = p;
+    }
+
+    /**
+     * Get the table filtered by this instance.
+     * @return the filtered table
+     */
+    public Table getTable() {
+        return m_table;
+    }
+
+    /**
+     * Get the filter predicate.
+     * @return the filter predicate
+     */
+    public Predicate getPredicate() {
+        return m_predicate;
+    }
+
+    /**
+     * Get the rows of a table that satisfy a predicate.
+     * @param table the table to filter
+     * @param p the filter predicate
+     * @return a bitmap of the matching rows
+     */
+    public static BitSet select(Table table, Predicate p) {
+        return new ColumnarFilter(table, p).select();
+    }
+
+    /**
+     * Get all rows of the table that satisfy the predicate.
+     * @return a bitmap of the matching rows
+     */
+    public BitSet select() {
+        BitSet result = new BitSet(m_table.getMaximumRow()+1);
+        select(m_table.rows(), result);
+        return result;
+    }
+
+    /**
+     * Evaluate the predicate for the given rows, and set the bits of the
+     * matching rows in the result. Bits of other rows are not changed.
+     * @param rows the rows to evaluate, must be valid rows of the table
+     * @param result the bitmap receiving the matching rows
+     */
+    public void select(IntIterator rows, BitSet result) {
+        Cond plan = plan();
+        m_count = 0;
+        while ( rows.hasNext() ) {
+            m_rows[m_count++] = rows.nextInt();
+            if ( m_count == BLOCK_SIZE )
+                evaluate(plan, result);
+        }
+        if ( m_count > 0 )
+            evaluate(plan, result);
+    }
+
+    /**
+     * Evaluate the predicate for the valid rows in the given range, and set
+     * the bits of the matching rows in the result. Bits of other rows are
+     * not changed.
+     * @param start the first row to evaluate
+     * @param end the last row to evaluate, inclusive
+     * @param result the bitmap receiving the matching rows
+     */
+    public void select(int start, int end, BitSet result) {
+        Cond plan = plan();
+        m_count = 0;
+        for ( int r=start; r<=end; ++r ) {
+            if ( !m_table.isValidRow(r) ) continue;
+            m_rows[m_count++] = r;
+            if ( m_count == BLOCK_SIZE )
+                evaluate(plan, result);
+        }
+        if ( m_count > 0 )
+            evaluate(plan, result);
+    }
+
+    /**
+     * Evaluate the current block and clear it.
+     */
+    private void evaluate(Cond plan, BitSet result) {
+        int n = m_count;
+        try {
+            plan.eval(m_bits);
+        } catch ( RuntimeException e ) {
+            // fall back to the interpreter, which throws if appropriate
+            for ( int w=0; w<WORDS; ++w )
+                m_bits[w] = 0L;
+            for ( int i=0; i<n; ++i ) {
+                if ( m_predicate.getBoolean(m_table.getTuple(m_rows[i])) )
+                    m_bits[i>>>6] |= 1L << i;
+            }
+        }
+        for ( int w=0, nw=(n+63)>>>6; w<nw; ++w ) {
+            long word = m_bits[w];
+            if ( w == nw-1 && (n & 63) != 0 )
+                word &= (1L << n) - 1;
+            while ( word != 0L ) {
+                int i = (w<<6) + Long.numberOfTrailingZeros(word);
+                result.set(m_rows[i]);
+                word &= word - 1;
+            }
+        }
+        m_count = 0;
+    }
+
+    // ------------------------------------------------------------------------
+    // Plan Construction
+
+    private Cond plan() {
+        Schema s = m_table.getSchema();
+        if ( m_plan == null || s != m_schema ) {
+            m_schema = s;
+            try {
+                m_plan = cond(m_predicate);
+            } catch ( RuntimeException e ) {
+                // type errors surface when the interpreter evaluates a row
+                m_plan = new InterpretedCond(m_predicate);
+            }
+        }
+        return m_plan;
+    }
+
+    private Cond cond(Expression e) {
+        if ( e instanceof CompiledExpression )
+            e = ((CompiledExpression)e).getSourceExpression();
+
+        if ( e instanceof BooleanLiteral && isPlain(e, BooleanLiteral.class) ) {
+            return new ConstCond(e.getBoolean(null));
+        } else if ( e instanceof ColumnExpression ) {
+            int col = column(e);
+            if ( col >= 0 )
+                return new ColumnCond(col);
+        } else if ( e instanceof ComparisonPredicate ) {
+            ComparisonPredicate c = (ComparisonPredicate)e;
+            if ( isPlain(e, ComparisonPredicate.class) && isDefault(c.getComparator()) ) {
+                Expression l = c.getLeftExpression();
+                Expression r = c.getRightExpression();
+                Class lType = l.getType(m_schema);
+                Class rType = r.getType(m_schema);
+                if ( lType == null || rType == null )
+                    return new ConstCond(false);
+                int kind = OBJECT;
+                if ( TypeLib.isNumericType(lType) && TypeLib.isNumericType(rType) )
+                    kind = kindOf(TypeLib.getNumericType(lType, rType));
+                return new CompareCond(c.getOperation(), c.getComparator(),
+                                       val(l, kind), val(r, kind));
+            }
+        } else if ( e instanceof RangePredicate ) {
+            RangePredicate rp = (RangePredicate)e;
+            if ( isPlain(e, RangePredicate.class) && isDefault(rp.getComparator()) ) {
+                Expression l = rp.getLeftExpression();
+                Expression r = rp.getRightExpression();
+                Expression m = rp.getMiddleExpression();
+                Class lType = l.getType(m_schema);
+                Class rType = r.getType(m_schema);
+                Class mType = m.getType(m_schema);
+                if ( lType != null && rType != null && mType != null ) {
+                    Class sType = null;
+                    if ( lType.isAssignableFrom(rType) ) {
+                        sType = lType;
+                    } else if ( rType.isAssignableFrom(lType) ) {
+                        sType = rType;
+                    }
+                    int kind = OBJECT;
+                    if ( sType != null && TypeLib.isNumericType(sType) &&
+                         TypeLib.isNumericType(mType) )
+                    {
+                        kind = kindOf(TypeLib.getNumericType(sType, mType));
+                    }
+                    return new RangeCond(rp.getOperation(), rp.getComparator(),
+                        val(l, kind), val(m, kind), val(r, kind));
+                }
+            }
+        } else if ( e instanceof AndPredicate || e instanceof OrPredicate ||
+                    e instanceof XorPredicate )
+        {
+            int op = e instanceof AndPredicate ? AND
+                   : e instanceof OrPredicate  ? OR : XOR;
+            Class base = op == AND ? AndPredicate.class
+                       : op == OR  ? OrPredicate.class : XorPredicate.class;
+            if ( isPlain(e, base) ) {
+                CompositePredicate cp = (CompositePredicate)e;
+                if ( cp.size() == 0 )
+                    return new ConstCond(false);
+                Cond[] clauses = new Cond[cp.size()];
+                for ( int i=0; i<clauses.length; ++i )
+                    clauses[i] = cond(cp.get(i));
+                return new JunctionCond(op, clauses);
+            }
+        } else if ( e instanceof NotPredicate ) {
+            if ( isPlain(e, NotPredicate.class) )
+                return new NotCond(cond(((NotPredicate)e).getPredicate()));
+        } else if ( e instanceof IfExpression ) {
+            IfExpression f = (IfExpression)e;
+            if ( isPlain(e, IfExpression.class) ) {
+                return new IfCond(cond(f.getTestPredicate()),
+                    cond(f.getThenExpression()), cond(f.getElseExpression()));
+            }
+        }
+        return new InterpretedCond(e);
+    }
+
+    private Val val(Expression e, int kind) {
+        if ( e instanceof CompiledExpression )
+            e = ((CompiledExpression)e).getSourceExpression();
+
+        if ( (e instanceof NumericLiteral && isPlain(e, NumericLiteral.class)) ||
+             (e instanceof ObjectLiteral && isPlain(e, ObjectLiteral.class)) ||
+             (e instanceof BooleanLiteral && isPlain(e, BooleanLiteral.class)) )
+        {
+            // literals do not access the tuple
+            try {
+                return new ConstVal(kind, e);
+            } catch ( RuntimeException ex ) {
+                // unsupported type conversion, fails on evaluation
+            }
+        } else if ( e instanceof ColumnExpression ) {
+            int col = column(e);
+            if ( col >= 0 )
+                return new ColumnVal(kind, col);
+        } else if ( e instanceof ArithmeticExpression ) {
+            ArithmeticExpression a = (ArithmeticExpression)e;
+            if ( isPlain(e, ArithmeticExpression.class) ) {
+                if ( kind != OBJECT ) {
+                    return new ArithmeticVal(kind, a.getOperation(),
+                        val(a.getLeftExpression(), kind),
+                        val(a.getRightExpression(), kind));
+                }
+                Class type = a.getType(m_schema);
+                if ( type == int.class || type == byte.class ) {
+                    return new BoxVal(int.class, val(a, INT));
+                } else if ( type == long.class ) {
+                    // the interpreter computes long results as int values
+                    return new BoxVal(long.class, val(a, INT));
+                } else if ( type == float.class ) {
+                    return new BoxVal(float.class, val(a, FLOAT));
+                } else if ( type == double.class ) {
+                    return new BoxVal(double.class, val(a, DOUBLE));
+                }
+            }
+        } else if ( e instanceof IfExpression ) {
+            IfExpression f = (IfExpression)e;
+            if ( isPlain(e, IfExpression.class) ) {
+                return new IfVal(kind, cond(f.getTestPredicate()),
+                    val(f.getThenExpression(), kind),
+                    val(f.getElseExpression(), kind));
+            }
+        } else if ( kind == OBJECT && (e instanceof ComparisonPredicate ||
+                e instanceof RangePredicate || e instanceof NotPredicate ||
+                e instanceof CompositePredicate) )
+        {
+            return new BooleanVal(cond(e));
+        }
+        return new InterpretedVal(kind, e);
+    }
+
+    private int column(Expression e) {
+        if ( !isPlain(e, ColumnExpression.class) )
+            return -1;
+        return m_schema.getColumnIndex(((ColumnExpression)e).getColumnName());
+    }
+
+    private static boolean isDefault(Comparator cmp) {
+        return cmp == DefaultLiteralComparator.getInstance();
+    }
+
+    private static int kindOf(Class type) {
+        if ( type == long.class ) {
+            return LONG;
+        } else if ( type == float.class ) {
+            return FLOAT;
+        } else if ( type == double.class ) {
+            return DOUBLE;
+        } else {
+            return INT;
+        }
+    }
+
+    private static final String[] ACCESSORS = {
+        "getBoolean", "getInt", "getLong", "getFloat", "getDouble", "get" };
+
+    /**
+     * Indicates if an expression evaluates like the given node class, i.e.
+     * its class does not override any evaluation method of the node class.
+     */
+    private static boolean isPlain(Expression e, Class base) {
+        for ( Class c = e.getClass(); c != base; c = c.getSuperclass() ) {
+            for ( int i=0; i<ACCESSORS.length; ++i ) {
+                try {
+                    c.getDeclaredMethod(ACCESSORS[i], new Class[] {Tuple.class});
+                    return false;
+                } catch ( NoSuchMethodException ex ) {
+                    // not overridden at this level
+                }
+            }
+        }
+        return true;
+    }
+
+    // ------------------------------------------------------------------------
+    // Predicate Operators
+
+    private static final int AND = 0;
+    private static final int OR  = 1;
+    private static final int XOR = 2;
+
+    /**
+     * A boolean operator. Sets bit i of the bitmap to the value for the
+     * i-th row of the current block. Bits past the block size are undefined.
+     */
+    private abstract class Cond {
+        abstract void eval(long[] bits);
+    }
+
+    private class ConstCond extends Cond {
+        private final long m_word;
+        ConstCond(boolean value) {
+            m_word = value ? -1L : 0L;
+        }
+        void eval(long[] bits) {
+            for ( int w=0, nw=words(); w<nw; ++w )
+                bits[w] = m_word;
+        }
+    }
+
+    private class ColumnCond extends Cond {
+        private final int   m_col;
+        private final int[] m_crows = new int[BLOCK_SIZE];
+        ColumnCond(int col) {
+            m_col = col;
+        }
+        void eval(long[] bits) {
+            columnRows(m_col, m_crows);
+            m_table.getColumn(m_col).getBooleans(m_crows, m_count, bits);
+        }
+    }
+
+    private class NotCond extends Cond {
+        private final Cond m_cond;
+        NotCond(Cond c) {
+            m_cond = c;
+        }
+        void eval(long[] bits) {
+            m_cond.eval(bits);
+            for ( int w=0, nw=words(); w<nw; ++w )
+                bits[w] = ~bits[w];
+        }
+    }
+
+    private class JunctionCond extends Cond {
+        private final int    m_op;
+        private final Cond[] m_clauses;
+        private final long[] m_tmp = new long[WORDS];
+        JunctionCond(int op, Cond[] clauses) {
+            m_op = op;
+            m_clauses = clauses;
+        }
+        void eval(long[] bits) {
+            int nw = words();
+            m_clauses[0].eval(bits);
+            for ( int k=1; k<m_clauses.length; ++k ) {
+                if ( m_op == AND && none(bits, nw) )
+                    return; // no row left to check
+                m_clauses[k].eval(m_tmp);
+                switch ( m_op ) {
+                case AND:
+                    for ( int w=0; w<nw; ++w ) bits[w] &= m_tmp[w];
+                    break;
+                case OR:
+                    for ( int w=0; w<nw; ++w ) bits[w] |= m_tmp[w];
+                    break;
+                default:
+                    for ( int w=0; w<nw; ++w ) bits[w] ^= m_tmp[w];
+                }
+            }
+        }
+        private boolean none(long[] bits, int nw) {
+            int n = m_count;
+            for ( int w=0; w<nw; ++w ) {
+                long word = bits[w];
+                if ( w == nw-1 && (n & 63) != 0 )
+                    word &= (1L << n) - 1;
+                if ( word != 0L ) return false;
+            }
+            return true;
+        }
+    }
+
+    private class IfCond extends Cond {
+        private final Cond m_test, m_then, m_else;
+        private final long[] m_a = new long[WORDS], m_b = new long[WORDS];
+        IfCond(Cond test, Cond thenCond, Cond elseCond) {
+            m_test = test;
+            m_then = thenCond;
+            m_else = elseCond;
+        }
+        void eval(long[] bits) {
+            m_test.eval(bits);
+            m_then.eval(m_a);
+            m_else.eval(m_b);
+            for ( int w=0, nw=words(); w<nw; ++w )
+                bits[w] = (bits[w] & m_a[w]) | (~bits[w] & m_b[w]);
+        }
+    }
+
+    /**
+     * Compares two values per row. Like the interpreter, the less-than and
+     * greater-than operations test for comparison results of -1 and 1.
+     */
+    private class CompareCond extends Cond {
+        private final int m_op;
+        private final Comparator m_cmp;
+        private final Val m_left, m_right;
+        private final int[] m_c = new int[BLOCK_SIZE];
+        CompareCond(int op, Comparator cmp, Val left, Val right) {
+            m_op = op;
+            m_cmp = cmp;
+            m_left = left;
+            m_right = right;
+        }
+        void eval(long[] bits) {
+            m_left.eval();
+            m_right.eval();
+            compare(m_cmp, m_left, m_right, m_c);
+            int[] c = m_c;
+            for ( int w=0, nw=words(); w<nw; ++w ) {
+                long word = 0L;
+                for ( int i=w<<6, end=Math.min(m_count, i+64); i<end; ++i ) {
+                    boolean b;
+                    switch ( m_op ) {
+                    case ComparisonPredicate.LT:   b = c[i] == -1; break;
+                    case ComparisonPredicate.GT:   b = c[i] == 1;  break;
+                    case ComparisonPredicate.EQ:   b = c[i] == 0;  break;
+                    case ComparisonPredicate.NEQ:  b = c[i] != 0;  break;
+                    case ComparisonPredicate.LTEQ: b = c[i] <= 0;  break;
+                    default:                       b = c[i] >= 0;  break;
+                    }
+                    if ( b ) word |= 1L << i;
+                }
+                bits[w] = word;
+            }
+        }
+    }
+
+    private class RangeCond extends Cond {
+        private final int m_op;
+        private final Comparator m_cmp;
+        private final Val m_lo, m_x, m_hi;
+        private final int[] m_c1 = new int[BLOCK_SIZE];
+        private final int[] m_c2 = new int[BLOCK_SIZE];
+        RangeCond(int op, Comparator cmp, Val lo, Val x, Val hi) {
+            m_op = op;
+            m_cmp = cmp;
+            m_lo = lo;
+            m_x = x;
+            m_hi = hi;
+        }
+        void eval(long[] bits) {
+            m_lo.eval();
+            m_hi.eval();
+            m_x.eval();
+            compare(m_cmp, m_x, m_lo, m_c1);
+            compare(m_cmp, m_x, m_hi, m_c2);
+            int[] c1 = m_c1, c2 = m_c2;
+            for ( int w=0, nw=words(); w<nw; ++w ) {
+                long word = 0L;
+                for ( int i=w<<6, end=Math.min(m_count, i+64); i<end; ++i ) {
+                    boolean b;
+                    switch ( m_op ) {
+                    case RangePredicate.IN_IN: b = c1[i] >= 0 && c2[i] <= 0; break;
+                    case RangePredicate.IN_EX: b = c1[i] >= 0 && c2[i] < 0;  break;
+                    case RangePredicate.EX_IN: b = c1[i] > 0  && c2[i] <= 0; break;
+                    default:                   b = c1[i] > 0  && c2[i] < 0;  break;
+                    }
+                    if ( b ) word |= 1L << i;
+                }
+                bits[w] = word;
+            }
+        }
+    }
+
+    private class InterpretedCond extends Cond {
+        private final Expression m_expr;
+        InterpretedCond(Expression e) {
+            m_expr = e;
+        }
+        void eval(long[] bits) {
+            for ( int w=0, nw=words(); w<nw; ++w ) {
+                long word = 0L;
+                for ( int i=w<<6, end=Math.min(m_count, i+64); i<end; ++i ) {
+                    if ( m_expr.getBoolean(m_table.getTuple(m_rows[i])) )
+                        word |= 1L << i;
+                }
+                bits[w] = word;
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Value Operators
+
+    /**
+     * A value operator. Computes the values of the current block into the
+     * array matching its kind.
+     */
+    private abstract class Val {
+        final int m_kind;
+        int[]    m_ints;
+        long[]   m_longs;
+        float[]  m_floats;
+        double[] m_doubles;
+        Object[] m_objects;
+
+        Val(int kind) {
+            m_kind = kind;
+            switch ( kind ) {
+            case INT:    m_ints = new int[BLOCK_SIZE]; break;
+            case LONG:   m_longs = new long[BLOCK_SIZE]; break;
+            case FLOAT:  m_floats = new float[BLOCK_SIZE]; break;
+            case DOUBLE: m_doubles = new double[BLOCK_SIZE]; break;
+            default:     m_objects = new Object[BLOCK_SIZE]; break;
+            }
+        }
+        abstract void eval();
+    }
+
+    /**
+     * A literal value, filled in once.
+     */
+    private class ConstVal extends Val {
+        ConstVal(int kind, Expression e) {
+            super(kind);
+            switch ( kind ) {
+            case INT:
+                java.util.Arrays.fill(m_ints, e.getInt(null)); break;
+            case LONG:
+                java.util.Arrays.fill(m_longs, e.getLong(null)); break;
+            case FLOAT:
+                java.util.Arrays.fill(m_floats, e.getFloat(null)); break;
+            case DOUBLE:
+                java.util.Arrays.fill(m_doubles, e.getDouble(null)); break;
+            default:
+                java.util.Arrays.fill(m_objects, e.get(null)); break;
+            }
+        }
+        void eval() {
+            // nothing to do
+        }
+    }
+
+    private class ColumnVal extends Val {
+        private final int   m_col;
+        private final int[] m_crows = new int[BLOCK_SIZE];
+        ColumnVal(int kind, int col) {
+            super(kind);
+            m_col = col;
+        }
+        void eval() {
+            columnRows(m_col, m_crows);
+            Column c = m_table.getColumn(m_col);
+            switch ( m_kind ) {
+            case INT:    c.getInts(m_crows, m_count, m_ints); break;
+            case LONG:   c.getLongs(m_crows, m_count, m_longs); break;
+            case FLOAT:  c.getFloats(m_crows, m_count, m_floats); break;
+            case DOUBLE: c.getDoubles(m_crows, m_count, m_doubles); break;
+            default:     c.get(m_crows, m_count, m_objects); break;
+            }
+        }
+    }
+
+    private class ArithmeticVal extends Val {
+        private final int m_op;
+        private final Val m_left, m_right;
+        ArithmeticVal(int kind, int op, Val left, Val right) {
+            super(kind);
+            m_op = op;
+            m_left = left;
+            m_right = right;
+        }
+        void eval() {
+            m_left.eval();
+            m_right.eval();
+            int n = m_count;
+            switch ( m_kind ) {
+            case INT:    ints(n);    break;
+            case LONG:   longs(n);   break;
+            case FLOAT:  floats(n);  break;
+            default:     doubles(n); break;
+            }
+        }
+        private void ints(int n) {
+            int[] x = m_left.m_ints, y = m_right.m_ints, z = m_ints;
+            switch ( m_op ) {
+            case ArithmeticExpression.ADD:
+                for ( int i=0; i<n; ++i ) z[i] = x[i] + y[i];
+                break;
+            case ArithmeticExpression.SUB:
+                for ( int i=0; i<n; ++i ) z[i] = x[i] - y[i];
+                break;
+            case ArithmeticExpression.MUL:
+                for ( int i=0; i<n; ++i ) z[i] = x[i] * y[i];
+                break;
+            case ArithmeticExpression.DIV:
+                for ( int i=0; i<n; ++i ) z[i] = x[i] / y[i];
+                break;
+            case ArithmeticExpression.POW:
+                for ( int i=0; i<n; ++i ) z[i] = (int)Math.pow(x[i], y[i]);
+                break;
+            default:
+                for ( int i=0; i<n; ++i ) z[i] = x[i] % y[i];
+            }
+        }
+        private void longs(int n) {
+            long[] x = m_left.m_longs, y = m_right.m_longs, z = m_longs;
+            switch ( m_op ) {
+            case ArithmeticExpression.ADD:
+                for ( int i=0; i<n; ++i ) z[i] = x[i] + y[i];
+                break;
+            case ArithmeticExpression.SUB:
+                for ( int i=0; i<n; ++i ) z[i] = x[i] - y[i];
+                break;
+            case ArithmeticExpression.MUL:
+                for ( int i=0; i<n; ++i ) z[i] = x[i] * y[i];
+                break;
+            case ArithmeticExpression.DIV:
+                for ( int i=0; i<n; ++i ) z[i] = x[i] / y[i];
+                break;
+            case ArithmeticExpression.POW:
+                for ( int i=0; i<n; ++i ) z[i] = (long)Math.pow(x[i], y[i]);
+                break;
+            default:
+                for ( int i=0; i<n; ++i ) z[i] = x[i] % y[i];
+            }
+        }
+        private void floats(int n) {
+            float[] x = m_left.m_floats, y = m_right.m_floats, z = m_floats;
+            switch ( m_op ) {
+            case ArithmeticExpression.ADD:
+                for ( int i=0; i<n; ++i ) z[i] = x[i] + y[i];
+                break;
+            case ArithmeticExpression.SUB:
+                for ( int i=0; i<n; ++i ) z[i] = x[i] - y[i];
+                break;
+            case ArithmeticExpression.MUL:
+                for ( int i=0; i<n; ++i ) z[i] = x[i] * y[i];
+                break;
+            case ArithmeticExpression.DIV:
+                for ( int i=0; i<n; ++i ) z[i] = x[i] / y[i];
+                break;
+            case ArithmeticExpression.POW:
+                for ( int i=0; i<n; ++i ) z[i] = (float)Math.pow(x[i], y[i]);
+                break;
+            default:
+                for ( int i=0; i<n; ++i )
+                    z[i] = (float)Math.IEEEremainder(x[i], y[i]);
+            }
+        }
+        private void doubles(int n) {
+            double[] x = m_left.m_doubles, y = m_right.m_doubles, z = m_doubles;
+            switch ( m_op ) {
+            case ArithmeticExpression.ADD:
+                for ( int i=0; i<n; ++i ) z[i] = x[i] + y[i];
+                break;
+            case ArithmeticExpression.SUB:
+                for ( int i=0; i<n; ++i ) z[i] = x[i] - y[i];
+                break;
+            case ArithmeticExpression.MUL:
+                for ( int i=0; i<n; ++i ) z[i] = x[i] * y[i];
+                break;
+            case ArithmeticExpression.DIV:
+                for ( int i=0; i<n; ++i ) z[i] = x[i] / y[i];
+                break;
+            case ArithmeticExpression.POW:
+                for ( int i=0; i<n; ++i ) z[i] = Math.pow(x[i], y[i]);
+                break;
+            default:
+                for ( int i=0; i<n; ++i )
+                    z[i] = Math.IEEEremainder(x[i], y[i]);
+            }
+        }
+    }
+
+    /**
+     * Boxes primitive values, as done by ArithmeticExpression.get().
+     */
+    private class BoxVal extends Val {
+        private final Class m_type;
+        private final Val m_val;
+        BoxVal(Class type, Val val) {
+            super(OBJECT);
+            m_type = type;
+            m_val = val;
+        }
+        void eval() {
+            m_val.eval();
+            int n = m_count;
+            if ( m_type == int.class ) {
+                for ( int i=0; i<n; ++i ) m_objects[i] = new Integer(m_val.m_ints[i]);
+            } else if ( m_type == long.class ) {
+                for ( int i=0; i<n; ++i ) m_objects[i] = new Long(m_val.m_ints[i]);
+            } else if ( m_type == float.class ) {
+                for ( int i=0; i<n; ++i ) m_objects[i] = new Float(m_val.m_floats[i]);
+            } else {
+                for ( int i=0; i<n; ++i ) m_objects[i] = new Double(m_val.m_doubles[i]);
+            }
+        }
+    }
+
+    /**
+     * The Boolean objects of a predicate, as returned by its get() method.
+     */
+    private class BooleanVal extends Val {
+        private final Cond m_cond;
+        private final long[] m_bits = new long[WORDS];
+        BooleanVal(Cond c) {
+            super(OBJECT);
+            m_cond = c;
+        }
+        void eval() {
+            m_cond.eval(m_bits);
+            for ( int i=0; i<m_count; ++i ) {
+                m_objects[i] = (m_bits[i>>>6] & (1L << i)) != 0
+                    ? Boolean.TRUE : Boolean.FALSE;
+            }
+        }
+    }
+
+    private class IfVal extends Val {
+        private final Cond m_test;
+        private final Val m_then, m_else;
+        private final long[] m_bits = new long[WORDS];
+        IfVal(int kind, Cond test, Val thenVal, Val elseVal) {
+            super(kind);
+            m_test = test;
+            m_then = thenVal;
+            m_else = elseVal;
+        }
+        void eval() {
+            m_test.eval(m_bits);
+            m_then.eval();
+            m_else.eval();
+            for ( int i=0; i<m_count; ++i ) {
+                Val v = (m_bits[i>>>6] & (1L << i)) != 0 ? m_then : m_else;
+                switch ( m_kind ) {
+                case INT:    m_ints[i] = v.m_ints[i]; break;
+                case LONG:   m_longs[i] = v.m_longs[i]; break;
+                case FLOAT:  m_floats[i] = v.m_floats[i]; break;
+                case DOUBLE: m_doubles[i] = v.m_doubles[i]; break;
+                default:     m_objects[i] = v.m_objects[i]; break;
+                }
+            }
+        }
+    }
+
+    private class InterpretedVal extends Val {
+        private final Expression m_expr;
+        InterpretedVal(int kind, Expression e) {
+            super(kind);
+            m_expr = e;
+        }
+        void eval() {
+            for ( int i=0; i<m_count; ++i ) {
+                Tuple t = m_table.getTuple(m_rows[i]);
+                switch ( m_kind ) {
+                case INT:    m_ints[i] = m_expr.getInt(t); break;
+                case LONG:   m_longs[i] = m_expr.getLong(t); break;
+                case FLOAT:  m_floats[i] = m_expr.getFloat(t); break;
+                case DOUBLE: m_doubles[i] = m_expr.getDouble(t); break;
+                default:     m_objects[i] = m_expr.get(t); break;
+                }
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Helpers
+
+    private int words() {
+        return (m_count+63) >>> 6;
+    }
+
+    /**
+     * Map the rows of the current block to rows of the given column.
+     */
+    private void columnRows(int col, int[] crows) {
+        for ( int i=0; i<m_count; ++i )
+            crows[i] = m_table.getColumnRow(m_rows[i], col);
+    }
+
+    /**
+     * Compare two values per row, as the default literal comparator does.
+     * The primitive comparisons return -1, 0 or 1.
+     */
+    private void compare(Comparator cmp, Val a, Val b, int[] c) {
+        int n = m_count;
+        switch ( a.m_kind ) {
+        case INT: {
+            int[] x = a.m_ints, y = b.m_ints;
+            for ( int i=0; i<n; ++i )
+                c[i] = x[i] < y[i] ? -1 : x[i] > y[i] ? 1 : 0;
+            break;
+        }
+        case LONG: {
+            long[] x = a.m_longs, y = b.m_longs;
+            for ( int i=0; i<n; ++i )
+                c[i] = x[i] < y[i] ? -1 : x[i] > y[i] ? 1 : 0;
+            break;
+        }
+        case FLOAT: {
+            float[] x = a.m_floats, y = b.m_floats;
+            for ( int i=0; i<n; ++i )
+                c[i] = Float.compare(x[i], y[i]);
+            break;
+        }
+        case DOUBLE: {
+            double[] x = a.m_doubles, y = b.m_doubles;
+            for ( int i=0; i<n; ++i )
+                c[i] = Double.compare(x[i], y[i]);
+            break;
+        }
+        default: {
+            Object[] x = a.m_objects, y = b.m_objects;
+            for ( int i=0; i<n; ++i )
+                c[i] = cmp.compare(x[i], y[i]);
+        }
+        }
+    }
+
+} // end of class ColumnarFilter
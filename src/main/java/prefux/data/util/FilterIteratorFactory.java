@@ -38,6 +38,8 @@ import prefux.data.Tuple;
 import prefux.data.expression.AndPredicate;
 import prefux.data.expression.ColumnExpression;
 import prefux.data.expression.ComparisonPredicate;
+import prefux.data.expression.CompiledExpression;
+import prefux.data.expression.CompositePredicate;
 import prefux.data.expression.Expression;
 import prefux.data.expression.ExpressionAnalyzer;
 import prefux.data.expression.NotPredicate;
@@ -47,6 +49,7 @@ import prefux.data.expression.RangePredicate;
 import prefux.data.tuple.TupleSet;
 import prefux.util.PrefuseConfig;
 import prefux.util.collections.CompositeIntIterator;
+import prefux.util.collections.CompressedBitmap;
 import prefux.util.collections.IntIterator;
 
 /**
@@ -123,6 +126,13 @@ public class FilterIteratorFactory {
         if ( t.getRowCount() < OPTIMIZATION_THRESHOLD ) 
             return null; // avoid overhead for small tables
         
+        if ( p instanceof CompiledExpression ) {
+            // plan the query using the structure of the source expression
+            Expression src = ((CompiledExpression)p).getSourceExpression();
+            if ( !(src instanceof Predicate) ) return null;
+            p = (Predicate)src;
+        }
+        
         if ( p instanceof ColumnExpression ) {
             // try to optimize a boolean column
             return getColumnIterator(t,
@@ -176,6 +186,11 @@ public class FilterIteratorFactory {
     }
     
     protected static IntIterator getOrIterator(Table t, OrPredicate op) {
+        // union the bitmaps if all clauses are covered by bitmap indexes
+        CompressedBitmap bits = getBitmap(t, op);
+        if ( bits != null )
+            return bits.iterator(true);
+        
         int size = op.size();
         if ( size > 1 ) {
             // if all subclauses can be optimized, we can optimize the query
@@ -198,6 +213,29 @@ public class FilterIteratorFactory {
     }
     
     protected static IntIterator getAndIterator(Table t, AndPredicate ap) {
+        // intersect the bitmaps of all clauses covered by bitmap indexes,
+        // and check the remaining clauses for the intersected rows only
+        CompressedBitmap bits = null;
+        AndPredicate rest = new AndPredicate();
+        for ( int i=0; i<ap.size(); ++i ) {
+            Predicate clause = ap.get(i);
+            CompressedBitmap b = getBitmap(t, clause);
+            if ( b == null ) {
+                rest.add(clause);
+            } else {
+                bits = ( bits == null ? b : CompressedBitmap.and(bits, b) );
+            }
+        }
+        if ( bits != null ) {
+            IntIterator rows = bits.iterator(true);
+            if ( rest.size() == 0 ) {
+                return rows;
+            } else {
+                return new FilterRowIterator(rows, t,
+                        rest.size()==1 ? rest.get(0) : rest);
+            }
+        }
+        
         // possible TODO: add scoring to select best optimized iterator
         // for now just work from the end backwards and take the first
         // optimized iterator we find
@@ -255,7 +293,14 @@ public class FilterIteratorFactory {
         if ( index == null || !cmp.equals(index.getComparator()) )
             return null;
         
-        Class ltype = lit.getClass();
+        // primitive values are only compared in the column type if the
+        // literal converts to it without loss, otherwise scan the table
+        Class ltype = t.getColumnType(col.getColumnName());
+        if ( ltype.isPrimitive() && !isExact(t, lit, ltype) )
+            return null;
+        
+        // open bounds for floating point columns span the whole order of
+        // the comparator, from negative infinity up to NaN
         if ( ltype == int.class ) {
             int val = lit.getInt(null); // literal value, so null is safe
             switch ( operation ) {
@@ -292,15 +337,15 @@ public class FilterIteratorFactory {
             float val = lit.getFloat(null); // literal value, so null is safe
             switch ( operation ) {
             case ComparisonPredicate.LT:
-                return index.rows(Float.MIN_VALUE, val, Index.TYPE_AIE);
+                return index.rows(Float.NEGATIVE_INFINITY, val, Index.TYPE_AIE);
             case ComparisonPredicate.GT:
-                return index.rows(val, Float.MAX_VALUE, Index.TYPE_AEI);
+                return index.rows(val, Float.NaN, Index.TYPE_AEI);
             case ComparisonPredicate.EQ:
                 return index.rows(val, val, Index.TYPE_AII);
             case ComparisonPredicate.LTEQ:
-                return index.rows(Float.MIN_VALUE, val, Index.TYPE_AII);
+                return index.rows(Float.NEGATIVE_INFINITY, val, Index.TYPE_AII);
             case ComparisonPredicate.GTEQ:
-                return index.rows(val, Float.MAX_VALUE, Index.TYPE_AII);
+                return index.rows(val, Float.NaN, Index.TYPE_AII);
             default:
                 throw new IllegalStateException(); // should never occur
             }
@@ -308,15 +353,15 @@ public class FilterIteratorFactory {
             double val = lit.getDouble(null); // literal value, so null is safe
             switch ( operation ) {
             case ComparisonPredicate.LT:
-                return index.rows(Double.MIN_VALUE, val, Index.TYPE_AIE);
+                return index.rows(Double.NEGATIVE_INFINITY, val, Index.TYPE_AIE);
             case ComparisonPredicate.GT:
-                return index.rows(val, Double.MAX_VALUE, Index.TYPE_AEI);
+                return index.rows(val, Double.NaN, Index.TYPE_AEI);
             case ComparisonPredicate.EQ:
                 return index.rows(val, val, Index.TYPE_AII);
             case ComparisonPredicate.LTEQ:
-                return index.rows(Double.MIN_VALUE, val, Index.TYPE_AII);
+                return index.rows(Double.NEGATIVE_INFINITY, val, Index.TYPE_AII);
             case ComparisonPredicate.GTEQ:
-                return index.rows(val, Double.MAX_VALUE, Index.TYPE_AII);
+                return index.rows(val, Double.NaN, Index.TYPE_AII);
             default:
                 throw new IllegalStateException(); // should never occur
             }
@@ -339,6 +384,131 @@ public class FilterIteratorFactory {
         }        
     }
     
+    /**
+     * Get the rows matching a predicate from bitmap indexes, if possible.
+     * Covered predicates are boolean columns and their negation, equality
+     * comparisons, and conjunctions and disjunctions of covered predicates,
+     * such as a set of alternative values for a column.
+     * @param t the Table to query
+     * @param p the filter predicate
+     * @return the bitmap of matching rows, or null if the predicate is not
+     * covered by bitmap indexes. The bitmap may be backed by an index and
+     * must not be modified.
+     */
+    protected static CompressedBitmap getBitmap(Table t, Predicate p) {
+        if ( p instanceof CompiledExpression ) {
+            Expression src = ((CompiledExpression)p).getSourceExpression();
+            if ( !(src instanceof Predicate) ) return null;
+            p = (Predicate)src;
+        }
+        
+        if ( p instanceof ColumnExpression )
+        {
+            // a boolean column
+            return getColumnBitmap(t,
+                    ((ColumnExpression)p).getColumnName(), true);
+        }
+        else if ( p instanceof NotPredicate )
+        {
+            // the negation of a boolean column
+            Predicate pp = ((NotPredicate)p).getPredicate();
+            if ( pp instanceof ColumnExpression ) {
+                return getColumnBitmap(t,
+                        ((ColumnExpression)pp).getColumnName(), false);
+            }
+        }
+        else if ( p instanceof ComparisonPredicate )
+        {
+            return getEqualityBitmap(t, (ComparisonPredicate)p);
+        }
+        else if ( p instanceof AndPredicate || p instanceof OrPredicate )
+        {
+            // all clauses must be covered to avoid a linear scan
+            CompositePredicate cp = (CompositePredicate)p;
+            boolean and = (p instanceof AndPredicate);
+            CompressedBitmap bits = null;
+            for ( int i=0; i<cp.size(); ++i ) {
+                CompressedBitmap b = getBitmap(t, cp.get(i));
+                if ( b == null ) {
+                    return null;
+                } else if ( bits == null ) {
+                    bits = b;
+                } else if ( and ) {
+                    bits = CompressedBitmap.and(bits, b);
+                } else {
+                    bits = CompressedBitmap.or(bits, b);
+                }
+            }
+            return bits;
+        }
+        return null;
+    }
+    
+    private static BitmapIndex getBitmapIndex(Table t, String field) {
+        if ( t.getColumnNumber(field) < 0 )
+            return null;
+        Index index = t.getIndex(field);
+        return ( index instanceof BitmapIndex ? (BitmapIndex)index : null );
+    }
+    
+    private static CompressedBitmap getColumnBitmap(
+            Table t, String field, boolean val)
+    {
+        BitmapIndex index = getBitmapIndex(t, field);
+        if ( index == null || t.getColumnType(field) != boolean.class )
+            return null;
+        return index.bitmap(val);
+    }
+    
+    private static CompressedBitmap getEqualityBitmap(
+            Table t, ComparisonPredicate cp)
+    {
+        if ( cp.getOperation() != ComparisonPredicate.EQ )
+            return null;
+        
+        Expression l = cp.getLeftExpression();
+        Expression r = cp.getRightExpression();
+        ColumnExpression col;
+        Expression lit;
+        if (l instanceof ColumnExpression && 
+                !ExpressionAnalyzer.hasDependency(r))
+        {
+            col = (ColumnExpression)l;
+            lit = r;
+        } else if (r instanceof ColumnExpression &&
+                !ExpressionAnalyzer.hasDependency(l))
+        {
+            col = (ColumnExpression)r;
+            lit = l;
+        } else {
+            return null;
+        }
+        
+        String field = col.getColumnName();
+        BitmapIndex index = getBitmapIndex(t, field);
+        if ( index == null || !cp.getComparator().equals(index.getComparator()) )
+            return null;
+        
+        // literal value, so null is safe. Primitive values are boxed in the
+        // column type, as stored by the index.
+        Class type = t.getColumnType(field);
+        if ( type.isPrimitive() && !isExact(t, lit, type) ) {
+            return null;
+        } else if ( type == int.class ) {
+            return index.bitmap(lit.getInt(null));
+        } else if ( type == long.class ) {
+            return index.bitmap(Long.valueOf(lit.getLong(null)));
+        } else if ( type == float.class ) {
+            return index.bitmap(Float.valueOf(lit.getFloat(null)));
+        } else if ( type == double.class ) {
+            return index.bitmap(Double.valueOf(lit.getDouble(null)));
+        } else if ( type == boolean.class ) {
+            return index.bitmap(lit.getBoolean(null));
+        } else {
+            return index.bitmap(lit.get(null));
+        }
+    }
+    
     protected static IntIterator getRangeIterator(Table t, RangePredicate rp) {
         ColumnExpression col;
         Expression l, r;
@@ -365,8 +535,9 @@ public class FilterIteratorFactory {
         
         int operation = rp.getOperation();
         Class ltype = t.getColumnType(col.getColumnName());
-        
-        // TODO safety check literal types
+        if ( ltype.isPrimitive()
+                && !(isExact(t, l, ltype) && isExact(t, r, ltype)) )
+            return null;
         
         // get the index type
         int indexType;
@@ -401,4 +572,22 @@ public class FilterIteratorFactory {
         }
     }
     
+    /**
+     * Indicates if the value of a literal expression converts to the given
+     * primitive column type without loss, so that comparing in the column
+     * type gives the same result as the predicate.
+     */
+    private static boolean isExact(Table t, Expression lit, Class type) {
+        Class ltype = lit.getType(t.getSchema());
+        if ( ltype == type ) {
+            return true;
+        } else if ( type == long.class ) {
+            return ltype == int.class;
+        } else if ( type == double.class ) {
+            return ltype == int.class || ltype == float.class;
+        } else {
+            return false;
+        }
+    }
+    
 } // end of class FilterIteratorFactory
@@ -0,0 +1,689 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.data.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import prefux.data.Table;
+import prefux.data.column.Column;
+import prefux.data.event.ColumnListener;
+import prefux.data.event.EventConstants;
+import prefux.data.event.TableListener;
+import prefux.util.ArrayLib;
+import prefux.util.collections.DefaultLiteralComparator;
+import prefux.util.collections.IntArrayIterator;
+import prefux.util.collections.IntIterator;
+
+/**
+ * <p>Index instance that uses an open addressing hash table to look up
+ * rows by the value of a key column, such as the node keys of a graph.
+ * Lookups by value take constant time, instead of a search through a
+ * tree. Supported are int and long columns, whose values are hashed
+ * without boxing, and object (e.g., String) columns.</p>
+ *
+ * <p>The hash table maps each distinct value to one of its rows, using
+ * linear probing. Further rows with the same value are chained through
+ * an array indexed by row, so duplicate values are handled, but the
+ * index is meant for columns declared unique, see
+ * {@link prefux.data.Table#setUnique(String, boolean)}. Range lookups and
+ * rank statistics sort the rows by value when first requested after a
+ * change.</p>
+ */
+public class HashIndex implements Index, ColumnListener, TableListener {
+
+    private static final int EMPTY = -1;
+
+    protected Table      m_table;
+    protected RowManager m_rows;
+    protected Column     m_col;
+    protected int        m_colidx;
+    protected boolean    m_reindex;
+    private final boolean m_object;
+
+    // hash table slots, a slot is free if its head row is EMPTY
+    private long[]   m_keys;
+    private Object[] m_okeys;
+    private int[]    m_heads;
+    private int      m_mask;
+    private int      m_used;
+
+    // next row with the same value, for each table row
+    private int[] m_next = new int[0];
+    private int   m_size;
+
+    // rows sorted by value, for range lookups
+    private Object[] m_sortKeys;
+    private int[]    m_sortRows;
+
+    /**
+     * Create a new HashIndex.
+     * @param t the Table containing the data column to index
+     * @param rows the RowManager of the Table
+     * @param col the Column instance to index
+     * @throws IllegalArgumentException if the column type is not
+     * supported, see {@link #isSupported(Class)}
+     */
+    public HashIndex(Table t, RowManager rows, Column col) {
+        Class type = col.getColumnType();
+        if ( !isSupported(type) ) {
+            throw new IllegalArgumentException(
+                "Unsupported column type: "+type.getName());
+        }
+        m_table = t;
+        m_rows = rows;
+        m_col = col;
+        m_object = !type.isPrimitive();
+
+        index();
+
+        m_col.addColumnListener(this);
+        m_table.addTableListener(this);
+    }
+
+    /**
+     * Indicates if a HashIndex can be created over columns of the given
+     * data type.
+     * @param type the column data type
+     * @return true for int, long and object columns
+     */
+    public static boolean isSupported(Class type) {
+        return type == int.class || type == long.class || !type.isPrimitive();
+    }
+
+    /**
+     * @see prefux.data.util.Index#dispose()
+     */
+    public void dispose() {
+        m_col.removeColumnListener(this);
+        m_table.removeTableListener(this);
+    }
+
+    /**
+     * @see prefux.data.util.Index#getComparator()
+     */
+    public Comparator getComparator() {
+        return DefaultLiteralComparator.getInstance();
+    }
+
+    /**
+     * @see prefux.data.util.Index#size()
+     */
+    public int size() {
+        check();
+        return m_size;
+    }
+
+    private int getColumnIndex() {
+        if ( !(m_table.getColumn(m_colidx) == m_col) ) {
+            m_colidx = m_table.getColumnNumber(m_col);
+        }
+        return m_colidx;
+    }
+
+    // ------------------------------------------------------------------------
+    // Hashing
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h >>> 32));
+    }
+
+    private static int hash(Object key) {
+        int h = key == null ? 0 : key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private int home(int slot) {
+        return (m_object ? hash(m_okeys[slot]) : hash(m_keys[slot])) & m_mask;
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /** The slot holding the key, or the free slot where it belongs. */
+    private int slot(long key) {
+        int i = hash(key) & m_mask;
+        while ( m_heads[i] != EMPTY && m_keys[i] != key )
+            i = (i+1) & m_mask;
+        return i;
+    }
+
+    /** The slot holding the key, or the free slot where it belongs. */
+    private int slot(Object key) {
+        int i = hash(key) & m_mask;
+        while ( m_heads[i] != EMPTY && !equal(m_okeys[i], key) )
+            i = (i+1) & m_mask;
+        return i;
+    }
+
+    private void allocate(int capacity) {
+        int n = 16;
+        while ( n < 2*capacity ) n <<= 1;
+        m_heads = new int[n];
+        Arrays.fill(m_heads, EMPTY);
+        if ( m_object ) {
+            m_okeys = new Object[n];
+        } else {
+            m_keys = new long[n];
+        }
+        m_mask = n-1;
+        m_used = 0;
+    }
+
+    private void rehash() {
+        long[] keys = m_keys;
+        Object[] okeys = m_okeys;
+        int[] heads = m_heads;
+        allocate(2*m_used);
+        for ( int i=0; i<heads.length; ++i ) {
+            if ( heads[i] == EMPTY ) continue;
+            int s = m_object ? slot(okeys[i]) : slot(keys[i]);
+            if ( m_object ) m_okeys[s] = okeys[i]; else m_keys[s] = keys[i];
+            m_heads[s] = heads[i];
+            ++m_used;
+        }
+    }
+
+    /**
+     * Free a slot, moving subsequent entries of its probe sequence back
+     * so that no lookup passes over a free slot.
+     */
+    private void free(int i) {
+        for ( int j=i;; ) {
+            j = (j+1) & m_mask;
+            if ( m_heads[j] == EMPTY ) break;
+            int k = home(j);
+            // leave the entry if its home lies cyclically in (i, j]
+            if ( i <= j ? (i < k && k <= j) : (i < k || k <= j) )
+                continue;
+            if ( m_object ) m_okeys[i] = m_okeys[j]; else m_keys[i] = m_keys[j];
+            m_heads[i] = m_heads[j];
+            i = j;
+        }
+        m_heads[i] = EMPTY;
+        if ( m_object ) m_okeys[i] = null;
+        --m_used;
+    }
+
+    // ------------------------------------------------------------------------
+    // Index Update Methods
+
+    /**
+     * @see prefux.data.util.Index#index()
+     */
+    public void index() {
+        int idx = getColumnIndex();
+        m_colidx = idx;
+
+        allocate(m_rows.getRowCount());
+        m_next = new int[m_table.getMaximumRow()+1];
+        m_size = 0;
+        m_sortKeys = null;
+        m_sortRows = null;
+
+        IntIterator rows = m_rows.rows();
+        while ( rows.hasNext() ) {
+            int r = rows.nextInt();
+            add(m_table.getColumnRow(r, idx), r);
+        }
+        m_reindex = false;
+    }
+
+    private void check() {
+        if ( m_reindex ) index();
+    }
+
+    /**
+     * Add a table row, reading its value from the given column row.
+     */
+    private void add(int crow, int row) {
+        if ( m_object )
+            add(slot(m_col.get(crow)), m_col.get(crow), 0, row);
+        else
+            add(slot(value(crow)), null, value(crow), row);
+    }
+
+    private long value(int crow) {
+        return m_col.getColumnType() == int.class
+            ? m_col.getInt(crow) : m_col.getLong(crow);
+    }
+
+    private void add(int s, Object okey, long key, int row) {
+        if ( row >= m_next.length ) {
+            m_next = ArrayLib.resize(m_next, Math.max(row+1, 2*m_next.length));
+        }
+        if ( m_heads[s] == EMPTY ) {
+            if ( m_object ) m_okeys[s] = okey; else m_keys[s] = key;
+            m_heads[s] = row;
+            m_next[row] = EMPTY;
+            if ( 2*(++m_used) > m_heads.length ) rehash();
+        } else {
+            m_next[row] = m_heads[s];
+            m_heads[s] = row;
+        }
+        ++m_size;
+        m_sortKeys = null;
+        m_sortRows = null;
+    }
+
+    private void remove(int s, int row) {
+        int prev = EMPTY;
+        int r = m_heads[s];
+        while ( r != EMPTY && r != row ) {
+            prev = r;
+            r = m_next[r];
+        }
+        if ( r == EMPTY ) return; // not found
+
+        if ( prev == EMPTY ) {
+            m_heads[s] = m_next[r];
+            if ( m_heads[s] == EMPTY ) free(s);
+        } else {
+            m_next[prev] = m_next[r];
+        }
+        --m_size;
+        m_sortKeys = null;
+        m_sortRows = null;
+    }
+
+    // ------------------------------------------------------------------------
+    // Listener Methods
+
+    /**
+     * @see prefux.data.event.TableListener#tableChanged(prefux.data.Table, int, int, int, int)
+     */
+    public void tableChanged(Table t, int start, int end, int col, int type) {
+        if ( type == EventConstants.UPDATE || t != m_table
+              || col != EventConstants.ALL_COLUMNS || m_reindex )
+            return;
+
+        int idx = getColumnIndex();
+        for ( int r=start; r<=end; ++r ) {
+            int crow = m_rows.getColumnRow(r, idx);
+            if ( type == EventConstants.INSERT ) {
+                add(crow, r);
+            } else if ( m_object ) {
+                remove(slot(m_col.get(crow)), r);
+            } else {
+                remove(slot(value(crow)), r);
+            }
+        }
+    }
+
+    /**
+     * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, int, int)
+     */
+    public void columnChanged(Column src, int type, int start, int end) {
+        m_reindex = true;
+    }
+
+    /**
+     * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, boolean)
+     */
+    public void columnChanged(Column src, int idx, boolean prev) {
+        // not an indexed type
+    }
+
+    /**
+     * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, int)
+     */
+    public void columnChanged(Column src, int idx, int prev) {
+        columnChanged(src, idx, (long)prev);
+    }
+
+    /**
+     * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, long)
+     */
+    public void columnChanged(Column src, int idx, long prev) {
+        if ( m_reindex ) return;
+        int row = m_rows.getTableRow(idx, getColumnIndex());
+        if ( row < 0 ) return; // invalid row value
+        remove(slot(prev), row);
+        add(idx, row);
+    }
+
+    /**
+     * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, float)
+     */
+    public void columnChanged(Column src, int idx, float prev) {
+        // not an indexed type
+    }
+
+    /**
+     * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, double)
+     */
+    public void columnChanged(Column src, int idx, double prev) {
+        // not an indexed type
+    }
+
+    /**
+     * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, java.lang.Object)
+     */
+    public void columnChanged(Column src, int idx, Object prev) {
+        if ( m_reindex ) return;
+        if ( !m_object ) {
+            m_reindex = true;
+            return;
+        }
+        int row = m_rows.getTableRow(idx, getColumnIndex());
+        if ( row < 0 ) return; // invalid row value
+        remove(slot(prev), row);
+        add(idx, row);
+    }
+
+    // ------------------------------------------------------------------------
+    // Value Lookup
+
+    private int first(int s) {
+        return m_heads[s] == EMPTY ? Integer.MIN_VALUE : m_heads[s];
+    }
+
+    private IntIterator chain(int s) {
+        int n = 0;
+        for ( int r=m_heads[s]; r!=EMPTY; r=m_next[r] ) ++n;
+        int[] rows = new int[n];
+        for ( int r=m_heads[s]; r!=EMPTY; r=m_next[r] ) rows[--n] = r;
+        Arrays.sort(rows);
+        return new IntArrayIterator(rows, 0, rows.length);
+    }
+
+    private void checkNumeric() {
+        if ( m_object )
+            throw new IllegalStateException();
+    }
+
+    /**
+     * @see prefux.data.util.Index#get(int)
+     */
+    public int get(int x) {
+        return get((long)x);
+    }
+
+    /**
+     * @see prefux.data.util.Index#get(long)
+     */
+    public int get(long x) {
+        checkNumeric();
+        check();
+        return first(slot(x));
+    }
+
+    /**
+     * @see prefux.data.util.Index#get(float)
+     */
+    public int get(float x) {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * @see prefux.data.util.Index#get(double)
+     */
+    public int get(double x) {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * @see prefux.data.util.Index#get(java.lang.Object)
+     */
+    public int get(Object x) {
+        if ( !m_object ) {
+            return get(((Number)x).longValue());
+        }
+        check();
+        return first(slot(x));
+    }
+
+    /**
+     * @see prefux.data.util.Index#rows(int)
+     */
+    public IntIterator rows(int val) {
+        return rows((long)val);
+    }
+
+    /**
+     * @see prefux.data.util.Index#rows(long)
+     */
+    public IntIterator rows(long val) {
+        checkNumeric();
+        check();
+        return chain(slot(val));
+    }
+
+    /**
+     * @see prefux.data.util.Index#rows(float)
+     */
+    public IntIterator rows(float val) {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * @see prefux.data.util.Index#rows(double)
+     */
+    public IntIterator rows(double val) {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * @see prefux.data.util.Index#rows(boolean)
+     */
+    public IntIterator rows(boolean val) {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * @see prefux.data.util.Index#rows(java.lang.Object)
+     */
+    public IntIterator rows(Object val) {
+        if ( !m_object ) {
+            return rows(((Number)val).longValue());
+        }
+        check();
+        return chain(slot(val));
+    }
+
+    // ------------------------------------------------------------------------
+    // Ordered Retrieval
+
+    /**
+     * Sort all rows by value, if not already done since the last change.
+     */
+    private void sort() {
+        check();
+        if ( m_sortRows != null ) return;
+
+        Object[] keys = new Object[m_size];
+        int[] rows = new int[m_size];
+        int idx = getColumnIndex(), n = 0;
+        IntIterator iter = m_rows.rows();
+        while ( iter.hasNext() && n < m_size ) {
+            int r = iter.nextInt();
+            int crow = m_table.getColumnRow(r, idx);
+            keys[n] = m_object ? m_col.get(crow) : Long.valueOf(value(crow));
+            rows[n++] = r;
+        }
+        ArrayLib.sort(keys, rows, n, getComparator());
+        // order rows sharing a value by row number, as other indexes do
+        Comparator cmp = getComparator();
+        for ( int i=0, j; i<n; i=j ) {
+            for ( j=i+1; j<n && cmp.compare(keys[i], keys[j]) == 0; ++j );
+            if ( j-i > 1 ) Arrays.sort(rows, i, j);
+        }
+        m_sortKeys = keys;
+        m_sortRows = rows;
+    }
+
+    /**
+     * @see prefux.data.util.Index#minimum()
+     */
+    public int minimum() {
+        sort();
+        return m_sortRows.length == 0 ? Integer.MIN_VALUE : m_sortRows[0];
+    }
+
+    /**
+     * @see prefux.data.util.Index#maximum()
+     */
+    public int maximum() {
+        sort();
+        int n = m_sortRows.length;
+        return n == 0 ? Integer.MIN_VALUE : m_sortRows[n-1];
+    }
+
+    /**
+     * @see prefux.data.util.Index#median()
+     */
+    public int median() {
+        sort();
+        int n = m_sortRows.length;
+        return n == 0 ? Integer.MIN_VALUE : m_sortRows[n/2];
+    }
+
+    /**
+     * @see prefux.data.util.Index#uniqueCount()
+     */
+    public int uniqueCount() {
+        check();
+        return m_used;
+    }
+
+    /**
+     * @see prefux.data.util.Index#allRows(int)
+     */
+    public IntIterator allRows(int type) {
+        return range(null, null, type | Index.TYPE_LEFT_INCLUSIVE
+                                      | Index.TYPE_RIGHT_INCLUSIVE);
+    }
+
+    /**
+     * A null bound leaves the range open at that end.
+     * @see prefux.data.util.Index#rows(java.lang.Object, java.lang.Object, int)
+     */
+    public IntIterator rows(Object lo, Object hi, int type) {
+        if ( !m_object ) {
+            return rows(((Number)lo).longValue(),
+                        ((Number)hi).longValue(), type);
+        }
+        return range(lo, hi, type);
+    }
+
+    /**
+     * @see prefux.data.util.Index#rows(int, int, int)
+     */
+    public IntIterator rows(int lo, int hi, int type) {
+        return rows((long)lo, (long)hi, type);
+    }
+
+    /**
+     * @see prefux.data.util.Index#rows(long, long, int)
+     */
+    public IntIterator rows(long lo, long hi, int type) {
+        checkNumeric();
+        return range(Long.valueOf(lo), Long.valueOf(hi), type);
+    }
+
+    /**
+     * @see prefux.data.util.Index#rows(float, float, int)
+     */
+    public IntIterator rows(float lo, float hi, int type) {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * @see prefux.data.util.Index#rows(double, double, int)
+     */
+    public IntIterator rows(double lo, double hi, int type) {
+        throw new IllegalStateException();
+    }
+
+    private IntIterator range(Object lo, Object hi, int type) {
+        boolean reverse = (type & Index.TYPE_DESCENDING) > 0;
+        boolean linc = (type & Index.TYPE_LEFT_INCLUSIVE) > 0;
+        boolean hinc = (type & Index.TYPE_RIGHT_INCLUSIVE) > 0;
+        Comparator cmp = getComparator();
+
+        if ( lo != null && hi != null && linc && hinc
+             && cmp.compare(lo, hi) == 0 )
+        {
+            // equality lookup, served by the hash table
+            check();
+            IntIterator rows = m_object ? chain(slot(lo))
+                : chain(slot(((Long)lo).longValue()));
+            return reverse ? reverse(rows) : rows;
+        }
+
+        sort();
+        int s = lo == null ? 0 : search(lo, !linc);
+        int e = hi == null ? m_sortRows.length : search(hi, hinc);
+        if ( e <= s ) {
+            return new IntArrayIterator(new int[0], 0, 0);
+        }
+        int[] rows = Arrays.copyOfRange(m_sortRows, s, e);
+        if ( reverse ) reverse(rows);
+        return new IntArrayIterator(rows, 0, rows.length);
+    }
+
+    /**
+     * Binary search the sorted values for the first position with a value
+     * greater than (after is true) or not less than (after is false) the
+     * given value.
+     */
+    private int search(Object x, boolean after) {
+        Comparator cmp = getComparator();
+        int lo = 0, hi = m_sortKeys.length;
+        while ( lo < hi ) {
+            int mid = (lo+hi) >>> 1;
+            int c = cmp.compare(m_sortKeys[mid], x);
+            if ( c < 0 || (after && c == 0) ) lo = mid+1; else hi = mid;
+        }
+        return lo;
+    }
+
+    private static IntIterator reverse(IntIterator iter) {
+        int[] rows = new int[8];
+        int n = 0;
+        while ( iter.hasNext() ) {
+            if ( n == rows.length ) rows = ArrayLib.resize(rows, 2*n);
+            rows[n++] = iter.nextInt();
+        }
+        rows = ArrayLib.trim(rows, n);
+        reverse(rows);
+        return new IntArrayIterator(rows, 0, n);
+    }
+
+    private static void reverse(int[] a) {
+        for ( int i=0, j=a.length-1; i<j; ++i, --j ) {
+            int t = a[i]; a[i] = a[j]; a[j] = t;
+        }
+    }
+
+} // end of class HashIndex
@@ -0,0 +1,830 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.data.util;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import prefux.data.Table;
+import prefux.data.column.Column;
+import prefux.data.event.ColumnListener;
+import prefux.data.event.EventConstants;
+import prefux.data.event.TableListener;
+import prefux.util.collections.DefaultLiteralComparator;
+import prefux.util.collections.IntIterator;
+
+/**
+ * <p>Index instance over a column of int, long, float or double values
+ * that keeps the rows sorted by value in flat arrays, rather than in a
+ * tree with one entry object per row. Values are stored as order
+ * preserving long keys next to their row, so that the index takes 12
+ * bytes per row. The index is built by sorting all rows at once, in
+ * parallel for large tables. Range and value lookups use binary search,
+ * and the minimum, maximum, median and any other rank are read directly
+ * from the sorted arrays.</p>
+ *
+ * <p>Updates do not shift the sorted arrays. Removed rows are flagged,
+ * and added rows are inserted into a small sorted buffer. Lookups
+ * consult both; once the buffer and the number of flagged rows grow
+ * too large, or on a rank query, they are merged into the sorted arrays
+ * in a single linear pass.</p>
+ *
+ * <p>Values are ordered by the {@link DefaultLiteralComparator}; use a
+ * {@link TreeIndex} for other sort orders.</p>
+ */
+public class SortedArrayIndex implements Index, ColumnListener, TableListener {
+
+    private static final int INT    = 0;
+    private static final int LONG   = 1;
+    private static final int FLOAT  = 2;
+    private static final int DOUBLE = 3;
+
+    /** Minimum number of pending updates before they are merged in. */
+    private static final int MIN_PENDING = 256;
+    /** Number of rows below which the initial sort is sequential. */
+    private static final int PARALLEL_THRESHOLD = 1<<14;
+
+    protected Table      m_table;
+    protected RowManager m_rows;
+    protected Column     m_col;
+    protected int        m_colidx;
+    protected boolean    m_reindex;
+    private final int    m_type;
+
+    // sorted keys and rows, removed entries are flagged in m_dead
+    private long[] m_keys = new long[0];
+    private int[]  m_vals = new int[0];
+    private int    m_size = 0;
+    private BitSet m_dead = new BitSet();
+    private int    m_ndead = 0;
+    private int    m_unique = 0;
+
+    // sorted buffer of added keys and rows
+    private long[] m_addKeys = new long[16];
+    private int[]  m_addVals = new int[16];
+    private int    m_adds = 0;
+
+    /**
+     * Create a new SortedArrayIndex.
+     * @param t the Table containing the data column to index
+     * @param rows the RowManager of the Table
+     * @param col the Column instance to index
+     * @throws IllegalArgumentException if the column type is not
+     * supported, see {@link #isSupported(Class)}
+     */
+    public SortedArrayIndex(Table t, RowManager rows, Column col) {
+        m_table = t;
+        m_rows = rows;
+        m_col = col;
+        m_type = getType(col.getColumnType());
+        if ( m_type < 0 ) {
+            throw new IllegalArgumentException(
+                "Unsupported column type: "+col.getColumnType().getName());
+        }
+
+        index();
+
+        m_col.addColumnListener(this);
+        m_table.addTableListener(this);
+    }
+
+    /**
+     * Indicates if a SortedArrayIndex can be created over columns of the
+     * given data type.
+     * @param type the column data type
+     * @return true for int, long, float and double columns
+     */
+    public static boolean isSupported(Class type) {
+        return getType(type) >= 0;
+    }
+
+    private static int getType(Class type) {
+        if ( type == int.class )
+            return INT;
+        else if ( type == long.class )
+            return LONG;
+        else if ( type == float.class )
+            return FLOAT;
+        else if ( type == double.class )
+            return DOUBLE;
+        else
+            return -1;
+    }
+
+    /**
+     * @see prefux.data.util.Index#dispose()
+     */
+    public void dispose() {
+        m_col.removeColumnListener(this);
+        m_table.removeTableListener(this);
+    }
+
+    /**
+     * @see prefux.data.util.Index#getComparator()
+     */
+    public Comparator getComparator() {
+        return DefaultLiteralComparator.getInstance();
+    }
+
+    /**
+     * @see prefux.data.util.Index#size()
+     */
+    public int size() {
+        check();
+        return m_size - m_ndead + m_adds;
+    }
+
+    private int getColumnIndex() {
+        if ( !(m_table.getColumn(m_colidx) == m_col) ) {
+            m_colidx = m_table.getColumnNumber(m_col);
+        }
+        return m_colidx;
+    }
+
+    // ------------------------------------------------------------------------
+    // Keys
+
+    private static long key(float x) {
+        // flip the magnitude bits of negative values for a signed order
+        int bits = Float.floatToIntBits(x);
+        return bits ^ ((bits >> 31) & 0x7fffffff);
+    }
+
+    private static long key(double x) {
+        long bits = Double.doubleToLongBits(x);
+        return bits ^ ((bits >> 63) & 0x7fffffffffffffffL);
+    }
+
+    private long columnKey(int crow) {
+        switch ( m_type ) {
+        case INT:
+            return m_col.getInt(crow);
+        case LONG:
+            return m_col.getLong(crow);
+        case FLOAT:
+            return key(m_col.getFloat(crow));
+        default:
+            return key(m_col.getDouble(crow));
+        }
+    }
+
+    private void checkType(int type) {
+        if ( m_type != type )
+            throw new IllegalStateException();
+    }
+
+    // ------------------------------------------------------------------------
+    // Index Update Methods
+
+    /**
+     * @see prefux.data.util.Index#index()
+     */
+    public void index() {
+        int idx = getColumnIndex();
+        m_colidx = idx;
+
+        int n = m_rows.getRowCount();
+        long[] keys = new long[n];
+        int[] vals = new int[n];
+        IntIterator rows = m_rows.rows();
+        int k = 0;
+        while ( rows.hasNext() && k < n ) {
+            int r = rows.nextInt();
+            keys[k] = columnKey(m_table.getColumnRow(r, idx));
+            vals[k++] = r;
+        }
+
+        // rows are visited in ascending order, and the sort is stable
+        if ( k < PARALLEL_THRESHOLD ) {
+            sort(keys, vals, new long[k], new int[k], 0, k);
+        } else {
+            ForkJoinPool.commonPool().invoke(
+                new SortTask(keys, vals, new long[k], new int[k], 0, k));
+        }
+
+        m_keys = keys;
+        m_vals = vals;
+        m_size = k;
+        m_dead = new BitSet();
+        m_ndead = 0;
+        m_adds = 0;
+        m_unique = countUnique(keys, k);
+        m_reindex = false;
+    }
+
+    private static int countUnique(long[] keys, int n) {
+        int unique = 0;
+        for ( int i=0; i<n; ++i ) {
+            if ( i == 0 || keys[i] != keys[i-1] ) ++unique;
+        }
+        return unique;
+    }
+
+    private void check() {
+        if ( m_reindex ) index();
+    }
+
+    private void add(long key, int row) {
+        int i = search(m_addKeys, m_addVals, m_adds, key, row);
+        if ( i >= 0 ) return; // already present
+        i = -i-1;
+
+        if ( m_adds == m_addKeys.length ) {
+            m_addKeys = Arrays.copyOf(m_addKeys, 2*m_adds);
+            m_addVals = Arrays.copyOf(m_addVals, 2*m_adds);
+        }
+        System.arraycopy(m_addKeys, i, m_addKeys, i+1, m_adds-i);
+        System.arraycopy(m_addVals, i, m_addVals, i+1, m_adds-i);
+        m_addKeys[i] = key;
+        m_addVals[i] = row;
+        ++m_adds;
+
+        if ( m_adds + m_ndead > Math.max(MIN_PENDING, m_size >>> 8) )
+            merge();
+    }
+
+    private void remove(long key, int row) {
+        // a re-added row is in the buffer, even if flagged in the arrays
+        int i = search(m_addKeys, m_addVals, m_adds, key, row);
+        if ( i >= 0 ) {
+            System.arraycopy(m_addKeys, i+1, m_addKeys, i, m_adds-i-1);
+            System.arraycopy(m_addVals, i+1, m_addVals, i, m_adds-i-1);
+            --m_adds;
+            return;
+        }
+        i = search(m_keys, m_vals, m_size, key, row);
+        if ( i >= 0 && !m_dead.get(i) ) {
+            m_dead.set(i);
+            ++m_ndead;
+
+            if ( m_adds + m_ndead > Math.max(MIN_PENDING, m_size >>> 8) )
+                merge();
+        }
+    }
+
+    /**
+     * Merge the buffered additions into the sorted arrays and purge the
+     * removed entries.
+     */
+    private void merge() {
+        if ( m_adds == 0 && m_ndead == 0 )
+            return;
+
+        int n = m_size - m_ndead + m_adds;
+        long[] keys = new long[n];
+        int[] vals = new int[n];
+        int i = 0, a = 0, k = 0;
+        while ( k < n ) {
+            if ( i < m_size && m_dead.get(i) ) {
+                ++i;
+            } else if ( a == m_adds || (i < m_size &&
+                less(m_keys[i], m_vals[i], m_addKeys[a], m_addVals[a])) )
+            {
+                keys[k] = m_keys[i];
+                vals[k++] = m_vals[i++];
+            } else {
+                keys[k] = m_addKeys[a];
+                vals[k++] = m_addVals[a++];
+            }
+        }
+
+        m_keys = keys;
+        m_vals = vals;
+        m_size = n;
+        // iterators may still refer to the previous arrays and flags
+        m_dead = new BitSet();
+        m_ndead = 0;
+        m_adds = 0;
+        m_unique = countUnique(keys, n);
+    }
+
+    // ------------------------------------------------------------------------
+    // Listener Methods
+
+    /**
+     * @see prefux.data.event.TableListener#tableChanged(prefux.data.Table, int, int, int, int)
+     */
+    public void tableChanged(Table t, int start, int end, int col, int type) {
+        if ( type == EventConstants.UPDATE || t != m_table
+              || col != EventConstants.ALL_COLUMNS || m_reindex )
+            return;
+
+        boolean insert = (type==EventConstants.INSERT);
+        int idx = getColumnIndex();
+        for ( int r=start; r<=end; ++r ) {
+            long key = columnKey(m_rows.getColumnRow(r, idx));
+            if ( insert )
+                add(key, r);
+            else
+                remove(key, r);
+        }
+    }
+
+    /**
+     * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, int, int)
+     */
+    public void columnChanged(Column src, int type, int start, int end) {
+        m_reindex = true;
+    }
+
+    private void valueChanged(long prev, int idx) {
+        if ( m_reindex ) return;
+        int row = m_rows.getTableRow(idx, getColumnIndex());
+        if ( row < 0 ) return; // invalid row value
+        remove(prev, row);
+        add(columnKey(idx), row);
+    }
+
+    /**
+     * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, boolean)
+     */
+    public void columnChanged(Column src, int idx, boolean prev) {
+        // not an indexed type
+    }
+
+    /**
+     * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, int)
+     */
+    public void columnChanged(Column src, int idx, int prev) {
+        valueChanged(prev, idx);
+    }
+
+    /**
+     * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, long)
+     */
+    public void columnChanged(Column src, int idx, long prev) {
+        valueChanged(prev, idx);
+    }
+
+    /**
+     * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, float)
+     */
+    public void columnChanged(Column src, int idx, float prev) {
+        valueChanged(key(prev), idx);
+    }
+
+    /**
+     * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, double)
+     */
+    public void columnChanged(Column src, int idx, double prev) {
+        valueChanged(key(prev), idx);
+    }
+
+    /**
+     * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, java.lang.Object)
+     */
+    public void columnChanged(Column src, int idx, Object prev) {
+        // values are not tracked through boxed updates, reindex instead
+        m_reindex = true;
+    }
+
+    // ------------------------------------------------------------------------
+    // Retrieval Methods
+
+    /**
+     * Get the row at the given position in the ascending sort order of
+     * the index. Rank 0 is the row with the minimum value.
+     * @param rank the position in the sort order, between 0 and
+     * {@link #size()}-1
+     * @return the row at the given rank
+     */
+    public int row(int rank) {
+        check();
+        merge();
+        if ( rank < 0 || rank >= m_size )
+            throw new IndexOutOfBoundsException(String.valueOf(rank));
+        return m_vals[rank];
+    }
+
+    /**
+     * @see prefux.data.util.Index#minimum()
+     */
+    public int minimum() {
+        check();
+        merge();
+        return m_size > 0 ? m_vals[0] : Integer.MIN_VALUE;
+    }
+
+    /**
+     * @see prefux.data.util.Index#maximum()
+     */
+    public int maximum() {
+        check();
+        merge();
+        return m_size > 0 ? m_vals[m_size-1] : Integer.MIN_VALUE;
+    }
+
+    /**
+     * @see prefux.data.util.Index#median()
+     */
+    public int median() {
+        check();
+        merge();
+        return m_size > 0 ? m_vals[m_size/2] : Integer.MIN_VALUE;
+    }
+
+    /**
+     * @see prefux.data.util.Index#uniqueCount()
+     */
+    public int uniqueCount() {
+        check();
+        merge();
+        return m_unique;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+     * @see prefux.data.util.Index#allRows(int)
+     */
+    public IntIterator allRows(int type) {
+        return range(Long.MIN_VALUE, Long.MAX_VALUE,
+                     type | Index.TYPE_LEFT_INCLUSIVE |
+                     Index.TYPE_RIGHT_INCLUSIVE);
+    }
+
+    /**
+     * @see prefux.data.util.Index#rows(java.lang.Object, java.lang.Object, int)
+     */
+    public IntIterator rows(Object lo, Object hi, int type) {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * @see prefux.data.util.Index#rows(int, int, int)
+     */
+    public IntIterator rows(int lo, int hi, int type) {
+        checkType(INT);
+        return range(lo, hi, type);
+    }
+
+    /**
+     * @see prefux.data.util.Index#rows(long, long, int)
+     */
+    public IntIterator rows(long lo, long hi, int type) {
+        checkType(LONG);
+        return range(lo, hi, type);
+    }
+
+    /**
+     * @see prefux.data.util.Index#rows(float, float, int)
+     */
+    public IntIterator rows(float lo, float hi, int type) {
+        checkType(FLOAT);
+        return range(key(lo), key(hi), type);
+    }
+
+    /**
+     * @see prefux.data.util.Index#rows(double, double, int)
+     */
+    public IntIterator rows(double lo, double hi, int type) {
+        checkType(DOUBLE);
+        return range(key(lo), key(hi), type);
+    }
+
+    private IntIterator range(long lo, long hi, int type) {
+        check();
+        boolean reverse = (type & Index.TYPE_DESCENDING) > 0;
+        boolean linc = (type & Index.TYPE_LEFT_INCLUSIVE) > 0;
+        boolean hinc = (type & Index.TYPE_RIGHT_INCLUSIVE) > 0;
+
+        int s = linc ? lower(m_keys, m_size, lo) : upper(m_keys, m_size, lo);
+        int e = hinc ? upper(m_keys, m_size, hi) : lower(m_keys, m_size, hi);
+        int as = linc ? lower(m_addKeys, m_adds, lo)
+                      : upper(m_addKeys, m_adds, lo);
+        int ae = hinc ? upper(m_addKeys, m_adds, hi)
+                      : lower(m_addKeys, m_adds, hi);
+
+        // the buffer is copied, as it is modified in place
+        long[] ak = as < ae ? Arrays.copyOfRange(m_addKeys, as, ae) : null;
+        int[] av = as < ae ? Arrays.copyOfRange(m_addVals, as, ae) : null;
+        return new RangeIterator(m_keys, m_vals, m_dead,
+                                 s, Math.max(s, e), ak, av, reverse);
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+     * @see prefux.data.util.Index#rows(int)
+     */
+    public IntIterator rows(int val) {
+        return rows(val, val, Index.TYPE_AII);
+    }
+
+    /**
+     * @see prefux.data.util.Index#rows(long)
+     */
+    public IntIterator rows(long val) {
+        return rows(val, val, Index.TYPE_AII);
+    }
+
+    /**
+     * @see prefux.data.util.Index#rows(float)
+     */
+    public IntIterator rows(float val) {
+        return rows(val, val, Index.TYPE_AII);
+    }
+
+    /**
+     * @see prefux.data.util.Index#rows(double)
+     */
+    public IntIterator rows(double val) {
+        return rows(val, val, Index.TYPE_AII);
+    }
+
+    /**
+     * @see prefux.data.util.Index#rows(boolean)
+     */
+    public IntIterator rows(boolean val) {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * @see prefux.data.util.Index#rows(java.lang.Object)
+     */
+    public IntIterator rows(Object val) {
+        return rows(val, val, Index.TYPE_AII);
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+     * @see prefux.data.util.Index#get(double)
+     */
+    public int get(double x) {
+        checkType(DOUBLE);
+        return first(key(x));
+    }
+
+    /**
+     * @see prefux.data.util.Index#get(float)
+     */
+    public int get(float x) {
+        checkType(FLOAT);
+        return first(key(x));
+    }
+
+    /**
+     * @see prefux.data.util.Index#get(int)
+     */
+    public int get(int x) {
+        checkType(INT);
+        return first(x);
+    }
+
+    /**
+     * @see prefux.data.util.Index#get(long)
+     */
+    public int get(long x) {
+        checkType(LONG);
+        return first(x);
+    }
+
+    /**
+     * @see prefux.data.util.Index#get(java.lang.Object)
+     */
+    public int get(Object x) {
+        throw new IllegalStateException();
+    }
+
+    private int first(long key) {
+        check();
+        int row = Integer.MIN_VALUE;
+        for ( int i=lower(m_keys, m_size, key);
+              i<m_size && m_keys[i]==key; ++i )
+        {
+            if ( !m_dead.get(i) ) {
+                row = m_vals[i];
+                break;
+            }
+        }
+        int a = lower(m_addKeys, m_adds, key);
+        if ( a < m_adds && m_addKeys[a] == key ) {
+            if ( row == Integer.MIN_VALUE || m_addVals[a] < row )
+                row = m_addVals[a];
+        }
+        return row;
+    }
+
+    // ------------------------------------------------------------------------
+    // Searching and Sorting
+
+    private static boolean less(long k1, int v1, long k2, int v2) {
+        return k1 < k2 || (k1 == k2 && v1 < v2);
+    }
+
+    /**
+     * Binary search for a key / row pair, returning its position or
+     * (-(insertion point)-1) if it is not found.
+     */
+    private static int search(long[] keys, int[] vals, int n,
+                              long key, int val)
+    {
+        int lo = 0, hi = n-1;
+        while ( lo <= hi ) {
+            int mid = (lo+hi) >>> 1;
+            if ( less(keys[mid], vals[mid], key, val) ) {
+                lo = mid+1;
+            } else if ( keys[mid] == key && vals[mid] == val ) {
+                return mid;
+            } else {
+                hi = mid-1;
+            }
+        }
+        return -(lo+1);
+    }
+
+    /** First position with a key not less than the given key. */
+    private static int lower(long[] keys, int n, long key) {
+        int lo = 0, hi = n;
+        while ( lo < hi ) {
+            int mid = (lo+hi) >>> 1;
+            if ( keys[mid] < key ) lo = mid+1; else hi = mid;
+        }
+        return lo;
+    }
+
+    /** First position with a key greater than the given key. */
+    private static int upper(long[] keys, int n, long key) {
+        int lo = 0, hi = n;
+        while ( lo < hi ) {
+            int mid = (lo+hi) >>> 1;
+            if ( keys[mid] <= key ) lo = mid+1; else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Stable merge sort of a key array and a parallel row array over the
+     * range [lo, hi), using the given temporary arrays.
+     */
+    private static void sort(long[] k, int[] v, long[] tk, int[] tv,
+                             int lo, int hi)
+    {
+        if ( hi - lo < 32 ) {
+            for ( int i=lo+1; i<hi; ++i ) {
+                long key = k[i];
+                int val = v[i];
+                int j = i-1;
+                for ( ; j>=lo && k[j] > key; --j ) {
+                    k[j+1] = k[j];
+                    v[j+1] = v[j];
+                }
+                k[j+1] = key;
+                v[j+1] = val;
+            }
+            return;
+        }
+        int mid = (lo+hi) >>> 1;
+        sort(k, v, tk, tv, lo, mid);
+        sort(k, v, tk, tv, mid, hi);
+        merge(k, v, tk, tv, lo, mid, hi);
+    }
+
+    private static void merge(long[] k, int[] v, long[] tk, int[] tv,
+                              int lo, int mid, int hi)
+    {
+        if ( k[mid-1] <= k[mid] ) return; // already in order
+        System.arraycopy(k, lo, tk, lo, hi-lo);
+        System.arraycopy(v, lo, tv, lo, hi-lo);
+        int i = lo, j = mid, n = lo;
+        while ( i < mid && j < hi ) {
+            if ( tk[j] < tk[i] ) {
+                k[n] = tk[j]; v[n++] = tv[j++];
+            } else {
+                k[n] = tk[i]; v[n++] = tv[i++];
+            }
+        }
+        for ( ; i<mid; ++i, ++n ) { k[n] = tk[i]; v[n] = tv[i]; }
+        for ( ; j<hi;  ++j, ++n ) { k[n] = tk[j]; v[n] = tv[j]; }
+    }
+
+    /**
+     * Fork/join task sorting the halves of a range in parallel.
+     */
+    private static final class SortTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] k, tk;
+        private final int[] v, tv;
+        private final int lo, hi;
+
+        SortTask(long[] k, int[] v, long[] tk, int[] tv, int lo, int hi) {
+            this.k = k; this.v = v; this.tk = tk; this.tv = tv;
+            this.lo = lo; this.hi = hi;
+        }
+
+        protected void compute() {
+            if ( hi - lo < PARALLEL_THRESHOLD ) {
+                sort(k, v, tk, tv, lo, hi);
+            } else {
+                int mid = (lo+hi) >>> 1;
+                invokeAll(new SortTask(k, v, tk, tv, lo, mid),
+                          new SortTask(k, v, tk, tv, mid, hi));
+                merge(k, v, tk, tv, lo, mid, hi);
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+     * Iterates over a range of the sorted arrays, skipping removed entries,
+     * merged with a copied range of the buffer of additions.
+     */
+    private static final class RangeIterator extends IntIterator {
+        private final long[] m_keys, m_addKeys;
+        private final int[]  m_vals, m_addVals;
+        private final BitSet m_dead;
+        private final int    m_start, m_end, m_adds;
+        private final boolean m_reverse;
+        private int m_i, m_a;
+
+        RangeIterator(long[] keys, int[] vals, BitSet dead, int start,
+                int end, long[] addKeys, int[] addVals, boolean reverse)
+        {
+            m_keys = keys; m_vals = vals; m_dead = dead;
+            m_start = start; m_end = end;
+            m_addKeys = addKeys; m_addVals = addVals;
+            m_adds = addKeys == null ? 0 : addKeys.length;
+            m_reverse = reverse;
+            m_i = reverse ? end-1 : start;
+            m_a = reverse ? m_adds-1 : 0;
+            skip();
+        }
+
+        private void skip() {
+            if ( m_reverse ) {
+                while ( m_i >= m_start && m_dead.get(m_i) ) --m_i;
+            } else {
+                while ( m_i < m_end && m_dead.get(m_i) ) ++m_i;
+            }
+        }
+
+        public boolean hasNext() {
+            boolean main = m_reverse ? m_i >= m_start : m_i < m_end;
+            boolean add = m_reverse ? m_a >= 0 : m_a < m_adds;
+            return main || add;
+        }
+
+        public int nextInt() {
+            boolean main = m_reverse ? m_i >= m_start : m_i < m_end;
+            boolean add = m_reverse ? m_a >= 0 : m_a < m_adds;
+            if ( !main && !add )
+                throw new NoSuchElementException();
+
+            if ( main && add ) {
+                boolean first = less(m_keys[m_i], m_vals[m_i],
+                                     m_addKeys[m_a], m_addVals[m_a]);
+                main = (first != m_reverse);
+            }
+            if ( main ) {
+                int row = m_vals[m_i];
+                m_i += m_reverse ? -1 : 1;
+                skip();
+                return row;
+            } else {
+                int row = m_addVals[m_a];
+                m_a += m_reverse ? -1 : 1;
+                return row;
+            }
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+} // end of class SortedArrayIndex
@@ -35,6 +35,7 @@ import java.util.ArrayList;
 import javafx.application.Platform;
 import javafx.scene.Group;
 import javafx.scene.Parent;
+import javafx.scene.canvas.GraphicsContext;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -77,6 +78,19 @@ public class CombinedRenderer extends ArrayList<Renderer> implements Renderer {
 		render(g, item, true);
 	}
 
+	/**
+	 * Draws the item with all contained renderers, in order.
+	 * 
+	 * @see prefux.render.Renderer#draw(javafx.scene.canvas.GraphicsContext,
+	 *      prefux.visual.VisualItem)
+	 */
+	@Override
+	public void draw(GraphicsContext g, VisualItem item) {
+		for (Renderer renderer : this) {
+			renderer.draw(g, item);
+		}
+	}
+
 	@Override
 	public boolean locatePoint(Point2D p, VisualItem item) {
 		boolean locate = false;
@@ -32,12 +32,15 @@ package prefux.render;
 
 import javafx.application.Platform;
 import javafx.scene.Node;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
 import javafx.scene.shape.Line;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import prefux.data.util.Point2D;
+import prefux.util.ColorLib;
 import prefux.visual.EdgeItem;
 import prefux.visual.VisualItem;
 
@@ -85,6 +88,24 @@ public class EdgeRenderer extends AbstractShapeRenderer implements Renderer {
 		return line;
 	}
 
+	/**
+	 * Draws a straight line between the source and target items of the edge.
+	 * Edges with a fully transparent stroke color are drawn in black, the
+	 * default stroke of a line node.
+	 * 
+	 * @see prefux.render.Renderer#draw(javafx.scene.canvas.GraphicsContext,
+	 *      prefux.visual.VisualItem)
+	 */
+	@Override
+	public void draw(GraphicsContext g, VisualItem item) {
+		EdgeItem edge = (EdgeItem) item;
+		VisualItem s = edge.getSourceItem(), t = edge.getTargetItem();
+		int color = item.getStrokeColor();
+		g.setStroke(ColorLib.alpha(color) == 0 ? Color.BLACK : ColorLib
+		        .getColor(color));
+		g.strokeLine(s.getX(), s.getY(), t.getX(), t.getY());
+	}
+
 	@Override
 	public String getDefaultStyle() {
 		return DEFAULT_STYLE_CLASS;
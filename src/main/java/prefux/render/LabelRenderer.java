@@ -31,14 +31,20 @@
 package prefux.render;
 
 import javafx.application.Platform;
+import javafx.geometry.VPos;
 import javafx.scene.Node;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.Label;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.StackPane;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
 import javafx.scene.transform.Translate;
 import prefux.Constants;
+import prefux.util.ColorLib;
 import prefux.visual.VisualItem;
 
 /**
@@ -283,6 +289,36 @@ public class LabelRenderer extends AbstractShapeRenderer {
 		return pane;
 	}
 
+	/**
+	 * Draws the image and the text of the item, both centered on the item
+	 * location. Items with a fully transparent text color are drawn in
+	 * black.
+	 * 
+	 * @see prefux.render.Renderer#draw(javafx.scene.canvas.GraphicsContext,
+	 *      prefux.visual.VisualItem)
+	 */
+	@Override
+	public void draw(GraphicsContext g, VisualItem item) {
+		double x = item.getX(), y = item.getY();
+		Image image = getImage(item);
+		if (image != null) {
+			g.drawImage(image, x - image.getWidth() / 2, y - image.getHeight()
+			        / 2);
+		}
+		String text = getText(item);
+		if (text != null) {
+			Font font = item.getFont();
+			if (font != null)
+				g.setFont(font);
+			int color = item.getTextColor();
+			g.setFill(ColorLib.alpha(color) == 0 ? Color.BLACK : ColorLib
+			        .getColor(color));
+			g.setTextAlign(TextAlignment.CENTER);
+			g.setTextBaseline(VPos.CENTER);
+			g.fillText(text, x, y);
+		}
+	}
+
 	/**
 	 * Returns the image factory used by this renderer.
 	 * 
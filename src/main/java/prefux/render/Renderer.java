@@ -32,6 +32,7 @@ package prefux.render;
 
 
 import javafx.scene.Parent;
+import javafx.scene.canvas.GraphicsContext;
 import prefux.data.util.Point2D;
 import prefux.visual.VisualItem;
 
@@ -68,6 +69,19 @@ public interface Renderer {
      */
     public void render(Parent g, VisualItem item, boolean bind);
 
+    /**
+     * Draw item directly into a graphics context, without creating any
+     * nodes. This immediate mode drawing is used by the
+     * {@link prefux.CanvasDisplay}, which calls this method on every repaint
+     * with the current values of the item. Coordinates are in absolute
+     * (item-space) coordinates, the display transform is already applied to
+     * the graphics context. The default implementation draws nothing.
+     * @param g the graphics context to draw into
+     * @param item the visual item to draw
+     */
+    public default void draw(GraphicsContext g, VisualItem item) {
+    }
+
     /**
      * Returns true if the Point is located inside the extents of the item.
      * This calculation matches against the exaxt item shape, and so is more
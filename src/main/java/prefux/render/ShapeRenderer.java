@@ -38,6 +38,7 @@ import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
 import javafx.beans.binding.ObjectBinding;
 import javafx.scene.Node;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
 import javafx.scene.paint.CycleMethod;
 import javafx.scene.paint.Paint;
@@ -48,6 +49,7 @@ import javafx.scene.shape.Circle;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import prefux.data.util.Point2D;
 import prefux.util.ColorLib;
 import prefux.visual.VisualItem;
 
@@ -71,6 +73,12 @@ public class ShapeRenderer extends AbstractShapeRenderer implements Renderer {
 	 */
 	public static final String DEFAULT_STYLE_CLASS = "prefux-shape";
 
+	/**
+	 * The fill color used when drawing to a canvas, where no style class
+	 * applies, for items without a fill color of their own.
+	 */
+	public static final int DEFAULT_FILL_COLOR = ColorLib.rgb(25, 25, 112);
+
 	private double baseSize = DEFAULT_SIZE;
 	
 	private boolean useItemSize = true;
@@ -147,9 +155,7 @@ public class ShapeRenderer extends AbstractShapeRenderer implements Renderer {
 
 	@Override
 	protected Node getRawShape(VisualItem item, boolean bind) {
-		double radius = useItemSize ? item.getSize() * getBaseSize()
-		        : getBaseSize();
-		final Circle circle = new Circle(radius);
+		final Circle circle = new Circle(getRadius(item));
 		if (bind) {
 
 			Platform.runLater(() -> {
@@ -182,6 +188,62 @@ public class ShapeRenderer extends AbstractShapeRenderer implements Renderer {
 		return circle;
 	}
 
+	/**
+	 * Draws the item as a circle around its location. Items with a fully
+	 * transparent fill color, or all items if the fill mode is
+	 * <code>NONE</code>, are filled with {@link #DEFAULT_FILL_COLOR}. The
+	 * outline is only drawn for items with a stroke color.
+	 * 
+	 * @see prefux.render.Renderer#draw(javafx.scene.canvas.GraphicsContext,
+	 *      prefux.visual.VisualItem)
+	 */
+	@Override
+	public void draw(GraphicsContext g, VisualItem item) {
+		double r = getRadius(item);
+		double x = item.getX() - r, y = item.getY() - r;
+		int color = item.getFillColor();
+		if (fillMode == NONE || ColorLib.alpha(color) == 0) {
+			g.setFill(fillPainter[fillMode == NONE ? SOLID : fillMode]
+			        .fill(DEFAULT_FILL_COLOR));
+		} else {
+			g.setFill(fillPainter[fillMode].fill(color));
+		}
+		g.fillOval(x, y, 2 * r, 2 * r);
+		int stroke = item.getStrokeColor();
+		if (ColorLib.alpha(stroke) != 0) {
+			g.setStroke(ColorLib.getColor(stroke));
+			g.strokeOval(x, y, 2 * r, 2 * r);
+		}
+	}
+
+	/**
+	 * Checks if the point lies within the circle of the item. Items drawn
+	 * as nodes are checked against their node.
+	 * 
+	 * @see prefux.render.AbstractShapeRenderer#locatePoint(prefux.data.util.Point2D,
+	 *      prefux.visual.VisualItem)
+	 */
+	@Override
+	public boolean locatePoint(Point2D p, VisualItem item) {
+		if (item.getNode() != null)
+			return super.locatePoint(p, item);
+		double dx = p.getX() - item.getX();
+		double dy = p.getY() - item.getY();
+		double r = getRadius(item);
+		return dx * dx + dy * dy <= r * r;
+	}
+
+	/**
+	 * Returns the radius of the circle drawn for the item.
+	 * 
+	 * @param item
+	 *            the visual item
+	 * @return the radius
+	 */
+	protected double getRadius(VisualItem item) {
+		return useItemSize ? item.getSize() * getBaseSize() : getBaseSize();
+	}
+
 	/**
 	 * If set to true, the size of the node is bound to the size attribute of the visual item.
 	 * @param value
@@ -39,6 +39,7 @@ import java.util.List;
 
 import javafx.application.Platform;
 import javafx.scene.Parent;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.layout.StackPane;
 
 import org.apache.logging.log4j.LogManager;
@@ -85,6 +86,19 @@ public class StackPaneRenderer extends ArrayList<Renderer> implements Renderer,
 		render(g,item,true);
 	}
 
+	/**
+	 * Draws the item with all contained renderers, in order.
+	 * 
+	 * @see prefux.render.Renderer#draw(javafx.scene.canvas.GraphicsContext,
+	 *      prefux.visual.VisualItem)
+	 */
+	@Override
+	public void draw(GraphicsContext g, VisualItem item) {
+		for (Renderer renderer : this) {
+			renderer.draw(g, item);
+		}
+	}
+
 	@Override
 	public boolean locatePoint(Point2D p, VisualItem item) {
 		boolean locate = false;
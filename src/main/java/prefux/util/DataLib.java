@@ -93,6 +93,23 @@ public class DataLib {
         return ArrayLib.trim(array, i);
     }
 
+    /**
+     * Get the quantile boundaries of the values of a numeric data field.
+     * @param tuples a TupleSet
+     * @param field the column / data field name
+     * @param n the number of quantiles
+     * @return an array of n+1 quantile boundaries
+     * @see MathLib#quantiles(int, double[])
+     */
+    public static double[] quantiles(TupleSet tuples, String field, int n) {
+        if ( tuples instanceof Table ) {
+            ColumnMetadata md = ((Table)tuples).getMetadata(field);
+            return md.getQuantiles(n);
+        } else {
+            return MathLib.quantiles(n, toDoubleArray(tuples.tuples(), field));
+        }
+    }
+
     // ------------------------------------------------------------------------
     
     /**
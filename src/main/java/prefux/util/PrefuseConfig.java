@@ -58,6 +58,9 @@ import prefux.util.io.IOLib;
  * <li><code>data.io.worker.threadPriority</code> - the thread priority of
  * asynchronous database worker threads. The default prefux setting is 5
  * (same as the Java thread default).</li>
+ * <li><code>data.io.worker.threads</code> - the maximum number of
+ * asynchronous database worker threads, and thus of database queries
+ * processed concurrently. The default prefux setting is 4.</li>
  * <li><code>data.filter.optimizeThreshold</code> - the minimum number of items
  * that must be contained in a table for optimized query plans to be
  * considered. The default value is 300.</li>
@@ -227,6 +230,7 @@ public class PrefuseConfig extends Properties {
         setProperty("data.visual.fieldPrefix", "_");
         setProperty("data.io.worker.threadPriority", 
                 String.valueOf(Thread.NORM_PRIORITY));
+        setProperty("data.io.worker.threads", "4");
         
         // prefux will only attempt to optimize filtering operations
         // on tables with more rows than this threshold value
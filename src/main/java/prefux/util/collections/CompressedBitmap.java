@@ -0,0 +1,615 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.util.collections;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>Compressed set of non-negative int values, such as table rows. The
+ * values are partitioned into chunks of 2^16 values by their upper 16
+ * bits, in the manner of Roaring bitmaps. A chunk containing at most
+ * 4096 values stores them as a sorted array of 16 bit values, a denser
+ * chunk as a bit vector of 1024 words. Sparse and dense sets are thus
+ * both stored compactly, and intersections and unions of dense chunks
+ * are computed one 64 bit word at a time.</p>
+ *
+ * <p>The {@link #and(CompressedBitmap, CompressedBitmap)} and
+ * {@link #or(CompressedBitmap, CompressedBitmap)} methods return new
+ * bitmaps that share no state with their arguments.</p>
+ */
+public class CompressedBitmap {
+
+    /** The maximum number of values of an array chunk. */
+    private static final int ARRAY_MAX = 4096;
+
+    private int[]   m_keys = new int[4];
+    private Chunk[] m_chunks = new Chunk[4];
+    private int     m_size = 0;
+    private int     m_card = 0;
+
+    /**
+     * Create a new, empty CompressedBitmap.
+     */
+    public CompressedBitmap() {
+    }
+
+    /**
+     * Create a copy of a CompressedBitmap.
+     * @param b the bitmap to copy
+     */
+    public CompressedBitmap(CompressedBitmap b) {
+        m_keys = Arrays.copyOf(b.m_keys, Math.max(4, b.m_size));
+        m_chunks = new Chunk[m_keys.length];
+        for ( int i=0; i<b.m_size; ++i )
+            m_chunks[i] = b.m_chunks[i].copy();
+        m_size = b.m_size;
+        m_card = b.m_card;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+     * Add a value to the set.
+     * @param x the value to add, must be non-negative
+     * @return true if the value was added, false if it was already present
+     */
+    public boolean add(int x) {
+        if ( x < 0 )
+            throw new IllegalArgumentException("Negative value: "+x);
+        int i = find(x >>> 16);
+        if ( i < 0 ) {
+            i = -i-1;
+            if ( m_size == m_keys.length ) {
+                m_keys = Arrays.copyOf(m_keys, 2*m_size);
+                m_chunks = Arrays.copyOf(m_chunks, 2*m_size);
+            }
+            System.arraycopy(m_keys, i, m_keys, i+1, m_size-i);
+            System.arraycopy(m_chunks, i, m_chunks, i+1, m_size-i);
+            m_keys[i] = x >>> 16;
+            m_chunks[i] = new ArrayChunk(new char[4], 0);
+            ++m_size;
+        }
+        Chunk c = m_chunks[i];
+        int n = c.cardinality();
+        m_chunks[i] = c.add((char)x);
+        if ( m_chunks[i].cardinality() == n )
+            return false;
+        ++m_card;
+        return true;
+    }
+
+    /**
+     * Remove a value from the set.
+     * @param x the value to remove
+     * @return true if the value was removed, false if it was not present
+     */
+    public boolean remove(int x) {
+        if ( x < 0 ) return false;
+        int i = find(x >>> 16);
+        if ( i < 0 ) return false;
+        Chunk c = m_chunks[i];
+        int n = c.cardinality();
+        c = c.remove((char)x);
+        if ( c.cardinality() == n )
+            return false;
+        --m_card;
+        if ( c.cardinality() == 0 ) {
+            System.arraycopy(m_keys, i+1, m_keys, i, m_size-i-1);
+            System.arraycopy(m_chunks, i+1, m_chunks, i, m_size-i-1);
+            m_chunks[--m_size] = null;
+        } else {
+            m_chunks[i] = c;
+        }
+        return true;
+    }
+
+    /**
+     * Indicates if the set contains a value.
+     * @param x the value
+     * @return true if the value is in the set
+     */
+    public boolean contains(int x) {
+        if ( x < 0 ) return false;
+        int i = find(x >>> 16);
+        return i >= 0 && m_chunks[i].contains((char)x);
+    }
+
+    /**
+     * Remove all values from the set.
+     */
+    public void clear() {
+        Arrays.fill(m_chunks, 0, m_size, null);
+        m_size = 0;
+        m_card = 0;
+    }
+
+    /**
+     * Get the number of values in the set.
+     * @return the number of values
+     */
+    public int size() {
+        return m_card;
+    }
+
+    /**
+     * Indicates if the set is empty.
+     * @return true if the set contains no values
+     */
+    public boolean isEmpty() {
+        return m_card == 0;
+    }
+
+    /**
+     * Get the smallest value in the set.
+     * @return the smallest value, or -1 if the set is empty
+     */
+    public int first() {
+        return m_size == 0 ? -1 : (m_keys[0]<<16) | m_chunks[0].next(0);
+    }
+
+    /**
+     * Get the largest value in the set.
+     * @return the largest value, or -1 if the set is empty
+     */
+    public int last() {
+        return m_size == 0 ? -1 :
+            (m_keys[m_size-1]<<16) | m_chunks[m_size-1].prev(0xFFFF);
+    }
+
+    /**
+     * Get the value of the given rank, in ascending order.
+     * @param k the rank, between 0 and {@link #size()}-1
+     * @return the k-th smallest value
+     */
+    public int select(int k) {
+        if ( k < 0 || k >= m_card )
+            throw new IndexOutOfBoundsException(String.valueOf(k));
+        for ( int i=0; i<m_size; ++i ) {
+            int n = m_chunks[i].cardinality();
+            if ( k < n )
+                return (m_keys[i]<<16) | m_chunks[i].select(k);
+            k -= n;
+        }
+        throw new IllegalStateException(); // should never occur
+    }
+
+    /**
+     * Get an iterator over the values of the set. The set may be modified
+     * while iterating; the iterator continues from the last value it
+     * returned.
+     * @param ascending true for an ascending, false for a descending order
+     * @return an iterator over the values
+     */
+    public IntIterator iterator(boolean ascending) {
+        return new BitmapIterator(ascending);
+    }
+
+    /**
+     * Get the smallest value in the set not less than the given value.
+     * @param from the lower bound
+     * @return the next value, or -1 if there is none
+     */
+    public int nextValue(int from) {
+        if ( from < 0 ) from = 0;
+        int i = find(from >>> 16);
+        int lo = from & 0xFFFF;
+        if ( i < 0 ) {
+            i = -i-1;
+            lo = 0;
+        }
+        for ( ; i<m_size; ++i, lo=0 ) {
+            int x = m_chunks[i].next(lo);
+            if ( x >= 0 ) return (m_keys[i]<<16) | x;
+        }
+        return -1;
+    }
+
+    /**
+     * Get the largest value in the set not greater than the given value.
+     * @param from the upper bound
+     * @return the previous value, or -1 if there is none
+     */
+    public int previousValue(int from) {
+        if ( from < 0 ) return -1;
+        int i = find(from >>> 16);
+        int hi = from & 0xFFFF;
+        if ( i < 0 ) {
+            i = -i-2;
+            hi = 0xFFFF;
+        }
+        for ( ; i>=0; --i, hi=0xFFFF ) {
+            int x = m_chunks[i].prev(hi);
+            if ( x >= 0 ) return (m_keys[i]<<16) | x;
+        }
+        return -1;
+    }
+
+    private int find(int key) {
+        int lo = 0, hi = m_size-1;
+        while ( lo <= hi ) {
+            int mid = (lo+hi) >>> 1;
+            int k = m_keys[mid];
+            if ( k < key ) lo = mid+1;
+            else if ( k > key ) hi = mid-1;
+            else return mid;
+        }
+        return -(lo+1);
+    }
+
+    private void append(int key, Chunk c) {
+        if ( c.cardinality() == 0 ) return;
+        if ( m_size == m_keys.length ) {
+            m_keys = Arrays.copyOf(m_keys, 2*m_size);
+            m_chunks = Arrays.copyOf(m_chunks, 2*m_size);
+        }
+        m_keys[m_size] = key;
+        m_chunks[m_size++] = c;
+        m_card += c.cardinality();
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+     * Compute the intersection of two bitmaps.
+     * @param a the first bitmap
+     * @param b the second bitmap
+     * @return a new bitmap containing the values found in both bitmaps
+     */
+    public static CompressedBitmap and(CompressedBitmap a, CompressedBitmap b) {
+        CompressedBitmap r = new CompressedBitmap();
+        int i = 0, j = 0;
+        while ( i < a.m_size && j < b.m_size ) {
+            int ka = a.m_keys[i], kb = b.m_keys[j];
+            if ( ka < kb ) {
+                ++i;
+            } else if ( kb < ka ) {
+                ++j;
+            } else {
+                r.append(ka, a.m_chunks[i++].and(b.m_chunks[j++]));
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Compute the union of two bitmaps.
+     * @param a the first bitmap
+     * @param b the second bitmap
+     * @return a new bitmap containing the values found in either bitmap
+     */
+    public static CompressedBitmap or(CompressedBitmap a, CompressedBitmap b) {
+        CompressedBitmap r = new CompressedBitmap();
+        int i = 0, j = 0;
+        while ( i < a.m_size || j < b.m_size ) {
+            int ka = i < a.m_size ? a.m_keys[i] : Integer.MAX_VALUE;
+            int kb = j < b.m_size ? b.m_keys[j] : Integer.MAX_VALUE;
+            if ( ka < kb ) {
+                r.append(ka, a.m_chunks[i++].copy());
+            } else if ( kb < ka ) {
+                r.append(kb, b.m_chunks[j++].copy());
+            } else {
+                r.append(ka, a.m_chunks[i++].or(b.m_chunks[j++]));
+            }
+        }
+        return r;
+    }
+
+    // ------------------------------------------------------------------------
+    // Chunks
+
+    /**
+     * The set of lower 16 bit values sharing the same upper 16 bits.
+     * Update methods return the chunk to use after the update, which may
+     * be a different representation.
+     */
+    private static abstract class Chunk {
+        abstract int cardinality();
+        abstract boolean contains(char x);
+        abstract Chunk add(char x);
+        abstract Chunk remove(char x);
+        /** Smallest value not less than x, or -1. */
+        abstract int next(int x);
+        /** Largest value not greater than x, or -1. */
+        abstract int prev(int x);
+        abstract int select(int k);
+        abstract Chunk and(Chunk c);
+        abstract Chunk or(Chunk c);
+        abstract Chunk copy();
+    }
+
+    private static final class ArrayChunk extends Chunk {
+        char[] m_vals;
+        int m_n;
+
+        ArrayChunk(char[] vals, int n) {
+            m_vals = vals;
+            m_n = n;
+        }
+
+        int cardinality() {
+            return m_n;
+        }
+
+        private int search(char x) {
+            return Arrays.binarySearch(m_vals, 0, m_n, x);
+        }
+
+        boolean contains(char x) {
+            return search(x) >= 0;
+        }
+
+        Chunk add(char x) {
+            int i = search(x);
+            if ( i >= 0 ) return this;
+            if ( m_n == ARRAY_MAX ) {
+                return toBits().add(x);
+            }
+            i = -i-1;
+            if ( m_n == m_vals.length )
+                m_vals = Arrays.copyOf(m_vals,
+                    Math.min(ARRAY_MAX, Math.max(4, 2*m_n)));
+            System.arraycopy(m_vals, i, m_vals, i+1, m_n-i);
+            m_vals[i] = x;
+            ++m_n;
+            return this;
+        }
+
+        Chunk remove(char x) {
+            int i = search(x);
+            if ( i < 0 ) return this;
+            System.arraycopy(m_vals, i+1, m_vals, i, m_n-i-1);
+            --m_n;
+            return this;
+        }
+
+        int next(int x) {
+            int i = search((char)x);
+            if ( i < 0 ) i = -i-1;
+            return i < m_n ? m_vals[i] : -1;
+        }
+
+        int prev(int x) {
+            int i = search((char)x);
+            if ( i < 0 ) i = -i-2;
+            return i >= 0 ? m_vals[i] : -1;
+        }
+
+        int select(int k) {
+            return m_vals[k];
+        }
+
+        BitsChunk toBits() {
+            long[] words = new long[1024];
+            for ( int i=0; i<m_n; ++i )
+                words[m_vals[i] >>> 6] |= 1L << m_vals[i];
+            return new BitsChunk(words, m_n);
+        }
+
+        Chunk and(Chunk c) {
+            char[] r = new char[Math.min(m_n, c.cardinality())];
+            int n = 0;
+            if ( c instanceof ArrayChunk ) {
+                ArrayChunk a = (ArrayChunk)c;
+                for ( int i=0, j=0; i<m_n && j<a.m_n; ) {
+                    if ( m_vals[i] < a.m_vals[j] ) ++i;
+                    else if ( m_vals[i] > a.m_vals[j] ) ++j;
+                    else { r[n++] = m_vals[i++]; ++j; }
+                }
+            } else {
+                for ( int i=0; i<m_n; ++i ) {
+                    if ( c.contains(m_vals[i]) ) r[n++] = m_vals[i];
+                }
+            }
+            return new ArrayChunk(r, n);
+        }
+
+        Chunk or(Chunk c) {
+            if ( !(c instanceof ArrayChunk) )
+                return c.or(this);
+            ArrayChunk a = (ArrayChunk)c;
+            char[] r = new char[m_n + a.m_n];
+            int n = 0, i = 0, j = 0;
+            while ( i < m_n || j < a.m_n ) {
+                if ( j == a.m_n || (i < m_n && m_vals[i] < a.m_vals[j]) ) {
+                    r[n++] = m_vals[i++];
+                } else if ( i == m_n || a.m_vals[j] < m_vals[i] ) {
+                    r[n++] = a.m_vals[j++];
+                } else {
+                    r[n++] = m_vals[i++]; ++j;
+                }
+            }
+            ArrayChunk u = new ArrayChunk(r, n);
+            return n > ARRAY_MAX ? u.toBits() : u;
+        }
+
+        Chunk copy() {
+            return new ArrayChunk(Arrays.copyOf(m_vals, Math.max(4, m_n)), m_n);
+        }
+    }
+
+    private static final class BitsChunk extends Chunk {
+        final long[] m_words;
+        int m_card;
+
+        BitsChunk(long[] words, int card) {
+            m_words = words;
+            m_card = card;
+        }
+
+        int cardinality() {
+            return m_card;
+        }
+
+        boolean contains(char x) {
+            return (m_words[x >>> 6] & (1L << x)) != 0;
+        }
+
+        Chunk add(char x) {
+            long w = m_words[x >>> 6];
+            long b = 1L << x;
+            if ( (w & b) == 0 ) {
+                m_words[x >>> 6] = w | b;
+                ++m_card;
+            }
+            return this;
+        }
+
+        Chunk remove(char x) {
+            long w = m_words[x >>> 6];
+            long b = 1L << x;
+            if ( (w & b) != 0 ) {
+                m_words[x >>> 6] = w & ~b;
+                if ( --m_card <= ARRAY_MAX / 2 )
+                    return toArray();
+            }
+            return this;
+        }
+
+        int next(int x) {
+            int i = x >>> 6;
+            long w = m_words[i] & (-1L << x);
+            while ( w == 0 ) {
+                if ( ++i == m_words.length ) return -1;
+                w = m_words[i];
+            }
+            return (i << 6) + Long.numberOfTrailingZeros(w);
+        }
+
+        int prev(int x) {
+            int i = x >>> 6;
+            long w = m_words[i] & (-1L >>> (63 - (x & 63)));
+            while ( w == 0 ) {
+                if ( --i < 0 ) return -1;
+                w = m_words[i];
+            }
+            return (i << 6) + 63 - Long.numberOfLeadingZeros(w);
+        }
+
+        int select(int k) {
+            for ( int i=0; i<m_words.length; ++i ) {
+                int n = Long.bitCount(m_words[i]);
+                if ( k < n ) {
+                    long w = m_words[i];
+                    for ( ; k > 0; --k ) w &= w - 1;
+                    return (i << 6) + Long.numberOfTrailingZeros(w);
+                }
+                k -= n;
+            }
+            throw new IllegalStateException(); // should never occur
+        }
+
+        ArrayChunk toArray() {
+            char[] r = new char[Math.max(4, m_card)];
+            int n = 0;
+            for ( int i=0; i<m_words.length; ++i ) {
+                for ( long w = m_words[i]; w != 0; w &= w - 1 )
+                    r[n++] = (char)((i << 6) + Long.numberOfTrailingZeros(w));
+            }
+            return new ArrayChunk(r, n);
+        }
+
+        Chunk and(Chunk c) {
+            if ( !(c instanceof BitsChunk) )
+                return c.and(this);
+            long[] o = ((BitsChunk)c).m_words;
+            long[] r = new long[1024];
+            int card = 0;
+            for ( int i=0; i<r.length; ++i ) {
+                r[i] = m_words[i] & o[i];
+                card += Long.bitCount(r[i]);
+            }
+            BitsChunk b = new BitsChunk(r, card);
+            return card <= ARRAY_MAX ? b.toArray() : b;
+        }
+
+        Chunk or(Chunk c) {
+            long[] r = m_words.clone();
+            int card;
+            if ( c instanceof BitsChunk ) {
+                long[] o = ((BitsChunk)c).m_words;
+                card = 0;
+                for ( int i=0; i<r.length; ++i ) {
+                    r[i] |= o[i];
+                    card += Long.bitCount(r[i]);
+                }
+            } else {
+                ArrayChunk a = (ArrayChunk)c;
+                card = m_card;
+                for ( int i=0; i<a.m_n; ++i ) {
+                    char x = a.m_vals[i];
+                    if ( (r[x >>> 6] & (1L << x)) == 0 ) {
+                        r[x >>> 6] |= 1L << x;
+                        ++card;
+                    }
+                }
+            }
+            return new BitsChunk(r, card);
+        }
+
+        Chunk copy() {
+            return new BitsChunk(m_words.clone(), m_card);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    private final class BitmapIterator extends IntIterator {
+        private final boolean m_asc;
+        private int m_next;
+
+        BitmapIterator(boolean ascending) {
+            m_asc = ascending;
+            m_next = ascending ? nextValue(0) : previousValue(Integer.MAX_VALUE);
+        }
+
+        public boolean hasNext() {
+            return m_next >= 0;
+        }
+
+        public int nextInt() {
+            if ( m_next < 0 )
+                throw new NoSuchElementException();
+            int x = m_next;
+            if ( m_asc ) {
+                m_next = x == Integer.MAX_VALUE ? -1 : nextValue(x+1);
+            } else {
+                m_next = previousValue(x-1);
+            }
+            return x;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+} // end of class CompressedBitmap
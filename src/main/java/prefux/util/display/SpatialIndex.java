@@ -0,0 +1,335 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.util.display;
+
+import prefux.util.ArrayLib;
+import prefux.util.collections.IntObjectHashMap;
+
+/**
+ * <p>A spatial index over axis-aligned rectangles, identified by non-negative
+ * integer ids such as table row numbers. The index is a uniform grid: each
+ * rectangle is registered in every grid cell it overlaps, and a rectangle
+ * query only visits the cells overlapping the query region. Rectangles
+ * that would cover a large number of cells are kept in a separate list that
+ * is checked by every query.</p>
+ *
+ * <p>Entries are updated in place. Moving an entry within its grid cells only
+ * updates its stored bounds, so small movements of many entries, as caused by
+ * an animated layout, are cheap. All methods are synchronized, so the index
+ * can be updated by one thread and queried by another.</p>
+ *
+ * @see prefux.visual.VisualTable#getSpatialIndex()
+ */
+public class SpatialIndex {
+
+    /** The default edge length of a grid cell. */
+    public static final double DEFAULT_CELL_SIZE = 64;
+
+    /** Entries covering more cells than this are stored outside the grid. */
+    private static final int MAX_CELLS = 64;
+
+    private static final int ABSENT = 0;
+    private static final int GRID   = 1;
+    private static final int LARGE  = 2;
+
+    private final double m_cellSize;
+
+    // cell key -> int list, with the number of ids at index 0
+    private IntObjectHashMap m_cells = new IntObjectHashMap();
+
+    // per id: state, bounds (x0, y0, x1, y1) and cell range (cx0, cy0, cx1, cy1)
+    private int[]    m_state  = new int[0];
+    private double[] m_bounds = new double[0];
+    private int[]    m_range  = new int[0];
+    private int      m_size   = 0;
+
+    private int[] m_large = new int[0];
+    private int   m_largeCount = 0;
+
+    // query stamps to report each id only once per query
+    private int[] m_stamp = new int[0];
+    private int   m_query = 0;
+
+    /**
+     * Create a new, empty SpatialIndex with the default cell size.
+     */
+    public SpatialIndex() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Create a new, empty SpatialIndex.
+     * @param cellSize the edge length of a grid cell. Should be about the
+     * size of typical entries.
+     */
+    public SpatialIndex(double cellSize) {
+        if ( !(cellSize > 0) )
+            throw new IllegalArgumentException("Cell size must be positive");
+        m_cellSize = cellSize;
+    }
+
+    /**
+     * Get the edge length of a grid cell.
+     * @return the cell size
+     */
+    public double getCellSize() {
+        return m_cellSize;
+    }
+
+    /**
+     * Get the number of entries in the index.
+     * @return the number of entries
+     */
+    public synchronized int size() {
+        return m_size;
+    }
+
+    /**
+     * Indicates if the index contains an entry for the given id.
+     * @param id the entry id
+     * @return true if the entry exists
+     */
+    public synchronized boolean contains(int id) {
+        return id >= 0 && id < m_state.length && m_state[id] != ABSENT;
+    }
+
+    /**
+     * Remove all entries from the index.
+     */
+    public synchronized void clear() {
+        m_cells.clear();
+        for ( int i = 0; i < m_state.length; ++i )
+            m_state[i] = ABSENT;
+        m_size = 0;
+        m_largeCount = 0;
+    }
+
+    /**
+     * Add an entry to the index, or update its bounds if it already exists.
+     * Points may be stored as rectangles with zero width and height.
+     * @param id the entry id
+     * @param x0 the minimum x-coordinate
+     * @param y0 the minimum y-coordinate
+     * @param x1 the maximum x-coordinate
+     * @param y1 the maximum y-coordinate
+     */
+    public synchronized void update(int id, double x0, double y0,
+                                    double x1, double y1)
+    {
+        if ( id < 0 )
+            throw new IllegalArgumentException("Negative id: "+id);
+        ensureCapacity(id+1);
+        int cx0 = cell(x0), cy0 = cell(y0), cx1 = cell(x1), cy1 = cell(y1);
+        boolean large = (long)(cx1-cx0+1)*(cy1-cy0+1) > MAX_CELLS
+                        || cx1 < cx0 || cy1 < cy0;
+
+        int r = 4*id;
+        int state = m_state[id];
+        boolean moved = large ? state != LARGE
+            : state != GRID || m_range[r] != cx0 || m_range[r+1] != cy0
+                || m_range[r+2] != cx1 || m_range[r+3] != cy1;
+        if ( moved ) {
+            if ( state != ABSENT ) {
+                unlink(id);
+            } else {
+                ++m_size;
+            }
+            if ( large ) {
+                if ( m_largeCount == m_large.length )
+                    m_large = ArrayLib.resize(m_large, 2*m_largeCount+16);
+                m_large[m_largeCount++] = id;
+                m_state[id] = LARGE;
+            } else {
+                for ( int cx = cx0; cx <= cx1; ++cx )
+                    for ( int cy = cy0; cy <= cy1; ++cy )
+                        addToCell(key(cx, cy), id);
+                m_range[r] = cx0; m_range[r+1] = cy0;
+                m_range[r+2] = cx1; m_range[r+3] = cy1;
+                m_state[id] = GRID;
+            }
+        }
+        m_bounds[r] = x0; m_bounds[r+1] = y0;
+        m_bounds[r+2] = x1; m_bounds[r+3] = y1;
+    }
+
+    /**
+     * Remove an entry from the index.
+     * @param id the entry id
+     * @return true if the entry was found and removed
+     */
+    public synchronized boolean remove(int id) {
+        if ( id < 0 || id >= m_state.length || m_state[id] == ABSENT )
+            return false;
+        unlink(id);
+        m_state[id] = ABSENT;
+        --m_size;
+        return true;
+    }
+
+    /**
+     * Get the ids of all entries whose bounds intersect the given rectangle.
+     * Rectangles touching the query region at their border are included.
+     * @param x0 the minimum x-coordinate of the query region
+     * @param y0 the minimum y-coordinate of the query region
+     * @param x1 the maximum x-coordinate of the query region
+     * @param y1 the maximum y-coordinate of the query region
+     * @return the ids of the intersecting entries, in no particular order
+     */
+    public synchronized int[] query(double x0, double y0,
+                                    double x1, double y1)
+    {
+        int[] result = new int[16];
+        int n = 0;
+        if ( m_size == 0 )
+            return new int[0];
+
+        int cx0 = cell(x0), cy0 = cell(y0), cx1 = cell(x1), cy1 = cell(y1);
+        long cells = (long)(cx1-cx0+1)*(cy1-cy0+1);
+        if ( cells > m_size || cx1 < cx0 || cy1 < cy0 ) {
+            // visiting the cells costs more than checking every entry
+            for ( int id = 0; id < m_state.length; ++id ) {
+                if ( m_state[id] != ABSENT && intersects(id, x0, y0, x1, y1) ) {
+                    if ( n == result.length )
+                        result = ArrayLib.resize(result, 2*n);
+                    result[n++] = id;
+                }
+            }
+        } else {
+            if ( ++m_query == 0 ) {
+                // stamp overflow, reset all stamps
+                for ( int i = 0; i < m_stamp.length; ++i )
+                    m_stamp[i] = 0;
+                m_query = 1;
+            }
+            for ( int cx = cx0; cx <= cx1; ++cx ) {
+                for ( int cy = cy0; cy <= cy1; ++cy ) {
+                    int[] list = (int[])m_cells.get(key(cx, cy));
+                    if ( list == null ) continue;
+                    for ( int i = 1, len = list[0]; i <= len; ++i ) {
+                        int id = list[i];
+                        if ( m_stamp[id] == m_query ) continue;
+                        m_stamp[id] = m_query;
+                        if ( intersects(id, x0, y0, x1, y1) ) {
+                            if ( n == result.length )
+                                result = ArrayLib.resize(result, 2*n);
+                            result[n++] = id;
+                        }
+                    }
+                }
+            }
+            for ( int i = 0; i < m_largeCount; ++i ) {
+                int id = m_large[i];
+                if ( intersects(id, x0, y0, x1, y1) ) {
+                    if ( n == result.length )
+                        result = ArrayLib.resize(result, 2*n);
+                    result[n++] = id;
+                }
+            }
+        }
+        int[] ids = new int[n];
+        System.arraycopy(result, 0, ids, 0, n);
+        return ids;
+    }
+
+    // ------------------------------------------------------------------------
+
+    private boolean intersects(int id, double x0, double y0,
+                               double x1, double y1)
+    {
+        int r = 4*id;
+        return m_bounds[r] <= x1 && m_bounds[r+2] >= x0
+            && m_bounds[r+1] <= y1 && m_bounds[r+3] >= y0;
+    }
+
+    private int cell(double v) {
+        return (int)Math.floor(v / m_cellSize);
+    }
+
+    /**
+     * Combines cell coordinates into a hash key. Cells 65536 cells apart
+     * share a key, which only adds candidates that fail the exact bounds
+     * check. An entry never spans that many cells.
+     */
+    private static int key(int cx, int cy) {
+        return (cx << 16) ^ (cy & 0xFFFF);
+    }
+
+    private void unlink(int id) {
+        if ( m_state[id] == LARGE ) {
+            for ( int i = 0; i < m_largeCount; ++i ) {
+                if ( m_large[i] == id ) {
+                    m_large[i] = m_large[--m_largeCount];
+                    break;
+                }
+            }
+        } else {
+            int r = 4*id;
+            for ( int cx = m_range[r]; cx <= m_range[r+2]; ++cx )
+                for ( int cy = m_range[r+1]; cy <= m_range[r+3]; ++cy )
+                    removeFromCell(key(cx, cy), id);
+        }
+    }
+
+    private void addToCell(int key, int id) {
+        int[] list = (int[])m_cells.get(key);
+        if ( list == null ) {
+            list = new int[4];
+            m_cells.put(key, list);
+        } else if ( list[0]+1 == list.length ) {
+            list = ArrayLib.resize(list, 2*list.length);
+            m_cells.put(key, list);
+        }
+        list[++list[0]] = id;
+    }
+
+    private void removeFromCell(int key, int id) {
+        int[] list = (int[])m_cells.get(key);
+        if ( list == null ) return;
+        for ( int i = 1, n = list[0]; i <= n; ++i ) {
+            if ( list[i] == id ) {
+                list[i] = list[n];
+                if ( --list[0] == 0 )
+                    m_cells.removeKey(key);
+                return;
+            }
+        }
+    }
+
+    private void ensureCapacity(int size) {
+        if ( m_state.length >= size ) return;
+        int cap = Math.max(size, (3*m_state.length)/2 + 16);
+        m_state  = ArrayLib.resize(m_state, cap);
+        m_stamp  = ArrayLib.resize(m_stamp, cap);
+        m_bounds = ArrayLib.resize(m_bounds, 4*cap);
+        m_range  = ArrayLib.resize(m_range, 4*cap);
+    }
+
+} // end of class SpatialIndex
@@ -53,6 +53,17 @@ public abstract class AbstractForce implements Force {
         // do nothing.
     }
 
+    /**
+     * Initialize this force function for a packed simulation. This default
+     * implementation does nothing. Subclasses implementing
+     * {@link PackedForce} should override this method with any needed
+     * initialization.
+     * @param fsim the encompassing PackedForceSimulator
+     */
+    public void init(PackedForceSimulator fsim) {
+        // do nothing.
+    }
+
     /**
      * @see prefux.util.force.Force#getParameterCount()
      */
@@ -174,4 +185,22 @@ public abstract class AbstractForce implements Force {
             "This class does not support this operation");
     }
     
+    /**
+     * Throws an UnsupportedOperationException.
+     * @see prefux.util.force.PackedForce#getForces(prefux.util.force.PackedForceSimulator)
+     */
+    public void getForces(PackedForceSimulator fsim) {
+        throw new UnsupportedOperationException(
+            "This class does not support this operation");
+    }
+    
+    /**
+     * Throws an UnsupportedOperationException.
+     * @see prefux.util.force.PackedForce#getSpringForces(prefux.util.force.PackedForceSimulator)
+     */
+    public void getSpringForces(PackedForceSimulator fsim) {
+        throw new UnsupportedOperationException(
+            "This class does not support this operation");
+    }
+    
 } // end of abstract class AbstractForce
@@ -35,7 +35,7 @@ package prefux.util.force;
  * 
  * @author <a href="http://jheer.org">jeffrey heer</a>
  */
-public class DragForce extends AbstractForce {
+public class DragForce extends AbstractForce implements PackedForce {
 
     private static String[] pnames = new String[] { "DragCoefficient" };
     
@@ -84,4 +84,14 @@ public class DragForce extends AbstractForce {
         item.force[1] -= params[DRAG_COEFF]*item.velocity[1];
     }
 
+    /**
+     * @see prefux.util.force.PackedForce#getForces(prefux.util.force.PackedForceSimulator)
+     */
+    public void getForces(PackedForceSimulator fsim) {
+        double coeff = params[DRAG_COEFF];
+        double[] force = fsim.force, velocity = fsim.velocity;
+        for ( int i = 0, n = 2*fsim.itemCount; i < n; i++ )
+            force[i] -= coeff*velocity[i];
+    }
+
 } // end of class DragForce
@@ -40,7 +40,7 @@ import java.util.Iterator;
  * @author <a href="http://jheer.org">jeffrey heer</a>
  * @see RungeKuttaIntegrator
  */
-public class EulerIntegrator implements Integrator {
+public class EulerIntegrator implements PackedIntegrator {
     
     /**
      * @see prefux.util.force.Integrator#integrate(prefux.util.force.ForceSimulator, long)
@@ -50,6 +50,8 @@ public class EulerIntegrator implements Integrator {
         Iterator iter = sim.getItems();
         while ( iter.hasNext() ) {
             ForceItem item = (ForceItem)iter.next();
+            item.plocation[0] = item.location[0];
+            item.plocation[1] = item.location[1];
             item.location[0] += timestep * item.velocity[0];
             item.location[1] += timestep * item.velocity[1];
             double coeff = timestep / item.mass;
@@ -66,4 +68,31 @@ public class EulerIntegrator implements Integrator {
         return timestep;
     }
 
+    /**
+     * @see prefux.util.force.PackedIntegrator#integrate(prefux.util.force.PackedForceSimulator, long)
+     */
+    public long integrate(PackedForceSimulator sim, long timestep) {
+        double speedLimit = sim.getSpeedLimit();
+        double[] loc = sim.location, ploc = sim.plocation;
+        double[] vel = sim.velocity, force = sim.force, mass = sim.mass;
+        for ( int i = 0, n = sim.itemCount; i < n; i++ ) {
+            int x = 2*i, y = 2*i+1;
+            ploc[x] = loc[x];
+            ploc[y] = loc[y];
+            loc[x] += timestep * vel[x];
+            loc[y] += timestep * vel[y];
+            double coeff = timestep / mass[i];
+            double vx = vel[x] + coeff * force[x];
+            double vy = vel[y] + coeff * force[y];
+            double v = Math.sqrt(vx*vx+vy*vy);
+            if ( v > speedLimit ) {
+                vx = speedLimit * vx / v;
+                vy = speedLimit * vy / v;
+            }
+            vel[x] = vx;
+            vel[y] = vy;
+        }
+        return timestep;
+    }
+
 } // end of class EulerIntegrator
@@ -0,0 +1,123 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.util.force;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Holds the parallel execution settings of a force function: the number of
+ * worker threads to use and the problem size from which on the force
+ * computation is split across these threads. Smaller problems are computed
+ * on the calling thread, since forking tasks costs more than it saves.
+ *
+ * @see NBodyForce
+ * @see SpringForce
+ */
+final class ForceExecutor {
+
+    private int parallelism = 0;
+    private int threshold;
+    private ForkJoinPool pool;
+
+    /**
+     * Create a new ForceExecutor using the common ForkJoinPool.
+     * @param threshold the minimum problem size for parallel computation
+     */
+    ForceExecutor(int threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Get the number of worker threads used for parallel computation.
+     * @return the parallelism level
+     */
+    int getParallelism() {
+        return parallelism > 0 ? parallelism
+                               : ForkJoinPool.getCommonPoolParallelism();
+    }
+
+    /**
+     * Set the number of worker threads used for parallel computation. A
+     * value of zero uses the common ForkJoinPool, a value of one disables
+     * parallel computation, and larger values use a dedicated pool with
+     * the given number of threads.
+     * @param parallelism the parallelism level
+     */
+    synchronized void setParallelism(int parallelism) {
+        if ( parallelism < 0 )
+            throw new IllegalArgumentException(
+                "Parallelism must not be negative: "+parallelism);
+        if ( pool != null ) {
+            pool.shutdown();
+            pool = null;
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Get the minimum problem size for parallel computation.
+     * @return the parallel threshold
+     */
+    int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Set the minimum problem size for parallel computation.
+     * @param threshold the parallel threshold
+     */
+    void setThreshold(int threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Indicates if a problem of the given size should be computed in
+     * parallel.
+     * @param size the problem size
+     * @return true to compute in parallel, false otherwise
+     */
+    boolean isParallel(int size) {
+        return size >= threshold && getParallelism() > 1;
+    }
+
+    /**
+     * Get the ForkJoinPool to run parallel computations in.
+     * @return the ForkJoinPool
+     */
+    synchronized ForkJoinPool getPool() {
+        if ( parallelism == 0 )
+            return ForkJoinPool.commonPool();
+        if ( pool == null )
+            pool = new ForkJoinPool(parallelism);
+        return pool;
+    }
+
+} // end of class ForceExecutor
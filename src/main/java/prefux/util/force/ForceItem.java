@@ -83,6 +83,9 @@ public class ForceItem implements Cloneable {
     public double[][] k;
     /** Temporary variables for Runge-Kutta integration */
     public double[][] l;
+    /** Item number of this ForceItem in the last packed simulation step,
+     *  for internal use by {@link PackedForceSimulator} */
+    int index = -1;
     
     /**
      * Checks a ForceItem to make sure its values are all valid numbers
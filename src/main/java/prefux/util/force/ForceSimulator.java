@@ -32,6 +32,7 @@
 package prefux.util.force;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
 
 /**
@@ -45,12 +46,19 @@ public class ForceSimulator {
 
     private ArrayList<ForceItem> items;
     private ArrayList<Spring> springs;
-    private Force[] iforces;
-    private Force[] sforces;
-    private int iflen, sflen;
+    /** Item force functions, see {@link Force#isItemForce()} */
+    protected Force[] iforces;
+    /** Spring force functions, see {@link Force#isSpringForce()} */
+    protected Force[] sforces;
+    /** Number of item and spring force functions */
+    protected int iflen, sflen;
     private Integrator integrator;
     private float speedLimit = 1.0f;
     
+    private double kineticEnergy;
+    private double maxDisplacement;
+    private long stepTime;
+    
     /**
      * Create a new, empty ForceSimulator. A RungeKuttaIntegrator is used
      * by default.
@@ -172,6 +180,17 @@ public class ForceSimulator {
         return items.remove(item);
     }
 
+    /**
+     * Remove a collection of ForceItems from the simulation. For large
+     * removals, passing a hashed collection keeps this operation linear
+     * in the number of items.
+     * @param c the ForceItems to remove
+     */
+    public void removeItems(Collection<ForceItem> c) {
+        if ( !c.isEmpty() )
+            items.removeAll(c);
+    }
+
     /**
      * Get an iterator over all registered ForceItems.
      * @return an iterator over the ForceItems.
@@ -217,6 +236,21 @@ public class ForceSimulator {
         return s;
     }
     
+    /**
+     * Remove a collection of Springs from the simulation. Removed Springs
+     * are returned to the {@link Spring.SpringFactory} pool and should not
+     * be used afterwards. For large removals, passing a hashed collection
+     * keeps this operation linear in the number of springs.
+     * @param s the Springs to remove
+     */
+    public void removeSprings(Collection<Spring> s) {
+        if ( s.isEmpty() ) return;
+        springs.removeAll(s);
+        Spring.SpringFactory f = Spring.getFactory();
+        for ( Spring spring : s )
+            f.reclaim(spring);
+    }
+    
     /**
      * Get an iterator over all registered Springs.
      * @return an iterator over the Springs.
@@ -225,13 +259,94 @@ public class ForceSimulator {
         return springs.iterator();
     }
     
+    /**
+     * Get the total kinetic energy of all items after the last simulation
+     * step.
+     * @return the kinetic energy
+     */
+    public double getKineticEnergy() {
+        return kineticEnergy;
+    }
+    
+    /**
+     * Get the largest distance an item moved during the last simulation
+     * step.
+     * @return the maximum item displacement
+     */
+    public double getMaxDisplacement() {
+        return maxDisplacement;
+    }
+    
+    /**
+     * Get the time it took to compute the last simulation step.
+     * @return the step time in nanoseconds
+     */
+    public long getStepTime() {
+        return stepTime;
+    }
+    
+    /**
+     * Get the number of items in the simulation.
+     * @return the number of ForceItems
+     */
+    public int getItemCount() {
+        return items.size();
+    }
+    
+    /**
+     * Begin a run of simulation steps. Until the matching call to
+     * {@link #endRun()}, a simulator may keep the state of the simulation in
+     * its own representation rather than in the ForceItems, so the state of
+     * the items should neither be read nor changed between the steps of a
+     * run. Items and springs may still be added and removed. The default
+     * implementation does nothing.
+     */
+    public void beginRun() {
+    }
+    
+    /**
+     * End a run of simulation steps, making sure the ForceItems hold the
+     * current state of the simulation. The default implementation does
+     * nothing.
+     * @see #beginRun()
+     */
+    public void endRun() {
+    }
+    
     /**
      * Run the simulator for one timestep.
      * @param timestep the span of the timestep for which to run the simulator
      */
     public long runSimulator(long timestep) {
+        long start = System.nanoTime();
         accumulate();
-        return integrator.integrate(this, timestep);
+        long next = integrator.integrate(this, timestep);
+        
+        double energy = 0, disp = 0;
+        for ( int i = 0, n = items.size(); i < n; i++ ) {
+            ForceItem item = items.get(i);
+            double vx = item.velocity[0], vy = item.velocity[1];
+            double dx = item.location[0]-item.plocation[0];
+            double dy = item.location[1]-item.plocation[1];
+            energy += 0.5*item.mass*(vx*vx+vy*vy);
+            disp = Math.max(disp, dx*dx+dy*dy);
+        }
+        setStepMetrics(energy, Math.sqrt(disp), start);
+        return next;
+    }
+    
+    /**
+     * Records the metrics of a completed simulation step.
+     * @param energy the total kinetic energy of all items
+     * @param displacement the largest distance an item moved
+     * @param start the {@link System#nanoTime()} at which the step started
+     */
+    protected void setStepMetrics(double energy, double displacement,
+                                  long start)
+    {
+        kineticEnergy = energy;
+        maxDisplacement = displacement;
+        stepTime = System.nanoTime() - start;
     }
     
     /**
@@ -38,7 +38,7 @@ package prefux.util.force;
  *
  * @author <a href="http://jheer.org">jeffrey heer</a>
  */
-public class GravitationalForce extends AbstractForce {
+public class GravitationalForce extends AbstractForce implements PackedForce {
 
     private static final String[] pnames
         = { "GravitationalConstant", "Direction" };
@@ -102,4 +102,18 @@ public class GravitationalForce extends AbstractForce {
         item.force[1] += Math.sin(theta)*coeff;
     }
 
+    /**
+     * @see prefux.util.force.PackedForce#getForces(prefux.util.force.PackedForceSimulator)
+     */
+    public void getForces(PackedForceSimulator fsim) {
+        double theta = params[DIRECTION];
+        double gx = Math.cos(theta)*params[GRAVITATIONAL_CONST];
+        double gy = Math.sin(theta)*params[GRAVITATIONAL_CONST];
+        double[] force = fsim.force, mass = fsim.mass;
+        for ( int i = 0, n = fsim.itemCount; i < n; i++ ) {
+            force[2*i]   += gx*mass[i];
+            force[2*i+1] += gy*mass[i];
+        }
+    }
+
 } // end of class GravitationalForce
@@ -30,10 +30,11 @@
  */
 package prefux.util.force;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Random;
+import java.util.concurrent.RecursiveAction;
+
+import prefux.util.ArrayLib;
 
 /**
  * <p>Force function which computes an n-body force such as gravity,
@@ -42,6 +43,12 @@ import java.util.Random;
  * using a quad-tree with aggregated mass values to compute the n-body
  * force in O(N log N) time, where N is the number of ForceItems.</p>
  * 
+ * <p>The quadtree is stored in flat primitive arrays indexed by node number,
+ * which are reused when the tree is rebuilt for each simulation step, so
+ * that running a simulation does not create garbage once the arrays have
+ * grown to the size of the simulation. All tree operations are iterative,
+ * so that heavily clustered layouts can not exhaust the thread stack.</p>
+ * 
  * <p>The algorithm used is that of J. Barnes and P. Hut, in their research
  * paper <i>A Hierarchical  O(n log n) force calculation algorithm</i>, Nature, 
  *  v.324, December 1986. For more details on the algorithm, see one of
@@ -52,9 +59,14 @@ import java.util.Random;
  *   <li><a href="http://www.ifa.hawaii.edu/~barnes/treecode/treeguide.html">Joshua Barnes' recent implementation</a>
  * </ul></p>
  * 
+ * <p>Once the quadtree has been built, the force queries of the individual
+ * items are independent of each other. For large simulations they are
+ * therefore spread over a ForkJoinPool; see {@link #setParallelism(int)}
+ * and {@link #setParallelThreshold(int)}.</p>
+ * 
  * @author <a href="http://jheer.org">jeffrey heer</a>
  */
-public class NBodyForce extends AbstractForce {
+public class NBodyForce extends AbstractForce implements PackedForce {
 
     /* 
      * The indexing scheme for quadtree child nodes goes row by row.
@@ -78,15 +90,43 @@ public class NBodyForce extends AbstractForce {
     public static final double DEFAULT_MIN_THETA = 0.0f;
     public static final double DEFAULT_MAX_THETA = 1.0f;
     
+    /** The default number of items from which on forces are computed in
+     *  parallel. */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 5000;
+    
     public static final int GRAVITATIONAL_CONST = 0;
     public static final int MIN_DISTANCE = 1;
     public static final int BARNES_HUT_THETA = 2;
     
     private double xMin, xMax, yMin, yMax;
-    private QuadTreeNodeFactory factory = new QuadTreeNodeFactory();
-    private QuadTreeNode root;
+    
+    // the quadtree nodes, root node is node 0
+    private int nodeCount;
+    private int[] nodeChild = new int[0];          // 4 children per node, -1 if none
+    private int[] nodeValue = new int[0];          // item number, -1 if none
+    private double[] nodeMass = new double[0];     // total mass held by node
+    private double[] nodeCom = new double[0];      // center of mass of node
+    private double[] nodeSize = new double[0];     // width of node region
+    private int depth;                             // depth of the quadtree
+    private int[] stack = new int[0];              // traversal stack
+    
+    // packed item values the quadtree has been built over
+    private double[] location = new double[0];
+    private double[] mass = new double[0];
+    private int count;
+    
+    // item values gathered from a non-packed simulation
+    private double[] itemLocation = new double[0];
+    private double[] itemMass = new double[0];
+    // forces of a non-packed simulation, if computed in parallel
+    private double[] itemForce = new double[0];
+    private boolean precomputed;
+    
+    private ForceExecutor executor = 
+        new ForceExecutor(DEFAULT_PARALLEL_THRESHOLD);
     
     private Random rand = new Random(12345678L); // deterministic randomness
+    private long seed;
 
     /**
      * Create a new NBodyForce with default parameters.
@@ -112,7 +152,7 @@ public class NBodyForce extends AbstractForce {
             DEFAULT_MIN_DISTANCE, DEFAULT_MIN_THETA };
         maxValues = new double[] { DEFAULT_MAX_GRAV_CONSTANT,
             DEFAULT_MAX_DISTANCE, DEFAULT_MAX_THETA };
-        root = factory.getQuadTreeNode();
+        clear();
     }
 
     /**
@@ -130,6 +170,42 @@ public class NBodyForce extends AbstractForce {
         return pnames;
     } 
     
+    /**
+     * Get the number of threads used to compute forces in parallel.
+     * @return the parallelism level
+     */
+    public int getParallelism() {
+        return executor.getParallelism();
+    }
+    
+    /**
+     * Set the number of threads used to compute forces in parallel. A value
+     * of zero (the default) uses the common ForkJoinPool, a value of one
+     * always computes forces on the calling thread, and larger values use a
+     * dedicated pool with the given number of threads.
+     * @param parallelism the parallelism level
+     */
+    public void setParallelism(int parallelism) {
+        executor.setParallelism(parallelism);
+    }
+    
+    /**
+     * Get the number of items from which on forces are computed in parallel.
+     * @return the parallel threshold
+     */
+    public int getParallelThreshold() {
+        return executor.getThreshold();
+    }
+    
+    /**
+     * Set the number of items from which on forces are computed in parallel.
+     * Smaller simulations are computed on the calling thread.
+     * @param threshold the parallel threshold
+     */
+    public void setParallelThreshold(int threshold) {
+        executor.setThreshold(threshold);
+    }
+
     /**
      * Set the bounds of the region for which to compute the n-body simulation
      * @param xMin the minimum x-coordinate
@@ -148,16 +224,33 @@ public class NBodyForce extends AbstractForce {
      * Clears the quadtree of all entries.
      */
     public void clear() {
-        clearHelper(root);
-        root = factory.getQuadTreeNode();
+        nodeCount = 0;
+        depth = 0;
+        newNode(xMax-xMin);
     }
     
-    private void clearHelper(QuadTreeNode n) {
-        for ( int i = 0; i < n.children.length; i++ ) {
-            if ( n.children[i] != null )
-                clearHelper(n.children[i]);
+    /**
+     * Allocates a new, empty quadtree node.
+     * @param size the width of the node region
+     * @return the node number
+     */
+    private int newNode(double size) {
+        int n = nodeCount++;
+        if ( n == nodeValue.length ) {
+            int cap = Math.max(64, 3*n/2);
+            nodeChild = ArrayLib.resize(nodeChild, 4*cap);
+            nodeValue = ArrayLib.resize(nodeValue, cap);
+            nodeMass = ArrayLib.resize(nodeMass, cap);
+            nodeCom = ArrayLib.resize(nodeCom, 2*cap);
+            nodeSize = ArrayLib.resize(nodeSize, cap);
         }
-        factory.reclaim(n);
+        nodeChild[4*n] = nodeChild[4*n+1] = -1;
+        nodeChild[4*n+2] = nodeChild[4*n+3] = -1;
+        nodeValue[n] = -1;
+        nodeMass[n] = 0;
+        nodeCom[2*n] = nodeCom[2*n+1] = 0;
+        nodeSize[n] = size;
+        return n;
     }
 
     /**
@@ -167,34 +260,87 @@ public class NBodyForce extends AbstractForce {
      * @param fsim the enclosing ForceSimulator
      */
     public void init(ForceSimulator fsim) {
+        // gather the items into the packed arrays used by the quadtree
+        int n = 0;
+        Iterator<ForceItem> itemIter = fsim.getItems();
+        while ( itemIter.hasNext() ) {
+            ForceItem item = itemIter.next();
+            if ( n == itemMass.length ) {
+                int cap = Math.max(16, 3*n/2);
+                itemLocation = ArrayLib.resize(itemLocation, 2*cap);
+                itemMass = ArrayLib.resize(itemMass, cap);
+            }
+            item.index = n;
+            itemLocation[2*n]   = item.location[0];
+            itemLocation[2*n+1] = item.location[1];
+            itemMass[n] = item.mass;
+            ++n;
+        }
+        init(itemLocation, itemMass, n);
+        
+        // large simulations compute all forces up front, in parallel
+        precomputed = executor.isParallel(n);
+        if ( precomputed ) {
+            if ( itemForce.length < 2*n )
+                itemForce = new double[itemLocation.length];
+            for ( int i = 0; i < 2*n; i++ )
+                itemForce[i] = 0;
+            getForces(itemLocation, itemMass, itemForce, n);
+        }
+    }
+
+    /**
+     * Initialize the simulation with the provided packed simulation. After
+     * this call has been made, the n-body forces can be accumulated using
+     * {@link #getForces(PackedForceSimulator)}.
+     * @param fsim the enclosing PackedForceSimulator
+     */
+    public void init(PackedForceSimulator fsim) {
+        precomputed = false;
+        init(fsim.location, fsim.mass, fsim.itemCount);
+    }
+
+    /**
+     * Builds the quadtree over the given packed item values.
+     * @param loc the interleaved item locations
+     * @param m the item mass values
+     * @param n the number of items
+     */
+    private void init(double[] loc, double[] m, int n) {
         clear(); // clear internal state
+        location = loc;
+        mass = m;
+        count = n;
+        seed = rand.nextLong();
         
         // compute and squarify bounds of quadtree
-        double x1 = Float.MAX_VALUE, y1 = Float.MAX_VALUE;
-        double x2 = Float.MIN_VALUE, y2 = Float.MIN_VALUE;
-        Iterator itemIter = fsim.getItems();
-        while ( itemIter.hasNext() ) {
-            ForceItem item = (ForceItem)itemIter.next();
-            double x = item.location[0];
-            double y = item.location[1];
+        double x1 = Double.MAX_VALUE, y1 = Double.MAX_VALUE;
+        double x2 = -Double.MAX_VALUE, y2 = -Double.MAX_VALUE;
+        for ( int i = 0; i < n; i++ ) {
+            double x = loc[2*i];
+            double y = loc[2*i+1];
             if ( x < x1 ) x1 = x;
             if ( y < y1 ) y1 = y;
             if ( x > x2 ) x2 = x;
             if ( y > y2 ) y2 = y;
         }
+        if ( n == 0 ) { x1 = y1 = x2 = y2 = 0; }
         double dx = x2-x1, dy = y2-y1;
         if ( dx > dy ) { y2 = y1 + dx; } else { x2 = x1 + dy; }
         setBounds(x1,y1,x2,y2);
+        nodeSize[0] = x2-x1;
         
         // insert items into quadtree
-        itemIter = fsim.getItems();
-        while ( itemIter.hasNext() ) {
-            ForceItem item = (ForceItem)itemIter.next();
-            insert(item);
+        for ( int i = 0; i < n; i++ ) {
+            insert(i);
         }
         
         // calculate magnitudes and centers of mass
-        calcMass(root);
+        calcMass();
+        
+        // a traversal pushes at most three siblings per level
+        if ( stack.length < 3*depth+4 )
+            stack = new int[3*depth+4];
     }
 
     /**
@@ -204,83 +350,98 @@ public class NBodyForce extends AbstractForce {
      *  outside the bounds of the quadtree
      */
     public void insert(ForceItem item) {
-        // insert item into the quadtrees
-        try {
-            insert(item, root, xMin, yMin, xMax, yMax);
-        } catch ( StackOverflowError e ) {
-            // TODO: safe to remove?
-            e.printStackTrace();
-        }
+        if ( item.index < 0 || item.index >= count )
+            throw new IllegalStateException(
+                "ForceItem is not part of the initialized simulation");
+        insert(item.index);
     }
 
-    private void insert(ForceItem p, QuadTreeNode n, 
-                        double x1, double y1, double x2, double y2)
-    {
-        // try to insert particle p at node n in the quadtree
-        // by construction, each leaf will contain either 1 or 0 particles
-        if ( n.hasChildren ) {
-            // n contains more than 1 particle
-            insertHelper(p,n,x1,y1,x2,y2);
-        } else if ( n.value != null ) {
-            // n contains 1 particle
-            if ( isSameLocation(n.value, p) ) {
-                insertHelper(p,n,x1,y1,x2,y2);
-            } else {
-                ForceItem v = n.value; n.value = null;
-                insertHelper(v,n,x1,y1,x2,y2);
-                insertHelper(p,n,x1,y1,x2,y2);
+    private void insert(int p) {
+        // by construction, each leaf will contain either 1 or 0 particles,
+        // while items at the same location stack up along a chain of nodes
+        double x1 = xMin, y1 = yMin, x2 = xMax, y2 = yMax;
+        int n = 0, d = 0;
+        while ( true ) {
+            int v = nodeValue[n];
+            if ( !hasChildren(n) && v < 0 ) {
+                // n is empty, so is a leaf
+                nodeValue[n] = p;
+                break;
             }
-        } else { 
-            // n is empty, so is a leaf
-            n.value = p;
+            if ( !hasChildren(n) && !isSameLocation(v, p) ) {
+                // n contains 1 particle, move it to a new child node
+                nodeValue[n] = -1;
+                int c = child(n, quadrant(v,x1,y1,x2,y2));
+                nodeValue[c] = v;
+            }
+            // descend into the child node for p
+            int i = quadrant(p,x1,y1,x2,y2);
+            double splitx = (x1+x2)/2;
+            double splity = (y1+y2)/2;
+            if ( i==1 || i==3 ) x1 = splitx; else x2 = splitx;
+            if ( i > 1 )        y1 = splity; else y2 = splity;
+            n = child(n, i);
+            ++d;
         }
+        if ( d > depth ) depth = d;
     }
     
-    private static boolean isSameLocation(ForceItem f1, ForceItem f2) {
-        double dx = Math.abs(f1.location[0]-f2.location[0]);
-        double dy = Math.abs(f1.location[1]-f2.location[1]);
+    private boolean isSameLocation(int f1, int f2) {
+        double dx = Math.abs(location[2*f1]-location[2*f2]);
+        double dy = Math.abs(location[2*f1+1]-location[2*f2+1]);
         return ( dx < 0.01 && dy < 0.01 );
     }
     
-    private void insertHelper(ForceItem p, QuadTreeNode n, 
-                              double x1, double y1, double x2, double y2)
-    {   
-        double x = p.location[0], y = p.location[1];
+    private int quadrant(int p, double x1, double y1, double x2, double y2) {
         double splitx = (x1+x2)/2;
         double splity = (y1+y2)/2;
-        int i = (x>=splitx ? 1 : 0) + (y>=splity ? 2 : 0);
-        // create new child node, if necessary
-        if ( n.children[i] == null ) {
-            n.children[i] = factory.getQuadTreeNode();
-            n.hasChildren = true;
+        return (location[2*p]>=splitx ? 1 : 0) 
+             + (location[2*p+1]>=splity ? 2 : 0);
+    }
+    
+    /**
+     * Returns the given child of a node, creating it if necessary.
+     */
+    private int child(int n, int i) {
+        int c = nodeChild[4*n+i];
+        if ( c < 0 ) {
+            c = newNode(nodeSize[n]/2);
+            nodeChild[4*n+i] = c;
         }
-        // update bounds
-        if ( i==1 || i==3 ) x1 = splitx; else x2 = splitx;
-        if ( i > 1 )        y1 = splity; else y2 = splity;
-        // recurse 
-        insert(p,n.children[i],x1,y1,x2,y2);        
+        return c;
     }
 
-    private void calcMass(QuadTreeNode n) {
-        double xcom = 0, ycom = 0;
-        n.mass = 0;
-        if ( n.hasChildren ) {
-            for ( int i=0; i < n.children.length; i++ ) {
-                if ( n.children[i] != null ) {
-                    calcMass(n.children[i]);
-                    n.mass += n.children[i].mass;
-                    xcom += n.children[i].mass * n.children[i].com[0];
-                    ycom += n.children[i].mass * n.children[i].com[1];
+    private boolean hasChildren(int n) {
+        // any non-negative child number clears the sign bit
+        return ( nodeChild[4*n] & nodeChild[4*n+1] 
+               & nodeChild[4*n+2] & nodeChild[4*n+3] ) >= 0;
+    }
+
+    private void calcMass() {
+        // children are always allocated after their parent, so visiting
+        // the nodes backwards handles children before parents
+        for ( int n = nodeCount-1; n >= 0; n-- ) {
+            double m = 0, xcom = 0, ycom = 0;
+            if ( hasChildren(n) ) {
+                for ( int i = 4*n; i < 4*n+4; i++ ) {
+                    int c = nodeChild[i];
+                    if ( c >= 0 ) {
+                        m += nodeMass[c];
+                        xcom += nodeMass[c] * nodeCom[2*c];
+                        ycom += nodeMass[c] * nodeCom[2*c+1];
+                    }
                 }
             }
+            int v = nodeValue[n];
+            if ( v >= 0 ) {
+                m += mass[v];
+                xcom += mass[v] * location[2*v];
+                ycom += mass[v] * location[2*v+1];
+            }
+            nodeMass[n] = m;
+            nodeCom[2*n]   = xcom / m;
+            nodeCom[2*n+1] = ycom / m;
         }
-        if ( n.value != null ) {
-            n.mass += n.value.mass;
-            xcom += n.value.mass * n.value.location[0];
-            ycom += n.value.mass * n.value.location[1];
-        }
-        n.com[0] = xcom / n.mass;
-        n.com[1] = ycom / n.mass;
     }
 
     /**
@@ -288,103 +449,144 @@ public class NBodyForce extends AbstractForce {
      * @param item the ForceItem for which to compute the force
      */
     public void getForce(ForceItem item) {
-        try {
-            forceHelper(item,root,xMin,yMin,xMax,yMax);
-        } catch ( StackOverflowError e ) {
-            // TODO: safe to remove?
-            e.printStackTrace();
+        double[] f = item.force;
+        int i = item.index;
+        if ( i < 0 || i >= count ) {
+            // not part of the tree, so it can't interact with itself
+            i = -1;
+        } else if ( precomputed ) {
+            f[0] += itemForce[2*i];
+            f[1] += itemForce[2*i+1];
+            return;
+        }
+        forceHelper(i,item.location[0],item.location[1],item.mass,f,0,stack);
+    }
+    
+    /**
+     * Calculates the force vectors acting on all items of a packed
+     * simulation.
+     * @see prefux.util.force.PackedForce#getForces(prefux.util.force.PackedForceSimulator)
+     */
+    public void getForces(PackedForceSimulator fsim) {
+        getForces(fsim.location, fsim.mass, fsim.force, fsim.itemCount);
+    }
+    
+    /**
+     * Adds the n-body forces acting on the first n items to the given
+     * force array, in parallel if the number of items warrants it.
+     */
+    private void getForces(double[] loc, double[] m, double[] f, int n) {
+        if ( executor.isParallel(n) ) {
+            int grain = Math.max(64, n / (8*executor.getParallelism()));
+            executor.getPool().invoke(new ForceTask(loc, m, f, 0, n, grain));
+        } else {
+            getForces(loc, m, f, 0, n, stack);
         }
     }
     
-    private void forceHelper(ForceItem item, QuadTreeNode n, 
-                             double x1, double y1, double x2, double y2)
+    private void getForces(double[] loc, double[] m, double[] f,
+                           int lo, int hi, int[] stack)
     {
-        double dx = n.com[0] - item.location[0];
-        double dy = n.com[1] - item.location[1];
-        double r  = (double)Math.sqrt(dx*dx+dy*dy);
-        boolean same = false;
-        if ( r == 0.0f ) {
-            // if items are in the exact same place, add some noise
-            dx = (rand.nextFloat()-0.5f) / 50.0f;
-            dy = (rand.nextFloat()-0.5f) / 50.0f;
-            r  = (double)Math.sqrt(dx*dx+dy*dy);
-            same = true;
+        for ( int i = lo; i < hi; i++ ) {
+            forceHelper(i,loc[2*i],loc[2*i+1],m[i],f,2*i,stack);
         }
-        boolean minDist = params[MIN_DISTANCE]>0f && r>params[MIN_DISTANCE];
-        
-        // the Barnes-Hut approximation criteria is if the ratio of the
-        // size of the quadtree box to the distance between the point and
-        // the box's center of mass is beneath some threshold theta.
-        if ( (!n.hasChildren && n.value != item) || 
-             (!same && (x2-x1)/r < params[BARNES_HUT_THETA]) ) 
-        {
-            if ( minDist ) return;
-            // either only 1 particle or we meet criteria
-            // for Barnes-Hut approximation, so calc force
-            double v = params[GRAVITATIONAL_CONST]*item.mass*n.mass 
-                        / (r*r*r);
-            item.force[0] += v*dx;
-            item.force[1] += v*dy;
-        } else if ( n.hasChildren ) {
-            // recurse for more accurate calculation
-            double splitx = (x1+x2)/2;
-            double splity = (y1+y2)/2;
-            for ( int i=0; i<n.children.length; i++ ) {
-                if ( n.children[i] != null ) {
-                    forceHelper(item, n.children[i],
-                        (i==1||i==3?splitx:x1), (i>1?splity:y1),
-                        (i==1||i==3?x2:splitx), (i>1?y2:splity));
-                }
+    }
+    
+    private void forceHelper(int item, double px, double py, double pmass,
+                             double[] f, int fi, int[] stack)
+    {
+        double g = params[GRAVITATIONAL_CONST];
+        double theta = params[BARNES_HUT_THETA];
+        double minDistance = params[MIN_DISTANCE];
+        double fx = 0, fy = 0;
+        int top = 0;
+        stack[top++] = 0;
+        while ( top > 0 ) {
+            int n = stack[--top];
+            double dx = nodeCom[2*n] - px;
+            double dy = nodeCom[2*n+1] - py;
+            double r  = Math.sqrt(dx*dx+dy*dy);
+            boolean same = false;
+            if ( r == 0.0f ) {
+                // if items are in the exact same place, add some noise
+                dx = noise(item, 0) / 50.0f;
+                dy = noise(item, 1) / 50.0f;
+                r  = Math.sqrt(dx*dx+dy*dy);
+                same = true;
             }
-            if ( minDist ) return;
-            if ( n.value != null && n.value != item ) {
-                double v = params[GRAVITATIONAL_CONST]*item.mass*n.value.mass
-                            / (r*r*r);
-                item.force[0] += v*dx;
-                item.force[1] += v*dy;
+            boolean minDist = minDistance>0f && r>minDistance;
+            int v = nodeValue[n];
+            
+            // the Barnes-Hut approximation criteria is if the ratio of the
+            // size of the quadtree box to the distance between the point and
+            // the box's center of mass is beneath some threshold theta.
+            if ( (!hasChildren(n) && v != item) || 
+                 (!same && nodeSize[n]/r < theta) ) 
+            {
+                if ( minDist ) continue;
+                // either only 1 particle or we meet criteria
+                // for Barnes-Hut approximation, so calc force
+                double c = g*pmass*nodeMass[n] / (r*r*r);
+                fx += c*dx;
+                fy += c*dy;
+            } else if ( hasChildren(n) ) {
+                // descend for more accurate calculation
+                for ( int i = 4*n+3; i >= 4*n; i-- ) {
+                    if ( nodeChild[i] >= 0 )
+                        stack[top++] = nodeChild[i];
+                }
+                if ( minDist ) continue;
+                if ( v >= 0 && v != item ) {
+                    double c = g*pmass*mass[v] / (r*r*r);
+                    fx += c*dx;
+                    fy += c*dy;
+                }
             }
         }
+        f[fi]   += fx;
+        f[fi+1] += fy;
     }
 
     /**
-     * Represents a node in the quadtree.
+     * Returns a pseudo-random value in [-0.5, 0.5) for the given item. The
+     * value depends only on the item and the current simulation step, so
+     * that results do not depend on the order in which items are processed.
      */
-    public static final class QuadTreeNode {
-        public QuadTreeNode() {
-            com = new double[] {0.0f, 0.0f};
-            children = new QuadTreeNode[4];
-        } //
-        boolean hasChildren = false;
-        double mass; // total mass held by this node
-        double[] com; // center of mass of this node 
-        ForceItem value; // ForceItem in this node, null if node has children
-        QuadTreeNode[] children; // children nodes
-    } // end of inner class QuadTreeNode
-
+    private double noise(int item, int salt) {
+        long z = seed + (2L*item + salt) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        return (z >>> 40) / (double)(1 << 24) - 0.5;
+    }
+    
     /**
-     * Helper class to minimize number of object creations across multiple
-     * uses of the quadtree.
+     * Computes the n-body forces of a range of items, splitting the range
+     * until it is small enough to be handled by a single task. Each task
+     * only writes the force values of its own items, so no synchronization
+     * is needed while the quadtree is not modified.
      */
-    public static final class QuadTreeNodeFactory {
-        private int maxNodes = 50000;
-        private ArrayList nodes = new ArrayList();
+    private final class ForceTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final double[] loc, m, f;
+        private final int lo, hi, grain;
+        
+        ForceTask(double[] loc, double[] m, double[] f,
+                  int lo, int hi, int grain)
+        {
+            this.loc = loc; this.m = m; this.f = f;
+            this.lo = lo; this.hi = hi; this.grain = grain;
+        }
         
-        public QuadTreeNode getQuadTreeNode() {
-            if ( nodes.size() > 0 ) {
-                return (QuadTreeNode)nodes.remove(nodes.size()-1);
+        protected void compute() {
+            if ( hi-lo <= grain ) {
+                getForces(loc, m, f, lo, hi, new int[stack.length]);
             } else {
-                return new QuadTreeNode();
+                int mid = (lo+hi) >>> 1;
+                invokeAll(new ForceTask(loc, m, f, lo, mid, grain),
+                          new ForceTask(loc, m, f, mid, hi, grain));
             }
         }
-        public void reclaim(QuadTreeNode n) {
-            n.mass = 0;
-            n.com[0] = 0.0f; n.com[1] = 0.0f;
-            n.value = null;
-            n.hasChildren = false;
-            Arrays.fill(n.children, null);          
-            if ( nodes.size() < maxNodes )
-                nodes.add(n);
-        }
-    } // end of inner class QuadTreeNodeFactory
-
+    } // end of inner class ForceTask
+    
 } // end of class NBodyForce
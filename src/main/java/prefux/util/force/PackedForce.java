@@ -0,0 +1,66 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.util.force;
+
+/**
+ * Interface for force functions that can operate directly on the primitive
+ * arrays of a {@link PackedForceSimulator}, rather than on individual
+ * {@link ForceItem} and {@link Spring} instances.
+ *
+ * @see PackedForceSimulator
+ */
+public interface PackedForce extends Force {
+
+    /**
+     * Initialize this force function for a packed simulation.
+     * @param fsim the encompassing PackedForceSimulator
+     */
+    public void init(PackedForceSimulator fsim);
+
+    /**
+     * Adds the forces computed by this force function to the force array of
+     * all items in the packed simulation. Only called if this force function
+     * is an item force.
+     * @param fsim the encompassing PackedForceSimulator
+     * @see Force#isItemForce()
+     */
+    public void getForces(PackedForceSimulator fsim);
+
+    /**
+     * Adds the forces computed by this force function for all springs in the
+     * packed simulation to the force array of the spring endpoints. Only
+     * called if this force function is a spring force.
+     * @param fsim the encompassing PackedForceSimulator
+     * @see Force#isSpringForce()
+     */
+    public void getSpringForces(PackedForceSimulator fsim);
+
+} // end of interface PackedForce
@@ -0,0 +1,389 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.util.force;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+import prefux.util.ArrayLib;
+
+/**
+ * <p>A ForceSimulator that runs the simulation on a packed, structure of
+ * arrays representation of its items and springs. At the start of each
+ * simulation step, mass, position, velocity and force values of all
+ * {@link ForceItem} instances are copied into contiguous primitive arrays
+ * indexed by item number, and the springs are translated into arrays of item
+ * numbers. Force functions implementing {@link PackedForce} and integrators
+ * implementing {@link PackedIntegrator} then run tight indexed loops over
+ * these arrays. When the step is complete, the new positions, velocities
+ * and forces are written back to the ForceItems.</p>
+ *
+ * <p>Between {@link #beginRun()} and {@link #endRun()}, the packed arrays
+ * hold the state of the simulation from one step to the next. Items and
+ * springs are only packed again after they have been added or removed, and
+ * the state is written back to the ForceItems once, when the run ends.</p>
+ *
+ * <p>The two-dimensional values are stored interleaved, so the x and y
+ * values of item <code>i</code> are found at index <code>2*i</code> and
+ * <code>2*i+1</code>. The Runge-Kutta temporaries are stored per item, so
+ * the x and y values of stage <code>s</code> of item <code>i</code> are found
+ * at index <code>8*i+2*s</code> and <code>8*i+2*s+1</code>. They are not
+ * written back to the ForceItems.</p>
+ *
+ * <p>Springs may refer to ForceItems that are not part of the simulation.
+ * Such items are packed behind the simulated items, at item numbers between
+ * {@link #itemCount} and {@link #packedCount}, so that springs can read their
+ * positions; they are neither moved nor written back.</p>
+ *
+ * <p>If any of the registered force functions does not implement
+ * {@link PackedForce}, or the integrator does not implement
+ * {@link PackedIntegrator}, the simulator falls back to the object based
+ * simulation of its super class.</p>
+ */
+public class PackedForceSimulator extends ForceSimulator {
+
+    /** The number of simulated items. */
+    public int itemCount;
+    /** The number of packed items, including items that are only
+     *  referenced by springs. */
+    public int packedCount;
+    /** The number of springs. */
+    public int springCount;
+
+    /** The mass values of the items. */
+    public double[] mass      = new double[0];
+    /** The interleaved location values of the items. */
+    public double[] location  = new double[0];
+    /** The interleaved previous location values of the items. */
+    public double[] plocation = new double[0];
+    /** The interleaved velocity values of the items. */
+    public double[] velocity  = new double[0];
+    /** The interleaved force values of the items. */
+    public double[] force     = new double[0];
+    /** Temporary values for Runge-Kutta integration. */
+    public double[] k         = new double[0];
+    /** Temporary values for Runge-Kutta integration. */
+    public double[] l         = new double[0];
+
+    /** The item number of the first endpoint of each spring. */
+    public int[]    springItem1  = new int[0];
+    /** The item number of the second endpoint of each spring. */
+    public int[]    springItem2  = new int[0];
+    /** The resting length of each spring. */
+    public double[] springLength = new double[0];
+    /** The tension co-efficient of each spring. */
+    public double[] springCoeff  = new double[0];
+
+    private Object[] m_items = new Object[0];
+    /** Indicates if a packed simulation step is running */
+    private boolean m_packed = false;
+    /** Indicates if the packed arrays hold the current simulation state */
+    private boolean m_valid = false;
+    /** Indicates if a run of simulation steps is in progress */
+    private boolean m_running = false;
+
+    /**
+     * Create a new, empty PackedForceSimulator. A RungeKuttaIntegrator is
+     * used by default.
+     */
+    public PackedForceSimulator() {
+        this(new RungeKuttaIntegrator());
+    }
+
+    /**
+     * Create a new, empty PackedForceSimulator.
+     * @param integr the Integrator to use
+     */
+    public PackedForceSimulator(Integrator integr) {
+        super(integr);
+    }
+
+    /**
+     * Indicates if the current force functions and integrator support
+     * packed simulation.
+     * @return true if the simulation can run on packed arrays, false if it
+     * has to fall back to the object based simulation
+     */
+    public boolean isPackable() {
+        if ( !(getIntegrator() instanceof PackedIntegrator) )
+            return false;
+        for ( int i = 0; i < iflen; i++ )
+            if ( !(iforces[i] instanceof PackedForce) ) return false;
+        for ( int i = 0; i < sflen; i++ )
+            if ( !(sforces[i] instanceof PackedForce) ) return false;
+        return true;
+    }
+
+    /**
+     * Get the ForceItem packed at the given item number. Only valid while
+     * a simulation step or a run of simulation steps is in progress.
+     * @param i the item number
+     * @return the ForceItem
+     */
+    public ForceItem getItem(int i) {
+        return (ForceItem)m_items[i];
+    }
+
+    /**
+     * Run the simulator for one timestep, using the packed representation
+     * if possible.
+     * @see prefux.util.force.ForceSimulator#runSimulator(long)
+     */
+    public long runSimulator(long timestep) {
+        if ( !isPackable() ) {
+            sync();
+            return super.runSimulator(timestep);
+        }
+        long start = System.nanoTime();
+        if ( !m_valid )
+            pack();
+        m_packed = true;
+        try {
+            accumulate();
+            long next = 
+                ((PackedIntegrator)getIntegrator()).integrate(this, timestep);
+            
+            double energy = 0, disp = 0;
+            for ( int i = 0; i < itemCount; i++ ) {
+                int x = 2*i, y = 2*i+1;
+                double dx = location[x]-plocation[x];
+                double dy = location[y]-plocation[y];
+                energy += 0.5*mass[i]*(velocity[x]*velocity[x]
+                                      +velocity[y]*velocity[y]);
+                disp = Math.max(disp, dx*dx+dy*dy);
+            }
+            setStepMetrics(energy, Math.sqrt(disp), start);
+            return next;
+        } finally {
+            m_packed = false;
+            if ( !m_running )
+                unpack();
+        }
+    }
+
+    /**
+     * Begin a run of simulation steps. Until {@link #endRun()}, the state
+     * of the simulation is kept in the packed arrays rather than written
+     * back to the ForceItems after each step.
+     * @see prefux.util.force.ForceSimulator#beginRun()
+     */
+    public void beginRun() {
+        m_running = true;
+    }
+
+    /**
+     * End a run of simulation steps, writing the state of the simulation
+     * back to the ForceItems.
+     * @see prefux.util.force.ForceSimulator#endRun()
+     */
+    public void endRun() {
+        m_running = false;
+        sync();
+    }
+
+    /**
+     * @see prefux.util.force.ForceSimulator#clear()
+     */
+    public void clear() {
+        sync();
+        super.clear();
+    }
+
+    /**
+     * @see prefux.util.force.ForceSimulator#addItem(prefux.util.force.ForceItem)
+     */
+    public void addItem(ForceItem item) {
+        sync();
+        super.addItem(item);
+    }
+
+    /**
+     * @see prefux.util.force.ForceSimulator#removeItem(prefux.util.force.ForceItem)
+     */
+    public boolean removeItem(ForceItem item) {
+        sync();
+        return super.removeItem(item);
+    }
+
+    /**
+     * @see prefux.util.force.ForceSimulator#removeItems(java.util.Collection)
+     */
+    public void removeItems(Collection<ForceItem> c) {
+        sync();
+        super.removeItems(c);
+    }
+
+    /**
+     * @see prefux.util.force.ForceSimulator#addSpring(prefux.util.force.ForceItem, prefux.util.force.ForceItem, double, double)
+     */
+    public Spring addSpring(ForceItem item1, ForceItem item2,
+                            double d, double e)
+    {
+        sync();
+        return super.addSpring(item1, item2, d, e);
+    }
+
+    /**
+     * @see prefux.util.force.ForceSimulator#removeSprings(java.util.Collection)
+     */
+    public void removeSprings(Collection<Spring> s) {
+        sync();
+        super.removeSprings(s);
+    }
+
+    /**
+     * Accumulate all forces acting on the items in this simulation. While a
+     * packed simulation step is running, the forces are accumulated on the
+     * packed arrays.
+     * @see prefux.util.force.ForceSimulator#accumulate()
+     */
+    public void accumulate() {
+        if ( !m_packed ) {
+            super.accumulate();
+            return;
+        }
+        for ( int i = 0; i < iflen; i++ )
+            ((PackedForce)iforces[i]).init(this);
+        for ( int i = 0; i < sflen; i++ )
+            ((PackedForce)sforces[i]).init(this);
+        double[] f = force;
+        for ( int i = 0, n = 2*itemCount; i < n; i++ )
+            f[i] = 0.0;
+        for ( int i = 0; i < iflen; i++ )
+            ((PackedForce)iforces[i]).getForces(this);
+        for ( int i = 0; i < sflen; i++ )
+            ((PackedForce)sforces[i]).getSpringForces(this);
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+     * Copies the state of all items and springs into the packed arrays.
+     */
+    protected void pack() {
+        int n = 0;
+        Iterator<ForceItem> iter = getItems();
+        while ( iter.hasNext() ) {
+            packItem(iter.next(), n++);
+        }
+        itemCount = packedCount = n;
+
+        int s = 0;
+        Iterator<Spring> siter = getSprings();
+        while ( siter.hasNext() ) {
+            Spring spring = siter.next();
+            if ( s == springItem1.length )
+                growSprings(s+1);
+            springItem1[s]  = indexOf(spring.item1);
+            springItem2[s]  = indexOf(spring.item2);
+            springLength[s] = spring.length;
+            springCoeff[s]  = spring.coeff;
+            ++s;
+        }
+        springCount = s;
+        m_valid = true;
+    }
+
+    /**
+     * Writes the new state of all simulated items back to the ForceItems.
+     */
+    protected void unpack() {
+        m_valid = false;
+        for ( int i = 0; i < itemCount; i++ ) {
+            ForceItem item = (ForceItem)m_items[i];
+            int x = 2*i, y = 2*i+1;
+            item.location[0]  = location[x];  item.location[1]  = location[y];
+            item.plocation[0] = plocation[x]; item.plocation[1] = plocation[y];
+            item.velocity[0]  = velocity[x];  item.velocity[1]  = velocity[y];
+            item.force[0]     = force[x];     item.force[1]     = force[y];
+        }
+        // don't hold on to items that may leave the simulation
+        for ( int i = 0; i < packedCount; i++ )
+            m_items[i] = null;
+    }
+
+    /**
+     * Writes the state held in the packed arrays back to the ForceItems, if
+     * it is newer, so that the items can be changed or read and packed
+     * again on the next step.
+     */
+    private void sync() {
+        if ( m_valid )
+            unpack();
+    }
+
+    /**
+     * Returns the item number of a spring endpoint, packing the item behind
+     * the simulated items if it is not part of the simulation.
+     */
+    private int indexOf(ForceItem item) {
+        int i = item.index;
+        if ( i >= 0 && i < packedCount && m_items[i] == item )
+            return i;
+        i = packedCount++;
+        packItem(item, i);
+        return i;
+    }
+
+    private void packItem(ForceItem item, int i) {
+        if ( i == m_items.length )
+            growItems(i+1);
+        item.index = i;
+        m_items[i] = item;
+        mass[i] = item.mass;
+        int x = 2*i, y = 2*i+1;
+        location[x]  = item.location[0];  location[y]  = item.location[1];
+        plocation[x] = item.plocation[0]; plocation[y] = item.plocation[1];
+        velocity[x]  = item.velocity[0];  velocity[y]  = item.velocity[1];
+        force[x]     = item.force[0];     force[y]     = item.force[1];
+    }
+
+    private void growItems(int min) {
+        int cap = Math.max(min, (3*m_items.length)/2 + 16);
+        m_items   = ArrayLib.resize(m_items, cap);
+        mass      = ArrayLib.resize(mass, cap);
+        location  = ArrayLib.resize(location, 2*cap);
+        plocation = ArrayLib.resize(plocation, 2*cap);
+        velocity  = ArrayLib.resize(velocity, 2*cap);
+        force     = ArrayLib.resize(force, 2*cap);
+        k         = new double[8*cap];
+        l         = new double[8*cap];
+    }
+
+    private void growSprings(int min) {
+        int cap = Math.max(min, (3*springItem1.length)/2 + 16);
+        springItem1  = ArrayLib.resize(springItem1, cap);
+        springItem2  = ArrayLib.resize(springItem2, cap);
+        springLength = ArrayLib.resize(springLength, cap);
+        springCoeff  = ArrayLib.resize(springCoeff, cap);
+    }
+
+} // end of class PackedForceSimulator
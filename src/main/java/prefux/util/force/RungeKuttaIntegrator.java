@@ -42,7 +42,7 @@ import org.apache.logging.log4j.Logger;
  *
  * @author <a href="http://jheer.org">jeffrey heer</a>
  */
-public class RungeKuttaIntegrator implements Integrator {
+public class RungeKuttaIntegrator implements PackedIntegrator {
 	
 	private static final Logger log = LogManager.getLogger(RungeKuttaIntegrator.class);
 	
@@ -171,12 +171,108 @@ public class RungeKuttaIntegrator implements Integrator {
             item.velocity[0] += vx;
             item.velocity[1] += vy;
         }
+        return nextTimestep(q, items, timestep);
+    }
+
+    /**
+     * Integrates a packed simulation, using the same method as
+     * {@link #integrate(ForceSimulator, long)} on the packed arrays.
+     * @see prefux.util.force.PackedIntegrator#integrate(prefux.util.force.PackedForceSimulator, long)
+     */
+    public long integrate(PackedForceSimulator sim, long timestep) {
+        double speedLimit = sim.getSpeedLimit();
+        double vx, vy, v, coeff;
+        int n = sim.itemCount;
+        double[] loc = sim.location, ploc = sim.plocation, vel = sim.velocity;
+        double[] force = sim.force, mass = sim.mass;
+        double[] k = sim.k, l = sim.l;
+        
+        for ( int i = 0; i < n; i++ ) {
+            int x = 2*i, y = x+1, s = 8*i;
+            coeff = timestep / mass[i];
+            ploc[x] = loc[x];
+            ploc[y] = loc[y];
+            k[s]   = timestep*vel[x];
+            k[s+1] = timestep*vel[y];
+            l[s]   = coeff*force[x];
+            l[s+1] = coeff*force[y];
+            
+            // Set the position to the new predicted position
+            loc[x] += 0.5*k[s];
+            loc[y] += 0.5*k[s+1];
+        }
+        
+        // recalculate forces, then run the two intermediate stages
+        for ( int stage = 1; stage < 3; stage++ ) {
+            sim.accumulate();
+            for ( int i = 0; i < n; i++ ) {
+                int x = 2*i, y = x+1, s = 8*i+2*stage, p = s-2;
+                coeff = timestep / mass[i];
+                vx = vel[x] + .5*l[p];
+                vy = vel[y] + .5*l[p+1];
+                v = Math.sqrt(vx*vx+vy*vy);
+                if ( v > speedLimit ) {
+                    vx = speedLimit * vx / v;
+                    vy = speedLimit * vy / v;
+                }
+                k[s]   = timestep*vx;
+                k[s+1] = timestep*vy;
+                l[s]   = coeff*force[x];
+                l[s+1] = coeff*force[y];
+                
+                // Set the position to the new predicted position
+                loc[x] = ploc[x] + 0.5*k[s];
+                loc[y] = ploc[y] + 0.5*k[s+1];
+            }
+        }
+        
+        // recalculate forces
+        sim.accumulate();
+        
+        double q=0.0;
+        for ( int i = 0; i < n; i++ ) {
+            int x = 2*i, y = x+1, s = 8*i;
+            coeff = timestep / mass[i];
+            vx = vel[x] + l[s+4];
+            vy = vel[y] + l[s+5];
+            v = Math.sqrt(vx*vx+vy*vy);
+            if ( v > speedLimit ) {
+                vx = speedLimit * vx / v;
+                vy = speedLimit * vy / v;
+            }
+            k[s+6] = timestep*vx;
+            k[s+7] = timestep*vy;
+            l[s+6] = coeff*force[x];
+            l[s+7] = coeff*force[y];
+            loc[x] = ploc[x] + (k[s]+k[s+6])/6.0 + (k[s+2]+k[s+4])/3.0;
+            loc[y] = ploc[y] + (k[s+1]+k[s+7])/6.0 + (k[s+3]+k[s+5])/3.0;
+            double qx = (k[s+4]- k[s+2])/(k[s+2]-k[s]);
+            double qy = (k[s+5]- k[s+3])/(k[s+3]-k[s+1]);
+            q+=qx*qx+qy*qx;
+            vx = (l[s]+l[s+6])/6.0 + (l[s+2]+l[s+4])/3.0;
+            vy = (l[s+1]+l[s+7])/6.0 + (l[s+3]+l[s+5])/3.0;
+            v = Math.sqrt(vx*vx+vy*vy);
+            if ( v > speedLimit ) {
+                vx = speedLimit * vx / v;
+                vy = speedLimit * vy / v;
+            }
+            vel[x] += vx;
+            vel[y] += vy;
+        }
+        return nextTimestep(q, n, timestep);
+    }
+    
+    /**
+     * Computes the recommended timestep for the next iteration from the
+     * summed q-Factors of all items.
+     */
+    private long nextTimestep(double q, int items, long timestep) {
         q=Math.sqrt(q)/items;
         if (timestep==0 || q==Double.NaN) {
         	return 20;
-        } else if (q>5.0) {
+        } else if (q>Q_MAX) {
         	return (long)(timestep*.8);
-        } else if (q<0.2) {
+        } else if (q<Q_MIN) {
         	return (long)(timestep*1.2);
         }
         //log.debug("Q-Factor: "+q+" "+timestep);
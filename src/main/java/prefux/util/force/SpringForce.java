@@ -31,13 +31,21 @@
 
 package prefux.util.force;
 
+import java.util.concurrent.RecursiveAction;
+
 /**
  * Force function that computes the force acting on ForceItems due to a
  * given Spring.
  * 
+ * <p>In a {@link PackedForceSimulator} with many springs, the springs are
+ * split into one range per thread, and each range accumulates its forces
+ * into a separate buffer. The buffers are then summed up in a fixed order,
+ * so the result does not depend on thread scheduling; see
+ * {@link #setParallelism(int)} and {@link #setParallelThreshold(int)}.</p>
+ * 
  * @author <a href="http://jheer.org">jeffrey heer</a>
  */
-public class SpringForce extends AbstractForce {
+public class SpringForce extends AbstractForce implements PackedForce {
 
     private static String[] pnames 
         = new String[] { "SpringCoefficient", "DefaultSpringLength" };
@@ -51,6 +59,15 @@ public class SpringForce extends AbstractForce {
     public static final int SPRING_COEFF = 0;
     public static final int SPRING_LENGTH = 1;
     
+    /** The default number of springs from which on forces are computed in
+     *  parallel. */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 20000;
+    
+    private ForceExecutor executor =
+        new ForceExecutor(DEFAULT_PARALLEL_THRESHOLD);
+    // per-thread force buffers for parallel computation
+    private double[][] buffers = new double[0][];
+    
     /**
      * Create a new SpringForce.
      * @param springCoeff the default spring co-efficient to use. This will
@@ -73,6 +90,44 @@ public class SpringForce extends AbstractForce {
         this(DEFAULT_SPRING_COEFF, DEFAULT_SPRING_LENGTH);
     }
 
+    /**
+     * Get the number of threads used to compute spring forces in parallel.
+     * @return the parallelism level
+     */
+    public int getParallelism() {
+        return executor.getParallelism();
+    }
+    
+    /**
+     * Set the number of threads used to compute spring forces in parallel.
+     * A value of zero (the default) uses the common ForkJoinPool, a value
+     * of one always computes forces on the calling thread, and larger values
+     * use a dedicated pool with the given number of threads.
+     * @param parallelism the parallelism level
+     */
+    public void setParallelism(int parallelism) {
+        executor.setParallelism(parallelism);
+    }
+    
+    /**
+     * Get the number of springs from which on forces are computed in
+     * parallel.
+     * @return the parallel threshold
+     */
+    public int getParallelThreshold() {
+        return executor.getThreshold();
+    }
+    
+    /**
+     * Set the number of springs from which on forces are computed in
+     * parallel. Smaller simulations are computed on the calling thread.
+     * Parallel computation is only available for packed simulations.
+     * @param threshold the parallel threshold
+     */
+    public void setParallelThreshold(int threshold) {
+        executor.setThreshold(threshold);
+    }
+
     /**
      * Returns true.
      * @see prefux.util.force.Force#isSpringForce()
@@ -113,5 +168,106 @@ public class SpringForce extends AbstractForce {
         item2.force[0] += -coeff*dx;
         item2.force[1] += -coeff*dy;
     }
+
+    /**
+     * Calculates the force vectors acting on the items due to all springs
+     * of a packed simulation.
+     * @see prefux.util.force.PackedForce#getSpringForces(prefux.util.force.PackedForceSimulator)
+     */
+    public void getSpringForces(PackedForceSimulator fsim) {
+        int n = fsim.springCount;
+        if ( !executor.isParallel(n) ) {
+            getSpringForces(fsim, fsim.force, 0, n);
+            return;
+        }
+        int chunks = executor.getParallelism();
+        int len = 2*fsim.packedCount;
+        if ( buffers.length != chunks )
+            buffers = new double[chunks][];
+        for ( int c = 0; c < chunks; c++ ) {
+            if ( buffers[c] == null || buffers[c].length < len )
+                buffers[c] = new double[fsim.force.length];
+        }
+        executor.getPool().invoke(new SpringTask(fsim, -1, false));
+    }
+    
+    /**
+     * Adds the forces of the springs in the given range to a force array.
+     */
+    private void getSpringForces(PackedForceSimulator fsim, double[] force,
+                                 int lo, int hi)
+    {
+        double defaultLength = params[SPRING_LENGTH];
+        double defaultCoeff = params[SPRING_COEFF];
+        double[] loc = fsim.location;
+        int[] item1 = fsim.springItem1, item2 = fsim.springItem2;
+        double[] lengths = fsim.springLength, coeffs = fsim.springCoeff;
+        for ( int s = lo; s < hi; s++ ) {
+            int i1 = 2*item1[s], i2 = 2*item2[s];
+            double length = (lengths[s] < 0 ? defaultLength : lengths[s]);
+            double dx = loc[i2]-loc[i1], dy = loc[i2+1]-loc[i1+1];
+            double r  = Math.sqrt(dx*dx+dy*dy);
+            if ( r == 0.0 ) {
+                dx = (Math.random()-0.5f) / 50.0f;
+                dy = (Math.random()-0.5f) / 50.0f;
+                r  = Math.sqrt(dx*dx+dy*dy);
+            }
+            double d = r-length;
+            double coeff = (coeffs[s] < 0 ? defaultCoeff : coeffs[s])*d/r;
+            force[i1]   += coeff*dx;
+            force[i1+1] += coeff*dy;
+            force[i2]   += -coeff*dx;
+            force[i2+1] += -coeff*dy;
+        }
+    }
+    
+    /**
+     * Computes the spring forces of a packed simulation in parallel. The
+     * root task first lets one task per buffer accumulate the forces of a
+     * range of springs, and then lets one task per range of items add the
+     * buffered values to the force array.
+     */
+    private final class SpringTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final PackedForceSimulator fsim;
+        private final int chunk;
+        private final boolean reduce;
+        
+        SpringTask(PackedForceSimulator fsim, int chunk, boolean reduce) {
+            this.fsim = fsim;
+            this.chunk = chunk;
+            this.reduce = reduce;
+        }
+        
+        protected void compute() {
+            int chunks = buffers.length;
+            if ( chunk < 0 ) {
+                SpringTask[] tasks = new SpringTask[chunks];
+                for ( int c = 0; c < chunks; c++ )
+                    tasks[c] = new SpringTask(fsim, c, false);
+                invokeAll(tasks);
+                for ( int c = 0; c < chunks; c++ )
+                    tasks[c] = new SpringTask(fsim, c, true);
+                invokeAll(tasks);
+            } else if ( !reduce ) {
+                double[] buf = buffers[chunk];
+                for ( int i = 0, len = 2*fsim.packedCount; i < len; i++ )
+                    buf[i] = 0;
+                int n = fsim.springCount;
+                getSpringForces(fsim, buf, 
+                    (int)((long)n*chunk/chunks), (int)((long)n*(chunk+1)/chunks));
+            } else {
+                double[] force = fsim.force;
+                int n = 2*fsim.packedCount;
+                int hi = (int)((long)n*(chunk+1)/chunks);
+                for ( int i = (int)((long)n*chunk/chunks); i < hi; i++ ) {
+                    double f = force[i];
+                    for ( int c = 0; c < chunks; c++ )
+                        f += buffers[c][i];
+                    force[i] = f;
+                }
+            }
+        }
+    } // end of inner class SpringTask
     
 } // end of class SpringForce
@@ -0,0 +1,257 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.visual;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+import prefux.visual.tuple.TableVisualItem;
+
+/**
+ * <p>Synchronizes the values of a {@link VisualTable} with the JavaFX
+ * properties of its visual items, such as
+ * {@link VisualItem#xProperty()} or {@link VisualItem#fillColorProperty()}.</p>
+ *
+ * <p>Table updates may happen on any thread, typically the thread of the
+ * {@link prefux.activity.ActivityManager}, while the properties must only be
+ * changed on the JavaFX application thread. Rather than posting one runnable
+ * per changed cell, changes are recorded as a set of dirty rows, each with a
+ * mask of dirty properties. Repeated changes of the same cell before the next
+ * frame are coalesced. Once per pulse, an {@link AnimationTimer} drains the
+ * dirty set and pushes the current table values into the properties of all
+ * affected items in a single pass. The timer is stopped again as soon as a
+ * pulse finds no dirty rows.</p>
+ *
+ * <p>The values of all affected items are read at once with
+ * {@link prefux.data.Table#tryRead(Runnable)}, so a frame shows the table as
+ * it was at a single point in time. If the table is write locked, e.g.
+ * during a batch, the rows are kept dirty and read on a later pulse.</p>
+ *
+ * <p>Each VisualTable owns one PropertySync, available through
+ * {@link VisualTable#getPropertySync()}.</p>
+ */
+public class PropertySync {
+
+    private final VisualTable m_table;
+
+    // dirty state, guarded by this
+    private final BitSet m_dirty = new BitSet();
+    private int[] m_masks = new int[0];
+    private boolean m_scheduled = false;
+
+    // drain buffers, only used on the JavaFX application thread
+    private int[] m_rows = new int[0];
+    private int[] m_rowMasks = new int[0];
+    private TableVisualItem[] m_items = new TableVisualItem[0];
+    private double[] m_values = new double[0];
+    private AnimationTimer m_timer;
+
+    private ReadOnlyIntegerWrapper m_rowsSynced = new ReadOnlyIntegerWrapper(
+            this, "rowsSynced");
+
+    /**
+     * Create a new PropertySync for the given table.
+     *
+     * @param table
+     *            the VisualTable whose items should be synchronized
+     */
+    PropertySync(VisualTable table) {
+        m_table = table;
+    }
+
+    /**
+     * Mark properties of the item at the given row as out of date. The
+     * properties will be updated with the table values on the next pulse of
+     * the JavaFX application thread. This method may be called from any
+     * thread.
+     *
+     * @param row
+     *            the table row of the item
+     * @param mask
+     *            the properties to update, as a bit mask defined by the item
+     *            type
+     */
+    public void markDirty(int row, int mask) {
+        if (row < 0 || mask == 0)
+            return;
+        boolean start;
+        synchronized (this) {
+            if (row >= m_masks.length) {
+                int capacity = Math.max((3 * m_masks.length) / 2 + 1, row + 1);
+                int[] masks = new int[capacity];
+                System.arraycopy(m_masks, 0, masks, 0, m_masks.length);
+                m_masks = masks;
+            }
+            m_masks[row] |= mask;
+            m_dirty.set(row);
+            start = !m_scheduled;
+            m_scheduled = true;
+        }
+        if (start) {
+            try {
+                Platform.runLater(this::start);
+            } catch (IllegalStateException e) {
+                // toolkit not running, keep the changes until it is
+                synchronized (this) {
+                    m_scheduled = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Indicates if there are changes waiting to be synchronized.
+     *
+     * @return true if at least one row is dirty
+     */
+    public synchronized boolean isDirty() {
+        return !m_dirty.isEmpty();
+    }
+
+    /**
+     * Immediately push all pending changes into the item properties. Must be
+     * called on the JavaFX application thread. This is done automatically
+     * once per pulse, but may be called to flush the changes early.
+     *
+     * @return the number of rows that were synchronized, zero if the table
+     *         is write locked
+     */
+    public int sync() {
+        int n;
+        synchronized (this) {
+            n = m_dirty.cardinality();
+            if (n == 0)
+                return 0;
+            if (m_rows.length < n) {
+                m_rows = new int[n];
+                m_rowMasks = new int[n];
+            }
+            int i = 0;
+            for (int r = m_dirty.nextSetBit(0); r >= 0; r = m_dirty
+                    .nextSetBit(r + 1)) {
+                m_rows[i] = r;
+                m_rowMasks[i++] = m_masks[r];
+                m_masks[r] = 0;
+            }
+            m_dirty.clear();
+        }
+        // read the table values outside of the lock
+        final int count = n;
+        if (m_items.length < n) {
+            m_items = new TableVisualItem[n];
+            m_values = new double[n * TableVisualItem.SYNC_COLUMN_COUNT];
+        }
+        boolean read = m_table.tryRead(() -> {
+            for (int i = 0; i < count; ++i) {
+                TableVisualItem item = m_table.getRegisteredItem(m_rows[i]);
+                m_items[i] = item;
+                if (item != null)
+                    item.readProperties(m_rowMasks[i], m_values,
+                            i * TableVisualItem.SYNC_COLUMN_COUNT);
+            }
+        });
+        if (!read) {
+            // keep the rows dirty until the writer is done
+            synchronized (this) {
+                for (int i = 0; i < n; ++i) {
+                    m_masks[m_rows[i]] |= m_rowMasks[i];
+                    m_dirty.set(m_rows[i]);
+                }
+            }
+            Arrays.fill(m_items, 0, n, null);
+            return 0;
+        }
+        for (int i = 0; i < n; ++i) {
+            if (m_items[i] != null)
+                m_items[i].applyProperties(m_rowMasks[i], m_values,
+                        i * TableVisualItem.SYNC_COLUMN_COUNT);
+            m_items[i] = null;
+        }
+        return n;
+    }
+
+    /**
+     * Get the number of rows that were synchronized in the last pulse.
+     *
+     * @return the number of rows synchronized per frame
+     */
+    public int getRowsSynced() {
+        return m_rowsSynced.get();
+    }
+
+    /**
+     * The number of rows that were synchronized in the last pulse. Only
+     * updated on the JavaFX application thread. Drops to zero when the
+     * table has not changed for a pulse.
+     *
+     * @return the rows synchronized per frame property
+     */
+    public ReadOnlyIntegerProperty rowsSyncedProperty() {
+        return m_rowsSynced.getReadOnlyProperty();
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+     * Start the timer. The timer is created lazily on the JavaFX application
+     * thread, so tables can be used without a running toolkit.
+     */
+    private void start() {
+        if (m_timer == null) {
+            m_timer = new AnimationTimer() {
+                public void handle(long now) {
+                    pulse();
+                }
+            };
+        }
+        m_timer.start();
+    }
+
+    /**
+     * Synchronize the dirty rows, or stop the timer if there are none.
+     */
+    private void pulse() {
+        synchronized (this) {
+            if (m_dirty.isEmpty()) {
+                m_scheduled = false;
+                m_timer.stop();
+                m_rowsSynced.set(0);
+                return;
+            }
+        }
+        m_rowsSynced.set(sync());
+    }
+
+} // end of class PropertySync
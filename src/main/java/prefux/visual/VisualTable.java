@@ -41,6 +41,8 @@ import prefux.data.Tuple;
 import prefux.data.event.EventConstants;
 import prefux.data.expression.Predicate;
 import prefux.data.util.Rectangle2D;
+import prefux.util.collections.IntIterator;
+import prefux.util.display.SpatialIndex;
 import prefux.visual.tuple.TableVisualItem;
 
 /**
@@ -60,6 +62,13 @@ public class VisualTable extends CascadedTable implements VisualTupleSet {
     private Visualization m_vis;
     private String m_group;
 
+    /** Visual items by row, receiving value updates from this table */
+    private volatile TableVisualItem[] m_items;
+    /** Batched synchronization of item properties with table values */
+    private final PropertySync m_sync = new PropertySync(this);
+    /** Spatial index over the item extents, created on demand */
+    private volatile SpatialIndex m_spatial;
+
 
     // ------------------------------------------------------------------------
     // Constructors
@@ -219,6 +228,151 @@ public class VisualTable extends CascadedTable implements VisualTupleSet {
         }
         // now propagate the change event
         super.fireTableEvent(row0, row1, col, type);
+
+        // keep the spatial index up to date
+        SpatialIndex index = m_spatial;
+        if (index != null)
+            updateSpatialIndex(index, row0, row1, col, type);
+
+        // route updates directly to the affected items
+        TableVisualItem[] items = m_items;
+        if (items == null) {
+            return;
+        } else if (type == EventConstants.UPDATE) {
+            int end = Math.min(row1, items.length - 1);
+            for (int r = Math.max(row0, 0); r <= end; ++r) {
+                TableVisualItem item = items[r];
+                if (item != null && item.getRow() == r)
+                    item.tableChanged(this, r, r, col, type);
+            }
+        } else if (type == EventConstants.DELETE
+                && col == EventConstants.ALL_COLUMNS) {
+            int end = Math.min(row1, items.length - 1);
+            for (int r = Math.max(row0, 0); r <= end; ++r)
+                items[r] = null;
+        }
+    }
+
+    /**
+     * Register a visual item to receive value updates for its row. Instead of
+     * adding a table listener per item, which makes each table event cost
+     * time linear in the number of items, this table keeps a single row
+     * indexed array of items and notifies only the item whose row changed.
+     * Items are unregistered automatically when their row is deleted or
+     * when they are replaced by another item for the same row.
+     * 
+     * @param item
+     *            the visual item to register, backed by this table
+     */
+    public void registerItem(TableVisualItem item) {
+        int row = item.getRow();
+        if (row < 0)
+            return;
+        if (m_items == null) {
+            m_items = new TableVisualItem[Math.max(getRowCount(), row + 1)];
+        } else if (m_items.length <= row) {
+            int capacity = Math.max((3 * m_items.length) / 2 + 1, row + 1);
+            TableVisualItem[] items = new TableVisualItem[capacity];
+            System.arraycopy(m_items, 0, items, 0, m_items.length);
+            m_items = items;
+        }
+        m_items[row] = item;
+    }
+
+    /**
+     * Get the visual item registered for the given row.
+     * 
+     * @param row
+     *            the table row
+     * @return the registered item, or null if there is no valid item
+     */
+    TableVisualItem getRegisteredItem(int row) {
+        TableVisualItem[] items = m_items;
+        if (items == null || row < 0 || row >= items.length)
+            return null;
+        TableVisualItem item = items[row];
+        return (item != null && item.getRow() == row) ? item : null;
+    }
+
+    /**
+     * Get the spatial index over the extents of the items in this table. The
+     * index is built on the first call, and then kept up to date as items are
+     * added, removed or moved. The entry ids are the table rows. The extent
+     * of an item is its bounding box if the bounds have been set to a non
+     * empty rectangle, and its location otherwise. Point queries should
+     * therefore search a small region around the point and check the
+     * candidates with {@link prefux.render.Renderer#locatePoint}.
+     * 
+     * <p>
+     * Tables of edge items have no spatial index, as the extent of an edge
+     * depends on the locations of its end points in the node table.
+     * </p>
+     * 
+     * @return the spatial index, or null for tables of edge items
+     */
+    public synchronized SpatialIndex getSpatialIndex() {
+        if (m_spatial == null
+                && !EdgeItem.class.isAssignableFrom(m_tuples.getTupleType())) {
+            SpatialIndex index = new SpatialIndex();
+            IntIterator rows = rows();
+            while (rows.hasNext())
+                updateExtent(index, rows.nextInt());
+            m_spatial = index;
+        }
+        return m_spatial;
+    }
+
+    /**
+     * Update the spatial index for a table event.
+     */
+    private void updateSpatialIndex(SpatialIndex index, int row0, int row1,
+            int col, int type) {
+        if (col == EventConstants.ALL_COLUMNS) {
+            if (type == EventConstants.DELETE) {
+                for (int r = row0; r <= row1; ++r)
+                    index.remove(r);
+                return;
+            } else if (type != EventConstants.INSERT) {
+                return;
+            }
+        } else if (type == EventConstants.UPDATE) {
+            String field = getColumnName(col);
+            if (!VisualItem.X.equals(field) && !VisualItem.Y.equals(field)
+                    && !VisualItem.BOUNDS.equals(field))
+                return;
+        } else {
+            return;
+        }
+        for (int r = row0; r <= row1; ++r) {
+            if (isValidRow(r))
+                updateExtent(index, r);
+        }
+    }
+
+    /**
+     * Store the current extent of an item in the spatial index.
+     */
+    private void updateExtent(SpatialIndex index, int row) {
+        Rectangle2D b = null;
+        if (canGet(VisualItem.BOUNDS, Rectangle2D.class))
+            b = getBounds(row);
+        if (b != null && (b.getWidth() > 0 || b.getHeight() > 0)) {
+            index.update(row, b.getMinX(), b.getMinY(), b.getMaxX(),
+                    b.getMaxY());
+        } else {
+            double x = getX(row), y = getY(row);
+            index.update(row, x, y, x, y);
+        }
+    }
+
+    /**
+     * Get the PropertySync that pushes the values of this table into the
+     * JavaFX properties of its visual items.
+     * 
+     * @return the PropertySync of this table
+     */
+    public PropertySync getPropertySync() {
+        return m_sync;
     }
 
     // ------------------------------------------------------------------------
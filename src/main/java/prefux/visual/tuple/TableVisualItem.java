@@ -37,7 +37,6 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 
-import javafx.application.Platform;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleDoubleProperty;
@@ -77,6 +76,20 @@ public class TableVisualItem extends TableTuple<VisualTable> implements
 
 	private boolean ignoreTableUpdate = false;
 
+	/**
+	 * The columns backed by JavaFX properties. The index of a column in this
+	 * array is its bit in the masks passed to {@link #syncProperties(int)}.
+	 */
+	protected static final String[] SYNC_COLUMNS = { VisualItem.X,
+	        VisualItem.Y, VisualItem.STARTX, VisualItem.STARTY,
+	        VisualItem.ENDX, VisualItem.ENDY, VisualItem.SIZE,
+	        VisualItem.FILLCOLOR };
+
+	/**
+	 * The number of values read by {@link #readProperties(int, double[], int)}.
+	 */
+	public static final int SYNC_COLUMN_COUNT = SYNC_COLUMNS.length;
+
 	private final DoubleProperty xProp = new SimpleDoubleProperty();
 	private final DoubleProperty yProp = new SimpleDoubleProperty();
 	private final DoubleProperty startXProp = new SimpleDoubleProperty();
@@ -124,7 +137,7 @@ public class TableVisualItem extends TableTuple<VisualTable> implements
 	protected void init(VisualTable table, Graph graph, int row) {
 		m_table = table;
 		m_row = m_table.isValidRow(row) ? row : -1;
-		m_table.addTableListener(this);
+		m_table.registerItem(this);
 		// PROPERTIES.entrySet().forEach(en -> {
 		// en.getValue().addListener(this);
 		// });
@@ -768,22 +781,98 @@ public class TableVisualItem extends TableTuple<VisualTable> implements
 		return fillColorProp;
 	}
 
+	/**
+	 * Marks the property of an updated column as dirty. The property is
+	 * updated in batch by the {@link prefux.visual.PropertySync} of the
+	 * backing table on the next pulse of the JavaFX application thread.
+	 * 
+	 * @see prefux.data.event.TableListener#tableChanged(prefux.data.Table,
+	 *      int, int, int, int)
+	 */
 	@Override
 	public void tableChanged(Table t, int start, int end, int col, int type) {
 		if (!ignoreTableUpdate && type == EventConstants.UPDATE
-		        && (start == m_row) && (start == end)) {
+		        && (start == m_row) && (start == end) && col >= 0) {
 			String colName = getColumnName(col);
+			for (int i = 0; i < SYNC_COLUMNS.length; ++i) {
+				if (SYNC_COLUMNS[i].equals(colName)) {
+					m_table.getPropertySync().markDirty(m_row, 1 << i);
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Push the current table values into the JavaFX properties of this item.
+	 * Must be called on the JavaFX application thread.
+	 * 
+	 * @param mask
+	 *            the properties to update, with one bit per entry of
+	 *            {@link #SYNC_COLUMNS}
+	 */
+	public void syncProperties(int mask) {
+		double[] values = new double[SYNC_COLUMN_COUNT];
+		readProperties(mask, values, 0);
+		applyProperties(mask, values, 0);
+	}
+
+	/**
+	 * Read the current table values of the JavaFX properties of this item,
+	 * without updating the properties. Integer values are stored exactly.
+	 * This allows reading the values of many items at once, see
+	 * {@link prefux.data.Table#tryRead(Runnable)}.
+	 * 
+	 * @param mask
+	 *            the properties to read, with one bit per entry of
+	 *            {@link #SYNC_COLUMNS}
+	 * @param values
+	 *            the array receiving the values
+	 * @param offset
+	 *            the index in the array of the value of the first entry of
+	 *            {@link #SYNC_COLUMNS}
+	 */
+	public void readProperties(int mask, double[] values, int offset) {
+		if (m_row < 0)
+			return;
+		for (int i = 0; i < SYNC_COLUMNS.length; ++i) {
+			if ((mask & (1 << i)) == 0)
+				continue;
+			String colName = SYNC_COLUMNS[i];
 			if (DOUBLE_PROPERTIES.containsKey(colName)) {
-				Platform.runLater(() -> {
-					DOUBLE_PROPERTIES.get(colName).set(t.getDouble(m_row, col));
-				});
-			} else if (INT_PROPERTIES.containsKey(colName)) {
-				Platform.runLater(() -> {
-					INT_PROPERTIES.get(colName).set(t.getInt(m_row, col));
-				});
+				values[offset + i] = m_table.getDouble(m_row, colName);
+			} else {
+				values[offset + i] = m_table.getInt(m_row, colName);
 			}
 		}
+	}
 
+	/**
+	 * Update the JavaFX properties of this item with values read by
+	 * {@link #readProperties(int, double[], int)}. Must be called on the
+	 * JavaFX application thread.
+	 * 
+	 * @param mask
+	 *            the properties to update, as passed when reading
+	 * @param values
+	 *            the array holding the values
+	 * @param offset
+	 *            the offset passed when reading
+	 */
+	public void applyProperties(int mask, double[] values, int offset) {
+		if (m_row < 0)
+			return;
+		for (int i = 0; i < SYNC_COLUMNS.length; ++i) {
+			if ((mask & (1 << i)) == 0)
+				continue;
+			String colName = SYNC_COLUMNS[i];
+			DoubleProperty dp = DOUBLE_PROPERTIES.get(colName);
+			if (dp != null) {
+				dp.set(values[offset + i]);
+			} else {
+				INT_PROPERTIES.get(colName).set((int) values[offset + i]);
+			}
+		}
 	}
 
 	@Override
@@ -0,0 +1,149 @@
+package prefux.data;
+
+import java.util.function.Consumer
+
+import prefux.data.column.ColumnMetadata
+import prefux.data.event.EventConstants
+import prefux.data.event.TableListener
+import prefux.data.util.Index
+import spock.lang.Specification
+
+public class TableBatchTest extends Specification {
+
+    Table table
+    List<List<Integer>> events
+
+    def setup() {
+        table = new Table()
+        table.addColumn("x", int.class)
+        table.addColumn("s", String.class)
+        events = []
+        table.addTableListener({ t, start, end, col, type ->
+            events << [type, col, start, end]
+        } as TableListener)
+    }
+
+    private static final int INSERT = EventConstants.INSERT
+    private static final int UPDATE = EventConstants.UPDATE
+    private static final int DELETE = EventConstants.DELETE
+    private static final int ALL = EventConstants.ALL_COLUMNS
+
+    def "adding rows reports one insertion per contiguous range"() {
+        given:
+        table.addRows(10)
+        table.removeRow(3)
+        table.removeRow(4)
+        table.removeRow(7)
+        events.clear()
+
+        when:
+        table.addRows(5)
+
+        then:
+        events == [[INSERT, ALL, 3, 4], [INSERT, ALL, 7, 7], [INSERT, ALL, 10, 11]]
+        table.getRowCount() == 12
+    }
+
+    def "changes in a batch are reported when the batch ends"() {
+        given:
+        table.addRows(10)
+        events.clear()
+
+        when:
+        table.beginBatch()
+        for (int r = 0; r < 5; r++)
+            table.setInt(r, "x", r + 1)
+        table.setInt(7, "x", 8)
+        table.setString(2, "s", "a")
+        int r1 = table.addRow()
+        int r2 = table.addRow()
+        table.setInt(r2, "x", 11)
+        def during = new ArrayList(events)
+        table.endBatch()
+
+        then:
+        during.isEmpty()
+        r1 == 10
+        r2 == 11
+        events == [
+            [INSERT, ALL, 10, 11],
+            [UPDATE, 0, 0, 4], [UPDATE, 0, 7, 7], [UPDATE, 0, 11, 11],
+            [UPDATE, 1, 2, 2],
+        ]
+        !table.isBatching()
+    }
+
+    def "nested batches report when the outermost batch ends"() {
+        given:
+        table.addRows(4)
+        events.clear()
+
+        when:
+        table.batch({ Table t ->
+            t.setInt(0, "x", 1)
+            t.batch({ it.setInt(1, "x", 2) } as Consumer)
+            assert events.isEmpty()
+            t.setInt(3, "x", 4)
+        } as Consumer)
+
+        then:
+        events == [[UPDATE, 0, 0, 1], [UPDATE, 0, 3, 3]]
+    }
+
+    def "removing a row in a batch first reports earlier changes"() {
+        given:
+        table.addRows(4)
+        events.clear()
+
+        when:
+        table.batch({ Table t ->
+            int r = t.addRow()
+            t.setInt(r, "x", 5)
+            t.setInt(1, "x", 2)
+            t.removeRow(0)
+            t.setInt(2, "x", 3)
+        } as Consumer)
+
+        then:
+        events == [
+            [INSERT, ALL, 4, 4],
+            [UPDATE, 0, 1, 1], [UPDATE, 0, 4, 4],
+            [DELETE, ALL, 0, 0],
+            [UPDATE, 0, 2, 2],
+        ]
+    }
+
+    def "indexes and metadata reflect the batch once it ends"() {
+        given:
+        table.addRows(20)
+        for (int r = 0; r < 20; r++)
+            table.setInt(r, "x", r)
+        Index index = table.index("x")
+        ColumnMetadata md = table.getMetadata("x")
+        md.getMaximumRow()
+
+        when:
+        table.batch({ Table t ->
+            for (int r = 0; r < 5; r++)
+                t.setInt(r, "x", 100 + r)
+            t.removeRow(19)
+            t.addRows(2)
+            t.setInt(19, "x", 50)
+            t.setInt(20, "x", -1)
+        } as Consumer)
+
+        then:
+        index.size() == 21
+        index.get(104) == 4
+        index.get(50) == 19
+        index.get(-1) == 20
+        index.get(0) < 0
+        index.get(19) < 0
+        table.getInt(index.minimum(), "x") == -1
+        table.getInt(index.maximum(), "x") == 104
+        md.getMaximumRow() == 4
+        md.getMinimumRow() == 20
+        md.getUniqueCount() == 21
+    }
+
+}
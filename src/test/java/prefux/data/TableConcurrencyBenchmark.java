@@ -0,0 +1,107 @@
+package prefux.data;
+
+/**
+ * Simple timing of concurrent table access. The main thread writes the x and
+ * y columns of every row of a table (default 100000 rows) in passes, either
+ * cell by cell or as one batch per pass, first alone and then while a second
+ * thread keeps reading both columns with {@link Table#tryRead(Runnable)},
+ * the way a renderer reads a frame. Reports the average time per write pass
+ * in both cases, and for the reader the number of completed reads, reads
+ * deferred because the table was write locked, and torn reads that mix
+ * values of different points in time, which should be zero.
+ */
+public class TableConcurrencyBenchmark {
+
+	private static final int WARMUP = 5;
+	private static final int PASSES = 20;
+
+	private static double s_value = 0;
+
+	public static void main(String[] args) throws InterruptedException {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		Table table = new Table();
+		table.addColumn("x", double.class);
+		table.addColumn("y", double.class);
+		table.addRows(n);
+
+		for (boolean batch : new boolean[] { false, true }) {
+			double alone = write(table, batch);
+			Reader reader = new Reader(table);
+			Thread thread = new Thread(reader);
+			thread.start();
+			double shared = write(table, batch);
+			reader.stop = true;
+			thread.join();
+			System.out.printf("%-8s writer alone %8.2f ms/pass, with reader "
+					+ "%8.2f ms/pass; reader %6d reads, %6d deferred, "
+					+ "%d torn%n", batch ? "batched" : "per cell", alone,
+					shared, reader.reads, reader.deferred, reader.torn);
+		}
+	}
+
+	private static double write(Table table, boolean batch) {
+		int n = table.getRowCount();
+		long t0 = 0;
+		for (int i = 0; i < WARMUP + PASSES; i++) {
+			if (i == WARMUP)
+				t0 = System.nanoTime();
+			double v = ++s_value;
+			if (batch)
+				table.beginBatch();
+			try {
+				for (int row = 0; row < n; row++) {
+					table.setDouble(row, 0, v);
+					table.setDouble(row, 1, v);
+				}
+			} finally {
+				if (batch)
+					table.endBatch();
+			}
+		}
+		return (System.nanoTime() - t0) / 1e6 / PASSES;
+	}
+
+	/**
+	 * Copies both columns until stopped. Values only ever increase and are
+	 * written row by row, x before y, so in any consistent state they do
+	 * not increase in that order.
+	 */
+	private static class Reader implements Runnable {
+
+		private final Table table;
+		private final double[] xs, ys;
+		volatile boolean stop = false;
+		int reads = 0, deferred = 0, torn = 0;
+
+		Reader(Table table) {
+			this.table = table;
+			xs = new double[table.getRowCount()];
+			ys = new double[xs.length];
+		}
+
+		public void run() {
+			while (!stop) {
+				if (!table.tryRead(this::copy)) {
+					deferred++;
+					continue;
+				}
+				reads++;
+				for (int row = 0; row < xs.length; row++) {
+					if (ys[row] > xs[row]
+							|| (row > 0 && xs[row] > ys[row - 1])) {
+						torn++;
+						break;
+					}
+				}
+			}
+		}
+
+		private void copy() {
+			for (int row = 0; row < xs.length; row++) {
+				xs[row] = table.getDouble(row, 0);
+				ys[row] = table.getDouble(row, 1);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,108 @@
+package prefux.data.column;
+
+import prefux.data.Table
+import prefux.util.DataLib
+import prefux.util.MathLib
+import spock.lang.Specification
+import spock.lang.Unroll
+
+public class ColumnStatisticsTest extends Specification {
+
+    Table table
+
+    def setup() {
+        table = new Table()
+        table.addColumn("x", int.class)
+        table.addRows(40)
+        for (int r = 0; r < 40; r++)
+            table.setInt(r, "x", r % 10)
+    }
+
+    def "metadata follows single value updates after a query"() {
+        given:
+        ColumnMetadata md = table.getMetadata("x")
+        md.getMedianRow()
+
+        when:
+        for (int r = 0; r < 6; r++)
+            table.setInt(r, "x", 9)
+
+        then:
+        matchesBruteForce(md)
+    }
+
+    @Unroll
+    def "metadata follows random updates (removals: #removals, batches: #batches)"() {
+        given:
+        ColumnMetadata md = table.getMetadata("x")
+        Random rnd = new Random(42)
+
+        when:
+        boolean ok = true
+        for (int step = 0; step < 3000 && ok; step++) {
+            boolean batch = batches && rnd.nextInt(10) == 0
+            if (batch)
+                table.beginBatch()
+            try {
+                int ops = batch ? 1 + rnd.nextInt(20) : 1
+                for (int i = 0; i < ops; i++)
+                    mutate(rnd, removals)
+            } finally {
+                if (batch)
+                    table.endBatch()
+            }
+            if (rnd.nextInt(3) == 0)
+                ok = matchesBruteForce(md)
+        }
+
+        then:
+        ok
+        matchesBruteForce(md)
+
+        where:
+        removals | batches
+        false    | false
+        true     | false
+        false    | true
+        true     | true
+    }
+
+    private void mutate(Random rnd, boolean removals) {
+        int op = rnd.nextInt(10)
+        int n = table.getRowCount()
+        if (n > 1 && op < 6) {
+            table.setInt(randomRow(rnd), "x", rnd.nextInt(10))
+        } else if (n > 1 && op < 8 && removals) {
+            table.removeRow(randomRow(rnd))
+        } else {
+            int r = table.addRow()
+            table.setInt(r, "x", rnd.nextInt(10))
+        }
+    }
+
+    private int randomRow(Random rnd) {
+        int k = rnd.nextInt(table.getRowCount())
+        def rows = table.rows()
+        while (k-- > 0)
+            rows.nextInt()
+        return rows.nextInt()
+    }
+
+    private boolean matchesBruteForce(ColumnMetadata md) {
+        double[] values = DataLib.toDoubleArray(table.tuples(), "x")
+        double[] sorted = values.clone()
+        Arrays.sort(sorted)
+        int n = sorted.length
+        return table.getDouble(md.getMedianRow(), "x") == sorted[n.intdiv(2)] &&
+            table.getDouble(md.getMinimumRow(), "x") == sorted[0] &&
+            table.getDouble(md.getMaximumRow(), "x") == sorted[n - 1] &&
+            md.getUniqueCount() == DataLib.uniqueCount(table.tuples(), "x") &&
+            Arrays.equals(md.getOrdinalArray(),
+                DataLib.ordinalArray(table.tuples(), "x")) &&
+            Arrays.equals(md.getQuantiles(4), MathLib.quantiles(4, values)) &&
+            Arrays.equals(md.getQuantiles(10), MathLib.quantiles(10, values)) &&
+            Math.abs(md.getMean() - DataLib.mean(table.tuples(), "x")) < 1e-9 &&
+            md.getSum() == DataLib.sum(table.tuples(), "x")
+    }
+
+}
@@ -0,0 +1,82 @@
+package prefux.data.expression;
+
+import java.util.Random;
+
+import prefux.data.Table;
+import prefux.data.Tuple;
+import prefux.data.expression.parser.ExpressionParser;
+
+/**
+ * Simple timing comparison of interpreted expressions and expressions
+ * compiled by the {@link ExpressionCompiler}. Filters a random table with
+ * each of the benchmark predicates (default 1000000 rows) and reports the
+ * average time per pass over the table after a warm-up phase.
+ */
+public class ExpressionCompilerBenchmark {
+
+	private static final int WARMUP = 5;
+	private static final int PASSES = 10;
+
+	private static final String[] PREDICATES = {
+			"[a] > 500",
+			"[a] * 2 + 10 > 500 AND [b] < 50.0 * 1.5",
+			"([flag] OR [c] = '3') AND NOT ([b] >= 90)",
+			"(IF [flag] THEN [a] ELSE [b] * 10) > 400 XOR [a] % 7 = 0" };
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		Table table = createTable(n);
+		for (String expr : PREDICATES) {
+			Predicate p = (Predicate) ExpressionParser.parse(expr);
+			Predicate c = ExpressionCompiler.compile(p, table.getSchema());
+			double interp = run(table, p);
+			double comp = run(table, c);
+			System.out.printf("%-55s interpreted %8.2f ms, "
+					+ "compiled %8.2f ms (%.2fx)%n", expr, interp, comp,
+					interp / comp);
+		}
+	}
+
+	private static Table createTable(int n) {
+		Table table = new Table();
+		table.addColumn("a", int.class);
+		table.addColumn("b", double.class);
+		table.addColumn("c", String.class);
+		table.addColumn("flag", boolean.class);
+		table.addRows(n);
+
+		Random rand = new Random(42);
+		for (int i = 0; i < n; i++) {
+			table.setInt(i, "a", rand.nextInt(1000));
+			table.setDouble(i, "b", rand.nextDouble() * 100);
+			table.set(i, "c", String.valueOf(rand.nextInt(10)));
+			table.setBoolean(i, "flag", rand.nextBoolean());
+		}
+		return table;
+	}
+
+	private static double run(Table table, Predicate p) {
+		int n = table.getRowCount();
+		int count = 0;
+		for (int i = 0; i < WARMUP; i++)
+			count += filter(table, p, n);
+		long t0 = System.nanoTime();
+		for (int i = 0; i < PASSES; i++)
+			count += filter(table, p, n);
+		double ms = (System.nanoTime() - t0) / 1e6 / PASSES;
+		if (count < 0)
+			System.out.println(count); // keep the result alive
+		return ms;
+	}
+
+	private static int filter(Table table, Predicate p, int n) {
+		int count = 0;
+		for (int row = 0; row < n; row++) {
+			Tuple t = table.getTuple(row);
+			if (p.getBoolean(t))
+				++count;
+		}
+		return count;
+	}
+
+}
@@ -0,0 +1,108 @@
+package prefux.data.io.sql;
+
+import java.sql.ResultSet
+import java.sql.Types
+import java.util.function.IntConsumer
+
+import prefux.data.Table
+import prefux.data.event.EventConstants
+import prefux.data.event.TableListener
+import spock.lang.Specification
+
+public class DatabaseResultSetProcessorTest extends Specification {
+
+    DatabaseResultSetProcessor processor
+    Table table
+    int inserts
+    List<Integer> progress
+
+    def setup() {
+        processor = new DatabaseResultSetProcessor(new DefaultSQLDataHandler())
+        table = new Table()
+        table.addColumn("id", int.class)
+        table.addColumn("name", String.class)
+        inserts = 0
+        progress = []
+        table.addTableListener({ t, start, end, col, type ->
+            if (type == EventConstants.INSERT)
+                inserts++
+        } as TableListener)
+    }
+
+    private static StandInResultSet results() {
+        return new StandInResultSet(["id", "name"] as String[],
+            [Types.INTEGER, Types.VARCHAR] as int[])
+    }
+
+    private Table process(StandInResultSet rs, boolean remove) {
+        return processor.process(table, rs.getResultSet(), "id", null, remove,
+            { progress << it } as IntConsumer)
+    }
+
+    private Map<Integer, String> contents() {
+        Map<Integer, String> map = [:]
+        for (def rows = table.rows(); rows.hasNext();) {
+            int row = rows.nextInt()
+            assert !map.containsKey(table.getInt(row, "id"))
+            map[table.getInt(row, "id")] = table.getString(row, "name")
+        }
+        return map
+    }
+
+    def "new rows are appended with one insertion per batch"() {
+        given:
+        processor.setBatchSize(10)
+        StandInResultSet rs = results()
+        for (int i = 0; i < 25; i++)
+            rs.add(i, "n" + i)
+
+        when:
+        process(rs, false)
+
+        then:
+        inserts == 3
+        table.getRowCount() == 25
+        contents() == (0..<25).collectEntries { [it, "n" + it] }
+        progress == [10, 20, 25]
+    }
+
+    def "duplicate keys are merged within and across batches"() {
+        given:
+        processor.setBatchSize(3)
+        StandInResultSet rs = results()
+            .add(1, "a").add(2, "b").add(1, "c")   // merged in the batch
+            .add(3, "d")                           // first batch is full
+            .add(4, "e").add(2, "f").add(5, "g")   // merged into the table
+            .add(3, "h")
+
+        when:
+        process(rs, false)
+
+        then:
+        inserts == 2
+        contents() == [1: "c", 2: "f", 3: "h", 4: "e", 5: "g"]
+        progress == [4, 8]
+    }
+
+    def "rows without a counterpart are removed"() {
+        given:
+        for (int i = 1; i <= 5; i++) {
+            int row = table.addRow()
+            table.setInt(row, "id", i)
+            table.setString(row, "name", "old" + i)
+        }
+        processor.setBatchSize(2)
+        StandInResultSet rs = results()
+            .add(2, "b").add(6, "f").add(4, "d").add(7, "g").add(8, "h")
+
+        when:
+        inserts = 0
+        process(rs, true)
+
+        then:
+        contents() == [2: "b", 4: "d", 6: "f", 7: "g", 8: "h"]
+        inserts == 2
+        progress == [4, 5]
+    }
+
+}
@@ -0,0 +1,141 @@
+package prefux.data.io.sql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A stand-in for a database result set, serving rows held in memory. Only
+ * the methods used to read a result set forward are supported: next, the
+ * getters by column index or label, wasNull, close and the column count,
+ * names and types of the metadata. Other methods throw an
+ * UnsupportedOperationException.
+ */
+public class StandInResultSet implements InvocationHandler {
+
+	private final String[] names;
+	private final int[] types;
+	private final List<Object[]> rows = new ArrayList<>();
+	private int cursor = -1;
+	private boolean wasNull = false;
+	private boolean closed = false;
+
+	/**
+	 * Create a result set with the given columns.
+	 *
+	 * @param names
+	 *            the column names
+	 * @param types
+	 *            the column types, as defined by {@link java.sql.Types}
+	 */
+	public StandInResultSet(String[] names, int[] types) {
+		this.names = names;
+		this.types = types;
+	}
+
+	/**
+	 * Add a row of values, one per column.
+	 *
+	 * @param values
+	 *            the row values
+	 * @return this result set
+	 */
+	public StandInResultSet add(Object... values) {
+		rows.add(values);
+		return this;
+	}
+
+	/**
+	 * Indicates if the result set has been closed.
+	 *
+	 * @return true if closed
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Get a ResultSet serving the rows of this stand-in.
+	 *
+	 * @return the result set
+	 */
+	public ResultSet getResultSet() {
+		return (ResultSet) Proxy.newProxyInstance(
+				ResultSet.class.getClassLoader(),
+				new Class<?>[] { ResultSet.class }, this);
+	}
+
+	private ResultSetMetaData getMetaData() {
+		return (ResultSetMetaData) Proxy.newProxyInstance(
+				ResultSetMetaData.class.getClassLoader(),
+				new Class<?>[] { ResultSetMetaData.class },
+				(proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getColumnCount":
+						return names.length;
+					case "getColumnName":
+					case "getColumnLabel":
+						return names[(Integer) args[0] - 1];
+					case "getColumnType":
+						return types[(Integer) args[0] - 1];
+					default:
+						throw new UnsupportedOperationException(method
+								.getName());
+					}
+				});
+	}
+
+	public Object invoke(Object proxy, Method method, Object[] args)
+			throws SQLException {
+		String name = method.getName();
+		switch (name) {
+		case "next":
+			return ++cursor < rows.size();
+		case "close":
+			closed = true;
+			return null;
+		case "isClosed":
+			return closed;
+		case "wasNull":
+			return wasNull;
+		case "getMetaData":
+			return getMetaData();
+		}
+		if (!name.startsWith("get") || args == null || args.length != 1)
+			throw new UnsupportedOperationException(name);
+		if (cursor < 0 || cursor >= rows.size())
+			throw new SQLException("No current row");
+		Object value = rows.get(cursor)[column(args[0]) - 1];
+		wasNull = value == null;
+		Class<?> type = method.getReturnType();
+		if (type == int.class)
+			return value == null ? 0 : ((Number) value).intValue();
+		if (type == long.class)
+			return value == null ? 0L : ((Number) value).longValue();
+		if (type == float.class)
+			return value == null ? 0f : ((Number) value).floatValue();
+		if (type == double.class)
+			return value == null ? 0d : ((Number) value).doubleValue();
+		if (type == boolean.class)
+			return value != null && (Boolean) value;
+		if (type == String.class)
+			return value == null ? null : value.toString();
+		return value;
+	}
+
+	private int column(Object arg) throws SQLException {
+		if (arg instanceof Integer)
+			return (Integer) arg;
+		for (int i = 0; i < names.length; i++) {
+			if (names[i].equals(arg))
+				return i + 1;
+		}
+		throw new SQLException("Unknown column: " + arg);
+	}
+
+}
@@ -0,0 +1,109 @@
+package prefux.data.util;
+
+import prefux.data.Table
+import prefux.data.expression.ColumnExpression
+import prefux.data.expression.NumericLiteral
+import prefux.data.expression.Predicate
+import prefux.data.expression.RangePredicate
+import prefux.data.expression.parser.ExpressionParser
+import prefux.util.collections.IntIterator
+import spock.lang.Specification
+import spock.lang.Unroll
+
+public class FilterIteratorFactoryTest extends Specification {
+
+    static final int ROWS = 1000
+
+    Table table
+
+    def setup() {
+        table = new Table()
+        table.addColumn("i", int.class)
+        table.addColumn("l", long.class)
+        table.addColumn("d", double.class)
+        table.addColumn("f", float.class)
+        table.addColumn("k", int.class)
+        table.addColumn("c", String.class)
+        table.addColumn("b", boolean.class)
+        table.addRows(ROWS)
+        for (int r = 0; r < ROWS; r++) {
+            table.setInt(r, "i", r % 10 - 3)
+            table.setLong(r, "l", r % 7 - 2)
+            table.setDouble(r, "d", (r % 20 - 8) * 0.5d)
+            table.setFloat(r, "f", (float) ((r % 9 - 4) * 0.25f))
+            table.setInt(r, "k", r - 100)
+            table.setString(r, "c", "c" + (r % 4))
+            table.setBoolean(r, "b", r % 3 == 0)
+        }
+        table.setUnique("k", true)
+        table.index("i")
+        table.index("l")
+        table.index("d")
+        table.index("f")
+        table.index("k")
+        table.index("b")
+        table.bitmapIndex("c")
+    }
+
+    @Unroll
+    def "indexed rows match a scan for #query"() {
+        given:
+        Predicate p = (Predicate) ExpressionParser.parse(query, true)
+
+        expect:
+        indexed(p) == scanned(p)
+
+        where:
+        query << [
+            "d < 5.0", "d <= 0", "d > -1", "d >= -1.5", "d = 0", "d = 1",
+            "f < 0", "f >= -0.5", "f > 0.3", "f = 0.25",
+            "i < 2.5", "i <= 3", "i > -2", "i >= 0", "i = 2.5", "i = 2",
+            "l < 1", "l > 1.5", "l = 0", "l >= -1",
+            "k < 0", "k = 5", "k = 5.5", "k >= 850",
+            "-1 < i and i <= 2", "d > -2 and d < 1",
+            "c = 'c1' and b", "c = 'c2' and i = 2.5", "c = 'c3' and d = 1",
+            "c = 'c0' or c = 'c2'", "c = 'c1' or i = 2", "c = 'c1' and k = 5.5",
+        ]
+    }
+
+    @Unroll
+    def "indexed rows match a scan for #lo <= #field <= #hi"() {
+        given:
+        Predicate p = new RangePredicate(new ColumnExpression(field),
+            new NumericLiteral(lo), new NumericLiteral(hi))
+
+        expect:
+        indexed(p) == scanned(p)
+
+        where:
+        field | lo    | hi
+        "i"   | -1    | 2
+        "i"   | -1.0d | 2.5d
+        "i"   | -1.5d | 2.0d
+        "l"   | -1    | 3
+        "l"   | 0.5d  | 3.0d
+        "d"   | -2    | 1
+        "d"   | -2.5d | 1.5d
+        "f"   | -0.5f | 0.5f
+        "f"   | -0.5d | 0.3d
+        "k"   | 10    | 20
+    }
+
+    private Set<Integer> indexed(Predicate p) {
+        Set<Integer> rows = new HashSet<>()
+        for (IntIterator it = table.rows(p); it.hasNext();)
+            rows << it.nextInt()
+        return rows
+    }
+
+    private Set<Integer> scanned(Predicate p) {
+        Set<Integer> rows = new HashSet<>()
+        for (IntIterator it = table.rows(); it.hasNext();) {
+            int r = it.nextInt()
+            if (p.getBoolean(table.getTuple(r)))
+                rows << r
+        }
+        return rows
+    }
+
+}
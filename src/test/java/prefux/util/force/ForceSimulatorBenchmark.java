@@ -0,0 +1,60 @@
+package prefux.util.force;
+
+import java.util.Random;
+
+/**
+ * Simple timing comparison of the object based {@link ForceSimulator} and the
+ * packed {@link PackedForceSimulator}. Runs a random graph with one spring per
+ * node at each of the given sizes (default 1000, 10000 and 100000 nodes) and
+ * reports the average time per simulation step after a warm-up phase.
+ */
+public class ForceSimulatorBenchmark {
+
+	private static final int WARMUP = 5;
+	private static final int STEPS = 20;
+
+	public static void main(String[] args) {
+		int[] sizes = { 1000, 10000, 100000 };
+		if (args.length > 0) {
+			sizes = new int[args.length];
+			for (int i = 0; i < args.length; i++)
+				sizes[i] = Integer.parseInt(args[i]);
+		}
+		for (int n : sizes) {
+			double obj = run(new ForceSimulator(), n);
+			double packed = run(new PackedForceSimulator(), n);
+			System.out.printf("%7d items: object %9.2f ms/step, "
+					+ "packed %9.2f ms/step (%.2fx)%n", n, obj, packed,
+					obj / packed);
+		}
+	}
+
+	private static double run(ForceSimulator fsim, int n) {
+		fsim.addForce(new NBodyForce());
+		fsim.addForce(new SpringForce());
+		fsim.addForce(new DragForce());
+
+		Random rand = new Random(42);
+		ForceItem[] items = new ForceItem[n];
+		for (int i = 0; i < n; i++) {
+			ForceItem item = new ForceItem();
+			item.location[0] = rand.nextDouble() * 1000;
+			item.location[1] = rand.nextDouble() * 1000;
+			items[i] = item;
+			fsim.addItem(item);
+		}
+		for (int i = 1; i < n; i++) {
+			fsim.addSpring(items[i], items[rand.nextInt(i)]);
+		}
+
+		for (int i = 0; i < WARMUP; i++)
+			fsim.runSimulator(20);
+		long t0 = System.nanoTime();
+		for (int i = 0; i < STEPS; i++)
+			fsim.runSimulator(20);
+		double ms = (System.nanoTime() - t0) / 1e6 / STEPS;
+		fsim.clear();
+		return ms;
+	}
+
+}